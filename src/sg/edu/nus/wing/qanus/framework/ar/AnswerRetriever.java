@@ -1,30 +1,34 @@
 package sg.edu.nus.wing.qanus.framework.ar;
 
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.RandomAccessFile;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import sg.edu.nus.wing.qanus.framework.ar.er.ErrorAnalyzer;
 import sg.edu.nus.wing.qanus.framework.commons.DataItem;
+import sg.edu.nus.wing.qanus.framework.commons.DataItemStreamReader;
+import sg.edu.nus.wing.qanus.framework.commons.DataItemStreamWriter;
 import sg.edu.nus.wing.qanus.framework.commons.IAnalyzable;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IStrategyModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLDataReceipient;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
+import sg.edu.nus.wing.qanus.framework.commons.SAXParserProvider;
 import sg.edu.nus.wing.qanus.framework.commons.StageEngine;
 import sg.edu.nus.wing.qanus.framework.util.DirectoryAndFileManipulation;
 
@@ -50,19 +54,37 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 	// Name of file where output is placed
 	protected String m_OutputFileName;
 
-	// Hold all the retrieved answer strings until they are ready to be written to file.
-	protected DataItem m_DataItem_Results;
+	// Answers are written to this file as soon as they are retrieved.
+	// The file is kept well-formed after each answer, by writing the closing
+	// DOCSTREAM tag after every answer and over-writing it with the next answer.
+	protected RandomAccessFile m_OutputFile = null;
+	private static final String RESULTS_OPENING = "\n<DOCSTREAM>";
+	private static final String RESULTS_CLOSING = "</DOCSTREAM>\n";
 
-	// Keeps track if the callbacks of the XML handler has all been completed
-	// We need to be sure of this as we only write all results back to file
-	// after the last callback has completed -- this is to make sure
-	// we do not miss any result returned by the callback if we write
-	// ahead of the callback.
-	protected int l_CallbacksOutstanding = 0;
+	// Used instead of m_OutputFile when answers are written as a binary data item stream
+	protected DataItemStreamWriter m_BinaryOutputFile = null;
+	private boolean m_BinaryOutput = false;
 
 	// Error analysis module
 	protected ErrorAnalyzer m_ErrorAnalyzer = null;
 
+	// Sets of strategy modules, one set per worker thread. null if the questions are
+	// answered one at a time with the modules registered with this StageEngine.
+	private IRegisterableModule[][] m_WorkerModules = null;
+
+	// Worker threads answering questions, and the module sets not in use by any of them
+	private ExecutorService m_Executor = null;
+	private LinkedBlockingQueue<IRegisterableModule[]> m_IdleWorkerModules = null;
+
+	// Questions handed to the worker threads whose answers are not saved yet, in the
+	// order the questions were read. At most m_MaxPendingAnswers are kept, after which
+	// reading of questions waits for the oldest to be answered.
+	private LinkedList<Future<DataItem>> m_PendingAnswers = null;
+	private int m_MaxPendingAnswers = 0;
+
+	// Also receives the answers, if set
+	private IXMLDataReceipient m_AnswerReceipient = null;
+
 
 	/**
 	 * Constructor.
@@ -77,9 +99,6 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 		SetTargetFile(a_ResultFolder);
 
 
-		m_DataItem_Results = new DataItem("DOCSTREAM");
-
-
 		// If the questions are given in a folder, we will create a answer file with a name including the current date string
 		// If the questions are given in a file, we will create a answer file with the same name, appended with the word "answers.xml"
 
@@ -129,6 +148,52 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 	} // end SetErrorAnalysisEngine()
 
 
+	/**
+	 * Sets whether answers are written as a binary data item stream instead of XML.
+	 * The evaluation stage reads either format.
+	 *
+	 * @param a_Binary [in] true to write a binary file, false for XML (default)
+	 */
+	public void SetBinaryOutput(boolean a_Binary) {
+
+		m_BinaryOutput = a_Binary;
+
+		// Don't name a binary file as XML
+		if (m_BinaryOutput && m_OutputFileName.endsWith(".xml")) {
+			m_OutputFileName = m_OutputFileName.substring(0, m_OutputFileName.length() - 4) + ".bin";
+		}
+
+	} // end SetBinaryOutput()
+
+
+	/**
+	 * Sets the strategy modules used to answer several questions at once, one set of
+	 * modules per worker thread. The number of sets determines the number of worker threads.
+	 * Each set must hold separate instances, as strategy modules are not expected to be
+	 * thread-safe.
+	 *
+	 * If this is not called, questions are answered one at a time with the modules
+	 * registered with RegisterModules().
+	 *
+	 * @param a_ModuleSets [in] array of module sets, one for each worker thread
+	 */
+	public void SetWorkerModules(IRegisterableModule[][] a_ModuleSets) {
+		m_WorkerModules = a_ModuleSets;
+	} // end SetWorkerModules()
+
+
+	/**
+	 * Passes each answer on to the given recipient, in addition to writing it to file.
+	 * Answers are passed on in the order the questions were read.
+	 * This lets the next stage run within the same program, see DataItemPipe.
+	 *
+	 * @param a_Receipient [in] recipient of the answers, or null for none (default)
+	 */
+	public void SetAnswerReceipient(IXMLDataReceipient a_Receipient) {
+		m_AnswerReceipient = a_Receipient;
+	} // end SetAnswerReceipient()
+
+
 	/**
 	 * Start to retrieve answers for all of the questions found in the question folder
 	 * and output the answers in the result folder.
@@ -142,24 +207,7 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 		// activate the various strategies and retrieve their answers.
 		// Subsequently we rank the answers and post-process
 
-		
-		// Register ourself to receive notifications when parsing XML file.
-		// This call works because of dynamic binding in Java, where "this"
-		// is associated to the derived subclass of TextProcessor.
-		GetXMLHandler().RegisterForNotification(this);
-
-
-		// Set up the SAX parser ------------------------------------------
-		SAXParserFactory l_Factory = SAXParserFactory.newInstance();
-		l_Factory.setValidating(true);
-		SAXParser l_DocBuilder = null;
-		try {
-			l_DocBuilder = l_Factory.newSAXParser();
-		} catch (ParserConfigurationException e) {			
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "Go", "Error setting up parser", e);
-		} catch (SAXException e) {
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "Go", "Error setting up parser", e);
-		}
+		if (!StartAnswering()) return false;
 
 
 		// The input source file could be a folder or a file
@@ -195,8 +243,10 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 				// TODO sloppy work to just cast as DefaultHandler
 				// can we marry the inheritance from DefaultHandler and the interface
 				// IXMLParser better?
-				NewCallBack(); // Used later on the ensure that all invokved callbacks have completed before we stop
-				l_DocBuilder.parse(l_FileToParse, (DefaultHandler) GetXMLHandler());
+				// Questions from the question processing stage may be in binary instead of XML
+				if (!DataItemStreamReader.ReplayIfDataItemStream(l_FileToParse, (DefaultHandler) GetXMLHandler())) {
+					SAXParserProvider.Parse(l_FileToParse, (DefaultHandler) GetXMLHandler(), GetXMLValidation());
+				}
 
 			} catch (SAXException e) {
 				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "Go", "Error processing [" + l_FileNameToParse + "]", e);
@@ -206,22 +256,59 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 
 		} // end for
 
-		
+		FinishAnswering();
+
+		return true;
+
+	} // end Go()
+
+
+	/**
+	 * Gets ready to answer questions, which are handed over by the XML handler.
+	 * Go() calls this before reading the questions. When the questions come from an
+	 * earlier stage within the same program instead (see DataItemPipe), call this
+	 * before passing them to the XML handler, and FinishAnswering() afterwards.
+	 *
+	 * @return true if ready, false if the file to write the answers to cannot be opened
+	 */
+	public boolean StartAnswering() {
+
+		// Register ourself to receive notifications when parsing XML file.
+		// This call works because of dynamic binding in Java, where "this"
+		// is associated to the derived subclass of TextProcessor.
+		GetXMLHandler().RegisterForNotification(this);
+
+		// Prepare the file to write answers to
+		if (!OpenResultsFile()) {
+			GetXMLHandler().DelistFromNotification(this);
+			return false;
+		}
+
+		// Start up the worker threads if questions are to be answered concurrently
+		if (m_WorkerModules != null && m_WorkerModules.length > 1) {
+			StartWorkers();
+		}
+
+		return true;
+
+	} // end StartAnswering()
+
+
+	/**
+	 * Waits for all the questions handed over to be answered, and saves the answers.
+	 * Counterpart of StartAnswering().
+	 */
+	public void FinishAnswering() {
+
 		// Stop receiving notifications about new data items
 		GetXMLHandler().DelistFromNotification(this);
 
 
-		// Make sure we don't write to file until all callbacks have completed
-		while (AnyCallBacksLeft()) {
-			try {
-				Thread.sleep(100);
-			} catch (InterruptedException ex) {
-				// exception, forget it don't get ourselves into a potentially
-				// sticky infinite loop
-				break;
-			}
+		// Make sure we don't write to file until all questions have been answered
+		if (m_Executor != null) {
+			StopWorkers();
 		}
-		WriteResultsToFile();
+		CloseResultsFile();
 
 		
 		// Signal the error analysis engine that everything is over.
@@ -229,9 +316,7 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 			m_ErrorAnalyzer.FinishedAnalysis();
 		}
 
-		return true;
-
-	} // end Go()
+	} // end FinishAnswering()
 
 
 
@@ -244,15 +329,60 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 	} // end GetIdentifier()
 
 
-	public synchronized void Notify(DataItem a_Item) {
+	/**
+	 * Callback that is invoked by the XML handler for each question read.
+	 * The question is either answered right away, or handed to a worker thread.
+	 *
+	 * @param a_Item [in] the question and its annotations
+	 */
+	public void Notify(final DataItem a_Item) {
+
+		if (m_Executor == null) {
+			DataItem l_Answer = AnswerQuestion(a_Item, m_ModuleList.toArray(new IRegisterableModule[0]));
+			if (l_Answer != null) {
+				SaveAnswer(l_Answer);
+			}
+			return;
+		}
+
+		// Don't read too far ahead of the questions that are being answered
+		while (m_PendingAnswers.size() >= m_MaxPendingAnswers) {
+			SaveNextPendingAnswer();
+		}
+
+		m_PendingAnswers.addLast(m_Executor.submit(new Callable<DataItem>() {
+			public DataItem call() throws Exception {
+				IRegisterableModule[] l_Modules = m_IdleWorkerModules.take();
+				try {
+					return AnswerQuestion(a_Item, l_Modules);
+				} finally {
+					m_IdleWorkerModules.put(l_Modules);
+				}
+			}
+		}));
+
+		// Save whatever answers are ready, keeping to the order of the questions
+		while (!m_PendingAnswers.isEmpty() && m_PendingAnswers.getFirst().isDone()) {
+			SaveNextPendingAnswer();
+		}
+
+	} // end Notify()
+
+
+	/**
+	 * Retrieves an answer for the question with the given strategy modules.
+	 *
+	 * @param a_Item [in] the question and its annotations
+	 * @param a_Modules [in] strategy modules to use
+	 * @return the answer, or null if no answer is retrieved
+	 */
+	private DataItem AnswerQuestion(DataItem a_Item, IRegisterableModule[] a_Modules) {
 
 		HashMap<String,DataItem> l_Answers = new HashMap<String,DataItem>();
 		DataItem l_RankedAnswerTODO = null;
 
 		// a_Item contains the question and its annotations
-		for (IRegisterableModule l_Module : m_ModuleList) {
-
-			// TODO questions do not follow an order now
+		for (IRegisterableModule l_Module : a_Modules) {
 
 			//System.out.println(a_Item.toXMLString()); // Display received question for debugging if needed
 
@@ -260,7 +390,7 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 			if (l_Module instanceof IStrategyModule) {
 				l_StrategyModule = (IStrategyModule) l_Module;			
 			} else {
-				Logger.getLogger("QANUS").logp(Level.WARNING, AnswerRetriever.class.getName(), "Notify", "Wrong module type.");
+				Logger.getLogger("QANUS").logp(Level.WARNING, AnswerRetriever.class.getName(), "AnswerQuestion", "Wrong module type.");
 				continue;
 			}
 
@@ -272,7 +402,9 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 				DataItem l_AnalysisInfo = l_AnalyzableModule.GetAnalysisInfoForQuestion(a_Item);
 				// Perform analysis
 				if (l_AnalysisInfo != null) {
-					m_ErrorAnalyzer.PerformAnalysisOnQuestionAndCandidates(l_AnalysisInfo);
+					synchronized (m_ErrorAnalyzer) {
+						m_ErrorAnalyzer.PerformAnalysisOnQuestionAndCandidates(l_AnalysisInfo);
+					}
 				}
 			} else {
 				
@@ -287,71 +419,162 @@ public class AnswerRetriever extends StageEngine implements IXMLDataReceipient {
 
 
 		// TODO Answer ranker
-		if (l_RankedAnswerTODO != null) {
-			SaveAnswer(l_RankedAnswerTODO);
+		return l_RankedAnswerTODO;
+
+	} // end AnswerQuestion()
+
+
+	/**
+	 * Starts the worker threads used to answer questions, one for each set of worker modules.
+	 */
+	private void StartWorkers() {
+
+		m_IdleWorkerModules = new LinkedBlockingQueue<IRegisterableModule[]>();
+		for (IRegisterableModule[] l_Modules : m_WorkerModules) {
+			m_IdleWorkerModules.add(l_Modules);
 		}
 
-		OneLessCallBack();
+		m_PendingAnswers = new LinkedList<Future<DataItem>>();
+		m_MaxPendingAnswers = 4 * m_WorkerModules.length;
+		m_Executor = Executors.newFixedThreadPool(m_WorkerModules.length);
 
-	} // end Notify()
+		Logger.getLogger("QANUS").logp(Level.INFO, AnswerRetriever.class.getName(), "StartWorkers", "Answering questions with [" + m_WorkerModules.length + "] worker threads");
+
+	} // end StartWorkers()
 
 
 	/**
-	 * Stores the provided answer for later write to file
-	 * @param a_AnswerStructure [in] the structure containing the answer string 
+	 * Waits for all questions handed to the worker threads to be answered, saves the
+	 * answers and stops the worker threads.
 	 */
-	private void SaveAnswer(DataItem a_AnswerStructure) {
-		m_DataItem_Results.AddField("Answer", a_AnswerStructure);		
-	} // end WriteAnswerToOutputFile()
+	private void StopWorkers() {
+
+		while (!m_PendingAnswers.isEmpty()) {
+			SaveNextPendingAnswer();
+		}
+
+		m_Executor.shutdown();
+		m_Executor = null;
+
+	} // end StopWorkers()
 
 
 	/**
-	 * Write the stored answers all to file.
+	 * Waits for the answer of the oldest question handed to the worker threads, and saves it.
 	 */
-	private void WriteResultsToFile() {
-		
-		BufferedWriter l_OutputFile = null;
+	private void SaveNextPendingAnswer() {
+
+		Future<DataItem> l_Pending = m_PendingAnswers.removeFirst();
 		try {
-			l_OutputFile = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(m_OutputFileName), "UTF8"));			
-		} catch (Exception e) {
-			l_OutputFile = null;			
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "Go", "Error preparing temp file : [" + m_OutputFileName + "] ", e);
+			DataItem l_Answer = l_Pending.get();
+			if (l_Answer != null) {
+				SaveAnswer(l_Answer);
+			}
+		} catch (InterruptedException e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "SaveNextPendingAnswer", "Interrupted while waiting for answer", e);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "SaveNextPendingAnswer", "Error answering question", e.getCause());
 		}
 
+	} // end SaveNextPendingAnswer()
+
+
+	/**
+	 * Creates the file to write answers to, containing an empty DOCSTREAM.
+	 *
+	 * @return true if the file is created, false otherwise
+	 */
+	private boolean OpenResultsFile() {
+
+		if (m_BinaryOutput) {
+			try {
+				m_BinaryOutputFile = new DataItemStreamWriter(new File(m_OutputFileName), "DOCSTREAM");
+			} catch (IOException e) {
+				m_BinaryOutputFile = null;
+				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "OpenResultsFile", "Error preparing file : [" + m_OutputFileName + "] ", e);
+				return false;
+			}
+			return true;
+		}
 
 		try {
-			l_OutputFile.write(m_DataItem_Results.toXMLString());
-		} catch (Exception e) {
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "Go", "Error writing to temp XML file : [" + m_OutputFileName + "] ", e);
+			m_OutputFile = new RandomAccessFile(m_OutputFileName, "rw");
+			m_OutputFile.setLength(0);
+			m_OutputFile.write((RESULTS_OPENING + RESULTS_CLOSING).getBytes("UTF8"));
+		} catch (IOException e) {
+			m_OutputFile = null;
+			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "OpenResultsFile", "Error preparing file : [" + m_OutputFileName + "] ", e);
+			return false;
+		}
+
+		return true;
+
+	} // end OpenResultsFile()
+
+
+	/**
+	 * Writes the provided answer to file, just before the closing DOCSTREAM tag.
+	 * The answer is also passed on to the answer recipient, if any.
+	 * @param a_AnswerStructure [in] the structure containing the answer string 
+	 */
+	private void SaveAnswer(DataItem a_AnswerStructure) {
+
+		if (m_AnswerReceipient != null) {
+			m_AnswerReceipient.Notify(a_AnswerStructure);
 		}
 
-		// Save the temporary file -------------------------------------------------------
-		if (l_OutputFile != null) {
-			try {				
-				l_OutputFile.flush();
-				l_OutputFile.close();
-				l_OutputFile = null;
+		if (m_BinaryOutputFile != null) {
+			try {
+				m_BinaryOutputFile.Write(a_AnswerStructure);
 			} catch (IOException e) {
-				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "Go", "Error closing file : [" + m_OutputFileName + "] ", e);
+				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "SaveAnswer", "Error writing to file : [" + m_OutputFileName + "] ", e);
 			}
-		} // end if
-		
-	} // end WriteResultsToFile()
+			return;
+		}
 
-	
-	// --- Used to track the number of outstanding callbacks atomically
-	private synchronized void NewCallBack() {
-		l_CallbacksOutstanding++;
-	} // end NewCallBack()
+		if (m_OutputFile == null) return;
+
+		try {
+			StringBuilder l_XML = new StringBuilder();
+			a_AnswerStructure.WriteXML(l_XML);
+			l_XML.append(RESULTS_CLOSING);
+
+			byte[] l_Closing = RESULTS_CLOSING.getBytes("UTF8");
+			m_OutputFile.seek(m_OutputFile.length() - l_Closing.length);
+			m_OutputFile.write(l_XML.toString().getBytes("UTF8"));
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "SaveAnswer", "Error writing to file : [" + m_OutputFileName + "] ", e);
+		}
+
+	} // end SaveAnswer()
+
+
+	/**
+	 * Closes the file answers are written to.
+	 */
+	private void CloseResultsFile() {
 
-	private synchronized void OneLessCallBack() {
-		l_CallbacksOutstanding--;
-	} // end OneLessCallBack()
+		if (m_BinaryOutputFile != null) {
+			try {
+				m_BinaryOutputFile.Close();
+			} catch (IOException e) {
+				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "CloseResultsFile", "Error closing file : [" + m_OutputFileName + "] ", e);
+			}
+			m_BinaryOutputFile = null;
+		}
 
-	private synchronized boolean AnyCallBacksLeft() {
-		return (l_CallbacksOutstanding > 0);
-	} // end AnyCallBacksLeft()
+		if (m_OutputFile == null) return;
 
+		try {
+			m_OutputFile.close();
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerRetriever.class.getName(), "CloseResultsFile", "Error closing file : [" + m_OutputFileName + "] ", e);
+		}
+		m_OutputFile = null;
+
+	} // end CloseResultsFile()
 
 	
+
 } // end class AnswerRetriever
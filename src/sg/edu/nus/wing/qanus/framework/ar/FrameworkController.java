@@ -8,6 +8,8 @@ import java.util.logging.Logger;
 import sg.edu.nus.wing.qanus.framework.ar.er.ErrorAnalyzer;
 import sg.edu.nus.wing.qanus.framework.commons.ControllerForDoubleSourceAndTarget;
 import sg.edu.nus.wing.qanus.framework.commons.IAnalyzableController;
+import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
+import sg.edu.nus.wing.qanus.framework.commons.IStrategyModule;
 import sg.edu.nus.wing.qanus.framework.commons.IStageEngineController;
 
 
@@ -57,6 +59,16 @@ public abstract class FrameworkController extends ControllerForDoubleSourceAndTa
 			MakeOptionCompulsory("anstgt");
 		AddOptionWithRequiredArgument(m_ErrorAnalysisSourceLabel, "Folder name to load error analysis reference information from", File.class);
 		AddOptionWithRequiredArgument(m_ErrorAnalysisTargetLabel, "Folder name to store error analysis results to", File.class);
+		AddOptionWithRequiredArgument("format", "Format of the answers file, xml (default) or binary", String.class);
+		AddOptionWithRequiredArgument("threads", "Number of questions to answer at the same time (default 1). Each thread loads its own strategy modules", Integer.class);
+		AddOptionWithRequiredArgument("taggers", "Number of POS taggers to tag sentences with at the same time (default 1). Each tagger loads its own copy of the model", Integer.class);
+		AddOptionWithRequiredArgument("recognisers", "Number of named entity recognisers to tag sentences with at the same time (default 1). Each recogniser loads its own copy of the model", Integer.class);
+		AddOptionWithRequiredArgument("nermaxwords", "Maximum number of words of a sentence to perform named entity recognition on (default no limit)", Integer.class);
+		AddOptionWithRequiredArgument("annotationcache", "Folder name to keep the annotations of sentences in across runs. Sentences are annotated afresh every time if not provided", File.class);
+		AddOptionWithRequiredArgument("thesaurus", "File name of a thesaurus dump, in the format headword|POS|type|word, to expand queries with. Queries are not expanded if not provided", File.class);
+		AddOptionWithRequiredArgument("thesauruscache", "File name to save replies of the online thesaurus to, for words not in the thesaurus dump. The online thesaurus is not used if not provided", File.class);
+		AddOptionWithRequiredArgument("nerservice", "URL of the WSDL of a named entity recognition web service to use instead of loading the model. The model is only loaded if the web service fails", String.class);
+		AddOptionWithRequiredArgument("warmupqueries", "File name of Lucene queries, one on each line, to warm the information base index with whenever it is opened", File.class);
 
 	} // end constructor
 
@@ -83,6 +95,97 @@ public abstract class FrameworkController extends ControllerForDoubleSourceAndTa
 	} // end GetErrorAnalysisTarget()
 
 
+	/**
+	 * Retrieves the number of worker threads requested on the command line.
+	 *
+	 * @return number of worker threads to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfThreads() {
+		return GetPositiveIntegerOption("threads", 1);
+	} // end GetNumberOfThreads()
+
+
+	/**
+	 * Retrieves the number of POS taggers requested on the command line.
+	 *
+	 * @return number of POS taggers to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfTaggers() {
+		return GetPositiveIntegerOption("taggers", 1);
+	} // end GetNumberOfTaggers()
+
+
+	/**
+	 * Retrieves the number of named entity recognisers requested on the command line.
+	 *
+	 * @return number of named entity recognisers to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfRecognisers() {
+		return GetPositiveIntegerOption("recognisers", 1);
+	} // end GetNumberOfRecognisers()
+
+
+	/**
+	 * Retrieves the maximum number of words of a sentence to perform named entity
+	 * recognition on, as requested on the command line.
+	 *
+	 * @return maximum number of words, 0 if there is no limit
+	 */
+	protected int GetMaxNERSentenceLength() {
+		return GetPositiveIntegerOption("nermaxwords", 0);
+	} // end GetMaxNERSentenceLength()
+
+
+	/**
+	 * Retrieves the argument passed in for the folder name to keep annotations of sentences in.
+	 *
+	 * @return folder, or null if not provided
+	 */
+	protected File GetAnnotationCacheFolder() {
+		return (File) GetOptionArgument("annotationcache");
+	} // end GetAnnotationCacheFolder()
+
+
+	/**
+	 * Retrieves the argument passed in for the thesaurus dump file to expand queries with.
+	 *
+	 * @return file, or null if not provided
+	 */
+	protected File GetThesaurusFile() {
+		return (File) GetOptionArgument("thesaurus");
+	} // end GetThesaurusFile()
+
+
+	/**
+	 * Retrieves the argument passed in for the file to save replies of the online thesaurus to.
+	 *
+	 * @return file, or null if not provided
+	 */
+	protected File GetThesaurusCacheFile() {
+		return (File) GetOptionArgument("thesauruscache");
+	} // end GetThesaurusCacheFile()
+
+
+	/**
+	 * Retrieves the argument passed in for the URL of the WSDL of the named entity recognition web service.
+	 *
+	 * @return URL, or null if not provided
+	 */
+	protected String GetNERServiceURL() {
+		return (String) GetOptionArgument("nerservice");
+	} // end GetNERServiceURL()
+
+
+	/**
+	 * Retrieves the argument passed in for the file of queries to warm the information base index with.
+	 *
+	 * @return file, or null if not provided
+	 */
+	protected File GetWarmUpQueriesFile() {
+		return (File) GetOptionArgument("warmupqueries");
+	} // end GetWarmUpQueriesFile()
+
+
 	/**
 	 * Override this method if error analysis is to be carried out.
 	 * Currently this implementation returns null --> no error analysis engine to employ
@@ -134,19 +237,69 @@ public abstract class FrameworkController extends ControllerForDoubleSourceAndTa
 		m_StageEngine = new AnswerRetriever(GetSourceFile2(), GetTargetFile());
 		// Retrieve required components from derived class and set up this StageEngine
 		m_StageEngine.SetXMLHandler(this.GetXMLHandlersForStageEngine()[0]);
-		m_StageEngine.RegisterModules(this.GetModulesForStageEngine());
+		m_StageEngine.SetBinaryOutput("binary".equalsIgnoreCase((String) GetOptionArgument("format")));
+		m_StageEngine.SetXMLValidation(GetXMLValidationMode());
+		IRegisterableModule[] l_Modules = this.GetModulesForStageEngine();
+		if (l_Modules == null) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, FrameworkController.class.getName(), "Entry", "Unable to set up the strategy modules.");
+			return false;
+		}
+		m_StageEngine.RegisterModules(l_Modules);
+
+		// For concurrent answering, every worker thread needs its own strategy modules
+		int l_NumThreads = GetNumberOfThreads();
+		IRegisterableModule[][] l_WorkerModules = new IRegisterableModule[][] { l_Modules };
+		if (l_NumThreads > 1) {
+			l_WorkerModules = new IRegisterableModule[l_NumThreads][];
+			l_WorkerModules[0] = l_Modules;
+			for (int i = 1; i < l_NumThreads; ++i) {
+				l_WorkerModules[i] = this.GetModulesForStageEngine();
+				if (l_WorkerModules[i] == null) {
+					Logger.getLogger("QANUS").logp(Level.SEVERE, FrameworkController.class.getName(), "Entry", "Unable to set up the strategy modules.");
+					for (IRegisterableModule[] l_ThreadModules : l_WorkerModules) {
+						CloseStrategyModules(l_ThreadModules);
+					}
+					return false;
+				}
+			}
+			m_StageEngine.SetWorkerModules(l_WorkerModules);
+		}
 
 		// If there is error analysis to be done
 		if (this.GetErrorAnalysisEngine() != null) {
 			m_StageEngine.SetErrorAnalysisEngine(this.GetErrorAnalysisEngine());
 		}
 
-		// Start StageEngine
-		return m_StageEngine.Go();
+		// Start StageEngine, and let the strategy modules release what they hold once it is done
+		try {
+			return m_StageEngine.Go();
+		} finally {
+			for (IRegisterableModule[] l_ThreadModules : l_WorkerModules) {
+				CloseStrategyModules(l_ThreadModules);
+			}
+		}
 		
 
 	} // end Entry()
 
 
+	/**
+	 * Closes the strategy modules among the given modules.
+	 *
+	 * @param a_Modules [in] modules registered with the StageEngine
+	 */
+	private void CloseStrategyModules(IRegisterableModule[] a_Modules) {
+
+		if (a_Modules == null) return;
+
+		for (IRegisterableModule l_Module : a_Modules) {
+			if (l_Module instanceof IStrategyModule) {
+				((IStrategyModule) l_Module).Close();
+			}
+		}
+
+	} // end CloseStrategyModules()
+
+
 	
  } // end FrameworkController
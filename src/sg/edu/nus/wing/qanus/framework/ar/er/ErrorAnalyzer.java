@@ -101,11 +101,9 @@ public abstract class ErrorAnalyzer {
 			BufferedWriter l_BW = new BufferedWriter(l_FOS);
 
 			// Write the results to the file
-			l_BW.write(a_Info.toXMLString());
+			a_Info.WriteXML(l_BW);
 
-			// Save and close file
-			l_FOS.flush();
-			l_FOS.close();
+			// Save and close file, the buffered writer has to be flushed before the file is closed
 			l_BW.flush();
 			l_BW.close();
 			
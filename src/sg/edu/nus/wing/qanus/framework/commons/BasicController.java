@@ -44,6 +44,9 @@ public abstract class BasicController {
 
 		m_CompulsoryOptions = new LinkedList<String>();
 
+		// Every stage reads XML, and can be told how to validate it
+		AddOptionWithRequiredArgument("xmlvalidation", "Validation of input XML files : validate (default), none, or cached to load each DTD only once", String.class);
+
 	} // end constructor
 
 
@@ -90,10 +93,13 @@ public abstract class BasicController {
 	 * Retrieves the argument associated with a particular option.
 	 *
 	 * @param a_OptionName [in] the option whose value we want to retrieve.
-	 * @return argument associated with the option, or null if option is not found.
+	 * @return argument associated with the option, or null if option is not found, or if the command line has not been processed.
 	 */
 	protected Object GetOptionArgument(String a_OptionName) {
 
+		// Controllers can also be used by other controllers, without any command line
+		if (m_CmdLineArguments == null) return null;
+
 		if (m_CmdLineArguments.has(a_OptionName)) {
 			return m_CmdLineArguments.valueOf(a_OptionName);
 		} else {
@@ -103,6 +109,38 @@ public abstract class BasicController {
 	} // end GetOptionArgument()
 
 
+	/**
+	 * Retrieves a whole number of at least 1 given on the command line, such as a number of threads.
+	 *
+	 * @param a_OptionName [in] the option whose value we want to retrieve
+	 * @param a_Default [in] value to use if the option is not provided, or is less than 1
+	 * @return the value of the option, or a_Default
+	 */
+	protected int GetPositiveIntegerOption(String a_OptionName, int a_Default) {
+
+		Integer l_Value = (Integer) GetOptionArgument(a_OptionName);
+		if (l_Value == null) return a_Default;
+		if (l_Value < 1) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, BasicController.class.getName(), "GetPositiveIntegerOption", "Invalid value [" + l_Value + "] for option [" + a_OptionName + "], using " + a_Default + ".");
+			return a_Default;
+		}
+
+		return l_Value;
+
+	} // end GetPositiveIntegerOption()
+
+
+
+	/**
+	 * Retrieves how input XML files are to be validated, as given on the command line.
+	 *
+	 * @return the validation mode, VALIDATING if none is given
+	 */
+	protected SAXParserProvider.ValidationMode GetXMLValidationMode() {
+		return SAXParserProvider.ParseValidationMode((String) GetOptionArgument("xmlvalidation"));
+	} // end GetXMLValidationMode()
+
+
 
 	/**
 	 * Adds a option with compulsory arguments.
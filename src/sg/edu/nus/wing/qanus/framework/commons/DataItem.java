@@ -1,10 +1,9 @@
 package sg.edu.nus.wing.qanus.framework.commons;
 
-import java.util.HashMap;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Set;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -60,16 +59,25 @@ import java.util.Set;
 public class DataItem {
 
 	
-	// Holds the attributes
-	private Map<String, String> m_Attributes;
+	// Holds the attributes, as alternating names and values : name, value, name, value...
+	// Most data items have no attributes, so this is only allocated when needed.
+	private String[] m_Attributes = null;
+	private int m_NumAttributes = 0;
 	
-	// Holds child tags and their values
-	private Map<String, LinkedList<DataItem>> m_Fields;
+	// Holds child tags and their values.
+	// m_FieldItems[i] holds the first m_FieldSizes[i] data items of the field named m_FieldNames[i].
+	// Fields are kept in the order they are added, and are only allocated when needed.
+	private String[] m_FieldNames = null;
+	private DataItem[][] m_FieldItems = null;
+	private int[] m_FieldSizes = null;
+	private int m_NumFields = 0;
 	
-	// Holds inner text within XML tags
-	private LinkedList<String> m_Value;
+	// Holds inner text within XML tags, only allocated when needed
+	private String[] m_Value = null;
+	private int m_NumValues = 0;
 	
-	// The XML tag associated with this data item
+	// The XML tag associated with this data item.
+	// Tag names are interned as the same few tags are used by a great many data items.
 	private String m_ItemTag;
 	
 	
@@ -77,12 +85,7 @@ public class DataItem {
 	 * Constructor.
 	 */
 	public DataItem(String a_ItemTag) {
-		
-		m_Fields = new HashMap<String, LinkedList<DataItem>>();
-		m_Attributes = new HashMap<String, String>();
-		m_Value = new LinkedList<String>();
-		
-		m_ItemTag = a_ItemTag;
+		m_ItemTag = (a_ItemTag == null) ? null : a_ItemTag.intern();
 	}
 	
 	
@@ -103,12 +106,23 @@ public class DataItem {
 	 * @param a_Value [in] the value to associate to this attribute
 	 */
 	public void AddAttribute(String a_Name, String a_Value) {
-		if (m_Attributes.containsKey(a_Name)) {
-			String l_ExistingValue = (String) m_Attributes.get(a_Name);
-			m_Attributes.put(a_Name, l_ExistingValue + a_Value);
-		} else {
-			m_Attributes.put(a_Name, a_Value);
+
+		int l_Index = IndexOfAttribute(a_Name);
+		if (l_Index >= 0) {
+			m_Attributes[l_Index + 1] = m_Attributes[l_Index + 1] + a_Value;
+			return;
 		}
+
+		// Make space for the new attribute
+		if (m_Attributes == null) {
+			m_Attributes = new String[4];
+		} else if (m_NumAttributes * 2 == m_Attributes.length) {
+			m_Attributes = Arrays.copyOf(m_Attributes, m_Attributes.length * 2);
+		}
+		m_Attributes[m_NumAttributes * 2] = (a_Name == null) ? null : a_Name.intern();
+		m_Attributes[m_NumAttributes * 2 + 1] = a_Value;
+		m_NumAttributes++;
+
 	} // end AddAttribute()
 	
 	
@@ -118,15 +132,31 @@ public class DataItem {
 	 * @return string value of desired attribute, or null if attribute does not exist
 	 */
 	public String GetAttribute(String a_Name) {
-		if (m_Attributes.containsKey(a_Name)) {
-			String l_ExistingValue = (String) m_Attributes.get(a_Name);
-			return l_ExistingValue;
+		int l_Index = IndexOfAttribute(a_Name);
+		if (l_Index >= 0) {
+			return m_Attributes[l_Index + 1];
 		} else {
 			return null;
 		}
 	} // end GetAttribute()
 	
 	
+	/**
+	 * Retrieve names of all stored attributes
+	 * @return array of names of all attributes, in the order they were added. The array can be empty.
+	 */
+	public String[] GetAllAttributeNames() {
+
+		String[] l_Names = new String[m_NumAttributes];
+		for (int i = 0; i < m_NumAttributes; ++i) {
+			l_Names[i] = m_Attributes[i * 2];
+		}
+
+		return l_Names;
+
+	} // end GetAllAttributeNames()
+	
+	
 	/**
 	 * Adds a new field to this data item.
 	 * 
@@ -144,17 +174,16 @@ public class DataItem {
 	 */
 	public void AddField(String a_Name, DataItem a_Value) {					
 		
-		if (m_Fields.containsKey(a_Name)) {
-			// Field of same name already exist -> We add another entry beside it.
-			LinkedList<DataItem> l_ExistingValue = (LinkedList<DataItem>) m_Fields.get(a_Name);
-			if (l_ExistingValue != null && a_Value != null)
-				l_ExistingValue.add(a_Value);			
-		} else {
+		int l_Index = IndexOfField(a_Name);
+		if (l_Index < 0) {
 			// Add a new entry to the fields list
-			LinkedList<DataItem> l_NewList = new LinkedList<DataItem>();
-				if (a_Value != null) l_NewList.add(a_Value);
-			m_Fields.put(a_Name, l_NewList);
-		}		
+			l_Index = NewField(a_Name);
+		}
+		// If a field of same name already exist -> We add another entry beside it.
+		if (a_Value != null) {
+			AddToField(l_Index, a_Value);
+		}
+
 	} // end AddField()
 	
 	
@@ -209,24 +238,20 @@ public class DataItem {
 	 */
 	public void AddSubFieldValue(String a_Name, String a_SubFieldName, String a_Value) {
 		
-		LinkedList<DataItem> l_ListOfDataItems = null;
-		
 		// Locate the field first, create it if not present
-		if (m_Fields.containsKey(a_Name)) {		
-			 l_ListOfDataItems = (LinkedList<DataItem>) m_Fields.get(a_Name);
-		} else {
-			l_ListOfDataItems = new LinkedList<DataItem>();
-			m_Fields.put(a_Name, l_ListOfDataItems);
+		int l_Index = IndexOfField(a_Name);
+		if (l_Index < 0) {
+			l_Index = NewField(a_Name);
 		}
 		
 		// Locate the DataItem to insert the sub-field into. If it doesn't exist, create it.
 		// If there are multiple DataItems of the same name, we choose the first one
 		DataItem l_Field = null;
-		try {
-			l_Field = l_ListOfDataItems.getFirst();
-		} catch (NoSuchElementException e) {		
+		if (m_FieldSizes[l_Index] > 0) {
+			l_Field = m_FieldItems[l_Index][0];
+		} else {
 			l_Field = new DataItem(a_Name);				
-			l_ListOfDataItems.add(l_Field);
+			AddToField(l_Index, l_Field);
 		}
 			
 		DataItem l_NewItem = new DataItem(a_SubFieldName);
@@ -238,21 +263,26 @@ public class DataItem {
 	} // end AddToSubField()
 	
 	
-		
 	@Override
 	public String toString() {
 		
-		String l_OutString = "-------------------------------\n";
+		StringBuilder l_OutString = new StringBuilder("-------------------------------\n");
 		
-		l_OutString += "Attributes : \n";
-		l_OutString += m_Attributes.toString();
+		l_OutString.append("Attributes : \n{");
+		for (int i = 0; i < m_NumAttributes; ++i) {
+			if (i > 0) l_OutString.append(", ");
+			l_OutString.append(m_Attributes[i * 2]).append('=').append(m_Attributes[i * 2 + 1]);
+		}
 		
-		l_OutString += "\n\nFields : \n";
-		l_OutString += m_Fields.toString();
+		l_OutString.append("}\n\nFields : \n{");
+		for (int i = 0; i < m_NumFields; ++i) {
+			if (i > 0) l_OutString.append(", ");
+			l_OutString.append(m_FieldNames[i]).append('=').append(GetFieldValueList(m_FieldNames[i]));
+		}
 		
-		l_OutString += "\n-------------------------------\n";
+		l_OutString.append("}\n-------------------------------\n");
 		
-		return l_OutString;
+		return l_OutString.toString();
 		
 	} // end toString()
 	
@@ -264,7 +294,14 @@ public class DataItem {
 	 * @param a_Value [in] the inner text to add
 	 */
 	public void AddValue(String a_Value) {		
-		m_Value.add(a_Value);		
+
+		if (m_Value == null) {
+			m_Value = new String[1];
+		} else if (m_NumValues == m_Value.length) {
+			m_Value = Arrays.copyOf(m_Value, m_Value.length * 2);
+		}
+		m_Value[m_NumValues++] = a_Value;
+
 	} // end AddValue()
 	
 	
@@ -274,51 +311,92 @@ public class DataItem {
 	 * @return an XML string describing the data item.
 	 */
 	public String toXMLString() {
-	
+
+		StringBuilder l_OutString = new StringBuilder();
+		try {
+			WriteXML(l_OutString);
+		} catch (IOException e) {
+			// Appending to a StringBuilder does not throw
+		}
+
+		return l_OutString.toString();
 		
+	} // end toXMLString()
+
+
+	/**
+	 * Writes out the XML describing the data item, producing the same XML as toXMLString().
+	 * The XML is written out as the data item is walked, so that the whole XML document
+	 * need not be built in memory first. Prefer this over toXMLString() when writing to file.
+	 *
+	 * @param a_Out [in] where to write the XML to, e.g. a Writer or StringBuilder
+	 * @throws IOException if writing to a_Out fails
+	 */
+	public void WriteXML(Appendable a_Out) throws IOException {
+
 		// Form opening tag with attributes
-		String l_OutString = "\n<" + m_ItemTag;
-		for (String l_Attribute : m_Attributes.keySet()) {
-			l_OutString += " " + l_Attribute + "=\"" + (String) m_Attributes.get(l_Attribute) + "\"";
+		a_Out.append("\n<").append(m_ItemTag);
+		for (int i = 0; i < m_NumAttributes; ++i) {
+			a_Out.append(' ').append(m_Attributes[i * 2]).append("=\"").append(m_Attributes[i * 2 + 1]).append('"');
 		}
-		l_OutString += ">";
-		
-		
+		a_Out.append('>');
+
+
 		// Sub tags
-		for (String l_Field : m_Fields.keySet()) {
-			
-			LinkedList<DataItem> l_ListOfItems = m_Fields.get(l_Field);
-			if (l_ListOfItems == null) continue;
-					
-			for (DataItem l_Item : l_ListOfItems) {
-				l_OutString += l_Item.toXMLString();
-			}			
-					
-		}	
-		
-		
-		// Inner text
-		for (String l_Value : m_Value) {
-			
-			// Filter away special characters first
-			l_Value = l_Value.replaceAll("&", "&amp;");
-			l_Value = l_Value.replaceAll("<", "&lt;");
-			l_Value = l_Value.replaceAll(">", "&gt;");
-			l_Value = l_Value.replaceAll("\"", "&quot;");
-			l_Value = l_Value.replaceAll("'", "&apos;");
-			
-			// Add it to the string we are building
-			l_OutString += l_Value ;
-			
-		} // end for
-		
+		for (int i = 0; i < m_NumFields; ++i) {
+
+			DataItem[] l_Items = m_FieldItems[i];
+			for (int j = 0; j < m_FieldSizes[i]; ++j) {
+				l_Items[j].WriteXML(a_Out);
+			}
+
+		}
+
+
+		// Inner text, with special characters filtered away
+		for (int i = 0; i < m_NumValues; ++i) {
+			AppendEscaped(a_Out, m_Value[i]);
+		}
+
 		// Close the tag
-		l_OutString += "</" + m_ItemTag + ">\n";
-		
-		
-		return l_OutString;
-		
-	} // end toXMLString()
+		a_Out.append("</").append(m_ItemTag).append(">\n");
+
+	} // end WriteXML()
+
+
+	/**
+	 * Writes out a string with the XML special characters replaced by their entities.
+	 * This is done in a single pass over the string.
+	 *
+	 * @param a_Out [in] where to write the string to
+	 * @param a_Value [in] the string to write
+	 * @throws IOException if writing to a_Out fails
+	 */
+	private static void AppendEscaped(Appendable a_Out, String a_Value) throws IOException {
+
+		int l_Start = 0;
+		int l_Length = a_Value.length();
+		for (int i = 0; i < l_Length; ++i) {
+
+			String l_Entity = null;
+			switch (a_Value.charAt(i)) {
+				case '&': l_Entity = "&amp;"; break;
+				case '<': l_Entity = "&lt;"; break;
+				case '>': l_Entity = "&gt;"; break;
+				case '"': l_Entity = "&quot;"; break;
+				case '\'': l_Entity = "&apos;"; break;
+				default: continue;
+			}
+
+			// Copy over the characters before this one unchanged
+			a_Out.append(a_Value, l_Start, i).append(l_Entity);
+			l_Start = i + 1;
+
+		} // end for
+
+		a_Out.append(a_Value, l_Start, l_Length);
+
+	} // end AppendEscaped()
 	
 
 	/**
@@ -328,23 +406,53 @@ public class DataItem {
 	 */
 	public DataItem[] GetFieldValues(String a_FieldName) {
 		
-		LinkedList<DataItem> l_ListOfItems = m_Fields.get(a_FieldName);
-		if (l_ListOfItems == null) return null;
+		int l_Index = IndexOfField(a_FieldName);
+		if (l_Index < 0) return null;
 				
-		return l_ListOfItems.toArray(new DataItem[0]); 
+		if (m_FieldSizes[l_Index] == 0) return new DataItem[0];
+		return Arrays.copyOf(m_FieldItems[l_Index], m_FieldSizes[l_Index]);
 						
 	} // end GetFieldValue()
 
+
+	/**
+	 * Retrieves the value of the required field, without copying it.
+	 * The returned list cannot be modified, and should not be used after the data item is changed.
+	 *
+	 * @param a_FieldName [in] name of the desired field
+	 * @return list of DataItem containing value of the stated field, could be null if field is empty.
+	 */
+	public List<DataItem> GetFieldValueList(String a_FieldName) {
+
+		int l_Index = IndexOfField(a_FieldName);
+		if (l_Index < 0) return null;
+
+		return ListView(m_FieldItems[l_Index], m_FieldSizes[l_Index]);
+
+	} // end GetFieldValueList()
+
 	
 	/**
 	 * Retrieves the inner text stored with this data item.
 	 * @return array of strings holding the inner text.
 	 */
 	public String[] GetValue() {		
-		return m_Value.toArray(new String[0]);
+		if (m_NumValues == 0) return new String[0];
+		return Arrays.copyOf(m_Value, m_NumValues);
 	}
 
 
+	/**
+	 * Retrieves the inner text stored with this data item, without copying it.
+	 * The returned list cannot be modified, and should not be used after the data item is changed.
+	 *
+	 * @return list of strings holding the inner text.
+	 */
+	public List<String> GetValueList() {
+		return ListView(m_Value, m_NumValues);
+	} // end GetValueList()
+
+
 	/**
 	 * Retrieves the tag associated with this DataItem
 	 * @return String containing XML tag of this DataItem
@@ -361,7 +469,7 @@ public class DataItem {
 	 * @return true if a field with the given name exists, false otherwise
 	 */
 	public boolean ContainsField(String a_Name) {
-		return m_Fields.containsKey(a_Name);
+		return IndexOfField(a_Name) >= 0;
 	} // end ContainsField
 
 
@@ -371,17 +479,126 @@ public class DataItem {
 	 */
 	public String[] GetAllFieldNames() {
 
-		LinkedList<String> l_ResultNames = new LinkedList<String>();
-		Set<String> l_SetOfNames = m_Fields.keySet();
-		if (l_SetOfNames != null) {
-		for (String l_Name : l_SetOfNames) {
-			l_ResultNames.add(l_Name);
+		if (m_NumFields == 0) return new String[0];
+		return Arrays.copyOf(m_FieldNames, m_NumFields);
+
+	} // end GetAllFieldNames()
+
+
+	/**
+	 * Retrieve names of all stored fields, without copying them.
+	 * The returned list cannot be modified, and should not be used after the data item is changed.
+	 *
+	 * @return list of names of all fields stored with this structure, in the order they were added. The list can be empty.
+	 */
+	public List<String> GetAllFieldNameList() {
+		return ListView(m_FieldNames, m_NumFields);
+	} // end GetAllFieldNameList()
+
+
+	/**
+	 * Locates an attribute.
+	 *
+	 * @param a_Name [in] name of the attribute
+	 * @return index of the attribute name within m_Attributes, or -1 if not found
+	 */
+	private int IndexOfAttribute(String a_Name) {
+
+		for (int i = 0; i < m_NumAttributes * 2; i += 2) {
+			String l_Name = m_Attributes[i];
+			if (l_Name == a_Name || (l_Name != null && l_Name.equals(a_Name))) {
+				return i;
+			}
 		}
+
+		return -1;
+
+	} // end IndexOfAttribute()
+
+
+	/**
+	 * Locates a field.
+	 * Data items typically have only a few fields, so a linear search is used.
+	 *
+	 * @param a_Name [in] name of the field
+	 * @return index of the field, or -1 if not found
+	 */
+	private int IndexOfField(String a_Name) {
+
+		// Names are interned, so most look ups should be satisfied by the == check
+		for (int i = 0; i < m_NumFields; ++i) {
+			String l_Name = m_FieldNames[i];
+			if (l_Name == a_Name || (l_Name != null && l_Name.equals(a_Name))) {
+				return i;
+			}
 		}
 
-		return l_ResultNames.toArray(new String[0]);
+		return -1;
 
-	} // end GetAllFieldNames()
+	} // end IndexOfField()
+
+
+	/**
+	 * Creates a new field with no data items.
+	 *
+	 * @param a_Name [in] name of the field
+	 * @return index of the new field
+	 */
+	private int NewField(String a_Name) {
+
+		if (m_FieldNames == null) {
+			m_FieldNames = new String[2];
+			m_FieldItems = new DataItem[2][];
+			m_FieldSizes = new int[2];
+		} else if (m_NumFields == m_FieldNames.length) {
+			m_FieldNames = Arrays.copyOf(m_FieldNames, m_NumFields * 2);
+			m_FieldItems = Arrays.copyOf(m_FieldItems, m_NumFields * 2);
+			m_FieldSizes = Arrays.copyOf(m_FieldSizes, m_NumFields * 2);
+		}
+
+		m_FieldNames[m_NumFields] = (a_Name == null) ? null : a_Name.intern();
+		return m_NumFields++;
+
+	} // end NewField()
+
+
+	/**
+	 * Adds a data item to a field.
+	 *
+	 * @param a_Index [in] index of the field
+	 * @param a_Item [in] data item to add
+	 */
+	private void AddToField(int a_Index, DataItem a_Item) {
+
+		DataItem[] l_Items = m_FieldItems[a_Index];
+		int l_Size = m_FieldSizes[a_Index];
+		if (l_Items == null) {
+			l_Items = new DataItem[1];
+			m_FieldItems[a_Index] = l_Items;
+		} else if (l_Size == l_Items.length) {
+			l_Items = Arrays.copyOf(l_Items, l_Size * 2);
+			m_FieldItems[a_Index] = l_Items;
+		}
+
+		l_Items[l_Size] = a_Item;
+		m_FieldSizes[a_Index] = l_Size + 1;
+
+	} // end AddToField()
+
+
+	/**
+	 * Wraps the first few elements of an array as an unmodifiable list, without copying them.
+	 *
+	 * @param a_Array [in] array to wrap, can be null if a_Size is 0
+	 * @param a_Size [in] number of elements to include
+	 * @return unmodifiable list backed by the array
+	 */
+	private static <T> List<T> ListView(T[] a_Array, int a_Size) {
+
+		if (a_Size == 0) return Collections.emptyList();
+		return Collections.unmodifiableList(Arrays.asList(a_Array).subList(0, a_Size));
+
+	} // end ListView()
 	
 	
 } // end class
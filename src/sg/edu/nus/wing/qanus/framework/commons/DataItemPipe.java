@@ -0,0 +1,90 @@
+package sg.edu.nus.wing.qanus.framework.commons;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+
+/**
+ * Passes data items produced by one stage straight on to the XML handler of the
+ * next stage, within the same program.
+ *
+ * Each data item is replayed to the XML handler as the SAX events that parsing its XML
+ * would have produced, so the XML handler receives the same data items as when the
+ * output of the earlier stage is written to file and parsed. The data items are
+ * enclosed within the stream tag, from Open() to Close().
+ */
+public class DataItemPipe implements IXMLDataReceipient {
+
+	// XML handler of the next stage
+	private ContentHandler m_Handler;
+
+	// Tag enclosing the data items
+	private String m_StreamTag;
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param a_Handler [in] XML handler of the next stage, to pass the data items to
+	 * @param a_StreamTag [in] tag enclosing the data items, e.g. DOCSTREAM
+	 */
+	public DataItemPipe(ContentHandler a_Handler, String a_StreamTag) {
+
+		m_Handler = a_Handler;
+		m_StreamTag = a_StreamTag;
+
+	} // end constructor
+
+
+	public String GetIdentifier() {
+		return "DataItemPipe";
+	}
+
+
+	/**
+	 * Starts the stream of data items. Must be called before the first data item is passed on.
+	 *
+	 * @throws SAXException passed on from the XML handler
+	 */
+	public synchronized void Open() throws SAXException {
+
+		m_Handler.startDocument();
+		m_Handler.startElement("", m_StreamTag, m_StreamTag, new AttributesImpl());
+
+	} // end Open()
+
+
+	/**
+	 * Passes a data item on to the XML handler of the next stage.
+	 *
+	 * @param a_Item [in] the data item
+	 */
+	public synchronized void Notify(DataItem a_Item) {
+
+		try {
+			DataItemStreamReader.ReplayItem(m_Handler, a_Item);
+		} catch (SAXException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, DataItemPipe.class.getName(), "Notify", "Error passing on data item", e);
+		}
+
+	} // end Notify()
+
+
+	/**
+	 * Ends the stream of data items.
+	 *
+	 * @throws SAXException passed on from the XML handler
+	 */
+	public synchronized void Close() throws SAXException {
+
+		m_Handler.endElement("", m_StreamTag, m_StreamTag);
+		m_Handler.endDocument();
+
+	} // end Close()
+
+
+} // end class DataItemPipe
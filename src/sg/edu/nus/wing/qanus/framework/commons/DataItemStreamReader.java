@@ -0,0 +1,318 @@
+package sg.edu.nus.wing.qanus.framework.commons;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+
+/**
+ * Reads back data items written by DataItemStreamWriter.
+ * The file is memory-mapped, and data items are decoded straight from the mapped file.
+ *
+ * Besides reading the data items, the stream can also be replayed to a SAX handler as
+ * if the equivalent XML file had been parsed. This lets the existing XML handlers of each
+ * stage read binary files without any change.
+ *
+ * Files are limited to 2GB, which is the most that can be mapped in one go.
+ */
+public class DataItemStreamReader {
+
+	// The file being read
+	private RandomAccessFile m_File;
+	private MappedByteBuffer m_Buffer;
+
+	// Tag enclosing the data items
+	private String m_StreamTag;
+
+
+	/**
+	 * Opens a data item stream file for reading.
+	 *
+	 * @param a_File [in] file to read
+	 * @throws IOException if the file cannot be read, or is not a data item stream
+	 */
+	public DataItemStreamReader(File a_File) throws IOException {
+
+		m_File = new RandomAccessFile(a_File, "r");
+		try {
+			FileChannel l_Channel = m_File.getChannel();
+			m_Buffer = l_Channel.map(FileChannel.MapMode.READ_ONLY, 0, l_Channel.size());
+
+			byte[] l_Magic = new byte[DataItemStreamWriter.MAGIC.length];
+			m_Buffer.get(l_Magic);
+			if (!Arrays.equals(l_Magic, DataItemStreamWriter.MAGIC)) {
+				throw new IOException("Not a data item stream : [" + a_File + "]");
+			}
+			int l_Version = m_Buffer.getInt();
+			if (l_Version != DataItemStreamWriter.VERSION) {
+				throw new IOException("Unsupported data item stream version [" + l_Version + "] : [" + a_File + "]");
+			}
+			m_StreamTag = ReadString();
+		} catch (BufferUnderflowException e) {
+			m_File.close();
+			throw new IOException("Not a data item stream : [" + a_File + "]");
+		} catch (IOException e) {
+			m_File.close();
+			throw e;
+		}
+
+	} // end constructor
+
+
+	/**
+	 * Checks whether a file is a data item stream, by looking at the start of the file.
+	 *
+	 * @param a_File [in] file to check
+	 * @return true if the file is a data item stream, false otherwise
+	 */
+	public static boolean IsDataItemStream(File a_File) {
+
+		if (!a_File.isFile()) return false;
+
+		byte[] l_Magic = new byte[DataItemStreamWriter.MAGIC.length];
+		FileInputStream l_In = null;
+		try {
+			l_In = new FileInputStream(a_File);
+			int l_Read = 0;
+			while (l_Read < l_Magic.length) {
+				int l_Count = l_In.read(l_Magic, l_Read, l_Magic.length - l_Read);
+				if (l_Count < 0) return false;
+				l_Read += l_Count;
+			}
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if (l_In != null) {
+				try {
+					l_In.close();
+				} catch (IOException e) {
+					// Nothing we can do
+				}
+			}
+		}
+
+		return Arrays.equals(l_Magic, DataItemStreamWriter.MAGIC);
+
+	} // end IsDataItemStream()
+
+
+	/**
+	 * Replays the file to the SAX handler if it is a data item stream.
+	 * This allows callers to support both XML and binary files like this :
+	 *
+	 * if (!DataItemStreamReader.ReplayIfDataItemStream(l_File, l_Handler)) {
+	 *    l_SAXParser.parse(l_File, l_Handler);
+	 * }
+	 *
+	 * @param a_File [in] file to read
+	 * @param a_Handler [in] SAX handler to replay the data items to
+	 * @return true if the file is a data item stream and has been replayed, false if it is not
+	 * @throws IOException on errors reading the file
+	 * @throws SAXException passed on from the SAX handler
+	 */
+	public static boolean ReplayIfDataItemStream(File a_File, ContentHandler a_Handler) throws IOException, SAXException {
+
+		if (!IsDataItemStream(a_File)) return false;
+
+		DataItemStreamReader l_Reader = new DataItemStreamReader(a_File);
+		try {
+			l_Reader.Replay(a_Handler);
+		} finally {
+			l_Reader.Close();
+		}
+
+		return true;
+
+	} // end ReplayIfDataItemStream()
+
+
+	/**
+	 * Retrieves the tag enclosing the data items, e.g. DOCSTREAM.
+	 *
+	 * @return the stream tag
+	 */
+	public String GetStreamTag() {
+		return m_StreamTag;
+	} // end GetStreamTag()
+
+
+	/**
+	 * Reads the next data item in the file.
+	 * A data item cut short at the end of the file, e.g. because the writer was interrupted,
+	 * is treated as the end of the file.
+	 *
+	 * @return the next data item, or null if there are no more data items
+	 * @throws IOException if the file is corrupted
+	 */
+	public DataItem Next() throws IOException {
+
+		if (m_Buffer.remaining() < 4) return null;
+
+		int l_Length = m_Buffer.getInt();
+		if (l_Length < 0 || l_Length > m_Buffer.remaining()) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, DataItemStreamReader.class.getName(), "Next", "Incomplete data item at end of file ignored.");
+			m_Buffer.position(m_Buffer.limit());
+			return null;
+		}
+
+		int l_End = m_Buffer.position() + l_Length;
+		DataItem l_Item = null;
+		try {
+			l_Item = ReadItem();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Corrupted data item stream");
+		}
+		if (m_Buffer.position() != l_End) {
+			throw new IOException("Corrupted data item stream");
+		}
+
+		return l_Item;
+
+	} // end Next()
+
+
+	/**
+	 * Replays the remaining data items to a SAX handler, as if the equivalent XML were parsed.
+	 * The data items are enclosed within the stream tag.
+	 *
+	 * @param a_Handler [in] SAX handler to replay the data items to
+	 * @throws IOException if the file is corrupted
+	 * @throws SAXException passed on from the SAX handler
+	 */
+	public void Replay(ContentHandler a_Handler) throws IOException, SAXException {
+
+		a_Handler.startDocument();
+		a_Handler.startElement("", m_StreamTag, m_StreamTag, new AttributesImpl());
+
+		DataItem l_Item = Next();
+		while (l_Item != null) {
+			ReplayItem(a_Handler, l_Item);
+			l_Item = Next();
+		}
+
+		a_Handler.endElement("", m_StreamTag, m_StreamTag);
+		a_Handler.endDocument();
+
+	} // end Replay()
+
+
+	/**
+	 * Closes the file.
+	 * The mapping of the file is only released when it is garbage collected.
+	 */
+	public void Close() {
+
+		try {
+			m_File.close();
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, DataItemStreamReader.class.getName(), "Close", "Error closing file", e);
+		}
+
+	} // end Close()
+
+
+	/**
+	 * Sends the SAX events equivalent to parsing the XML of a data item.
+	 * Also used by DataItemPipe.
+	 *
+	 * @param a_Handler [in] SAX handler to send events to
+	 * @param a_Item [in] data item to replay
+	 * @throws SAXException passed on from the SAX handler
+	 */
+	static void ReplayItem(ContentHandler a_Handler, DataItem a_Item) throws SAXException {
+
+		String l_Tag = a_Item.GetXMLTag();
+
+		AttributesImpl l_Attributes = new AttributesImpl();
+		for (String l_Name : a_Item.GetAllAttributeNames()) {
+			l_Attributes.addAttribute("", l_Name, l_Name, "CDATA", a_Item.GetAttribute(l_Name));
+		}
+		a_Handler.startElement("", l_Tag, l_Tag, l_Attributes);
+
+		for (String l_FieldName : a_Item.GetAllFieldNameList()) {
+			for (DataItem l_Field : a_Item.GetFieldValueList(l_FieldName)) {
+				ReplayItem(a_Handler, l_Field);
+			}
+		}
+
+		for (String l_Value : a_Item.GetValueList()) {
+			char[] l_Chars = l_Value.toCharArray();
+			a_Handler.characters(l_Chars, 0, l_Chars.length);
+		}
+
+		a_Handler.endElement("", l_Tag, l_Tag);
+
+	} // end ReplayItem()
+
+
+	/**
+	 * Decodes a data item at the current position of the mapped file.
+	 *
+	 * @return the data item
+	 * @throws IOException if the data item cannot be decoded
+	 */
+	private DataItem ReadItem() throws IOException {
+
+		DataItem l_Item = new DataItem(ReadString());
+
+		int l_NumAttributes = m_Buffer.getInt();
+		for (int i = 0; i < l_NumAttributes; ++i) {
+			String l_Name = ReadString();
+			l_Item.AddAttribute(l_Name, ReadString());
+		}
+
+		int l_NumFields = m_Buffer.getInt();
+		for (int i = 0; i < l_NumFields; ++i) {
+			String l_Name = ReadString();
+			int l_NumItems = m_Buffer.getInt();
+			if (l_NumItems == 0) {
+				l_Item.AddField(l_Name, (DataItem) null);
+			}
+			for (int j = 0; j < l_NumItems; ++j) {
+				l_Item.AddField(l_Name, ReadItem());
+			}
+		}
+
+		int l_NumValues = m_Buffer.getInt();
+		for (int i = 0; i < l_NumValues; ++i) {
+			l_Item.AddValue(ReadString());
+		}
+
+		return l_Item;
+
+	} // end ReadItem()
+
+
+	/**
+	 * Decodes a string at the current position of the mapped file.
+	 *
+	 * @return the string, can be null
+	 * @throws IOException if the string cannot be decoded
+	 */
+	private String ReadString() throws IOException {
+
+		int l_Length = m_Buffer.getInt();
+		if (l_Length < 0) return null;
+		if (l_Length > m_Buffer.remaining()) {
+			throw new IOException("Corrupted data item stream");
+		}
+
+		byte[] l_Bytes = new byte[l_Length];
+		m_Buffer.get(l_Bytes);
+		return new String(l_Bytes, "UTF-8");
+
+	} // end ReadString()
+
+
+} // end class DataItemStreamReader
@@ -0,0 +1,157 @@
+package sg.edu.nus.wing.qanus.framework.commons;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+
+/**
+ * Writes a stream of data items to a file in a compact binary form.
+ * This is an alternative to writing the data items out as XML, for files which are
+ * only meant to be read by a later stage of QANUS. Reading such files back with
+ * DataItemStreamReader is much cheaper than parsing XML.
+ *
+ * The file starts with a header, followed by one record per data item :
+ *
+ * header : "QDIS" (4 bytes), version (int), stream tag (string)
+ * record : length of the item in bytes (int), item
+ * item   : tag (string),
+ *          number of attributes (int), followed by name (string) and value (string) of each,
+ *          number of fields (int), followed for each field by its name (string),
+ *            number of data items (int) and each of the data items,
+ *          number of inner text values (int), followed by each value (string)
+ * string : length in bytes (int, -1 for null), followed by the UTF-8 bytes
+ *
+ * The stream tag takes the place of the XML tag, such as DOCSTREAM, that would otherwise
+ * have enclosed the data items. Each record is flushed to disk as it is written, so
+ * if writing is interrupted, all previously written data items can still be read.
+ */
+public class DataItemStreamWriter {
+
+	// Identifies files written by this class
+	static final byte[] MAGIC = { 'Q', 'D', 'I', 'S' };
+	static final int VERSION = 1;
+
+
+	// The file being written to
+	private DataOutputStream m_Out;
+
+	// Each data item is serialised here first, so that its length is known
+	private ByteArrayOutputStream m_RecordBuffer;
+	private DataOutputStream m_RecordOut;
+
+
+	/**
+	 * Creates a new data item stream file, over-writing any existing file.
+	 *
+	 * @param a_File [in] file to write to
+	 * @param a_StreamTag [in] tag enclosing the data items, e.g. DOCSTREAM
+	 * @throws IOException if the file cannot be created
+	 */
+	public DataItemStreamWriter(File a_File, String a_StreamTag) throws IOException {
+
+		m_Out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(a_File)));
+		m_RecordBuffer = new ByteArrayOutputStream(4096);
+		m_RecordOut = new DataOutputStream(m_RecordBuffer);
+
+		m_Out.write(MAGIC);
+		m_Out.writeInt(VERSION);
+		WriteString(m_Out, a_StreamTag);
+		m_Out.flush();
+
+	} // end constructor
+
+
+	/**
+	 * Appends a data item to the file.
+	 *
+	 * @param a_Item [in] the data item to write
+	 * @throws IOException on errors writing to the file
+	 */
+	public void Write(DataItem a_Item) throws IOException {
+
+		m_RecordBuffer.reset();
+		WriteItem(m_RecordOut, a_Item);
+		m_RecordOut.flush();
+
+		m_Out.writeInt(m_RecordBuffer.size());
+		m_RecordBuffer.writeTo(m_Out);
+		m_Out.flush();
+
+	} // end Write()
+
+
+	/**
+	 * Closes the file.
+	 *
+	 * @throws IOException on errors closing the file
+	 */
+	public void Close() throws IOException {
+		m_Out.close();
+	} // end Close()
+
+
+	/**
+	 * Serialises a data item and all its fields.
+	 *
+	 * @param a_Out [in] where to write the data item to
+	 * @param a_Item [in] the data item to write
+	 * @throws IOException on errors writing
+	 */
+	private static void WriteItem(DataOutputStream a_Out, DataItem a_Item) throws IOException {
+
+		WriteString(a_Out, a_Item.GetXMLTag());
+
+		String[] l_AttributeNames = a_Item.GetAllAttributeNames();
+		a_Out.writeInt(l_AttributeNames.length);
+		for (String l_Name : l_AttributeNames) {
+			WriteString(a_Out, l_Name);
+			WriteString(a_Out, a_Item.GetAttribute(l_Name));
+		}
+
+		List<String> l_FieldNames = a_Item.GetAllFieldNameList();
+		a_Out.writeInt(l_FieldNames.size());
+		for (String l_Name : l_FieldNames) {
+			List<DataItem> l_Items = a_Item.GetFieldValueList(l_Name);
+			WriteString(a_Out, l_Name);
+			a_Out.writeInt(l_Items.size());
+			for (DataItem l_Item : l_Items) {
+				WriteItem(a_Out, l_Item);
+			}
+		}
+
+		List<String> l_Values = a_Item.GetValueList();
+		a_Out.writeInt(l_Values.size());
+		for (String l_Value : l_Values) {
+			WriteString(a_Out, l_Value);
+		}
+
+	} // end WriteItem()
+
+
+	/**
+	 * Writes a string as its length followed by its UTF-8 bytes.
+	 *
+	 * @param a_Out [in] where to write the string to
+	 * @param a_String [in] the string to write, can be null
+	 * @throws IOException on errors writing
+	 */
+	private static void WriteString(DataOutputStream a_Out, String a_String) throws IOException {
+
+		if (a_String == null) {
+			a_Out.writeInt(-1);
+			return;
+		}
+
+		byte[] l_Bytes = a_String.getBytes("UTF-8");
+		a_Out.writeInt(l_Bytes.length);
+		a_Out.write(l_Bytes);
+
+	} // end WriteString()
+
+
+} // end class DataItemStreamWriter
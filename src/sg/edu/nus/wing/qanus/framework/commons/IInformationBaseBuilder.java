@@ -6,6 +6,9 @@ package sg.edu.nus.wing.qanus.framework.commons;
  * Interface to be implemented by information base builders.
  * Information base builders are invokved by the InformationBaseEngine when processing
  * the input corpus.
+ *
+ * When the corpus is processed with several worker threads, AddToInfoBase() is
+ * invoked concurrently, so implementations must be thread-safe.
  * 
  * @author NG, Jun Ping -- junping@comp.nus.edu.sg
  * @version Jan 18, 2010
@@ -22,4 +25,13 @@ public interface IInformationBaseBuilder {
 	 */
 	public boolean AddToInfoBase(DataItem a_Item);
 
+
+	/**
+	 * Informs the builder that no more information will be added.
+	 * Any pending changes should be committed to the information base here.
+	 *
+	 * @return true if the information base is saved successfully, false otherwise
+	 */
+	public boolean FinishedBuilding();
+
 } // end interface IInformationBaseBuilder
@@ -21,4 +21,11 @@ public interface IStrategyModule extends IRegisterableModule {
 	public DataItem GetAnswerForQuestion(DataItem a_QuestionItem);
 
 
+	/**
+	 * Releases the resources held by the module, such as open indexes.
+	 * Invoked once no more questions will be passed to the module.
+	 */
+	public void Close();
+
+
 } // end interface IStrategyModule
@@ -0,0 +1,298 @@
+package sg.edu.nus.wing.qanus.framework.commons;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.xml.sax.EntityResolver;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+
+/**
+ * Hands out SAX parsers to the stage engines.
+ *
+ * Setting up a SAX parser is not cheap, so each thread keeps one parser per validation
+ * mode and re-uses it for all the files it parses. SAX parsers are not safe to share
+ * between threads, hence one per thread.
+ *
+ * Three validation modes are supported :
+ * - VALIDATING : the original behaviour, each file is validated against its DTD.
+ * - NON_VALIDATING : the DTD is neither loaded nor validated against. Meant for trusted
+ *                    files, such as those produced by an earlier stage of QANUS.
+ * - CACHED_GRAMMAR : files are validated, but DTDs are only loaded once. Compiled grammars
+ *                    are kept in a Xerces grammar pool if the XML parser in use offers one,
+ *                    otherwise the text of the DTDs is kept in memory instead.
+ */
+public class SAXParserProvider {
+
+
+	public enum ValidationMode { VALIDATING, NON_VALIDATING, CACHED_GRAMMAR };
+
+
+	// Xerces properties and features, ignored if the parser does not support them
+	private static final String GRAMMAR_POOL_PROPERTY = "http://apache.org/xml/properties/internal/grammar-pool";
+	private static final String LOAD_EXTERNAL_DTD_FEATURE = "http://apache.org/xml/features/nonvalidating/load-external-dtd";
+	private static final String[] GRAMMAR_POOL_CLASSES = {
+		"org.apache.xerces.util.XMLGrammarPoolImpl",
+		"com.sun.org.apache.xerces.internal.util.XMLGrammarPoolImpl"
+	};
+
+
+	// Parsers of the current thread, one per validation mode
+	private static final ThreadLocal<ParserHolder[]> m_Parsers = new ThreadLocal<ParserHolder[]>() {
+		@Override
+		protected ParserHolder[] initialValue() {
+			return new ParserHolder[ValidationMode.values().length];
+		}
+	};
+
+	// Grammar pool shared by all parsers in CACHED_GRAMMAR mode, null if not available
+	private static Object m_GrammarPool = null;
+	private static boolean m_GrammarPoolLookedUp = false;
+
+	// Text of DTDs already loaded, used in CACHED_GRAMMAR mode without a grammar pool, keyed by system ID
+	private static final ConcurrentHashMap<String, byte[]> m_DTDCache = new ConcurrentHashMap<String, byte[]>();
+
+
+	/**
+	 * A parser together with whether it is currently in the middle of parsing a file.
+	 */
+	private static class ParserHolder {
+		SAXParser m_Parser;
+		boolean m_GrammarPooled;
+		boolean m_InUse;
+	} // end class ParserHolder
+
+
+	/**
+	 * Interprets the validation mode given on the command line.
+	 * Accepted values are "validate", "none" and "cached".
+	 *
+	 * @param a_Mode [in] validation mode given on the command line, can be null
+	 * @return the validation mode, VALIDATING if none or an unknown one is given
+	 */
+	public static ValidationMode ParseValidationMode(String a_Mode) {
+
+		if (a_Mode == null || a_Mode.equalsIgnoreCase("validate")) {
+			return ValidationMode.VALIDATING;
+		} else if (a_Mode.equalsIgnoreCase("none")) {
+			return ValidationMode.NON_VALIDATING;
+		} else if (a_Mode.equalsIgnoreCase("cached")) {
+			return ValidationMode.CACHED_GRAMMAR;
+		}
+
+		Logger.getLogger("QANUS").logp(Level.WARNING, SAXParserProvider.class.getName(), "ParseValidationMode", "Unknown XML validation mode [" + a_Mode + "], validating instead.");
+		return ValidationMode.VALIDATING;
+
+	} // end ParseValidationMode()
+
+
+	/**
+	 * Retrieves the SAX parser of the current thread for the given validation mode,
+	 * setting one up if this is the first time it is asked for.
+	 *
+	 * @param a_Mode [in] validation mode of the parser
+	 * @return the SAX parser
+	 * @throws ParserConfigurationException if the parser cannot be set up
+	 * @throws SAXException if the parser cannot be set up
+	 */
+	public static SAXParser GetParser(ValidationMode a_Mode) throws ParserConfigurationException, SAXException {
+		return GetHolder(a_Mode).m_Parser;
+	} // end GetParser()
+
+
+	/**
+	 * Parses a file with the SAX parser of the current thread.
+	 * This behaves like SAXParser.parse(File, DefaultHandler).
+	 *
+	 * @param a_File [in] file to parse
+	 * @param a_Handler [in] SAX handler to receive the call-backs
+	 * @param a_Mode [in] validation mode to parse with
+	 * @throws IOException on errors reading the file
+	 * @throws SAXException on errors parsing the file, or if the parser cannot be set up
+	 */
+	public static void Parse(File a_File, DefaultHandler a_Handler, ValidationMode a_Mode) throws IOException, SAXException {
+
+		ParserHolder l_Holder = null;
+		try {
+			l_Holder = GetHolder(a_Mode);
+		} catch (ParserConfigurationException e) {
+			throw new SAXException("Error setting up parser", e);
+		}
+
+		// A handler could start parsing another file from within its call-backs,
+		// in which case the parser of this thread is busy and a new one is needed.
+		if (l_Holder.m_InUse) {
+			try {
+				l_Holder = CreateHolder(a_Mode);
+			} catch (ParserConfigurationException e) {
+				throw new SAXException("Error setting up parser", e);
+			}
+		}
+
+		XMLReader l_Reader = l_Holder.m_Parser.getXMLReader();
+		l_Reader.setContentHandler(a_Handler);
+		l_Reader.setErrorHandler(a_Handler);
+		l_Reader.setDTDHandler(a_Handler);
+		if (a_Mode == ValidationMode.CACHED_GRAMMAR && !l_Holder.m_GrammarPooled) {
+			l_Reader.setEntityResolver(new CachingEntityResolver(a_Handler));
+		} else {
+			l_Reader.setEntityResolver(a_Handler);
+		}
+
+		l_Holder.m_InUse = true;
+		try {
+			l_Reader.parse(new InputSource(a_File.toURI().toString()));
+		} finally {
+			l_Holder.m_InUse = false;
+		}
+
+	} // end Parse()
+
+
+	/**
+	 * Retrieves the parser of the current thread for the given validation mode.
+	 *
+	 * @param a_Mode [in] validation mode of the parser
+	 * @return the parser, with its state
+	 * @throws ParserConfigurationException if the parser cannot be set up
+	 * @throws SAXException if the parser cannot be set up
+	 */
+	private static ParserHolder GetHolder(ValidationMode a_Mode) throws ParserConfigurationException, SAXException {
+
+		ParserHolder[] l_Holders = m_Parsers.get();
+		if (l_Holders[a_Mode.ordinal()] == null) {
+			l_Holders[a_Mode.ordinal()] = CreateHolder(a_Mode);
+		}
+
+		return l_Holders[a_Mode.ordinal()];
+
+	} // end GetHolder()
+
+
+	/**
+	 * Sets up a new parser for the given validation mode.
+	 *
+	 * @param a_Mode [in] validation mode of the parser
+	 * @return the new parser, with its state
+	 * @throws ParserConfigurationException if the parser cannot be set up
+	 * @throws SAXException if the parser cannot be set up
+	 */
+	private static ParserHolder CreateHolder(ValidationMode a_Mode) throws ParserConfigurationException, SAXException {
+
+		SAXParserFactory l_Factory = SAXParserFactory.newInstance();
+		l_Factory.setValidating(a_Mode != ValidationMode.NON_VALIDATING);
+
+		ParserHolder l_Holder = new ParserHolder();
+		l_Holder.m_Parser = l_Factory.newSAXParser();
+		l_Holder.m_GrammarPooled = false;
+		l_Holder.m_InUse = false;
+
+		if (a_Mode == ValidationMode.NON_VALIDATING) {
+			// Don't even read the DTD
+			try {
+				l_Holder.m_Parser.getXMLReader().setFeature(LOAD_EXTERNAL_DTD_FEATURE, false);
+			} catch (SAXException e) {
+				Logger.getLogger("QANUS").logp(Level.FINE, SAXParserProvider.class.getName(), "CreateHolder", "Parser will still load DTDs", e);
+			}
+		} else if (a_Mode == ValidationMode.CACHED_GRAMMAR) {
+			Object l_Pool = GetGrammarPool();
+			if (l_Pool != null) {
+				try {
+					l_Holder.m_Parser.setProperty(GRAMMAR_POOL_PROPERTY, l_Pool);
+					l_Holder.m_GrammarPooled = true;
+				} catch (SAXException e) {
+					Logger.getLogger("QANUS").logp(Level.FINE, SAXParserProvider.class.getName(), "CreateHolder", "Grammar pool not supported, caching DTD text instead", e);
+				}
+			}
+		}
+
+		return l_Holder;
+
+	} // end CreateHolder()
+
+
+	/**
+	 * Looks for a Xerces grammar pool implementation that can be used by this program.
+	 * The grammar pool is shared by all threads, Xerces grammar pools are synchronized.
+	 *
+	 * @return the grammar pool, or null if there isn't one available
+	 */
+	private static synchronized Object GetGrammarPool() {
+
+		if (m_GrammarPoolLookedUp) return m_GrammarPool;
+		m_GrammarPoolLookedUp = true;
+
+		for (String l_ClassName : GRAMMAR_POOL_CLASSES) {
+			try {
+				m_GrammarPool = Class.forName(l_ClassName).getDeclaredConstructor().newInstance();
+				return m_GrammarPool;
+			} catch (Exception e) {
+				// Not available, or not accessible, try the next one
+			}
+		}
+
+		Logger.getLogger("QANUS").logp(Level.INFO, SAXParserProvider.class.getName(), "GetGrammarPool", "No grammar pool available, caching DTD text instead");
+		return null;
+
+	} // end GetGrammarPool()
+
+
+	/**
+	 * Entity resolver which keeps the external entities, i.e. the DTDs, it loads in memory.
+	 * Entities which the SAX handler itself resolves are left alone.
+	 */
+	private static class CachingEntityResolver implements EntityResolver {
+
+		private EntityResolver m_HandlerResolver;
+
+		public CachingEntityResolver(EntityResolver a_HandlerResolver) {
+			m_HandlerResolver = a_HandlerResolver;
+		}
+
+		public InputSource resolveEntity(String a_PublicID, String a_SystemID) throws SAXException, IOException {
+
+			InputSource l_Source = m_HandlerResolver.resolveEntity(a_PublicID, a_SystemID);
+			if (l_Source != null || a_SystemID == null) return l_Source;
+
+			byte[] l_Bytes = m_DTDCache.get(a_SystemID);
+			if (l_Bytes == null) {
+				InputStream l_In = new URL(a_SystemID).openStream();
+				try {
+					ByteArrayOutputStream l_Out = new ByteArrayOutputStream();
+					byte[] l_Buffer = new byte[8192];
+					int l_Count = 0;
+					while ((l_Count = l_In.read(l_Buffer)) > 0) {
+						l_Out.write(l_Buffer, 0, l_Count);
+					}
+					l_Bytes = l_Out.toByteArray();
+				} finally {
+					l_In.close();
+				}
+				m_DTDCache.put(a_SystemID, l_Bytes);
+			}
+
+			l_Source = new InputSource(new ByteArrayInputStream(l_Bytes));
+			l_Source.setPublicId(a_PublicID);
+			l_Source.setSystemId(a_SystemID);
+			return l_Source;
+
+		} // end resolveEntity()
+
+	} // end class CachingEntityResolver
+
+
+} // end class SAXParserProvider
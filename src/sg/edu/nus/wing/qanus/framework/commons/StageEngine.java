@@ -31,6 +31,9 @@ public abstract class StageEngine {
 	// List of registered evaluation metrics
 	protected LinkedList<IRegisterableModule> m_ModuleList;
 
+	// How input XML files are to be validated
+	private SAXParserProvider.ValidationMode m_XMLValidation = SAXParserProvider.ValidationMode.VALIDATING;
+
 	
 	
 	/**
@@ -142,6 +145,27 @@ public abstract class StageEngine {
 	} // end GetXMLHandler()
 
 
+	/**
+	 * Sets how input XML files are to be validated when parsed.
+	 * By default, input files are validated against their DTDs.
+	 *
+	 * @param a_Mode [in] the validation mode to use
+	 */
+	public void SetXMLValidation(SAXParserProvider.ValidationMode a_Mode) {
+		m_XMLValidation = a_Mode;
+	} // end SetXMLValidation()
+
+
+	/**
+	 * Retrieves how input XML files are to be validated when parsed.
+	 *
+	 * @return the validation mode
+	 */
+	public SAXParserProvider.ValidationMode GetXMLValidation() {
+		return m_XMLValidation;
+	} // end GetXMLValidation()
+
+
 	
 	/**
 	 * Kicks-start the processing.
@@ -10,18 +10,17 @@ import java.io.OutputStreamWriter;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import sg.edu.nus.wing.qanus.framework.commons.DataItem;
+import sg.edu.nus.wing.qanus.framework.commons.DataItemStreamReader;
 import sg.edu.nus.wing.qanus.framework.commons.IEvaluationMetric;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLDataReceipient;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
+import sg.edu.nus.wing.qanus.framework.commons.SAXParserProvider;
 import sg.edu.nus.wing.qanus.framework.commons.StageEngine;
 
 
@@ -82,7 +81,7 @@ public class AnswerChecker extends StageEngine implements IXMLDataReceipient {
 	/**
 	 * Constructor.
 	 * @param a_CorrectFile [in] file name of file storing correct answers
-	 * @param a_GeneratedFile [in] file name of file storing generated answers
+	 * @param a_GeneratedFile [in] file name of file storing generated answers, null if they are passed to the XML handler directly
 	 * @param a_ResultsFolder [in] the folder name where the result file will be stored
 	 */
 	public AnswerChecker(File a_CorrectFile, File a_GeneratedFile, File a_ResultsFolder) {
@@ -181,6 +180,34 @@ public class AnswerChecker extends StageEngine implements IXMLDataReceipient {
 
 
 
+	/**
+	 * Registers to receive the answers from the XML handlers.
+	 * Go() calls this itself. When the generated answers come from the answer retrieval
+	 * stage within the same program instead (see DataItemPipe), call this before passing
+	 * them to the XML handler, and construct this with a null generated answers file.
+	 */
+	public void StartReceiving() {
+
+		// Register ourself to receive notifications when parsing XML files.
+		// Registering more than once has no effect.
+		GetXMLHandler().RegisterForNotification(this); // Generated answers
+		m_CorrectAnswerXMLHandler.RegisterForNotification(this); // Correct answers
+
+	} // end StartReceiving()
+
+
+	/**
+	 * Stops receiving the answers from the XML handlers. Counterpart of StartReceiving(),
+	 * for when Go() is not going to be called after all. Go() calls this itself.
+	 */
+	public void StopReceiving() {
+
+		GetXMLHandler().DelistFromNotification(this); // Generated answers
+		m_CorrectAnswerXMLHandler.DelistFromNotification(this); // Correct answers
+
+	} // end StopReceiving()
+
+
 	/**
 	 * Start to verify all the provided answers and output the results into the
 	 * output folder.
@@ -195,39 +222,31 @@ public class AnswerChecker extends StageEngine implements IXMLDataReceipient {
 
 
 
-		// Register ourself to receive notifications when parsing XML files.
-		GetXMLHandler().RegisterForNotification(this); // Generated answers
-		m_CorrectAnswerXMLHandler.RegisterForNotification(this); // Correct answers
+		StartReceiving();
 
 
-		// Set up the SAX parser ------------------------------------------
-		SAXParserFactory l_Factory = SAXParserFactory.newInstance();
-		l_Factory.setValidating(true);
-		SAXParser l_DocBuilder = null;
-		try {
-			l_DocBuilder = l_Factory.newSAXParser();
-		} catch (ParserConfigurationException e) {
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error setting up parser", e);
-		} catch (SAXException e) {
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error setting up parser", e);
-		}
-
 	
 	
 		// Start parsing generated answers file
-		try {
-			// TODO sloppy work to just cast as DefaultHandler
-			// can we marry the inheritance from DefaultHandler and the interface
-			// IXMLParser better?
-			l_DocBuilder.parse(m_GeneratedFile, (DefaultHandler) GetXMLHandler());
-		} catch (SAXException e) {			
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error processing [" + m_GeneratedFile + "]", e);
-		} catch (IOException e) {
-			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error processing [" + m_GeneratedFile + "]", e);
+		// There is no file if the generated answers have been passed to the XML handler directly
+		if (m_GeneratedFile != null) {
+			try {
+				// TODO sloppy work to just cast as DefaultHandler
+				// can we marry the inheritance from DefaultHandler and the interface
+				// IXMLParser better?
+				// The answer retrieval stage may have written the answers in binary instead of XML
+				if (!DataItemStreamReader.ReplayIfDataItemStream(m_GeneratedFile, (DefaultHandler) GetXMLHandler())) {
+					SAXParserProvider.Parse(m_GeneratedFile, (DefaultHandler) GetXMLHandler(), GetXMLValidation());
+				}
+			} catch (SAXException e) {			
+				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error processing [" + m_GeneratedFile + "]", e);
+			} catch (IOException e) {
+				Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error processing [" + m_GeneratedFile + "]", e);
+			}
 		}
 		// And the correct answers file
 		try {
-			l_DocBuilder.parse(m_CorrectFile, (DefaultHandler) m_CorrectAnswerXMLHandler);
+			SAXParserProvider.Parse(m_CorrectFile, (DefaultHandler) m_CorrectAnswerXMLHandler, GetXMLValidation());
 		} catch (SAXException e) {
 			Logger.getLogger("QANUS").logp(Level.SEVERE, AnswerChecker.class.getName(), "Go", "Error processing [" + m_CorrectFile + "]", e);
 		} catch (IOException e) {
@@ -248,8 +267,7 @@ public class AnswerChecker extends StageEngine implements IXMLDataReceipient {
 
 
 		// Stop receiving notifications about new data items
-		GetXMLHandler().DelistFromNotification(this); // Generated answers
-		m_CorrectAnswerXMLHandler.DelistFromNotification(this); // Correct answers
+		StopReceiving();
 
 
 		// Prepare output file
@@ -274,7 +292,7 @@ public class AnswerChecker extends StageEngine implements IXMLDataReceipient {
 
 			DataItem l_Results = l_EvalModule.GetEvaluationSummary();
 			try {
-				m_CurrentOutputFile.write(l_Results.toXMLString());
+				l_Results.WriteXML(m_CurrentOutputFile);
 				m_CurrentOutputFile.flush();
 			} catch (IOException ex) {
 				Logger.getLogger("QANUS").logp(Level.WARNING, AnswerChecker.class.getName(), "Go", "Error writing answer to [" + m_OutputFileName + "]", ex);
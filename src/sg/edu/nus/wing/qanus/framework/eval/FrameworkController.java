@@ -96,6 +96,7 @@ public abstract class FrameworkController extends ControllerForDoubleSourceAndTa
 		if (l_Handlers == null || l_Handlers.length != 2) return false;
 		m_StageEngine.SetGeneratedAnswersXMLHandler(l_Handlers[0]);
 		m_StageEngine.SetCorrectAnswersXMLHandler(l_Handlers[1]);
+		m_StageEngine.SetXMLValidation(GetXMLValidationMode());
 		m_StageEngine.RegisterModules(this.GetModulesForStageEngine());
 
 
@@ -7,6 +7,7 @@ import java.util.logging.Logger;
 
 import sg.edu.nus.wing.qanus.framework.commons.ControllerForSingleSourceAndTarget;
 import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseBuilder;
+import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IStageEngineController;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
 
@@ -43,6 +44,10 @@ public abstract class FrameworkController extends ControllerForSingleSourceAndTa
 		AddOptionWithRequiredArgument("tgt", "Folder where eventual information base will be stored", File.class);
 			MakeOptionCompulsory("tgt");
 		AddOptionWithRequiredArgument("mode", "Mode of operation when running, valid options include\n\tprocess (only do text processing)\n\tkbb(only do knowledge base building)\n\tboth (default, do both)\n", String.class);
+		AddOptionWithRequiredArgument("threads", "Number of worker threads used to parse the corpus files (default 1)", Integer.class);
+		AddOptionWithRequiredArgument("annotate", "Annotate the corpus text with the text processing modules and store it in the information base (true/false, default false)", Boolean.class);
+		AddOptionWithRequiredArgument("taggers", "Number of POS taggers to annotate sentences with at the same time (default 1). Each tagger loads its own copy of the model", Integer.class);
+		AddOptionWithRequiredArgument("recognisers", "Number of named entity recognisers to annotate sentences with at the same time (default 1). Each recogniser loads its own copy of the model", Integer.class);
 			
 	}
 
@@ -94,7 +99,32 @@ public abstract class FrameworkController extends ControllerForSingleSourceAndTa
 		IXMLParser[] l_Handlers = this.GetXMLHandlersForStageEngine();
 		if (l_Handlers == null) return false;
 		m_StageEngine.SetXMLHandler(l_Handlers[0]);		
-		m_StageEngine.RegisterModules(this.GetModulesForStageEngine());
+		m_StageEngine.SetXMLValidation(GetXMLValidationMode());
+
+		// For parallel ingestion, every worker thread needs its own XML handler instance
+		int l_NumThreads = GetNumberOfThreads();
+		if (l_NumThreads > 1) {
+			IXMLParser[] l_WorkerHandlers = new IXMLParser[l_NumThreads];
+			l_WorkerHandlers[0] = l_Handlers[0];
+			for (int i = 1; i < l_NumThreads; ++i) {
+				IXMLParser[] l_MoreHandlers = this.GetXMLHandlersForStageEngine();
+				if (l_MoreHandlers == null) return false;
+				l_WorkerHandlers[i] = l_MoreHandlers[0];
+			}
+			m_StageEngine.SetWorkerXMLHandlers(l_WorkerHandlers);
+		}
+		// Text modules are only needed if the corpus is to be annotated
+		Boolean l_Annotate = (Boolean) GetOptionArgument("annotate");
+		// A controller returns null if it has no text modules for its corpus, or cannot load them
+		if (l_Annotate != null && l_Annotate) {
+			IRegisterableModule[] l_Modules = this.GetModulesForStageEngine();
+			if (l_Modules == null) {
+				Logger.getLogger("QANUS").logp(Level.SEVERE, FrameworkController.class.getName(), "Entry", "No text modules to annotate the corpus with.");
+				return false;
+			}
+			m_StageEngine.SetAnnotateText(true);
+			m_StageEngine.RegisterModules(l_Modules);
+		}
 		m_StageEngine.SetKnowledgeBaseBuilder(this.GetInformationBaseBuilder());
 
 		// Start StageEngine
@@ -105,6 +135,36 @@ public abstract class FrameworkController extends ControllerForSingleSourceAndTa
 	} // end Entry()
 
 
+	/**
+	 * Retrieves the number of worker threads requested on the command line.
+	 *
+	 * @return number of worker threads to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfThreads() {
+		return GetPositiveIntegerOption("threads", 1);
+	} // end GetNumberOfThreads()
+
+
+	/**
+	 * Retrieves the number of POS taggers requested on the command line.
+	 *
+	 * @return number of POS taggers to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfTaggers() {
+		return GetPositiveIntegerOption("taggers", 1);
+	} // end GetNumberOfTaggers()
+
+
+	/**
+	 * Retrieves the number of named entity recognisers requested on the command line.
+	 *
+	 * @return number of named entity recognisers to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfRecognisers() {
+		return GetPositiveIntegerOption("recognisers", 1);
+	} // end GetNumberOfRecognisers()
+
+
 	/**
 	 * Customisable for information base preparation stage.
 	 * The information base builder to use to create the information base
@@ -7,19 +7,27 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import sg.edu.nus.wing.qanus.framework.commons.DataItem;
 import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseBuilder;
+import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLDataReceipient;
+import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
+import sg.edu.nus.wing.qanus.framework.commons.SAXParserProvider;
 import sg.edu.nus.wing.qanus.framework.commons.StageEngine;
 import sg.edu.nus.wing.qanus.framework.util.DirectoryAndFileManipulation;
 
@@ -41,6 +49,13 @@ public class InformationBaseEngine extends StageEngine implements IXMLDataReceip
 
 	// Houses a temporary folder
 	private File m_TempFolder;
+
+	// One XML handler per worker thread, null if the corpus is processed on a single thread
+	private IXMLParser[] m_WorkerXMLHandlers = null;
+
+	// Whether corpus text is annotated with the registered text modules before being
+	// added to the information base
+	private boolean m_AnnotateText = false;
 	
 
 	/**
@@ -78,103 +93,192 @@ public class InformationBaseEngine extends StageEngine implements IXMLDataReceip
 	 *
 	 * The XML files in the folder are expected to be stored in a "flat" hierarchy, ie. no
 	 * sub-directories. If there are sub-directories within the folder, they are ignored.
-	 *	 
+	 *
+	 * If worker XML handlers are provided with SetWorkerXMLHandlers(), the files are
+	 * shared out amongst that many worker threads. Each worker owns its own SAX parser
+	 * and XML handler, so the information base builder must be able to accept
+	 * AddToInfoBase() calls from several threads at once.
+	 *
 	 */
 	@Override
 	public boolean Go() 
   {
 		
+		// Each worker thread owns one XML handler. Without worker handlers we
+		// simply work with the single handler of this StageEngine on the current thread.
+		IXMLParser[] l_Handlers = m_WorkerXMLHandlers;
+		if (l_Handlers == null || l_Handlers.length == 0) {
+			l_Handlers = new IXMLParser[] { GetXMLHandler() };
+		}
 
 		// Register ourself to receive notifications when parsing XML file.
 		// This call works because of dynamic binding in Java, where "this"
 		// is associated to the derived subclass of TextProcessor.
-		GetXMLHandler().RegisterForNotification(this);
-
-
-		// Set up the SAX parser ------------------------------------------
-		SAXParserFactory l_Factory = SAXParserFactory.newInstance();
-		l_Factory.setValidating(true);
-		SAXParser l_DocBuilder = null;
-		try {
-			l_DocBuilder = l_Factory.newSAXParser();
-		} catch (ParserConfigurationException e) {			
-			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Go", "Error setting up parser", e);
-		} catch (SAXException e) {			
-			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Go", "Error setting up parser", e);
+		for (IXMLParser l_Handler : l_Handlers) {
+			l_Handler.RegisterForNotification(this);
 		}
 
 
-
 		// The source folder could contain main nested directories,
 		// we will collect all the file names in these directories first
 		// so that it is easier to process them subsequently.
 		// We collect the file names and not the files to save on memory requirements.
 		// We will instantiate the java.io.File object as and when needed instead.
-		LinkedList<String> l_ListOfFileNames = DirectoryAndFileManipulation.CollectFileNamesInDirectory(GetSourceFile());
+		// The workers take file names off this queue until it is empty.
+		final ConcurrentLinkedQueue<String> l_FileNameQueue = new ConcurrentLinkedQueue<String>(DirectoryAndFileManipulation.CollectFileNamesInDirectory(GetSourceFile()));
 
 
-		// Process each file, sending it into the XML parser. -----------------
-		for (String l_FileNameToParse : l_ListOfFileNames) {
-      System.out.println("ARCHIVO: "+l_FileNameToParse);
-			String l_RelativeFileName = l_FileNameToParse.substring(l_FileNameToParse.lastIndexOf(File.separator)+1) ;
-			Logger.getLogger("QANUS").logp(Level.FINE, InformationBaseEngine.class.getName(), "Go", "Processing [" + l_RelativeFileName + "]");
-
-			// Build a temporary file to store the processed entries from this file	-----------------
-			// TODO output a proper DTD file and add <DOCSTREAM> tag to this xml file?
-			String l_TempFileName = m_TempFolder.getAbsolutePath() + File.separator +  l_RelativeFileName + ".processed";
-			BufferedWriter l_IntermediateBW = null;
-			try {
-				l_IntermediateBW = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(l_TempFileName), "UTF8"));
-				l_IntermediateBW.write("<DOCSTREAM>");
-			} catch (Exception e) {
-				l_IntermediateBW = null;
-				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "Go", "Error preparing temp file [" + l_TempFileName + "]", e);
-			}
+		boolean l_Success = true;
+		if (l_Handlers.length == 1) {
 
+			// Single worker, no need for a thread pool
+			l_Success = ProcessFilesFromQueue(l_FileNameQueue, l_Handlers[0]);
 
+		} else {
 
-			// Start parsing -------------------------------------------------------
-			File l_FileToParse = new File(l_FileNameToParse);
-			try {
-				// Within this call to parse() where the call-backs from
-				// AQUAINT2XMLHandler and AQUAINTTextProcessor will be invoked.
-				// TODO sloppy work to just cast as DefaultHandler
-				// can we marry the inheritance from DefaultHandler and the interface
-				// IXMLParser better?
-        //JP: Aca outputea el Getting data from....
-				l_DocBuilder.parse(l_FileToParse, (DefaultHandler) GetXMLHandler());
-        
-			} catch (SAXException e) {				
-				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "Go", "Error processing [" + l_FileNameToParse + "]", e);
-			} catch (IOException e) {				
-				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "Go", "Error processing [" + l_FileNameToParse + "]", e);
-			}
+			Logger.getLogger("QANUS").logp(Level.INFO, InformationBaseEngine.class.getName(), "Go", "Processing corpus with [" + l_Handlers.length + "] worker threads");
 
+			ExecutorService l_Pool = Executors.newFixedThreadPool(l_Handlers.length);
+			LinkedList<Future<Boolean>> l_Results = new LinkedList<Future<Boolean>>();
+			for (final IXMLParser l_Handler : l_Handlers) {
+				l_Results.add(l_Pool.submit(new Callable<Boolean>() {
+					public Boolean call() {
+						return ProcessFilesFromQueue(l_FileNameQueue, l_Handler);
+					}
+				}));
+			} // end for
+			l_Pool.shutdown();
 
-			// Save the temporary file -------------------------------------------------------
-			if (l_IntermediateBW != null) {
+			// Wait for all the workers to drain the queue
+			for (Future<Boolean> l_Result : l_Results) {
 				try {
-					l_IntermediateBW.write("</DOCSTREAM>");
-					l_IntermediateBW.close();
-					l_IntermediateBW = null;
-				} catch (IOException e) {					
-					Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "Go", "Error saving file [" + l_IntermediateBW + "]", e);
+					if (!l_Result.get()) l_Success = false;
+				} catch (InterruptedException e) {
+					Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Go", "Interrupted while waiting for workers", e);
+					l_Pool.shutdownNow();
+					Thread.currentThread().interrupt();
+					l_Success = false;
+					break;
+				} catch (ExecutionException e) {
+					Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Go", "Worker failed", e.getCause());
+					l_Success = false;
 				}
-			} // end if
+			} // end for
 
-
-		} // end for
+		} // end if-else
 
 		
 		// Stop receiving notifications about new data items
-		GetXMLHandler().DelistFromNotification(this);
+		for (IXMLParser l_Handler : l_Handlers) {
+			l_Handler.DelistFromNotification(this);
+		}
+
+		// Let the builder save whatever it has not yet committed
+		if (m_Builder != null && !m_Builder.FinishedBuilding()) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Go", "Unable to save information base.");
+			l_Success = false;
+		}
 
 
-		return true;
+		return l_Success;
 
 	} // end Go()
 
 
+	/**
+	 * Work loop of a single worker.
+	 * Repeatedly takes a file name off the shared queue and parses it with the given XML handler,
+	 * until the queue is empty. Each worker thread uses its own SAX parser, SAX parsers
+	 * are not safe to share between threads.
+	 *
+	 * @param a_FileNameQueue [in] queue of file names still to be processed, shared between workers
+	 * @param a_Handler [in] XML handler owned by this worker
+	 * @return true if the worker ran to completion, false if the parser could not be set up
+	 */
+	private boolean ProcessFilesFromQueue(ConcurrentLinkedQueue<String> a_FileNameQueue, IXMLParser a_Handler) {
+
+		// Set up the SAX parser of this thread -----------------------------
+		try {
+			SAXParserProvider.GetParser(GetXMLValidation());
+		} catch (ParserConfigurationException e) {			
+			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "ProcessFilesFromQueue", "Error setting up parser", e);
+			return false;
+		} catch (SAXException e) {			
+			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "ProcessFilesFromQueue", "Error setting up parser", e);
+			return false;
+		}
+
+
+		// Process each file, sending it into the XML parser. -----------------
+		String l_FileNameToParse = null;
+		while ((l_FileNameToParse = a_FileNameQueue.poll()) != null) {
+			ProcessFile(a_Handler, l_FileNameToParse);
+		} // end while
+
+		return true;
+
+	} // end ProcessFilesFromQueue()
+
+
+	/**
+	 * Parses a single corpus file.
+	 * The data items found in the file are passed on to Notify() by the XML handler.
+	 *
+	 * @param a_Handler [in] XML handler to receive the SAX call-backs
+	 * @param a_FileNameToParse [in] absolute name of file to parse
+	 */
+	private void ProcessFile(IXMLParser a_Handler, String a_FileNameToParse) {
+
+		System.out.println("ARCHIVO: "+a_FileNameToParse);
+		String l_RelativeFileName = a_FileNameToParse.substring(a_FileNameToParse.lastIndexOf(File.separator)+1) ;
+		Logger.getLogger("QANUS").logp(Level.FINE, InformationBaseEngine.class.getName(), "ProcessFile", "Processing [" + l_RelativeFileName + "]");
+
+		// Build a temporary file to store the processed entries from this file	-----------------
+		// TODO output a proper DTD file and add <DOCSTREAM> tag to this xml file?
+		String l_TempFileName = m_TempFolder.getAbsolutePath() + File.separator +  l_RelativeFileName + ".processed";
+		BufferedWriter l_IntermediateBW = null;
+		try {
+			l_IntermediateBW = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(l_TempFileName), "UTF8"));
+			l_IntermediateBW.write("<DOCSTREAM>");
+		} catch (Exception e) {
+			l_IntermediateBW = null;
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "ProcessFile", "Error preparing temp file [" + l_TempFileName + "]", e);
+		}
+
+
+
+		// Start parsing -------------------------------------------------------
+		File l_FileToParse = new File(a_FileNameToParse);
+		try {
+			// Within this call to parse() where the call-backs from
+			// AQUAINT2XMLHandler and AQUAINTTextProcessor will be invoked.
+			// TODO sloppy work to just cast as DefaultHandler
+			// can we marry the inheritance from DefaultHandler and the interface
+			// IXMLParser better?
+        //JP: Aca outputea el Getting data from....
+			SAXParserProvider.Parse(l_FileToParse, (DefaultHandler) a_Handler, GetXMLValidation());
+        
+		} catch (SAXException e) {				
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "ProcessFile", "Error processing [" + a_FileNameToParse + "]", e);
+		} catch (IOException e) {				
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "ProcessFile", "Error processing [" + a_FileNameToParse + "]", e);
+		}
+
+
+		// Save the temporary file -------------------------------------------------------
+		if (l_IntermediateBW != null) {
+			try {
+				l_IntermediateBW.write("</DOCSTREAM>");
+				l_IntermediateBW.close();
+				l_IntermediateBW = null;
+			} catch (IOException e) {					
+				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "ProcessFile", "Error saving file [" + l_IntermediateBW + "]", e);
+			}
+		} // end if
+
+	} // end ProcessFile()
+
+
 	public String GetIdentifier() {
 		return "InformationBaseEngine";
 	}
@@ -182,17 +286,43 @@ public class InformationBaseEngine extends StageEngine implements IXMLDataReceip
 
 	/**
 	 * Callback that is invoked by the XML handler working on parsing the input document.
+	 * When several worker threads are used, this is invoked concurrently from each of them.
 	 * @param a_Item
 	 */
 	public void Notify(DataItem a_Item) {
 
-    m_Builder.AddToInfoBase(a_Item);
-    /* 		
+		// Check that the information base builder is available
+		if (m_Builder == null) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Notify", "Information base builder not initialized.");
+			return;
+		}
+
+		if (m_AnnotateText) {
+			AnnotateText(a_Item);
+		}
+
+		// Add the processed text to the knowledge base
+		m_Builder.AddToInfoBase(a_Item);
+
+	} // end Notify()
+	
+
+	/**
+	 * Runs each registered text module over the sentences of the data item, and adds
+	 * the annotated sentences back into the data item as TEXT-ANNOTATED-<module ID> fields.
+	 * Annotations are only kept if they correspond 1-1 with the original sentences.
+	 *
+	 * Different worker threads may annotate at the same time, so the text modules must
+	 * allow calls from several threads at once, as the Stanford modules with their pools do.
+	 *
+	 * @param a_Item [in] data item to annotate
+	 */
+	private void AnnotateText(DataItem a_Item) {
+
 		// Convert the sentences in the data item to an array of strings for the text modules
 		// This is the corpus specific part
 		// Each field value is a <TEXT> XML instance
-		DataItem[] l_FieldValues = a_Item.GetFieldValues("ART");
-    
+		DataItem[] l_FieldValues = a_Item.GetFieldValues("TEXT");
 		if (l_FieldValues == null || l_FieldValues.length == 0) return;  // Nothing to do
 		String[] l_Sentences = ExtractSentencesIntoArray(l_FieldValues);
 		if (l_Sentences == null || l_Sentences.length == 0) return;
@@ -205,35 +335,25 @@ public class InformationBaseEngine extends StageEngine implements IXMLDataReceip
 			if (l_Module instanceof ITextProcessingModule) {
 				l_TPModule = (ITextProcessingModule) l_Module;
 			} else {
-				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "Notify", "Wrong text processing module registered.");
+				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseEngine.class.getName(), "AnnotateText", "Wrong text processing module registered.");
 				continue;
 			}
 
-
 			String[] l_Annotated = l_TPModule.ProcessText(l_Sentences);
-			if (l_Annotated == null || l_Annotated.length == 0) continue;
+			if (l_Annotated == null || l_Annotated.length != l_Sentences.length) {
+				Logger.getLogger("QANUS").logp(Level.FINE, InformationBaseEngine.class.getName(), "AnnotateText", "Skipping incomplete annotations from [" + l_Module.GetModuleID() + "]");
+				continue;
+			}
 
 			// Output the annotated sentences back into the data item marked with a XML tag
 			for (String l_AnnotatedSentence : l_Annotated) {
-				a_Item.AddSubFieldValue("TEXT-ANNOTATED-"+l_Module.GetModuleID(), "P", l_AnnotatedSentence);
+				a_Item.AddSubFieldValue("TEXT-ANNOTATED-" + l_Module.GetModuleID(), "P", l_AnnotatedSentence);
 			}
 
 		} // end for
-				
 
-		// Check that Lucene is properly initialized
-		if (m_Builder == null) {
-			Logger.getLogger("QANUS").logp(Level.SEVERE, InformationBaseEngine.class.getName(), "Notify", "Lucene not initialized.");
-			return;
-		}
+	} // end AnnotateText()
 
-		// Add the processed text to the knowledge base
-		Logger.getLogger("QANUS").logp(Level.FINE, InformationBaseEngine.class.getName(), "Notify", "Invoking Knowledge Base Creator...");
-		m_Builder.AddToInfoBase(a_Item);
-		
-		*/
-	} // end Notify()
-	
 
 	/**
 	 * Given a data item for the <TEXT> XML instance, extract the different <P> sentences within it
@@ -287,4 +407,31 @@ public class InformationBaseEngine extends StageEngine implements IXMLDataReceip
 	} // end SetKnowledgeBaseBuilder()
 
 
+	/**
+	 * Sets the XML handlers used to parse the corpus in parallel, one per worker thread.
+	 * The number of handlers determines the number of worker threads. Each handler
+	 * must be a separate instance, as XML handlers hold parsing state.
+	 *
+	 * If this is not called, the corpus is parsed on a single thread with the
+	 * XML handler given to SetXMLHandler().
+	 *
+	 * @param a_Handlers [in] array of XML handlers, one for each worker thread
+	 */
+	public void SetWorkerXMLHandlers(IXMLParser[] a_Handlers) {
+		m_WorkerXMLHandlers = a_Handlers;
+	} // end SetWorkerXMLHandlers()
+
+
+	/**
+	 * Sets whether the corpus text is annotated with the registered text modules
+	 * before it is added to the information base. Off by default, as annotating a
+	 * whole corpus takes a long time.
+	 *
+	 * @param a_Annotate [in] true to annotate the corpus text
+	 */
+	public void SetAnnotateText(boolean a_Annotate) {
+		m_AnnotateText = a_Annotate;
+	} // end SetAnnotateText()
+
+
 } // end class InformationBaseEngine
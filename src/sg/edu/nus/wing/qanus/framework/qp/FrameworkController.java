@@ -43,10 +43,22 @@ public abstract class FrameworkController extends ControllerForSingleSourceAndTa
 			MakeOptionCompulsory("src");
 		AddOptionWithRequiredArgument("tgt", "Output folder name to store processed questions", File.class);
 			MakeOptionCompulsory("tgt");		
+		AddOptionWithRequiredArgument("format", "Format of the output files, xml (default) or binary", String.class);
+		AddOptionWithRequiredArgument("taggers", "Number of POS taggers to tag sentences with at the same time (default 1). Each tagger loads its own copy of the model", Integer.class);
 
 	} // end constructor
 
 
+	/**
+	 * Retrieves the number of POS taggers requested on the command line.
+	 *
+	 * @return number of POS taggers to use, 1 if not provided or invalid
+	 */
+	protected int GetNumberOfTaggers() {
+		return GetPositiveIntegerOption("taggers", 1);
+	} // end GetNumberOfTaggers()
+
+
 	/**
 	 * This overrides the implementation BasicController.
 	 * We want to use this chance to check if the required folders are present, as well
@@ -86,6 +98,8 @@ public abstract class FrameworkController extends ControllerForSingleSourceAndTa
 		// Retrieve required components from derived class and set up this StageEngine
 		m_StageEngine.SetXMLHandler(this.GetXMLHandlersForStageEngine()[0]);
 		m_StageEngine.RegisterModules(this.GetModulesForStageEngine());
+		m_StageEngine.SetBinaryOutput("binary".equalsIgnoreCase((String) GetOptionArgument("format")));
+		m_StageEngine.SetXMLValidation(GetXMLValidationMode());
 
 		// Start StageEngine
 		return m_StageEngine.Go();
@@ -10,16 +10,15 @@ import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.parsers.SAXParser;
-import javax.xml.parsers.SAXParserFactory;
 
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 
 import sg.edu.nus.wing.qanus.framework.commons.DataItem;
+import sg.edu.nus.wing.qanus.framework.commons.DataItemStreamWriter;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
+import sg.edu.nus.wing.qanus.framework.commons.SAXParserProvider;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLDataReceipient;
 import sg.edu.nus.wing.qanus.framework.commons.StageEngine;
 import sg.edu.nus.wing.qanus.framework.util.DirectoryAndFileManipulation;
@@ -39,6 +38,15 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 		
 	// Used to point to the file we write our annotated XML to. 
 	protected BufferedWriter m_CurrentOutputFile = null;
+
+	// Used instead of m_CurrentOutputFile when the output is to be written in binary
+	protected DataItemStreamWriter m_CurrentBinaryOutputFile = null;
+
+	// Whether the output is written as a binary data item stream instead of XML
+	private boolean m_BinaryOutput = false;
+
+	// Receives the processed questions instead of the output files, if set
+	private IXMLDataReceipient m_QuestionReceipient = null;
 	
 	
 	/**
@@ -69,17 +77,6 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 		GetXMLHandler().RegisterForNotification(this);
 		
 		
-		// Set up the SAX parser ------------------------------------------
-		SAXParserFactory l_Factory = SAXParserFactory.newInstance();
-		l_Factory.setValidating(true);
-		SAXParser l_DocBuilder = null;
-		try {
-			l_DocBuilder = l_Factory.newSAXParser();
-      
-      
-		} catch (ParserConfigurationException e) {	Logger.getLogger("QANUS").logp(Level.SEVERE, QuestionProcessor.class.getName(), "Go", "Error setting up parser.", e);} catch (SAXException e) {									Logger.getLogger("QANUS").logp(Level.SEVERE, QuestionProcessor.class.getName(), "Go", "Error setting up parser.", e);}
-		
-
 		// The input source file could be a folder or a file
 		// We try to make the code generic by expanding the list of file names to be processed into
 		// a linked list.
@@ -114,14 +111,22 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 			// Build a temporary file to store the processed entries from this file	-----------------
 			// TODO output a proper DTD file and add <DOCSTREAM> tag to this xml file?
 			// GetTargetFile() could either be a directory or file
+			// No file is needed if the processed questions are passed on directly
 			String l_TempFileName = null;			
-			l_TempFileName = GetTargetFile().getAbsolutePath() + File.separator +  l_RelativeFileName + ".processed";			
-			try {				
-				m_CurrentOutputFile = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(l_TempFileName), "UTF8"));
-				m_CurrentOutputFile.write("<DOCSTREAM>");
-			} catch (Exception e) {
-				m_CurrentOutputFile = null;								
-				Logger.getLogger("QANUS").logp(Level.WARNING, QuestionProcessor.class.getName(), "Go", "Error preparing temp file : [" + l_TempFileName + "]", e);
+			if (m_QuestionReceipient == null) {
+				l_TempFileName = GetTargetFile().getAbsolutePath() + File.separator +  l_RelativeFileName + ".processed";			
+				try {				
+					if (m_BinaryOutput) {
+						m_CurrentBinaryOutputFile = new DataItemStreamWriter(new File(l_TempFileName), "DOCSTREAM");
+					} else {
+						m_CurrentOutputFile = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(l_TempFileName), "UTF8"));
+						m_CurrentOutputFile.write("<DOCSTREAM>");
+					}
+				} catch (Exception e) {
+					m_CurrentOutputFile = null;								
+					m_CurrentBinaryOutputFile = null;
+					Logger.getLogger("QANUS").logp(Level.WARNING, QuestionProcessor.class.getName(), "Go", "Error preparing temp file : [" + l_TempFileName + "]", e);
+				}
 			}
 			
 			
@@ -132,7 +137,7 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 				// TODO sloppy work to just cast as DefaultHandler
 				// can we marry the inheritance from DefaultHandler and the interface
 				// IXMLParser better?
-				l_DocBuilder.parse(l_FileToParse, (DefaultHandler) GetXMLHandler());
+				SAXParserProvider.Parse(l_FileToParse, (DefaultHandler) GetXMLHandler(), GetXMLValidation());
 			} catch (SAXException e) {											
 				Logger.getLogger("QANUS").logp(Level.WARNING, QuestionProcessor.class.getName(), "Go", "Error processing [" + l_FileNameToParse + "]", e);
 			} catch (IOException e) {								
@@ -150,6 +155,14 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 					Logger.getLogger("QANUS").logp(Level.WARNING, QuestionProcessor.class.getName(), "Go", "Error saving output file.", e);
 				}
 			} // end if
+			if (m_CurrentBinaryOutputFile != null) {
+				try {
+					m_CurrentBinaryOutputFile.Close();
+					m_CurrentBinaryOutputFile = null;
+				} catch (IOException e) {
+					Logger.getLogger("QANUS").logp(Level.WARNING, QuestionProcessor.class.getName(), "Go", "Error saving output file.", e);
+				}
+			} // end if
 			
 			
 		} // end for
@@ -175,9 +188,18 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 	 */
 	protected void OutputDataItemToFile(DataItem a_Item) {
 
+		if (m_QuestionReceipient != null) {
+			m_QuestionReceipient.Notify(a_Item);
+			return;
+		}
+
 		try {
-			m_CurrentOutputFile.write(a_Item.toXMLString());
-			m_CurrentOutputFile.flush();
+			if (m_CurrentBinaryOutputFile != null) {
+				m_CurrentBinaryOutputFile.Write(a_Item);
+			} else {
+				a_Item.WriteXML(m_CurrentOutputFile);
+				m_CurrentOutputFile.flush();
+			}
 		} catch (Exception e) {
 			Logger.getLogger("QANUS").logp(Level.WARNING, QuestionProcessor.class.getName(), "OutputDataItemToFile", "Error writing to temp XML file.", e);
 		}
@@ -185,6 +207,29 @@ public class QuestionProcessor extends StageEngine implements IXMLDataReceipient
 	} // end OutputDataItemToFile()
 
 
+	/**
+	 * Sets whether the processed questions are written as a binary data item stream
+	 * instead of XML. Binary files are much cheaper for the next stage to read, and
+	 * can be converted to XML with DataItemStreamToXML for inspection.
+	 *
+	 * @param a_Binary [in] true to write binary files, false for XML (default)
+	 */
+	public void SetBinaryOutput(boolean a_Binary) {
+		m_BinaryOutput = a_Binary;
+	} // end SetBinaryOutput()
+
+
+	/**
+	 * Passes the processed questions on to the given recipient, instead of writing them
+	 * to file. This lets the next stage run within the same program, see DataItemPipe.
+	 *
+	 * @param a_Receipient [in] recipient of the processed questions, or null to write them to file (default)
+	 */
+	public void SetQuestionReceipient(IXMLDataReceipient a_Receipient) {
+		m_QuestionReceipient = a_Receipient;
+	} // end SetQuestionReceipient()
+
+
 	public String GetIdentifier() {
 		return "QuestionProcessor";
 	}
@@ -0,0 +1,76 @@
+package sg.edu.nus.wing.qanus.framework.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import sg.edu.nus.wing.qanus.framework.commons.DataItem;
+import sg.edu.nus.wing.qanus.framework.commons.DataItemStreamReader;
+
+
+/**
+ * Converts a binary data item stream, as written by the stages when asked to use the
+ * binary format, back into XML. This is meant for debugging, so that the intermediate
+ * files can be inspected.
+ *
+ * Run with :
+ *   java sg.edu.nus.wing.qanus.framework.util.DataItemStreamToXML <binary file> [<XML file>]
+ *
+ * The XML is written to standard output if no XML file is given.
+ */
+public class DataItemStreamToXML {
+
+
+	/**
+	 * Writes out the data items of a binary stream as XML.
+	 *
+	 * @param a_Source [in] binary data item stream to read
+	 * @param a_Out [in] where to write the XML to
+	 * @throws IOException on errors reading or writing
+	 */
+	public static void Convert(File a_Source, Writer a_Out) throws IOException {
+
+		DataItemStreamReader l_Reader = new DataItemStreamReader(a_Source);
+		try {
+			a_Out.write("<" + l_Reader.GetStreamTag() + ">");
+			DataItem l_Item = l_Reader.Next();
+			while (l_Item != null) {
+				l_Item.WriteXML(a_Out);
+				l_Item = l_Reader.Next();
+			}
+			a_Out.write("</" + l_Reader.GetStreamTag() + ">\n");
+			a_Out.flush();
+		} finally {
+			l_Reader.Close();
+		}
+
+	} // end Convert()
+
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("Usage : DataItemStreamToXML <binary file> [<XML file>]");
+			System.exit(1);
+		}
+
+		Writer l_Out = null;
+		if (args.length > 1) {
+			l_Out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(args[1]), "UTF8"));
+		} else {
+			l_Out = new BufferedWriter(new OutputStreamWriter(System.out, "UTF8"));
+		}
+
+		try {
+			Convert(new File(args[0]), l_Out);
+		} finally {
+			l_Out.close();
+		}
+
+	} // end main()
+
+
+} // end class DataItemStreamToXML
@@ -0,0 +1,296 @@
+package sg.edu.nus.wing.qanus.framework.util;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.queryParser.ParseException;
+import org.apache.lucene.queryParser.QueryParser;
+import org.apache.lucene.search.IndexSearcher;
+
+
+/**
+ * Hands out searchers over a Lucene index, so that the index is opened once for the whole
+ * process instead of once for every querier. Searchers can be used by several threads at once.
+ *
+ * Use Get() to retrieve the manager of an index, Acquire() to retrieve a searcher and Release()
+ * when done with it. A searcher stays usable, with the same document IDs, until it is released,
+ * even if the index has been reopened in the meantime.
+ *
+ * When the index folder changes, for instance because the information base has been built again,
+ * the index is reopened. Only the changed segments are read, and the reopened index is warmed with
+ * the warm-up queries, see SetWarmUpQueries(), before any searcher over it is handed out.
+ * Acquire() checks for changes at most every so often, see SetReopenCheckInterval().
+ */
+public class IndexSearcherManager {
+
+
+	// Default time between checks for changes to the index folder, in milliseconds
+	public static final long DEFAULT_REOPEN_CHECK_INTERVAL = 5000;
+
+	// Number of results to retrieve for each warm-up query
+	private static final int WARM_UP_RESULTS = 10;
+
+	// Managers handed out by Get(), keyed by the path of their index folder
+	private static final ConcurrentHashMap<String, IndexSearcherManager> m_Managers = new ConcurrentHashMap<String, IndexSearcherManager>();
+
+
+	private final File m_IndexFolder;
+
+	// Searcher handed out by Acquire(). Its reader has a reference held by this manager,
+	// and one for each time it is acquired but not yet released.
+	private volatile IndexSearcher m_Current = null;
+
+	// Only one thread opens or reopens the index at a time
+	private final Object m_ReopenLock = new Object();
+
+	// Time between checks for changes, 0 to never check, and when the last check was done
+	private volatile long m_ReopenCheckInterval = DEFAULT_REOPEN_CHECK_INTERVAL;
+	private volatile long m_LastCheckTime = 0;
+
+	// Queries to warm the index with, and the field they search by default
+	private volatile String[] m_WarmUpQueries = new String[0];
+	private volatile String m_WarmUpField = "Text";
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param a_IndexFolder [in] folder of the Lucene index
+	 */
+	private IndexSearcherManager(File a_IndexFolder) {
+
+		m_IndexFolder = a_IndexFolder;
+
+	} // end constructor
+
+
+	/**
+	 * Retrieves the manager of an index, which is shared with everyone else asking for
+	 * the same folder. The index is opened when the first searcher is acquired.
+	 *
+	 * @param a_IndexFolder [in] folder of the Lucene index
+	 * @return the shared manager
+	 */
+	public static IndexSearcherManager Get(File a_IndexFolder) {
+
+		String l_Key;
+		try {
+			l_Key = a_IndexFolder.getCanonicalPath();
+		} catch (IOException e) {
+			l_Key = a_IndexFolder.getAbsolutePath();
+		}
+
+		IndexSearcherManager l_Manager = m_Managers.get(l_Key);
+		if (l_Manager == null) {
+			l_Manager = new IndexSearcherManager(new File(l_Key));
+			IndexSearcherManager l_Existing = m_Managers.putIfAbsent(l_Key, l_Manager);
+			if (l_Existing != null) l_Manager = l_Existing;
+		}
+
+		return l_Manager;
+
+	} // end Get()
+
+
+	/**
+	 * Sets the queries to warm the index with, whenever it is opened or reopened.
+	 * If the index is already open, it is warmed with the queries right away.
+	 *
+	 * @param a_DefaultField [in] field searched by the queries, unless the queries name a field
+	 * @param a_Queries [in] queries, in the syntax of the Lucene QueryParser
+	 */
+	public void SetWarmUpQueries(String a_DefaultField, String[] a_Queries) {
+
+		m_WarmUpField = a_DefaultField;
+		m_WarmUpQueries = a_Queries.clone();
+
+		IndexSearcher l_Searcher = null;
+		synchronized (this) {
+			if (m_Current != null) {
+				l_Searcher = m_Current;
+				l_Searcher.getIndexReader().incRef();
+			}
+		}
+		if (l_Searcher != null) {
+			WarmUp(l_Searcher);
+			Release(l_Searcher);
+		}
+
+	} // end SetWarmUpQueries()
+
+
+	/**
+	 * Sets the queries to warm the index with from a file, with one query on each line.
+	 * See SetWarmUpQueries(String, String[]).
+	 *
+	 * @param a_DefaultField [in] field searched by the queries, unless the queries name a field
+	 * @param a_QueriesFile [in] file of queries, in the syntax of the Lucene QueryParser, in UTF-8
+	 * @throws IOException on errors reading the file
+	 */
+	public void SetWarmUpQueries(String a_DefaultField, File a_QueriesFile) throws IOException {
+
+		ArrayList<String> l_Queries = new ArrayList<String>();
+		BufferedReader l_Reader = new BufferedReader(new InputStreamReader(new FileInputStream(a_QueriesFile), "UTF-8"));
+		try {
+			String l_Line = null;
+			while ((l_Line = l_Reader.readLine()) != null) {
+				if (l_Line.trim().length() > 0) {
+					l_Queries.add(l_Line.trim());
+				}
+			}
+		} finally {
+			l_Reader.close();
+		}
+
+		SetWarmUpQueries(a_DefaultField, l_Queries.toArray(new String[0]));
+
+	} // end SetWarmUpQueries()
+
+
+	/**
+	 * Sets how often Acquire() checks whether the index folder has changed.
+	 *
+	 * @param a_Milliseconds [in] time between checks, 0 to never check (MaybeReopen() can still be called)
+	 */
+	public void SetReopenCheckInterval(long a_Milliseconds) {
+		m_ReopenCheckInterval = (a_Milliseconds < 0) ? 0 : a_Milliseconds;
+	} // end SetReopenCheckInterval()
+
+
+	/**
+	 * Retrieves a searcher over the index, opening the index if this has not been done.
+	 * Every searcher acquired must be handed back with Release().
+	 *
+	 * @return the searcher
+	 * @throws IOException on errors opening the index
+	 */
+	public IndexSearcher Acquire() throws IOException {
+
+		long l_Now = System.currentTimeMillis();
+		long l_Interval = m_ReopenCheckInterval;
+		if (m_Current == null || (l_Interval > 0 && l_Now - m_LastCheckTime >= l_Interval)) {
+			MaybeReopen();
+		}
+
+		synchronized (this) {
+			if (m_Current == null) {
+				throw new IOException("Index [" + m_IndexFolder + "] is not open");
+			}
+			m_Current.getIndexReader().incRef();
+			return m_Current;
+		}
+
+	} // end Acquire()
+
+
+	/**
+	 * Hands back a searcher retrieved with Acquire(). The searcher must not be used after this.
+	 *
+	 * @param a_Searcher [in] the searcher, can be null
+	 */
+	public void Release(IndexSearcher a_Searcher) {
+
+		if (a_Searcher == null) return;
+
+		try {
+			a_Searcher.getIndexReader().decRef();
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, IndexSearcherManager.class.getName(), "Release", "Unable to close index [" + m_IndexFolder + "]", e);
+		}
+
+	} // end Release()
+
+
+	/**
+	 * Opens the index if this has not been done, or reopens it if the index folder has changed.
+	 * The searchers handed out so far stay usable until they are released.
+	 *
+	 * @return true if the index was opened or reopened, false if it is unchanged
+	 * @throws IOException on errors opening the index
+	 */
+	public boolean MaybeReopen() throws IOException {
+
+		synchronized (m_ReopenLock) {
+
+			m_LastCheckTime = System.currentTimeMillis();
+
+			IndexSearcher l_Old = m_Current;
+			IndexReader l_Reader = null;
+			if (l_Old == null) {
+				long l_Start = System.currentTimeMillis();
+				l_Reader = IndexReader.open(m_IndexFolder);
+				Logger.getLogger("QANUS").logp(Level.INFO, IndexSearcherManager.class.getName(), "MaybeReopen", "Opened index [" + m_IndexFolder + "] of " + l_Reader.numDocs() + " documents in " + (System.currentTimeMillis() - l_Start) + " ms");
+			} else {
+				if (l_Old.getIndexReader().isCurrent()) return false;
+				l_Reader = l_Old.getIndexReader().reopen();
+				if (l_Reader == l_Old.getIndexReader()) return false;
+				Logger.getLogger("QANUS").logp(Level.INFO, IndexSearcherManager.class.getName(), "MaybeReopen", "Reopened index [" + m_IndexFolder + "], now of " + l_Reader.numDocs() + " documents");
+			}
+
+			// Warm the new searcher before handing it out
+			IndexSearcher l_New = new IndexSearcher(l_Reader);
+			WarmUp(l_New);
+
+			synchronized (this) {
+				m_Current = l_New;
+			}
+
+			// Drop the reference of this manager to the old searcher,
+			// which is closed once everyone using it has released it
+			if (l_Old != null) {
+				Release(l_Old);
+			}
+
+			return true;
+
+		}
+
+	} // end MaybeReopen()
+
+
+	/**
+	 * Runs the warm-up queries on a searcher, so that the parts of the index they need
+	 * are read in before the searcher is used.
+	 *
+	 * @param a_Searcher [in] searcher to warm
+	 */
+	private void WarmUp(IndexSearcher a_Searcher) {
+
+		String[] l_Queries = m_WarmUpQueries;
+		if (l_Queries.length == 0) return;
+
+		long l_Start = System.currentTimeMillis();
+		QueryParser l_QP = new QueryParser(m_WarmUpField, new StandardAnalyzer());
+		for (String l_Query : l_Queries) {
+			try {
+				a_Searcher.search(l_QP.parse(l_Query), WARM_UP_RESULTS);
+			} catch (ParseException e) {
+				Logger.getLogger("QANUS").logp(Level.WARNING, IndexSearcherManager.class.getName(), "WarmUp", "Unable to parse warm-up query [" + l_Query + "]", e);
+			} catch (IOException e) {
+				Logger.getLogger("QANUS").logp(Level.WARNING, IndexSearcherManager.class.getName(), "WarmUp", "Unable to run warm-up query [" + l_Query + "]", e);
+			}
+		}
+
+		Logger.getLogger("QANUS").logp(Level.INFO, IndexSearcherManager.class.getName(), "WarmUp", "Warmed index [" + m_IndexFolder + "] with " + l_Queries.length + " queries in " + (System.currentTimeMillis() - l_Start) + " ms");
+
+	} // end WarmUp()
+
+
+	/**
+	 * @return folder of the index
+	 */
+	public File GetIndexFolder() {
+		return m_IndexFolder;
+	}
+
+
+} // end class IndexSearcherManager
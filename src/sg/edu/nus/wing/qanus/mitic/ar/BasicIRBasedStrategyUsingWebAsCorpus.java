@@ -11,6 +11,7 @@ import java.util.regex.Pattern;
 
 import sg.edu.nus.wing.qanus.framework.commons.DataItem;
 import sg.edu.nus.wing.qanus.framework.commons.IStrategyModule;
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
 import sg.yeefan.filedownloader.FileDownloader;
 import sg.yeefan.searchenginewrapper.SearchEngineClient;
@@ -55,7 +56,7 @@ public class BasicIRBasedStrategyUsingWebAsCorpus implements IStrategyModule {
 
 		m_SearchEngine = new GoogleAJAXClient();
 
-		m_ModulePOS = new StanfordPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+		m_ModulePOS = ModelRegistry.GetPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
 
 
 		/* Used for logging
@@ -84,6 +85,13 @@ public class BasicIRBasedStrategyUsingWebAsCorpus implements IStrategyModule {
 	}
 
 
+	/**
+	 * Nothing to release, the search engine is queried over the web.
+	 */
+	public void Close() {
+	} // end Close()
+
+
 	/**
 	 * Retrieve the answer for a given question.
 	 * @param a_QuestionItem [in] question represented as DataItem
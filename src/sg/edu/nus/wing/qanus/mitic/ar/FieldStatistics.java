@@ -0,0 +1,261 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+import org.apache.lucene.document.Fieldable;
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
+
+
+/**
+ * Statistics about the fields of a Lucene index : the names of the fields, and the distinct
+ * values of a field together with the number of documents having each value.
+ *
+ * The statistics are worked out from the term dictionary and the metadata of the index where
+ * possible, instead of going through every document :
+ * - The names of the fields are known to the index reader, though their order is only found
+ *   in the stored documents, which are read until every field has been seen.
+ * - For fields indexed as a single term, such as DocID, the terms are the values, and the
+ *   number of documents with each term is known to the term dictionary.
+ * - Fields which are analyzed, such as NAMES, are split up into words in the term dictionary,
+ *   so their values can only be found in the stored documents. Only the field itself is read
+ *   from each document.
+ *
+ * The statistics are worked out once for each index reader, that is once for each version of
+ * the index, and are kept for as long as the reader is in use.
+ */
+public class FieldStatistics {
+
+
+	// Statistics worked out so far for each index reader
+	private static final Map<IndexReader, FieldStatistics> m_Statistics = new WeakHashMap<IndexReader, FieldStatistics>();
+
+
+	// Names of the fields, null until worked out
+	private List<String> m_FieldNames = null;
+
+	// Distinct values of each field, with the number of documents having each value
+	private final HashMap<String, Map<String, Integer>> m_ValueCounts = new HashMap<String, Map<String, Integer>>();
+
+	// Reads the names of the fields of a document without reading their values
+	private static final FieldSelector m_NamesOnly = new FieldSelector() {
+		public FieldSelectorResult accept(String a_FieldName) {
+			return FieldSelectorResult.LAZY_LOAD;
+		}
+	};
+
+
+	/**
+	 * Retrieves the statistics of an index reader, which are worked out when first asked for.
+	 * The statistics must not hold on to the reader, else the reader is never let go of.
+	 */
+	private static FieldStatistics GetStatistics(IndexReader a_Reader) {
+
+		synchronized (m_Statistics) {
+			FieldStatistics l_Statistics = m_Statistics.get(a_Reader);
+			if (l_Statistics == null) {
+				l_Statistics = new FieldStatistics();
+				m_Statistics.put(a_Reader, l_Statistics);
+			}
+			return l_Statistics;
+		}
+
+	} // end GetStatistics()
+
+
+	/**
+	 * Retrieves the names of all the stored fields in the index, in the order they are first
+	 * found going through the documents. Documents are only read until every field known to
+	 * the index reader has been seen, which is usually after the first few documents. Fields
+	 * which are indexed but not stored are left out, as they are in no document.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @return names of the fields, which must not be changed
+	 * @throws IOException on errors reading the index
+	 */
+	public static List<String> GetFieldNames(IndexReader a_Reader) throws IOException {
+
+		FieldStatistics l_Statistics = GetStatistics(a_Reader);
+		synchronized (l_Statistics) {
+
+			if (l_Statistics.m_FieldNames == null) {
+
+				ArrayList<String> l_Names = new ArrayList<String>();
+				HashSet<String> l_Seen = new HashSet<String>();
+				int l_NumFields = a_Reader.getFieldNames(IndexReader.FieldOption.ALL).size();
+
+				for (int i = 0; i < a_Reader.maxDoc() && l_Seen.size() < l_NumFields; ++i) {
+					if (a_Reader.isDeleted(i)) continue;
+					for (Object l_Field : a_Reader.document(i, m_NamesOnly).getFields()) {
+						String l_Name = ((Fieldable) l_Field).name();
+						if (l_Seen.add(l_Name)) l_Names.add(l_Name);
+					}
+				}
+
+				l_Statistics.m_FieldNames = Collections.unmodifiableList(l_Names);
+
+			}
+
+			return l_Statistics.m_FieldNames;
+
+		}
+
+	} // end GetFieldNames()
+
+
+	/**
+	 * Retrieves the distinct values of a field, with the number of documents having each value.
+	 * Deleted documents are not counted. Documents with several values for the field count
+	 * under their first value, as with Document.get(), unless the field is indexed as a single term.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @param a_Field [in] name of the field
+	 * @return number of documents by value, which must not be changed. Values of fields indexed
+	 * 		   as a single term are sorted, other values are in the order they are first found.
+	 * @throws IOException on errors reading the index
+	 */
+	public static Map<String, Integer> GetValueCounts(IndexReader a_Reader, String a_Field) throws IOException {
+
+		FieldStatistics l_Statistics = GetStatistics(a_Reader);
+		synchronized (l_Statistics) {
+
+			Map<String, Integer> l_Counts = l_Statistics.m_ValueCounts.get(a_Field);
+			if (l_Counts == null) {
+				l_Counts = IsSingleTerm(a_Reader, a_Field) ? CountTerms(a_Reader, a_Field) : CountStoredValues(a_Reader, a_Field);
+				l_Counts = Collections.unmodifiableMap(l_Counts);
+				l_Statistics.m_ValueCounts.put(a_Field, l_Counts);
+			}
+
+			return l_Counts;
+
+		}
+
+	} // end GetValueCounts()
+
+
+	/**
+	 * Retrieves the distinct values of a field. See GetValueCounts().
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @param a_Field [in] name of the field
+	 * @return distinct values, which must not be changed
+	 * @throws IOException on errors reading the index
+	 */
+	public static Collection<String> GetValues(IndexReader a_Reader, String a_Field) throws IOException {
+
+		return GetValueCounts(a_Reader, a_Field).keySet();
+
+	} // end GetValues()
+
+
+	/**
+	 * Checks whether a field is indexed as a single term, so that its terms are its values.
+	 * This is told by the first document with a term in the field.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @param a_Field [in] name of the field
+	 * @return true if the field is indexed without being analyzed, or is not stored
+	 * @throws IOException on errors reading the index
+	 */
+	private static boolean IsSingleTerm(IndexReader a_Reader, String a_Field) throws IOException {
+
+		TermEnum l_Terms = a_Reader.terms(new Term(a_Field, ""));
+		try {
+			Term l_Term = l_Terms.term();
+			if (l_Term == null || !l_Term.field().equals(a_Field)) {
+				// Not indexed, the values can only be found in the stored documents
+				return false;
+			}
+
+			TermDocs l_TermDocs = a_Reader.termDocs(l_Term);
+			try {
+				if (!l_TermDocs.next()) return false;
+				String[] l_FieldNames = { a_Field };
+				Document l_Doc = a_Reader.document(l_TermDocs.doc(), new MapFieldSelector(l_FieldNames));
+				Fieldable l_Field = l_Doc.getFieldable(a_Field);
+				return (l_Field == null || !l_Field.isTokenized());
+			} finally {
+				l_TermDocs.close();
+			}
+		} finally {
+			l_Terms.close();
+		}
+
+	} // end IsSingleTerm()
+
+
+	/**
+	 * Counts the documents having each term of a field, from the term dictionary.
+	 */
+	private static Map<String, Integer> CountTerms(IndexReader a_Reader, String a_Field) throws IOException {
+
+		LinkedHashMap<String, Integer> l_Counts = new LinkedHashMap<String, Integer>();
+		boolean l_HasDeletions = a_Reader.hasDeletions();
+
+		TermEnum l_Terms = a_Reader.terms(new Term(a_Field, ""));
+		TermDocs l_TermDocs = a_Reader.termDocs();
+		try {
+			do {
+				Term l_Term = l_Terms.term();
+				if (l_Term == null || !l_Term.field().equals(a_Field)) break;
+
+				// The document frequency includes deleted documents, so count the documents if there are any
+				int l_Count = l_Terms.docFreq();
+				if (l_HasDeletions) {
+					l_Count = 0;
+					l_TermDocs.seek(l_Terms);
+					while (l_TermDocs.next()) ++l_Count;
+				}
+				if (l_Count > 0) {
+					l_Counts.put(l_Term.text(), l_Count);
+				}
+			} while (l_Terms.next());
+		} finally {
+			l_TermDocs.close();
+			l_Terms.close();
+		}
+
+		return l_Counts;
+
+	} // end CountTerms()
+
+
+	/**
+	 * Counts the documents having each value of a field, from the stored documents.
+	 * Only the field itself is read from each document.
+	 */
+	private static Map<String, Integer> CountStoredValues(IndexReader a_Reader, String a_Field) throws IOException {
+
+		LinkedHashMap<String, Integer> l_Counts = new LinkedHashMap<String, Integer>();
+		String[] l_FieldNames = { a_Field };
+		MapFieldSelector l_Selector = new MapFieldSelector(l_FieldNames);
+
+		for (int i = 0; i < a_Reader.maxDoc(); ++i) {
+			if (a_Reader.isDeleted(i)) continue;
+			String l_Value = a_Reader.document(i, l_Selector).get(a_Field);
+			if (l_Value == null) continue;
+			Integer l_Count = l_Counts.get(l_Value);
+			l_Counts.put(l_Value, (l_Count == null) ? 1 : l_Count + 1);
+		}
+
+		return l_Counts;
+
+	} // end CountStoredValues()
+
+
+} // end class FieldStatistics
@@ -2,33 +2,65 @@ package sg.edu.nus.wing.qanus.mitic.ar;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.WeakHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.index.TermEnum;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TopDocCollector;
 import org.apache.lucene.search.TopDocs;
 
 import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseQuerier;
+import sg.edu.nus.wing.qanus.framework.util.IndexSearcherManager;
 
 
 /**
  * Front-end to a information base implemented with a Lucene index.
  *
+ * The index is opened once for the whole process by an IndexSearcherManager, so
+ * creating a querier is cheap. Each search picks up the latest searcher of the manager,
+ * and GetDoc() retrieves documents from the searcher of the last search, so that the
+ * document IDs returned by a search stay valid until the next search. Whoever creates
+ * the querier has to call Close() once done with it, so that the searcher can be released.
+ *
  *
  * @author NG, Jun Ping -- junping@comp.nus.edu.sg
  * @version v18Jan2010
  */
 public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 
-	// The searcher through the Lucene index
-	public IndexSearcher m_Searcher;
+	// Hands out searchers through the Lucene index
+	private IndexSearcherManager m_Manager;
+
+	// The searcher through the Lucene index, used for the last search
+	public IndexSearcher m_Searcher = null;
+
+	// Number of documents collected for each one asked for, when collapsing search results
+	private static final int COLLAPSE_OVERFETCH = 4;
+
+	// Field holding the ID of each document, indexed as a single term
+	private static final String DOC_ID_FIELD = "DocID";
+
+	// Document numbers by ID in lower case, for each index reader, for looking up IDs regardless of case
+	private static final Map<IndexReader, HashMap<String, Integer>> m_DocNumbersByLowerCaseID = new WeakHashMap<IndexReader, HashMap<String, Integer>>();
 
 	// The default no. of results to retrieve each time
 	private int m_DefaultNumResults;
@@ -41,14 +73,44 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 
 		m_DefaultNumResults = a_DefaultNumResults;
 
+		// The index is shared with every other querier of the same folder
+		m_Manager = IndexSearcherManager.Get(a_KBFolder);
+		RefreshSearcher();
+
+	} // end constructor
+
+
+	/**
+	 * Picks up the latest searcher of the index, handing back the one used so far.
+	 *
+	 * @return true if there is a searcher, false if the index cannot be opened
+	 */
+	private boolean RefreshSearcher() {
+
 		try {
-			// Build an IndexSearcher using the in-memory index
-			m_Searcher = new IndexSearcher(a_KBFolder.getAbsolutePath());
-		} catch (Exception e) {
-			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "Constructor", "Unable to initialise Lucene index searcher.", e);
+			IndexSearcher l_Searcher = m_Manager.Acquire();
+			m_Manager.Release(m_Searcher);
+			m_Searcher = l_Searcher;
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "RefreshSearcher", "Unable to initialise Lucene index searcher.", e);
 		}
 
-	} // end constructor
+		return (m_Searcher != null);
+
+	} // end RefreshSearcher()
+
+
+	/**
+	 * Hands back the searcher used by this querier. The querier cannot retrieve
+	 * documents after this, until its next search.
+	 */
+	public void Close() {
+
+		m_Manager.Release(m_Searcher);
+		m_Searcher = null;
+
+	} // end Close()
+
 
 	/**
 	 * Takes a search string and retrieve relevant source documents from KB
@@ -64,6 +126,9 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 		// Build a Query object
 		QueryParser l_QP = new QueryParser("ALL", new StandardAnalyzer());
 		Query l_ParsedQuery = null;
+		if (!RefreshSearcher()) {
+			return null;
+		}
 		try {
 			
 			// Search for the l_ParsedQuery
@@ -83,6 +148,92 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 
 	} // end Search()
 
+
+	/**
+	 * Takes a search string and retrieves the top documents, leaving out documents which
+	 * share the value of any of the collapse fields with a better scored document.
+	 *
+	 * Only the top documents are collected, a few more than asked for, to make up for the
+	 * documents left out. If too many are left out, the search is run again collecting more.
+	 * The values of the collapse fields are looked up from the StoredFieldCache, so documents
+	 * are not loaded. Documents without a value for a collapse field are not collapsed on it.
+	 *
+	 * @param a_Query [in] the search string
+	 * @param a_NumResults [in] the number of documents to return
+	 * @param a_CollapseFields [in] names of the fields to collapse on, can be empty
+	 * @param a_MinRelativeScore [in] documents scoring less than this fraction of the best score
+	 * 								  are left out, 0 to keep all
+	 * @return array of top scored documents, best first, or null on any errors
+	 */
+	public ScoreDoc[] SearchQuery(String a_Query, int a_NumResults, String[] a_CollapseFields, float a_MinRelativeScore) {
+
+		QueryParser l_QP = new QueryParser("ALL", new StandardAnalyzer());
+		if (!RefreshSearcher()) {
+			return null;
+		}
+		try {
+
+			Query l_ParsedQuery = l_QP.parse(a_Query);
+			IndexReader l_Reader = m_Searcher.getIndexReader();
+			// Never more than the documents in the index, so large limits do not allocate large queues
+			long l_Wanted = (long) a_NumResults * ((a_CollapseFields.length > 0) ? COLLAPSE_OVERFETCH : 1);
+			int l_ToCollect = (int) Math.min(l_Wanted, l_Reader.maxDoc());
+
+			while (true) {
+
+				TopDocCollector l_Collector = new TopDocCollector(Math.max(l_ToCollect, 1));
+				m_Searcher.search(l_ParsedQuery, l_Collector);
+				TopDocs l_TopDocs = l_Collector.topDocs();
+				float l_MinScore = a_MinRelativeScore * l_TopDocs.getMaxScore();
+
+				// Keep the best document for each value of the collapse fields
+				ArrayList<ScoreDoc> l_Results = new ArrayList<ScoreDoc>(Math.min(a_NumResults, l_TopDocs.scoreDocs.length));
+				ArrayList<HashSet<String>> l_SeenValues = new ArrayList<HashSet<String>>(a_CollapseFields.length);
+				for (int i = 0; i < a_CollapseFields.length; ++i) {
+					l_SeenValues.add(new HashSet<String>());
+				}
+				boolean l_BelowMinScore = false;
+				for (ScoreDoc l_ScoreDoc : l_TopDocs.scoreDocs) {
+
+					if (l_Results.size() == a_NumResults) break;
+					if (l_ScoreDoc.score < l_MinScore) {
+						l_BelowMinScore = true;
+						break;
+					}
+
+					String[] l_Values = new String[a_CollapseFields.length];
+					boolean l_Collapsed = false;
+					for (int i = 0; i < a_CollapseFields.length && !l_Collapsed; ++i) {
+						l_Values[i] = StoredFieldCache.Get(l_Reader, a_CollapseFields[i], l_ScoreDoc.doc);
+						l_Collapsed = (l_Values[i] != null && l_SeenValues.get(i).contains(l_Values[i]));
+					}
+					if (l_Collapsed) continue;
+
+					for (int i = 0; i < a_CollapseFields.length; ++i) {
+						if (l_Values[i] != null) l_SeenValues.get(i).add(l_Values[i]);
+					}
+					l_Results.add(l_ScoreDoc);
+
+				} // end for
+
+				// Done unless more documents could make up for those left out
+				if (l_Results.size() == a_NumResults || l_BelowMinScore || l_TopDocs.totalHits <= l_ToCollect) {
+					return l_Results.toArray(new ScoreDoc[0]);
+				}
+				l_ToCollect = (int) Math.min((long) l_ToCollect * COLLAPSE_OVERFETCH, l_TopDocs.totalHits);
+
+			} // end while
+
+		} catch  (IOException ex) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "SearchQuery", "Exception conducting search.", ex);
+		} catch (ParseException ex) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "SearchQuery", "Exception parsing query.", ex);
+		}
+
+		return null;
+
+	} // end SearchQuery()
+
 	/**
 	 * Retrieve a document based on a given ID.
 	 * @param a_ID [in] the ID of the document we want to retrieve.
@@ -90,6 +241,10 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 	 */
 	public Document GetDoc(int a_ID) {
 
+		if (m_Searcher == null) {
+			return null;
+		}
+
 		try {
 			return m_Searcher.doc(a_ID);
 		} catch (CorruptIndexException ex) {
@@ -99,6 +254,127 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 		} // end try-catch
 
 	} // end GetDoc()
+
+
+	/**
+	 * Retrieve a document based on its ID, regardless of case.
+	 * The ID is looked up in the term dictionary, so the documents are not gone through.
+	 * @param a_DocID [in] the ID of the document
+	 * @return the document, or null if there is no such document or it cannot be retrieved
+	 */
+	public Document GetDocByID(String a_DocID) {
+
+		String[] l_DocIDs = { a_DocID };
+		return GetDocsByIDs(l_DocIDs)[0];
+
+	} // end GetDocByID()
+
+
+	/**
+	 * Retrieve documents based on their IDs, regardless of case.
+	 * The IDs are looked up in the order of the term dictionary, and the documents are
+	 * loaded in the order they are stored, to keep reading from the index sequential.
+	 * @param a_DocIDs [in] the IDs of the documents
+	 * @return the documents, in the same order as the IDs, with null for IDs with no document
+	 * 		   or documents which cannot be retrieved
+	 */
+	public Document[] GetDocsByIDs(String[] a_DocIDs) {
+
+		Document[] l_Docs = new Document[a_DocIDs.length];
+		if (m_Searcher == null && !RefreshSearcher()) {
+			return l_Docs;
+		}
+		IndexReader l_Reader = m_Searcher.getIndexReader();
+
+		try {
+
+			// Look up the document numbers in the order of the term dictionary
+			Integer[] l_Order = new Integer[a_DocIDs.length];
+			for (int i = 0; i < l_Order.length; ++i) l_Order[i] = i;
+			final String[] l_DocIDs = a_DocIDs;
+			Arrays.sort(l_Order, new Comparator<Integer>() {
+				public int compare(Integer a_First, Integer a_Second) {
+					return l_DocIDs[a_First].compareTo(l_DocIDs[a_Second]);
+				}
+			});
+
+			int[] l_DocNumbers = new int[a_DocIDs.length];
+			TermDocs l_TermDocs = l_Reader.termDocs();
+			try {
+				for (int l_Index : l_Order) {
+					l_TermDocs.seek(new Term(DOC_ID_FIELD, a_DocIDs[l_Index]));
+					l_DocNumbers[l_Index] = l_TermDocs.next() ? l_TermDocs.doc() : GetDocNumberIgnoringCase(l_Reader, a_DocIDs[l_Index]);
+				}
+			} finally {
+				l_TermDocs.close();
+			}
+
+			// Load the documents in the order they are stored
+			for (int i = 0; i < l_Order.length; ++i) l_Order[i] = i;
+			final int[] l_Numbers = l_DocNumbers;
+			Arrays.sort(l_Order, new Comparator<Integer>() {
+				public int compare(Integer a_First, Integer a_Second) {
+					return (l_Numbers[a_First] < l_Numbers[a_Second]) ? -1 : ((l_Numbers[a_First] == l_Numbers[a_Second]) ? 0 : 1);
+				}
+			});
+			for (int l_Index : l_Order) {
+				if (l_DocNumbers[l_Index] >= 0) {
+					l_Docs[l_Index] = l_Reader.document(l_DocNumbers[l_Index]);
+				}
+			}
+
+		} catch (IOException ex) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "GetDocsByIDs", "Exception retrieving documents.", ex);
+		}
+
+		return l_Docs;
+
+	} // end GetDocsByIDs()
+
+
+	/**
+	 * Looks up the number of a document from its ID, regardless of case.
+	 * The IDs in lower case are gathered from the term dictionary the first time, for each index reader.
+	 * @param a_Reader [in] reader of the index
+	 * @param a_DocID [in] the ID of the document
+	 * @return the document number, or -1 if there is no such document
+	 * @throws IOException on errors reading the index
+	 */
+	private static int GetDocNumberIgnoringCase(IndexReader a_Reader, String a_DocID) throws IOException {
+
+		HashMap<String, Integer> l_DocNumbers = null;
+		synchronized (m_DocNumbersByLowerCaseID) {
+
+			l_DocNumbers = m_DocNumbersByLowerCaseID.get(a_Reader);
+			if (l_DocNumbers == null) {
+
+				l_DocNumbers = new HashMap<String, Integer>();
+				TermEnum l_Terms = a_Reader.terms(new Term(DOC_ID_FIELD, ""));
+				TermDocs l_TermDocs = a_Reader.termDocs();
+				try {
+					do {
+						Term l_Term = l_Terms.term();
+						if (l_Term == null || !l_Term.field().equals(DOC_ID_FIELD)) break;
+						l_TermDocs.seek(l_Terms);
+						if (l_TermDocs.next()) {
+							String l_Key = l_Term.text().toLowerCase(Locale.ENGLISH);
+							if (!l_DocNumbers.containsKey(l_Key)) l_DocNumbers.put(l_Key, l_TermDocs.doc());
+						}
+					} while (l_Terms.next());
+				} finally {
+					l_TermDocs.close();
+					l_Terms.close();
+				}
+				m_DocNumbersByLowerCaseID.put(a_Reader, l_DocNumbers);
+
+			}
+
+		}
+
+		Integer l_DocNumber = l_DocNumbers.get(a_DocID.toLowerCase(Locale.ENGLISH));
+		return (l_DocNumber == null) ? -1 : l_DocNumber;
+
+	} // end GetDocNumberIgnoringCase()
 	
 
 } // end class LuceneInformationBaseQuerier
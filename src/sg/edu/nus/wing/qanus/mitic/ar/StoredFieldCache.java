@@ -0,0 +1,89 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import org.apache.lucene.document.MapFieldSelector;
+import org.apache.lucene.index.IndexReader;
+
+
+/**
+ * Remembers the stored values of fields of the documents of a Lucene index, so that
+ * looking up the value of a field of a document, such as to collapse search results on
+ * that field, does not load the whole document every time.
+ *
+ * The FieldCache of Lucene does the same for fields indexed as a single term, but the fields
+ * of the MITIC index, such as NAMES, are analyzed. Values are loaded when first asked for,
+ * one field of one document at a time, and are kept for as long as the index reader is in use.
+ * Values of a field with several values are the first value, as with Document.get().
+ */
+public class StoredFieldCache {
+
+
+	// Stands for a document which has no value for a field
+	private static final String NO_VALUE = new String();
+
+	// Values of each field of each document, by index reader and field name
+	private static final Map<IndexReader, HashMap<String, String[]>> m_Values = new WeakHashMap<IndexReader, HashMap<String, String[]>>();
+
+
+	/**
+	 * Retrieves the values of a field remembered for a reader, by document ID.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @param a_Field [in] name of the field
+	 * @return the values, null for those not yet loaded
+	 */
+	private static String[] GetValues(IndexReader a_Reader, String a_Field) {
+
+		synchronized (m_Values) {
+
+			HashMap<String, String[]> l_Fields = m_Values.get(a_Reader);
+			if (l_Fields == null) {
+				l_Fields = new HashMap<String, String[]>();
+				m_Values.put(a_Reader, l_Fields);
+			}
+
+			String[] l_Values = l_Fields.get(a_Field);
+			if (l_Values == null) {
+				l_Values = new String[a_Reader.maxDoc()];
+				l_Fields.put(a_Field, l_Values);
+			}
+
+			return l_Values;
+
+		}
+
+	} // end GetValues()
+
+
+	/**
+	 * Retrieves the stored value of a field of a document.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @param a_Field [in] name of the field
+	 * @param a_DocID [in] ID of the document
+	 * @return the value, or null if the document has no value for the field
+	 * @throws IOException on errors reading the document
+	 */
+	public static String Get(IndexReader a_Reader, String a_Field, int a_DocID) throws IOException {
+
+		String[] l_Values = GetValues(a_Reader, a_Field);
+
+		// Two threads may both load the same value, which does no harm
+		String l_Value = l_Values[a_DocID];
+		if (l_Value == null) {
+			String[] l_FieldNames = { a_Field };
+			l_Value = a_Reader.document(a_DocID, new MapFieldSelector(l_FieldNames)).get(a_Field);
+			if (l_Value == null) l_Value = NO_VALUE;
+			l_Values[a_DocID] = l_Value;
+		}
+
+		return (l_Value == NO_VALUE) ? null : l_Value;
+
+	} // end Get()
+
+
+} // end class StoredFieldCache
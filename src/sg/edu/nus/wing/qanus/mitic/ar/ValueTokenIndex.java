@@ -0,0 +1,817 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.StringTokenizer;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.lucene.document.Document;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+
+
+/**
+ * Index of the words in the stored values of the fields of a Lucene index, telling which
+ * fields, and which documents, have a value containing a given word.
+ *
+ * Words are matched as FeatureSearchTermCoverage does : a search word matches a value if it
+ * appears anywhere in the value, regardless of case, even within a longer word. To find these
+ * quickly, the distinct words of all the values, in lower case, are kept in a suffix array, so
+ * that the words containing a search word are found by a binary search. For each word, the
+ * fields and documents having it in their value are kept in sorted lists.
+ *
+ * The index is saved in a file next to the Lucene index, see GetFile(). Get() loads it from
+ * there for an index reader, or builds and saves it if the file is missing or was built from
+ * another version of the index. To save the first lookups the wait, it can be built ahead
+ * of time with main(), once the IBP stage is done.
+ * As with Document.get(), the value of a field of a document is its first stored value.
+ *
+ * Lookups do not change the index, so they can be done by several threads at once.
+ */
+public class ValueTokenIndex {
+
+
+	// Characters delimiting words, as for StringTokenizer
+	private static final String DELIMITERS = " \t\n\r\f";
+
+	// Separates the words in m_Text. Words never contain it, as it is a delimiter.
+	private static final char SEPARATOR = '\n';
+
+	// Number of search words to remember the fields of, see GetFieldsWithWord()
+	private static final int MAX_CACHED_WORDS = 10000;
+
+	// Extension of the file of the index, added to the name of the Lucene index folder
+	private static final String FILE_EXTENSION = ".values";
+
+	// Indexes loaded or built so far, or being loaded or built, for each index reader
+	private static final Map<IndexReader, IndexEntry> m_Indexes = new WeakHashMap<IndexReader, IndexEntry>();
+
+
+	// Version of the Lucene index and locale used for lower case, for checking saved indexes
+	private final long m_Version;
+	private final String m_Locale;
+	private final int m_MaxDoc;
+
+	// Names of the fields, and their position in m_Fields
+	private final String[] m_Fields;
+	private final HashMap<String, Integer> m_FieldPositions = new HashMap<String, Integer>();
+
+	// Distinct words in lower case, sorted, with the fields having each word in sorted
+	// order, and the documents having the word in each of these fields in sorted order
+	private final String[] m_Words;
+	private final int[][] m_WordFields;
+	private final int[][][] m_WordDocs;
+
+	// The words one after the other, each followed by SEPARATOR, where each word starts,
+	// and the positions within the words sorted by the text following them
+	private final char[] m_Text;
+	private final int[] m_WordStarts;
+	private final int[] m_Suffixes;
+
+	// Fields having each search word looked up so far, up to MAX_CACHED_WORDS.
+	// The same words are looked up over and over, for each result of a question.
+	private final ConcurrentHashMap<String, boolean[]> m_FieldsByWord = new ConcurrentHashMap<String, boolean[]>();
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param a_Suffixes [in] suffix array of the words, or null to sort the suffixes here
+	 */
+	private ValueTokenIndex(long a_Version, String a_Locale, int a_MaxDoc, String[] a_Fields, String[] a_Words, int[][] a_WordFields, int[][][] a_WordDocs, int[] a_Suffixes) {
+
+		m_Version = a_Version;
+		m_Locale = a_Locale;
+		m_MaxDoc = a_MaxDoc;
+		m_Fields = a_Fields;
+		for (int i = 0; i < a_Fields.length; ++i) {
+			m_FieldPositions.put(a_Fields[i], i);
+		}
+		m_Words = a_Words;
+		m_WordFields = a_WordFields;
+		m_WordDocs = a_WordDocs;
+
+		// Lay out the words one after the other
+		m_WordStarts = new int[a_Words.length];
+		int l_Length = 0;
+		for (int i = 0; i < a_Words.length; ++i) {
+			m_WordStarts[i] = l_Length;
+			l_Length += a_Words[i].length() + 1;
+		}
+		m_Text = new char[l_Length];
+		for (int i = 0; i < a_Words.length; ++i) {
+			a_Words[i].getChars(0, a_Words[i].length(), m_Text, m_WordStarts[i]);
+			m_Text[m_WordStarts[i] + a_Words[i].length()] = SEPARATOR;
+		}
+
+		if (a_Suffixes == null) {
+			a_Suffixes = new int[l_Length - a_Words.length];
+			int j = 0;
+			for (int i = 0; i < l_Length; ++i) {
+				if (m_Text[i] != SEPARATOR) a_Suffixes[j++] = i;
+			}
+			SortSuffixes(a_Suffixes, 0, a_Suffixes.length, new int[a_Suffixes.length]);
+		}
+		m_Suffixes = a_Suffixes;
+
+	} // end constructor
+
+
+	/**
+	 * Retrieves the index of an index reader. The index is loaded from its file the first time,
+	 * or built from the reader if the file does not match the reader, in which case the file is
+	 * written again so that it need not be built the next time.
+	 *
+	 * Only the threads asking for the index of the same reader wait while it is loaded or built.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @return the index, which is kept for as long as the reader is in use
+	 * @throws IOException on errors reading the Lucene index
+	 */
+	public static ValueTokenIndex Get(IndexReader a_Reader) throws IOException {
+
+		IndexEntry l_Entry;
+		synchronized (m_Indexes) {
+			l_Entry = m_Indexes.get(a_Reader);
+			if (l_Entry == null) {
+				l_Entry = new IndexEntry();
+				m_Indexes.put(a_Reader, l_Entry);
+			}
+		}
+
+		return l_Entry.Get(a_Reader);
+
+	} // end Get()
+
+
+	/**
+	 * The index of an index reader, loaded or built the first time it is asked for.
+	 * The entry does not refer to the reader, so that it can be dropped with the reader.
+	 */
+	private static class IndexEntry {
+
+		private ValueTokenIndex m_Index = null;
+
+		/**
+		 * Retrieves the index, loading or building it if this is the first time it is asked for.
+		 * Only one thread loads the index, the others wait for it. If building fails, the next
+		 * call tries again.
+		 */
+		public synchronized ValueTokenIndex Get(IndexReader a_Reader) throws IOException {
+
+			if (m_Index != null) return m_Index;
+
+			ValueTokenIndex l_Index = null;
+			File l_File = GetFile(a_Reader.directory());
+			if (l_File != null && l_File.exists()) {
+				try {
+					l_Index = Load(l_File);
+					if (!l_Index.IsBuiltFrom(a_Reader)) l_Index = null;
+				} catch (IOException e) {
+					Logger.getLogger("QANUS").logp(Level.WARNING, ValueTokenIndex.class.getName(), "Get", "Unable to load value index [" + l_File + "]", e);
+					l_Index = null;
+				}
+			}
+
+			if (l_Index == null) {
+				long l_Start = System.currentTimeMillis();
+				l_Index = Build(a_Reader);
+				Logger.getLogger("QANUS").logp(Level.INFO, ValueTokenIndex.class.getName(), "Get", "Built value index of " + l_Index.m_Words.length + " words in " + (System.currentTimeMillis() - l_Start) + " ms");
+				if (l_File != null) {
+					try {
+						l_Index.Save(l_File);
+					} catch (IOException e) {
+						Logger.getLogger("QANUS").logp(Level.WARNING, ValueTokenIndex.class.getName(), "Get", "Unable to save value index [" + l_File + "]", e);
+					}
+				}
+			}
+
+			m_Index = l_Index;
+			return m_Index;
+
+		} // end Get()
+
+	} // end class IndexEntry
+
+
+	/**
+	 * Retrieves the file in which the index of a Lucene index is saved.
+	 *
+	 * @param a_IndexFolder [in] folder of the Lucene index
+	 * @return the file, next to the folder
+	 */
+	public static File GetFile(File a_IndexFolder) {
+		return new File(a_IndexFolder.getPath() + FILE_EXTENSION);
+	} // end GetFile()
+
+
+	/**
+	 * Retrieves the file in which the index of a Lucene index is saved.
+	 *
+	 * @param a_Directory [in] directory of the Lucene index
+	 * @return the file, or null if the Lucene index is not in a folder
+	 */
+	private static File GetFile(Directory a_Directory) {
+
+		if (!(a_Directory instanceof FSDirectory)) return null;
+		return GetFile(((FSDirectory) a_Directory).getFile());
+
+	} // end GetFile()
+
+
+	/**
+	 * Checks whether this index was built from the given reader, or from another reader
+	 * of the same version of the same Lucene index.
+	 */
+	private boolean IsBuiltFrom(IndexReader a_Reader) {
+
+		return m_Version == a_Reader.getVersion() && m_MaxDoc == a_Reader.maxDoc() && m_Locale.equals(Locale.getDefault().toString());
+
+	} // end IsBuiltFrom()
+
+
+	/**
+	 * Builds the index of the stored values of a Lucene index.
+	 * Each document is read once, deleted documents are left out.
+	 *
+	 * @param a_Reader [in] reader of the index
+	 * @return the index
+	 * @throws IOException on errors reading the index
+	 */
+	public static ValueTokenIndex Build(IndexReader a_Reader) throws IOException {
+
+		// Values are lower cased in the default locale, as FeatureSearchTermCoverage does.
+		// The locale is saved with the index, so that the index is built again in another locale.
+		Locale l_Locale = Locale.getDefault();
+
+		List<String> l_FieldNames = FieldStatistics.GetFieldNames(a_Reader);
+		String[] l_Fields = l_FieldNames.toArray(new String[0]);
+
+		// Documents having each word, for each field, in the order they are read
+		HashMap<String, int[][]> l_Postings = new HashMap<String, int[][]>();
+		HashMap<String, int[]> l_PostingCounts = new HashMap<String, int[]>();
+
+		HashSet<String> l_DocWords = new HashSet<String>();
+		for (int i = 0; i < a_Reader.maxDoc(); ++i) {
+
+			if (a_Reader.isDeleted(i)) continue;
+			Document l_Doc = a_Reader.document(i);
+
+			for (int f = 0; f < l_Fields.length; ++f) {
+
+				String l_Value = l_Doc.get(l_Fields[f]);
+				if (l_Value == null) continue;
+
+				l_DocWords.clear();
+				StringTokenizer l_ST = new StringTokenizer(l_Value.toLowerCase(l_Locale), DELIMITERS);
+				while (l_ST.hasMoreTokens()) {
+					String l_Word = l_ST.nextToken();
+					if (!l_DocWords.add(l_Word)) continue;
+
+					int[][] l_Docs = l_Postings.get(l_Word);
+					int[] l_Counts = l_PostingCounts.get(l_Word);
+					if (l_Docs == null) {
+						l_Docs = new int[l_Fields.length][];
+						l_Counts = new int[l_Fields.length];
+						l_Postings.put(l_Word, l_Docs);
+						l_PostingCounts.put(l_Word, l_Counts);
+					}
+					if (l_Docs[f] == null) {
+						l_Docs[f] = new int[4];
+					} else if (l_Counts[f] == l_Docs[f].length) {
+						l_Docs[f] = Arrays.copyOf(l_Docs[f], 2 * l_Counts[f]);
+					}
+					l_Docs[f][l_Counts[f]++] = i;
+				}
+
+			}
+
+		}
+
+
+		// Sort the words and trim the lists of documents
+		String[] l_Words = l_Postings.keySet().toArray(new String[0]);
+		Arrays.sort(l_Words);
+		int[][] l_WordFields = new int[l_Words.length][];
+		int[][][] l_WordDocs = new int[l_Words.length][][];
+		for (int w = 0; w < l_Words.length; ++w) {
+
+			int[][] l_Docs = l_Postings.remove(l_Words[w]);
+			int[] l_Counts = l_PostingCounts.remove(l_Words[w]);
+
+			int l_NumFields = 0;
+			for (int f = 0; f < l_Fields.length; ++f) {
+				if (l_Counts[f] > 0) ++l_NumFields;
+			}
+			l_WordFields[w] = new int[l_NumFields];
+			l_WordDocs[w] = new int[l_NumFields][];
+			int j = 0;
+			for (int f = 0; f < l_Fields.length; ++f) {
+				if (l_Counts[f] == 0) continue;
+				l_WordFields[w][j] = f;
+				l_WordDocs[w][j] = Arrays.copyOf(l_Docs[f], l_Counts[f]);
+				++j;
+			}
+
+		}
+
+		return new ValueTokenIndex(a_Reader.getVersion(), l_Locale.toString(), a_Reader.maxDoc(), l_Fields, l_Words, l_WordFields, l_WordDocs, null);
+
+	} // end Build()
+
+
+	/**
+	 * Builds the index of the stored values of a Lucene index and saves it in its file,
+	 * see GetFile().
+	 *
+	 * @param a_IndexFolder [in] folder of the Lucene index
+	 * @return number of distinct words in the index
+	 * @throws IOException on errors reading the Lucene index or writing the file
+	 */
+	public static int Build(File a_IndexFolder) throws IOException {
+
+		IndexReader l_Reader = IndexReader.open(a_IndexFolder);
+		try {
+			ValueTokenIndex l_Index = Build(l_Reader);
+			l_Index.Save(GetFile(a_IndexFolder));
+			return l_Index.m_Words.length;
+		} finally {
+			l_Reader.close();
+		}
+
+	} // end Build()
+
+
+	/**
+	 * Writes the index to a file. The file is first written under another name and then
+	 * renamed, so that it is never seen half written.
+	 *
+	 * The file is laid out as follows :
+	 *   version of the Lucene index (long), locale, maximum document number (int)
+	 *   number of fields, and the names of the fields
+	 *   number of words, and for each word : the word, the number of fields having it,
+	 *     and for each of these fields : its position, the number of documents, and the documents
+	 *   number of suffixes, and the suffixes
+	 * Strings are written as their length followed by their UTF-8 bytes.
+	 *
+	 * @param a_File [in] file to write
+	 * @throws IOException on errors writing the file
+	 */
+	public void Save(File a_File) throws IOException {
+
+		File l_TempFile = new File(a_File.getPath() + ".tmp");
+		DataOutputStream l_Out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(l_TempFile)));
+		try {
+			l_Out.writeLong(m_Version);
+			WriteString(l_Out, m_Locale);
+			l_Out.writeInt(m_MaxDoc);
+
+			l_Out.writeInt(m_Fields.length);
+			for (String l_Field : m_Fields) {
+				WriteString(l_Out, l_Field);
+			}
+
+			l_Out.writeInt(m_Words.length);
+			for (int w = 0; w < m_Words.length; ++w) {
+				WriteString(l_Out, m_Words[w]);
+				l_Out.writeInt(m_WordFields[w].length);
+				for (int j = 0; j < m_WordFields[w].length; ++j) {
+					l_Out.writeInt(m_WordFields[w][j]);
+					l_Out.writeInt(m_WordDocs[w][j].length);
+					for (int l_Doc : m_WordDocs[w][j]) {
+						l_Out.writeInt(l_Doc);
+					}
+				}
+			}
+
+			l_Out.writeInt(m_Suffixes.length);
+			for (int l_Suffix : m_Suffixes) {
+				l_Out.writeInt(l_Suffix);
+			}
+		} finally {
+			l_Out.close();
+		}
+
+		if (a_File.exists() && !a_File.delete()) {
+			throw new IOException("Unable to replace [" + a_File + "]");
+		}
+		if (!l_TempFile.renameTo(a_File)) {
+			throw new IOException("Unable to rename [" + l_TempFile + "] to [" + a_File + "]");
+		}
+
+	} // end Save()
+
+
+	/**
+	 * Reads an index written with Save().
+	 *
+	 * @param a_File [in] file to read
+	 * @return the index
+	 * @throws IOException on errors reading the file
+	 */
+	public static ValueTokenIndex Load(File a_File) throws IOException {
+
+		DataInputStream l_In = new DataInputStream(new BufferedInputStream(new FileInputStream(a_File)));
+		try {
+			long l_Version = l_In.readLong();
+			String l_Locale = ReadString(l_In);
+			int l_MaxDoc = l_In.readInt();
+
+			String[] l_Fields = new String[l_In.readInt()];
+			for (int f = 0; f < l_Fields.length; ++f) {
+				l_Fields[f] = ReadString(l_In);
+			}
+
+			String[] l_Words = new String[l_In.readInt()];
+			int[][] l_WordFields = new int[l_Words.length][];
+			int[][][] l_WordDocs = new int[l_Words.length][][];
+			for (int w = 0; w < l_Words.length; ++w) {
+				l_Words[w] = ReadString(l_In);
+				l_WordFields[w] = new int[l_In.readInt()];
+				l_WordDocs[w] = new int[l_WordFields[w].length][];
+				for (int j = 0; j < l_WordFields[w].length; ++j) {
+					l_WordFields[w][j] = l_In.readInt();
+					l_WordDocs[w][j] = new int[l_In.readInt()];
+					for (int d = 0; d < l_WordDocs[w][j].length; ++d) {
+						l_WordDocs[w][j][d] = l_In.readInt();
+					}
+				}
+			}
+
+			int[] l_Suffixes = new int[l_In.readInt()];
+			for (int i = 0; i < l_Suffixes.length; ++i) {
+				l_Suffixes[i] = l_In.readInt();
+			}
+
+			return new ValueTokenIndex(l_Version, l_Locale, l_MaxDoc, l_Fields, l_Words, l_WordFields, l_WordDocs, l_Suffixes);
+		} finally {
+			l_In.close();
+		}
+
+	} // end Load()
+
+
+	/**
+	 * Writes a string as its length followed by its UTF-8 bytes.
+	 */
+	private static void WriteString(DataOutputStream a_Out, String a_String) throws IOException {
+
+		byte[] l_Bytes = a_String.getBytes("UTF-8");
+		a_Out.writeInt(l_Bytes.length);
+		a_Out.write(l_Bytes);
+
+	} // end WriteString()
+
+
+	/**
+	 * Reads a string written by WriteString().
+	 */
+	private static String ReadString(DataInputStream a_In) throws IOException {
+
+		byte[] l_Bytes = new byte[a_In.readInt()];
+		a_In.readFully(l_Bytes);
+		return new String(l_Bytes, "UTF-8");
+
+	} // end ReadString()
+
+
+	/**
+	 * Compares the text following two positions of m_Text up to the end of their words.
+	 * The end of a word comes before any character. Equal texts are ordered by position.
+	 */
+	private int CompareSuffixes(int a_First, int a_Second) {
+
+		int i = a_First;
+		int j = a_Second;
+		while (true) {
+			char l_First = m_Text[i++];
+			char l_Second = m_Text[j++];
+			if (l_First == SEPARATOR || l_Second == SEPARATOR) {
+				if (l_First != SEPARATOR) return 1;
+				if (l_Second != SEPARATOR) return -1;
+				return a_First - a_Second;
+			}
+			if (l_First != l_Second) return l_First - l_Second;
+		}
+
+	} // end CompareSuffixes()
+
+
+	/**
+	 * Sorts part of the suffix array with a merge sort.
+	 *
+	 * @param a_Suffixes [in/out] suffixes to sort
+	 * @param a_From [in] first suffix to sort
+	 * @param a_To [in] one after the last suffix to sort
+	 * @param a_Temp [in] scratch space as long as the suffix array
+	 */
+	private void SortSuffixes(int[] a_Suffixes, int a_From, int a_To, int[] a_Temp) {
+
+		if (a_To - a_From < 2) return;
+
+		int l_Middle = (a_From + a_To) >>> 1;
+		SortSuffixes(a_Suffixes, a_From, l_Middle, a_Temp);
+		SortSuffixes(a_Suffixes, l_Middle, a_To, a_Temp);
+		if (CompareSuffixes(a_Suffixes[l_Middle - 1], a_Suffixes[l_Middle]) <= 0) return;
+
+		int i = a_From;
+		int j = l_Middle;
+		int k = a_From;
+		while (i < l_Middle && j < a_To) {
+			a_Temp[k++] = (CompareSuffixes(a_Suffixes[i], a_Suffixes[j]) <= 0) ? a_Suffixes[i++] : a_Suffixes[j++];
+		}
+		while (i < l_Middle) a_Temp[k++] = a_Suffixes[i++];
+		while (j < a_To) a_Temp[k++] = a_Suffixes[j++];
+		System.arraycopy(a_Temp, a_From, a_Suffixes, a_From, a_To - a_From);
+
+	} // end SortSuffixes()
+
+
+	/**
+	 * Compares the text following a position of m_Text with a search word, up to the
+	 * length of the search word.
+	 *
+	 * @return 0 if the text starts with the search word, otherwise less than or more than 0
+	 * 		   if the text comes before or after the search word
+	 */
+	private int CompareWithWord(int a_Position, String a_Word) {
+
+		for (int i = 0; i < a_Word.length(); ++i) {
+			char l_Char = m_Text[a_Position + i];
+			if (l_Char == SEPARATOR) return -1;
+			if (l_Char != a_Word.charAt(i)) return l_Char - a_Word.charAt(i);
+		}
+		return 0;
+
+	} // end CompareWithWord()
+
+
+	/**
+	 * Finds the words of the index containing a search word.
+	 *
+	 * @param a_Word [in] search word in lower case, without delimiters
+	 * @return positions of the words in m_Words, sorted
+	 */
+	private int[] GetWordsContaining(String a_Word) {
+
+		// Find the first suffix starting with the search word
+		int l_Low = 0;
+		int l_High = m_Suffixes.length;
+		while (l_Low < l_High) {
+			int l_Mid = (l_Low + l_High) >>> 1;
+			if (CompareWithWord(m_Suffixes[l_Mid], a_Word) < 0) {
+				l_Low = l_Mid + 1;
+			} else {
+				l_High = l_Mid;
+			}
+		}
+
+		// Gather the words of all the suffixes starting with the search word
+		int[] l_Words = new int[8];
+		int l_NumWords = 0;
+		for (int i = l_Low; i < m_Suffixes.length && CompareWithWord(m_Suffixes[i], a_Word) == 0; ++i) {
+			int l_Word = Arrays.binarySearch(m_WordStarts, m_Suffixes[i]);
+			if (l_Word < 0) l_Word = -l_Word - 2;
+			if (l_NumWords == l_Words.length) {
+				l_Words = Arrays.copyOf(l_Words, 2 * l_NumWords);
+			}
+			l_Words[l_NumWords++] = l_Word;
+		}
+
+		// A word containing the search word more than once is found more than once
+		Arrays.sort(l_Words, 0, l_NumWords);
+		int l_NumDistinct = 0;
+		for (int i = 0; i < l_NumWords; ++i) {
+			if (l_NumDistinct == 0 || l_Words[l_NumDistinct - 1] != l_Words[i]) {
+				l_Words[l_NumDistinct++] = l_Words[i];
+			}
+		}
+
+		return Arrays.copyOf(l_Words, l_NumDistinct);
+
+	} // end GetWordsContaining()
+
+
+	/**
+	 * Splits a search string into its words in lower case, as FeatureSearchTermCoverage does.
+	 * The words are lower cased in the default locale, as the values are in Build().
+	 *
+	 * @param a_SearchString [in] search string, words delimited by spaces
+	 * @return the words, or null if the search string can never be fully covered, that is when
+	 * 		   it has no words or has a word more than once
+	 */
+	private static String[] GetSearchWords(String a_SearchString) {
+
+		if (a_SearchString == null) return null;
+
+		StringTokenizer l_ST = new StringTokenizer(a_SearchString);
+		String[] l_Words = new String[l_ST.countTokens()];
+		if (l_Words.length == 0) return null;
+
+		HashSet<String> l_Seen = new HashSet<String>();
+		for (int i = 0; i < l_Words.length; ++i) {
+			l_Words[i] = l_ST.nextToken().toLowerCase(Locale.getDefault());
+			if (!l_Seen.add(l_Words[i])) return null;
+		}
+
+		return l_Words;
+
+	} // end GetSearchWords()
+
+
+	/**
+	 * Finds the fields having a word containing a search word.
+	 *
+	 * @param a_Word [in] search word in lower case, without delimiters
+	 * @return for each field, whether the field has the search word, which must not be changed
+	 */
+	private boolean[] GetFieldsWithWord(String a_Word) {
+
+		boolean[] l_Fields = m_FieldsByWord.get(a_Word);
+		if (l_Fields != null) return l_Fields;
+
+		l_Fields = new boolean[m_Fields.length];
+		int l_NumFields = 0;
+		for (int l_Word : GetWordsContaining(a_Word)) {
+			for (int l_Field : m_WordFields[l_Word]) {
+				if (!l_Fields[l_Field]) {
+					l_Fields[l_Field] = true;
+					++l_NumFields;
+				}
+			}
+			if (l_NumFields == m_Fields.length) break;
+		}
+
+		if (m_FieldsByWord.size() < MAX_CACHED_WORDS) {
+			m_FieldsByWord.put(a_Word, l_Fields);
+		}
+
+		return l_Fields;
+
+	} // end GetFieldsWithWord()
+
+
+	/**
+	 * Checks whether a word of the index is in a field.
+	 *
+	 * @return position of the field in the fields of the word, or less than 0 if it is not there
+	 */
+	private int FindField(int a_Word, int a_Field) {
+		return Arrays.binarySearch(m_WordFields[a_Word], a_Field);
+	} // end FindField()
+
+
+	/**
+	 * Checks whether each word of a search string appears in some value of a field.
+	 * This is needed for a value of the field to contain all the words, see AnyValueContains(),
+	 * and is quicker to check.
+	 *
+	 * @param a_Field [in] name of the field
+	 * @param a_SearchString [in] search string, words delimited by spaces
+	 * @return true if each word is in some value of the field
+	 */
+	public boolean FieldContainsEachWord(String a_Field, String a_SearchString) {
+
+		Integer l_Field = m_FieldPositions.get(a_Field);
+		String[] l_SearchWords = GetSearchWords(a_SearchString);
+		if (l_Field == null || l_SearchWords == null) return false;
+
+		for (String l_SearchWord : l_SearchWords) {
+			if (!GetFieldsWithWord(l_SearchWord)[l_Field]) return false;
+		}
+
+		return true;
+
+	} // end FieldContainsEachWord()
+
+
+	/**
+	 * Finds the documents whose value of a field contains all the words of a search string,
+	 * that is those for which FeatureSearchTermCoverage gives a score of 1.
+	 *
+	 * @param a_Field [in] name of the field
+	 * @param a_SearchString [in] search string, words delimited by spaces
+	 * @return the documents, or null if there are none
+	 */
+	private BitSet FindDocs(String a_Field, String a_SearchString) {
+
+		Integer l_Field = m_FieldPositions.get(a_Field);
+		String[] l_SearchWords = GetSearchWords(a_SearchString);
+		if (l_Field == null || l_SearchWords == null) return null;
+
+		BitSet l_Docs = null;
+		for (String l_SearchWord : l_SearchWords) {
+
+			BitSet l_WordDocs = new BitSet(m_MaxDoc);
+			for (int l_Word : GetWordsContaining(l_SearchWord)) {
+				int j = FindField(l_Word, l_Field);
+				if (j < 0) continue;
+				for (int l_Doc : m_WordDocs[l_Word][j]) {
+					l_WordDocs.set(l_Doc);
+				}
+			}
+
+			if (l_Docs == null) {
+				l_Docs = l_WordDocs;
+			} else {
+				l_Docs.and(l_WordDocs);
+			}
+			if (l_Docs.isEmpty()) return null;
+
+		}
+
+		return l_Docs;
+
+	} // end FindDocs()
+
+
+	/**
+	 * Checks whether the value of a field of some document contains all the words of a search
+	 * string, that is whether FeatureSearchTermCoverage gives a score of 1 for some value.
+	 *
+	 * @param a_Field [in] name of the field
+	 * @param a_SearchString [in] search string, words delimited by spaces
+	 * @return true if some value contains all the words
+	 */
+	public boolean AnyValueContains(String a_Field, String a_SearchString) {
+
+		// With a single word, it only matters whether the word is in the field at all
+		if (!FieldContainsEachWord(a_Field, a_SearchString)) return false;
+		if (GetSearchWords(a_SearchString).length == 1) return true;
+
+		return FindDocs(a_Field, a_SearchString) != null;
+
+	} // end AnyValueContains()
+
+
+	/**
+	 * Finds the documents whose value of a field contains all the words of a search string,
+	 * that is those for which FeatureSearchTermCoverage gives a score of 1.
+	 *
+	 * @param a_Field [in] name of the field
+	 * @param a_SearchString [in] search string, words delimited by spaces
+	 * @return numbers of the documents, sorted
+	 */
+	public int[] GetDocsContaining(String a_Field, String a_SearchString) {
+
+		BitSet l_Docs = FindDocs(a_Field, a_SearchString);
+		if (l_Docs == null) return new int[0];
+
+		int[] l_DocNumbers = new int[l_Docs.cardinality()];
+		int j = 0;
+		for (int i = l_Docs.nextSetBit(0); i >= 0; i = l_Docs.nextSetBit(i + 1)) {
+			l_DocNumbers[j++] = i;
+		}
+		return l_DocNumbers;
+
+	} // end GetDocsContaining()
+
+
+	/**
+	 * @return number of distinct words in the index
+	 */
+	public int GetNumberOfWords() {
+		return m_Words.length;
+	}
+
+
+	/**
+	 * Builds the index of a Lucene index and saves it next to the Lucene index.
+	 *
+	 * @param args index-folder
+	 */
+	public static void main(String[] args) {
+
+		if (args.length != 1) {
+			System.out.println("Usage : java sg.edu.nus.wing.qanus.mitic.ar.ValueTokenIndex index-folder");
+			return;
+		}
+
+		try {
+			int l_NumWords = Build(new File(args[0]));
+			System.out.println("Indexed " + l_NumWords + " words into [" + GetFile(new File(args[0])) + "]");
+		} catch (IOException e) {
+			System.err.println("ValueTokenIndex::main() -> Error building index :" + e);
+		}
+
+	} // end main()
+
+
+} // end class ValueTokenIndex
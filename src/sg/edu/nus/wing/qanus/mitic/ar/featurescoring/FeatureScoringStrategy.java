@@ -19,6 +19,7 @@ import sg.edu.nus.wing.qanus.framework.commons.IStrategyModule;
 import sg.edu.nus.wing.qanus.mitic.ar.AnswerCandidate;
 import sg.edu.nus.wing.qanus.mitic.ar.FreebaseQuerier;
 import sg.edu.nus.wing.qanus.mitic.ar.LuceneInformationBaseQuerier;
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
 import sg.edu.nus.wing.qanus.textprocessing.StopWordsFilter;
@@ -107,8 +108,8 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		m_InformationBase = new LuceneInformationBaseQuerier(a_IBFolder, RESULTS_TO_RETRIEVE);
 
 		// Processing modules
-		m_ModulePOS = new StanfordPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
-		m_ModuleNER = new StanfordNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
+		m_ModulePOS = ModelRegistry.GetPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+		m_ModuleNER = ModelRegistry.GetNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
 		//m_ModuleNER = new StanfordNERWebService();
 
 		// Validation modules
@@ -120,6 +121,14 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		return "FeatureScoringStrategy";
 	}
 
+
+	/**
+	 * Closes the searcher over the information base.
+	 */
+	public void Close() {
+		m_InformationBase.Close();
+	} // end Close()
+
 	
 	public DataItem GetAnalysisInfoForQuestion(DataItem a_QuestionItem) {
 		return GetAnswerForQuestion(a_QuestionItem, true);
@@ -562,7 +571,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 					// That is how near the query appears to the candidate answer in the source passage
 					String[] l_StopWordsFileNames = new String[1];
 					l_StopWordsFileNames[0] = "lib" + File.separator + "common-english-words.txt";
-					StopWordsFilter l_StopWords = new StopWordsFilter(l_StopWordsFileNames);
+					StopWordsFilter l_StopWords = StopWordsFilter.GetFilter(l_StopWordsFileNames);
 					String[] l_StopWordsProcessArr = { l_Query };
 					String l_CleanedQuery = l_StopWords.ProcessText(l_StopWordsProcessArr)[0];
 					String[] l_ProximityStrings = {l_CleanedQuery, l_CandidateAnswerString};
@@ -1422,7 +1431,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		// Used to remove stop words and stem the query
 		String[] l_StopWordsFileNames = new String[1];
 		l_StopWordsFileNames[0] = "lib" + File.separator + "common-english-words.txt";
-		StopWordsFilter l_StopWords = new StopWordsFilter(l_StopWordsFileNames);
+		StopWordsFilter l_StopWords = StopWordsFilter.GetFilter(l_StopWordsFileNames);
 
 		// Build seach terms dynamically, incorporating relevant information where possible
 		// We ensure that the query does not has repeated words by using a LinkedList to collect the hash terms first
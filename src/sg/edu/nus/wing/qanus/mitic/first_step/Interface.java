@@ -8,6 +8,7 @@ import java.util.Scanner;
 
 import com.cybozu.labs.langdetect.DetectorFactory;
 
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
 import sg.edu.nus.wing.qanus.textprocessing.PorterStemmer;
 import sg.edu.nus.wing.qanus.textprocessing.QuestionClassifierWithStanfordClassifier;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
@@ -113,8 +114,12 @@ public class Interface
         String base_url="/home/julian/qanus/qanus/";
         DetectorFactory.loadProfile("lang_profiles");
         
-        StanfordNER parserNER = new StanfordNER(base_url+"lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
-        StanfordPOSTagger parserPOS = new StanfordPOSTagger(base_url+"lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+        StanfordNER parserNER = ModelRegistry.GetNER(base_url+"lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
+        StanfordPOSTagger parserPOS = ModelRegistry.GetPOSTagger(base_url+"lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+        if (parserNER == null || parserPOS == null) {
+          System.out.println("Error al cargar los modelos de NER y POS");
+          return;
+        }
         PorterStemmer parserStemming = new PorterStemmer();
         //StanfordGrammarParser parserGrammar = new StanfordGrammarParser("lib"+ File.separator+ "stanford-parser-2008-10-26.jar");
         //Thesaurus thesaurus = new Thesaurus();
@@ -146,7 +151,14 @@ public class Interface
             //grammar_res = thesaurus.ProcessText(sentences);
             Pregunta pregunta = new Pregunta(sentences[0], pos_res[0], ner_res[0],qc_res[0]);
             
-            procesar(pregunta, print);
+            try
+            {
+                procesar(pregunta, print);
+            }
+            finally
+            {
+                pregunta.close();
+            }
             //System.out.println(grammar_res[0]);
             
         }
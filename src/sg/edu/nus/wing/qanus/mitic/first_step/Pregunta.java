@@ -80,6 +80,11 @@ public class Pregunta
     
     public ScoreDoc[] score_docs;
     
+    //Cantidad de documentos distintos que se recuperan para la pregunta
+    public static final int RESULTADOS_A_RECUPERAR = 100;
+    //Campos cuyos valores no se repiten entre los documentos recuperados
+    private static final String[] CAMPOS_SIN_REPETIR = { "NAMES", "DOCNO" };
+    
     public float max_score;
     public LinkedList<Integer> scores;
     public LinkedList<Integer> distancias;
@@ -505,41 +510,22 @@ public class Pregunta
     
     public ScoreDoc[]  getScoreDocs()
     {
-        //Se ejecuta la query creada
-    		ScoreDoc[] resQuery = querier.query(query);
-        
-        String names = "";
-        String docNo = "";
-        LinkedList<String> nombresVistos = new LinkedList<String>();
-        LinkedList<String> docNoVistos = new LinkedList<String>();
+        //Se ejecuta la query creada, sin repetir NAMES ni DOCNO
+        //Solo se juntan los mejores RESULTADOS_A_RECUPERAR, los puntajes y distancias se calculan sobre ellos
+        ScoreDoc[] docs = querier.query(query, RESULTADOS_A_RECUPERAR, CAMPOS_SIN_REPETIR, 0.0f);
+        if(docs == null) return new ScoreDoc[0];
         
-        LinkedList<ScoreDoc> docs = new LinkedList<ScoreDoc>();
-        
-        for (int i = 0; i < resQuery.length; i++) 
-        {
-  				ScoreDoc scoreDoc = resQuery[i];
-  				Document doc = querier.retrieveDoc(scoreDoc);
-  				names = querier.getName(doc.get("NAMES"));
-          docNo = doc.get("DOCNO");
-          
-          if(nombresVistos.contains(names) || docNoVistos.contains(docNo))
-          {
-              continue;    
-          }
-          else
-          {
-              nombresVistos.add(names);
-              docNoVistos.add(docNo);
-              docs.add(scoreDoc);
-          }
-          
-        }
-        
-        return docs.toArray(new ScoreDoc[0]);
+        return docs;
         
     
     }
     
+    //Libera el indice tomado por la consulta, llamar cuando ya no se usa la pregunta
+    public void close()
+    {
+        if(querier != null) querier.close();
+    }
+    
     public QCEnumTypes getAskedEntity()
     {
     	 
@@ -726,7 +712,7 @@ public class Pregunta
 			}
 			else
 			{
-				ScoreDoc[] resQuery = querier.query(campo+":("+entidad+")");
+				ScoreDoc[] resQuery = querier.query(campo+":("+entidad+")", 1, new String[0], 0.0f);
 				if(resQuery.length > 0 && querier.retrieveDoc(resQuery[0]).get(campo).compareToIgnoreCase(entidad) == 0)
 				{
 					return true;
@@ -1,13 +1,9 @@
 package sg.edu.nus.wing.qanus.mitic.ibp;
 
-import java.io.File;
-
 import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseBuilder;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
 import sg.edu.nus.wing.qanus.framework.ibp.FrameworkController;
-import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
-import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
 
 
 /**
@@ -25,6 +21,21 @@ import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
  */
 public class Controller extends FrameworkController {
 
+
+	public Controller() {
+
+		super();
+
+		// Options controlling how the Lucene index is written, mostly useful for bulk loads
+		AddOptionWithRequiredArgument("commitdocs", "Commit the index after this many documents (default 1, 0 to only commit at the end)", Integer.class);
+		AddOptionWithRequiredArgument("commitsecs", "Commit the index after this many seconds (default 0, disabled)", Integer.class);
+		AddOptionWithRequiredArgument("rambuffer", "Size in MB of the RAM buffer used by Lucene before flushing to disk", Double.class);
+		AddOptionWithRequiredArgument("mergefactor", "Number of index segments Lucene merges at once", Integer.class);
+		AddOptionWithRequiredArgument("optimize", "Optimize the index once it is built (true/false, default false)", Boolean.class);
+
+	}
+
+
 	/**
 	 * First customisable part of the controller.
 	 * Prepares and returns the XML handler to be used by the StageEngine for this Controller.
@@ -48,22 +59,17 @@ public class Controller extends FrameworkController {
 	/**
 	 * Second customisable part of the controller.
 	 * Prepares and returns the modules to be invoked by the StageEngine.
-	 * For this StageEngine -- knowledge base building -- the modules would be
-	 * the text processors such as named entity recognisers which can be
-	 * used to pre-process the corpus text
 	 *
-	 * @return array of modules to be invoked.
+	 * The text modules available are English models, and the StageEngine only annotates
+	 * the <TEXT> sentences of AQUAINT2 documents, while this corpus keeps its text within
+	 * <ART> fields. So there is nothing to annotate, and --annotate is rejected.
+	 *
+	 * @return null, as this corpus cannot be annotated.
 	 */
 	@Override
 	public IRegisterableModule[] GetModulesForStageEngine() {
 
-		IRegisterableModule[] l_Array = new IRegisterableModule[2];
-		
-		l_Array[0] = new StanfordPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");		  
-    l_Array[1] = new StanfordNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
-		//l_Array[1] = new StanfordNERWebService(); // "lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz"
-
-		return l_Array;
+		return null;
 
 	} // end GetModulesForStageEngine()
 
@@ -78,6 +84,20 @@ public class Controller extends FrameworkController {
 	public IInformationBaseBuilder GetInformationBaseBuilder() {
 		
 		InformationBaseWithLucene l_KBB = new InformationBaseWithLucene(GetTargetFile());
+
+		// Apply the index writing settings given on the command line
+		Integer l_CommitDocs = (Integer) GetOptionArgument("commitdocs");
+		Integer l_CommitSecs = (Integer) GetOptionArgument("commitsecs");
+		if (l_CommitDocs != null || l_CommitSecs != null) {
+			l_KBB.SetCommitInterval(l_CommitDocs == null ? 0 : l_CommitDocs, l_CommitSecs == null ? 0 : l_CommitSecs);
+		}
+		Double l_RAMBuffer = (Double) GetOptionArgument("rambuffer");
+		if (l_RAMBuffer != null) l_KBB.SetRAMBufferSizeMB(l_RAMBuffer);
+		Integer l_MergeFactor = (Integer) GetOptionArgument("mergefactor");
+		if (l_MergeFactor != null) l_KBB.SetMergeFactor(l_MergeFactor);
+		Boolean l_Optimize = (Boolean) GetOptionArgument("optimize");
+		if (l_Optimize != null) l_KBB.SetOptimizeWhenFinished(l_Optimize);
+
 		return l_KBB;
 
 	} // end GetInformationBaseBuilder()
@@ -22,7 +22,9 @@ import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.ScoreDoc;
 
+import sg.edu.nus.wing.qanus.mitic.ar.FieldStatistics;
 import sg.edu.nus.wing.qanus.mitic.ar.LuceneInformationBaseQuerier;
+import sg.edu.nus.wing.qanus.mitic.ar.ValueTokenIndex;
 
 import sg.edu.nus.wing.qanus.mitic.ar.featurescoring.*;
 
@@ -39,20 +41,17 @@ public class LuceneQuerier
    */
   public final int RESULTS_TO_RETRIEVE = 2000000; // was 100
   public LuceneInformationBaseQuerier m_InformationBase;
-  public IndexSearcher searcher;
   
   public LuceneQuerier(String folder)
   {
      File a_IBFolder = new File(folder+"/Lucene-Index"); 
      m_InformationBase = new LuceneInformationBaseQuerier(a_IBFolder, RESULTS_TO_RETRIEVE);
-     searcher = m_InformationBase.m_Searcher;     
   }
   
   public LuceneQuerier(String name, boolean new_version)
   {
      File a_IBFolder = new File("lucene-indexes"+File.separator+name+"-index"); 
      m_InformationBase = new LuceneInformationBaseQuerier(a_IBFolder, RESULTS_TO_RETRIEVE);
-     searcher = m_InformationBase.m_Searcher;     
   }
   
   
@@ -115,84 +114,91 @@ public class LuceneQuerier
   }
   
   
+  /**
+   * Ejecuta una query y retorna los k mejores documentos rankeados, sin repetir
+   * valores de los campos de colapso. Solo se juntan los documentos necesarios,
+   * y los valores de los campos se leen del StoredFieldCache sin cargar los documentos.
+   * @param String query: la query a ejecutar
+   * @param int k: cantidad de documentos a retornar
+   * @param String[] collapse_fields: campos cuyos valores no se repiten entre los documentos retornados
+   * @param float min_relative_score: fraccion del mejor score por debajo de la cual se descartan documentos, 0 para no descartar
+   * @return ScoreDoc[], lista de documentos rankeados
+   * @see LuceneInformationBaseQuerier#SearchQuery(String, int, String[], float)
+   */
+  public ScoreDoc[] query(String query, int k, String[] collapse_fields, float min_relative_score)
+  {
+      return m_InformationBase.SearchQuery(query, k, collapse_fields, min_relative_score);
+  }
+  
+  
   public Document retrieveDoc(ScoreDoc doc)
   {
       return m_InformationBase.GetDoc(doc.doc);
   
   }
   
+  /**
+   * Devuelve el searcher del indice tomado por la ultima consulta.
+   * Hay que llamarlo al terminar de usar el querier, despues ya no se pueden recuperar
+   * los documentos de esa consulta.
+   */
+  public void close()
+  {
+      m_InformationBase.Close();
+  }
+  
  /**
   * Muestra todos los valores del campo field_name en el indice 
+  * Los valores se toman del diccionario de terminos del indice si el campo no esta analizado,
+  * y se guardan para la version del indice, ver FieldStatistics.
   * @param field_name String
   * @return String[]
   */
  public String[] allValues(String field_name)
  {
-	Document[] documents = allDocs();
-	LinkedList<String> values = new LinkedList<String>();
- 	String value;
- 	
- 	for(int i = 0; i < documents.length; i++)
- 	{
- 		value = documents[i].get(field_name);
- 		if( ! values.contains(value))
- 			values.add(value);
- 
- 		
- 	}
- 	return values.toArray(new String[0]);
+ 	return valueCounts(field_name).keySet().toArray(new String[0]);
 	 
  }
   
  public LinkedList<String> allValues(String field_name, boolean lk)
  {
-	 	Document[] documents = allDocs();
-	 	LinkedList<String> values = new LinkedList<String>();
-	 	HashMap<String, Integer> map = new HashMap<String, Integer>();
- 	
- 	String value;
- 	
- 	for(int i = 0; i < documents.length; i++)
+ 	return new LinkedList<String>(valueCounts(field_name).keySet());
+	 
+ }
+ 
+ /**
+  * Cantidad de documentos con cada valor del campo field_name en el indice
+  * @param field_name String
+  * @return Map<String, Integer>, valor -> cantidad de documentos, vacio si hay errores
+  * @see FieldStatistics#GetValueCounts(IndexReader, String)
+  */
+ public Map<String, Integer> valueCounts(String field_name)
+ {
+ 	try
  	{
- 		value = documents[i].get(field_name);
- 		if( ! values.contains(value))
- 		{
- 			values.add(value);
- 			map.put(value, 1);
- 		}
- 		else
- 		{
- 			map.put(value, map.get(value) +1);
- 		}
- 		
+ 		return FieldStatistics.GetValueCounts(reader(), field_name);
  	}
- 	
- 	Set set=map.entrySet();
-
- 	Iterator it = set.iterator();
- 	
- 	while(it.hasNext())
+ 	catch (Exception ex)
  	{
-     // key=value separator this by Map.Entry to get key and value
-     Map.Entry m =(Map.Entry)it.next();
-
-     // getKey is used to get key of HashMap
-     String key=(String)m.getKey();
-
-     // getValue is used to get value of key in HashMap
-     value=Integer.toString((Integer)m.getValue());
-
-     //System.out.println("Key :"+key+"  Value: "+ value);
+ 		System.out.println("Excepcion: "+ex);
+ 		return new HashMap<String, Integer>();
  	}
- 	
- 	return values;
-	 
+ }
+ 
+ // Reader del searcher de la ultima query, para que los documentos coincidan con sus resultados
+ // Despues de close() ya no hay searcher hasta la proxima query
+ private IndexReader reader()
+ {
+ 	IndexSearcher searcher = m_InformationBase.m_Searcher;
+ 	if(searcher == null)
+ 		throw new IllegalStateException("El querier esta cerrado, no hay indice abierto");
+ 	return searcher.getIndexReader();
  }
  
   
   public Document[] allDocs()
   {
-     IndexReader reader = searcher.getIndexReader();
+     IndexReader reader = reader();
      //System.out.println(reader.maxDoc());
      LinkedList<Document> res = new LinkedList<Document>();
      
@@ -220,34 +226,33 @@ public class LuceneQuerier
   
   public int statisticTotal()
   {
-	  return allDocs().length;
+	  return reader().numDocs();
   }
   
   public LinkedList<String> fields()
   {
-  	Document[] docs = allDocs();
-		
-		LinkedList<String> field_names = new LinkedList<String>();
-		
-		for(int d = 0; d < docs.length;d++)
-		{
-			List<Field> fields = docs[d].getFields();
-			
-			for(int i = 0; i < fields.size(); i++)
-			{
-				Field field = fields.get(i);
-				String name = field.name();
-				//if(name.compareTo("CONFL") == 0 || name.compareTo("JOURL") == 0 || name.compareTo("COAULINKS") == 0 || name.compareTo("Text") == 0 )continue;
-				
-				if(!field_names.contains(name))field_names.add(name);
-				
-			}
-		}
-			
-		return field_names;
+  	try
+  	{
+  		return new LinkedList<String>(FieldStatistics.GetFieldNames(reader()));
+  	}
+  	catch (Exception ex)
+  	{
+  		System.out.println("Excepcion: "+ex);
+  		return new LinkedList<String>();
+  	}
 		
   }
   
+  /**
+   * Campos cuyos valores contienen los terminos de search_str (cobertura 1 segun FeatureSearchTermCoverage).
+   * Los campos que no tienen los terminos se descartan con el ValueTokenIndex, construido en la etapa IBP,
+   * sin recorrer los valores de los campos.
+   * @param String search_str: terminos a buscar
+   * @param Document doc: documento donde buscar, o null para buscar en todo el indice
+   * @param boolean split_search_str: buscar cada termino por separado, o todos juntos en un mismo valor
+   * @param String match_field_str: campo donde buscar, o null para buscar en todos
+   * @return String[], los campos que coinciden, o los terminos que coinciden si match_field_str no es null
+   */
   public String[] bestRankedFields(String search_str, Document doc, boolean split_search_str, String match_field_str)
   {
   	LinkedList<String> fields = fields();
@@ -256,30 +261,9 @@ public class LuceneQuerier
   	
   	LinkedList<String> matched_strs = new LinkedList<String>();
   	
-  	String field, value;
-  	
-  	
-  	String[] values;
+  	String field;
   	
-  	double[] coverages = new double[fields.size()];
-  	double coverage;
-  	
-  	double[] proxs = new double[fields.size()];
-  	double prox;
-  	
-  	double[] freqs = new double[fields.size()];
-  	double freq;
-  	
-  	double[] spans = new double[fields.size()];
-  	double span;
-  	  	
-  	
-  	FeatureSearchTermCoverage featureCoverage = new FeatureSearchTermCoverage();
-  	FeatureSearchTermProximity featureProximity = new FeatureSearchTermProximity();
-  	FeatureSearchTermFrequency featureFrequency = new FeatureSearchTermFrequency();
-  	FeatureSearchTermSpan featureSpan = new FeatureSearchTermSpan();
-
-  	String[] feature_param = new String[1];
+  	ValueTokenIndex index = valueIndex();
   	
   	String[] search_strs;
   	
@@ -299,8 +283,6 @@ public class LuceneQuerier
   		
   	for(int s = 0; s < search_strs.length; s++)
   	{
-  		feature_param[0] = search_strs[s];
-  		    	
     	for(int i = 0; i < fields.size(); i++)
     	{
     		field =fields.get(i);
@@ -309,45 +291,9 @@ public class LuceneQuerier
     		{
     			continue;
     		}
-    		//System.out.println("Field: "+field);
-    		coverages[i] = 0.0;
-    		freqs[i] = 0.0;
-    		proxs[i] = 0.0;
-    		spans[i] = 0.0;
-    		
-    		if(doc == null)
-    		{
-    			values = allValues(field);	
-    		}
-    		else
-    		{
-    			
-    			values = new String[1];
-    			values[0] = doc.get(field);
-    		}
     		
-    		for(int j = 0; j < values.length; j++)
+    		if(fieldMatches(index, field, search_strs[s], doc))
     		{
-      		coverage = featureCoverage.GetScore(feature_param, values[j]);
-      		freq = featureCoverage.GetScore(feature_param, values[j]);
-      		prox = featureCoverage.GetScore(feature_param, values[j]);
-      		span = featureCoverage.GetScore(feature_param, values[j]);
-      		
-      		if(coverage == 1.0)coverages[i] = 1.0;
-      		if(freq == 1.0)freqs[i] = 1.0;
-      		if(prox == 1.0)proxs[i] = 1.0;
-      		if(span == 1.0)spans[i] = 1.0;
-    		
-    		}
-    		
-    		if(coverages[i] > 0.0 || freqs[i] > 0.0 || proxs[i] > 0.0 || spans[i] > 0.0)
-    		{
-    			/*System.out.println(field+"  "+(coverages[i] > 0.0? "Cov": "" )+" "+
-    																		(freqs[i] > 0.0? "Frq": "" )+" "+
-    																		(proxs[i] > 0.0? "Prx": "" )+" "+
-    																		(spans[i] > 0.0? "Spn": "" )+" ");
-    																		*/
-    			
     			if(match_field_str != null && field.compareTo(match_field_str) == 0 && !matched_strs.contains(search_strs[s]))matched_strs.add(search_strs[s]);
     			if(!res.contains(field)) res.add(field);
     		}
@@ -375,20 +321,64 @@ public class LuceneQuerier
   	
   }
   
-  public Document getDocumentById(String id)
+  /**
+   * Indica si algun valor del campo field contiene todos los terminos de search_str, en el documento doc,
+   * o en cualquier documento del indice si doc es null.
+   * Con el indice de palabras basta una busqueda; sin el se recorren todos los valores del campo.
+   */
+  private boolean fieldMatches(ValueTokenIndex index, String field, String search_str, Document doc)
   {
-  	Document[] allDocs = allDocs();
+  	FeatureSearchTermCoverage featureCoverage = new FeatureSearchTermCoverage();
+  	String[] feature_param = { search_str };
+  	
+  	if(index != null && !index.FieldContainsEachWord(field, search_str)) return false;
+  	
+  	if(doc != null) return featureCoverage.GetScore(feature_param, doc.get(field)) == 1.0;
   	
-  	for(Document doc: allDocs)
+  	if(index != null) return index.AnyValueContains(field, search_str);
+  	
+  	String[] values = allValues(field);
+  	for(int j = 0; j < values.length; j++)
   	{
-  			String docId = doc.get("DocID");
-  			if(docId.compareToIgnoreCase(id) == 0)
-  			{
-  				return doc;
-  			}
+  		if(featureCoverage.GetScore(feature_param, values[j]) == 1.0) return true;
+  	}
+  	return false;
+  }
+  
+  // Indice de palabras de los valores del reader actual, null si no se puede cargar ni construir
+  private ValueTokenIndex valueIndex()
+  {
+  	try
+  	{
+  		return ValueTokenIndex.Get(reader());
   	}
+  	catch (Exception ex)
+  	{
+  		System.out.println("Excepcion: "+ex);
+  		return null;
+  	}
+  }
+  
+  /**
+   * Busca un documento por su DocID, sin importar mayusculas y minusculas.
+   * El DocID se busca en el diccionario de terminos, sin recorrer los documentos.
+   * @param String id: DocID del documento
+   * @return Document, o null si no existe
+   */
+  public Document getDocumentById(String id)
+  {
+  	return m_InformationBase.GetDocByID(id);
   	
-  	return null;
+  }
+  
+  /**
+   * Busca varios documentos por su DocID, ver getDocumentById
+   * @param String[] ids: DocIDs de los documentos
+   * @return Document[], en el mismo orden que los DocIDs, con null para los que no existen
+   */
+  public Document[] getDocumentsByIds(String[] ids)
+  {
+  	return m_InformationBase.GetDocsByIDs(ids);
   	
   }
   
@@ -449,6 +439,7 @@ public class LuceneQuerier
     	}
     	
     }
+    lq.close();
     
     /*if(args.length == 0)
     {
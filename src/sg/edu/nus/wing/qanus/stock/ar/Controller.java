@@ -2,12 +2,24 @@ package sg.edu.nus.wing.qanus.stock.ar;
 
 
 
+import java.io.File;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
 import sg.edu.nus.wing.qanus.framework.ar.FrameworkController;
 import sg.edu.nus.wing.qanus.framework.ar.er.ErrorAnalyzer;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
+import sg.edu.nus.wing.qanus.framework.util.IndexSearcherManager;
 import sg.edu.nus.wing.qanus.stock.ar.er.FactoidPipelineErrorAnalyzer;
 import sg.edu.nus.wing.qanus.stock.ar.featurescoring.FeatureScoringStrategy;
+import sg.edu.nus.wing.qanus.textprocessing.CachedTextProcessingModule;
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
+import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
+import sg.edu.nus.wing.qanus.textprocessing.StanfordNERWebService;
+import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
+import sg.edu.nus.wing.qanus.textprocessing.Thesaurus;
 
 
 /**
@@ -26,6 +38,31 @@ import sg.edu.nus.wing.qanus.stock.ar.featurescoring.FeatureScoringStrategy;
 public class Controller extends FrameworkController {
 
 
+	// Number of sentences in each call to the named entity recognition web service,
+	// and the time to wait for each call in milliseconds
+	private static final int NER_SERVICE_BATCH_SIZE = 20;
+	private static final long NER_SERVICE_CALL_TIMEOUT = 10000;
+
+	private static final String POS_MODEL = "lib" + File.separator + "bidirectional-wsj-0-18.tagger";
+	private static final String NER_MODEL = "lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz";
+
+	// Annotation modules which keep their results across runs, shared by the strategy modules
+	// of all worker threads. null if no folder is given to keep the annotations in.
+	private CachedTextProcessingModule m_CachedPOS = null;
+	private CachedTextProcessingModule m_CachedNER = null;
+
+	// Whether the warm-up queries have been given to the index
+	private boolean m_IndexWarmUpSet = false;
+
+	// Named entity recognition web service, shared by the strategy modules of all worker threads.
+	// null if no web service is given.
+	private StanfordNERWebService m_NERService = null;
+
+	// Thesaurus to expand queries with, shared by the strategy modules of all worker threads.
+	// null if neither a thesaurus dump nor a file to save replies of the online thesaurus to is given.
+	private Thesaurus m_Thesaurus = null;
+
+
 	// For the ar.FrameworkController
 	// Notes:
 	/*
@@ -68,9 +105,43 @@ public class Controller extends FrameworkController {
 	public IRegisterableModule[] GetModulesForStageEngine() {
 
 		//BasicIRBasedStrategyUsingWebAsCorpus l_Module = new BasicIRBasedStrategyUsingWebAsCorpus();
+
+		// The index is opened once and shared by the strategy modules of all worker threads,
+		// so set up its warm-up before the first strategy module opens it
+		if (GetWarmUpQueriesFile() != null) {
+			if (!SetUpIndexWarmUp()) return null;
+		}
 		
 		// Use the feature scoring strategy, initialised to the provided knowledge base
 		FeatureScoringStrategy l_Module = new FeatureScoringStrategy(GetSourceFile1());
+
+		// The strategy modules of all worker threads share the models from the ModelRegistry,
+		// so the pools of taggers and recognisers are shared too.
+		// The registry logs the models which cannot be loaded
+		if (GetNumberOfTaggers() > 1) {
+			StanfordPOSTagger l_ModulePOS = ModelRegistry.GetPOSTagger(POS_MODEL);
+			if (l_ModulePOS == null) return null;
+			l_ModulePOS.SetPoolSize(GetNumberOfTaggers());
+		}
+		if (GetNERServiceURL() != null) {
+			// The named entity recogniser is only loaded if the web service fails
+			SetUpNERService();
+		} else if (GetNumberOfRecognisers() > 1 || GetMaxNERSentenceLength() > 0) {
+			StanfordNER l_ModuleNER = ModelRegistry.GetNER(NER_MODEL);
+			if (l_ModuleNER == null) return null;
+			l_ModuleNER.SetPoolSize(GetNumberOfRecognisers());
+			l_ModuleNER.SetMaxSentenceLength(GetMaxNERSentenceLength());
+		}
+		if (GetAnnotationCacheFolder() != null) {
+			if (!SetUpAnnotationCaches()) return null;
+			l_Module.SetAnnotationModules(m_CachedPOS, m_CachedNER);
+		} else if (m_NERService != null) {
+			l_Module.SetAnnotationModules(null, m_NERService);
+		}
+		if (GetThesaurusFile() != null || GetThesaurusCacheFile() != null) {
+			if (!SetUpThesaurus()) return null;
+			l_Module.SetThesaurus(m_Thesaurus);
+		}
 		
 		IRegisterableModule[] l_Array = new IRegisterableModule[1];
 		l_Array[0] = l_Module;
@@ -80,6 +151,136 @@ public class Controller extends FrameworkController {
 	} // end GetModulesForStageEngine()
 
 
+	/**
+	 * Wraps the POS tagger and named entity recogniser so that their annotations are kept
+	 * in the folder given on the command line. This is only done once, for all worker threads.
+	 *
+	 * @return true if the annotation modules are ready, false on errors
+	 */
+	private synchronized boolean SetUpAnnotationCaches() {
+
+		if (m_CachedPOS != null) return true;
+
+		// The registry logs the models which cannot be loaded
+		StanfordPOSTagger l_ModulePOS = ModelRegistry.GetPOSTagger(POS_MODEL);
+		StanfordNER l_ModuleNER = (m_NERService == null) ? ModelRegistry.GetNER(NER_MODEL) : null;
+		if (l_ModulePOS == null || (m_NERService == null && l_ModuleNER == null)) return false;
+
+		// The web service need not run the same model as the local recogniser, so its annotations
+		// are kept apart from those of the model, in a file of their own and keyed on its URL
+		try {
+			if (m_NERService != null) {
+				m_CachedNER = CachedTextProcessingModule.Open(m_NERService, GetNERServiceURL(), GetAnnotationCacheFolder());
+			} else {
+				m_CachedNER = CachedTextProcessingModule.Open(l_ModuleNER, new File(NER_MODEL).getName(), GetAnnotationCacheFolder());
+			}
+			m_CachedPOS = CachedTextProcessingModule.Open(l_ModulePOS, new File(POS_MODEL).getName(), GetAnnotationCacheFolder());
+		} catch (Exception e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "SetUpAnnotationCaches", "Unable to set up annotation cache", e);
+			if (m_CachedNER != null) {
+				m_CachedNER.CloseCache();
+				m_CachedNER = null;
+			}
+			return false;
+		}
+
+		return true;
+
+	} // end SetUpAnnotationCaches()
+
+
+	/**
+	 * Has the information base index warmed with the queries given on the command line,
+	 * whenever it is opened or reopened. This is only done once, for all worker threads.
+	 *
+	 * @return true if the queries are read in, false on errors
+	 */
+	private synchronized boolean SetUpIndexWarmUp() {
+
+		if (m_IndexWarmUpSet) return true;
+
+		try {
+			IndexSearcherManager.Get(GetSourceFile1()).SetWarmUpQueries("Text", GetWarmUpQueriesFile());
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "SetUpIndexWarmUp", "Unable to read warm-up queries", e);
+			return false;
+		}
+		m_IndexWarmUpSet = true;
+
+		return true;
+
+	} // end SetUpIndexWarmUp()
+
+
+	/**
+	 * Sets up the named entity recognition web service given on the command line.
+	 * Sentences are sent in batches, with as many calls at once as there are recognisers,
+	 * and the local named entity recogniser takes over when the web service fails.
+	 * This is only done once, for all worker threads.
+	 */
+	private synchronized void SetUpNERService() {
+
+		if (m_NERService != null) return;
+
+		StanfordNERWebService l_Service = new StanfordNERWebService(GetNERServiceURL());
+		l_Service.SetBatchSize(NER_SERVICE_BATCH_SIZE);
+		l_Service.SetMaxRequestsInFlight(GetNumberOfRecognisers());
+		l_Service.SetCallTimeout(NER_SERVICE_CALL_TIMEOUT);
+		l_Service.SetFallback(NER_MODEL);
+		m_NERService = l_Service;
+
+	} // end SetUpNERService()
+
+
+	/**
+	 * Loads the thesaurus given on the command line. The thesaurus dump is looked up locally,
+	 * and the online thesaurus is used for words not in it if a file to save its replies to
+	 * is given. This is only done once, for all worker threads.
+	 *
+	 * @return true if the thesaurus is ready, false on errors
+	 */
+	private synchronized boolean SetUpThesaurus() {
+
+		if (m_Thesaurus != null) return true;
+
+		try {
+			Thesaurus l_Thesaurus = (GetThesaurusFile() == null) ? new Thesaurus() : new Thesaurus(GetThesaurusFile());
+			if (GetThesaurusCacheFile() != null) {
+				l_Thesaurus.SetHTTPFallback(GetThesaurusCacheFile());
+			}
+			m_Thesaurus = l_Thesaurus;
+		} catch (Exception e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "SetUpThesaurus", "Unable to load thesaurus", e);
+			return false;
+		}
+
+		return true;
+
+	} // end SetUpThesaurus()
+
+
+	/**
+	 * Runs answer retrieval, then closes the annotation caches, if they are used, which
+	 * reports how often annotations were found in them.
+	 *
+	 * @param args
+	 * @return true on successful execution, false on any errors.
+	 */
+	@Override
+	protected boolean Entry(String[] args) {
+
+		boolean l_Result = super.Entry(args);
+
+		CachedTextProcessingModule[] l_Caches = { m_CachedPOS, m_CachedNER };
+		for (CachedTextProcessingModule l_Cache : l_Caches) {
+			if (l_Cache != null) l_Cache.CloseCache();
+		}
+
+		return l_Result;
+
+	} // end Entry()
+
+
 	/**
 	 * Overrides implementation in parent class to provide an error analyzer so that
 	 * error analysis can be carried out
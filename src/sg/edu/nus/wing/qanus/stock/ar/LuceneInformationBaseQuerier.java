@@ -16,19 +16,29 @@ import org.apache.lucene.search.ScoreDoc;
 import org.apache.lucene.search.TopDocs;
 
 import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseQuerier;
+import sg.edu.nus.wing.qanus.framework.util.IndexSearcherManager;
 
 
 /**
  * Front-end to a information base implemented with a Lucene index.
  *
+ * The index is opened once for the whole process by an IndexSearcherManager, so
+ * creating a querier is cheap. Each search picks up the latest searcher of the manager,
+ * and GetDoc() retrieves documents from the searcher of the last search, so that the
+ * document IDs returned by a search stay valid until the next search. Whoever creates
+ * the querier has to call Close() once done with it, so that the searcher can be released.
+ *
  *
  * @author NG, Jun Ping -- junping@comp.nus.edu.sg
  * @version v18Jan2010
  */
 public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 
-	// The searcher through the Lucene index
-	private IndexSearcher m_Searcher;
+	// Hands out searchers through the Lucene index
+	private IndexSearcherManager m_Manager;
+
+	// The searcher through the Lucene index, used for the last search
+	private IndexSearcher m_Searcher = null;
 
 	// The default no. of results to retrieve each time
 	private int m_DefaultNumResults;
@@ -41,14 +51,44 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 
 		m_DefaultNumResults = a_DefaultNumResults;
 
+		// The index is shared with every other querier of the same folder
+		m_Manager = IndexSearcherManager.Get(a_KBFolder);
+		RefreshSearcher();
+
+	} // end constructor
+
+
+	/**
+	 * Picks up the latest searcher of the index, handing back the one used so far.
+	 *
+	 * @return true if there is a searcher, false if the index cannot be opened
+	 */
+	private boolean RefreshSearcher() {
+
 		try {
-			// Build an IndexSearcher using the in-memory index
-			m_Searcher = new IndexSearcher(a_KBFolder.getAbsolutePath());
-		} catch (Exception e) {
-			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "Constructor", "Unable to initialise Lucene index searcher.", e);
+			IndexSearcher l_Searcher = m_Manager.Acquire();
+			m_Manager.Release(m_Searcher);
+			m_Searcher = l_Searcher;
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, LuceneInformationBaseQuerier.class.getName(), "RefreshSearcher", "Unable to initialise Lucene index searcher.", e);
 		}
 
-	} // end constructor
+		return (m_Searcher != null);
+
+	} // end RefreshSearcher()
+
+
+	/**
+	 * Hands back the searcher used by this querier. The querier cannot retrieve
+	 * documents after this, until its next search.
+	 */
+	public void Close() {
+
+		m_Manager.Release(m_Searcher);
+		m_Searcher = null;
+
+	} // end Close()
+
 
 	/**
 	 * Takes a search string and retrieve relevant source documents from KB
@@ -64,6 +104,9 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 		// Build a Query object
 		QueryParser l_QP = new QueryParser("Text", new StandardAnalyzer());
 		Query l_ParsedQuery = null;
+		if (!RefreshSearcher()) {
+			return null;
+		}
 		try {
 			
 			// Search for the l_ParsedQuery
@@ -90,6 +133,10 @@ public class LuceneInformationBaseQuerier implements IInformationBaseQuerier {
 	 */
 	public Document GetDoc(int a_ID) {
 
+		if (m_Searcher == null) {
+			return null;
+		}
+
 		try {
 			return m_Searcher.doc(a_ID);
 		} catch (CorruptIndexException ex) {
@@ -2,6 +2,7 @@ package sg.edu.nus.wing.qanus.stock.ar.featurescoring;
 
 
 import java.io.File;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.StringTokenizer;
@@ -16,12 +17,13 @@ import org.apache.lucene.search.ScoreDoc;
 import sg.edu.nus.wing.qanus.framework.commons.DataItem;
 import sg.edu.nus.wing.qanus.framework.commons.IAnalyzable;
 import sg.edu.nus.wing.qanus.framework.commons.IStrategyModule;
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 import sg.edu.nus.wing.qanus.stock.ar.AnswerCandidate;
 import sg.edu.nus.wing.qanus.stock.ar.FreebaseQuerier;
 import sg.edu.nus.wing.qanus.stock.ar.LuceneInformationBaseQuerier;
-import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
-import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
 import sg.edu.nus.wing.qanus.textprocessing.StopWordsFilter;
+import sg.edu.nus.wing.qanus.textprocessing.Thesaurus;
 import sg.yeefan.searchenginewrapper.SearchEngineClient;
 import sg.yeefan.searchenginewrapper.SearchEngineException;
 import sg.yeefan.searchenginewrapper.SearchEngineResults;
@@ -82,10 +84,16 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 	// The Lucene engine
 	private LuceneInformationBaseQuerier m_InformationBase;
 
-	// Temporary annotation modules
-	// While we are still building this into our Lucene index
-	private StanfordPOSTagger m_ModulePOS;
-	private StanfordNER m_ModuleNER; // TODO remove after the information is included into Lucene index
+	// Annotation modules, for passages that do not have annotations stored in the Lucene index.
+	// These are only loaded when first needed, see GetAnnotationModule().
+	private ITextProcessingModule m_ModulePOS = null;
+	private ITextProcessingModule m_ModuleNER = null;
+
+	// Used to expand queries with related words, see SetThesaurus(). Not used if null.
+	private Thesaurus m_Thesaurus = null;
+
+	// Maximum number of related words added to a query for each term
+	private final int MAX_RELATED_WORDS = 5;
 	//private StanfordNERWebService m_ModuleNER; // TODO remove after the information is included into Lucene index
 
 	// Used to query Freebase to make sure some answers are "sane".
@@ -106,11 +114,6 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		// Initialise required components
 		m_InformationBase = new LuceneInformationBaseQuerier(a_IBFolder, RESULTS_TO_RETRIEVE);
 
-		// Processing modules
-		m_ModulePOS = new StanfordPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
-		m_ModuleNER = new StanfordNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
-		//m_ModuleNER = new StanfordNERWebService();
-
 		// Validation modules
 		m_FBQ = new FreebaseQuerier("choppingboard" + File.separator + "temp" + File.separator + "freebase-cache");
 
@@ -120,6 +123,14 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		return "FeatureScoringStrategy";
 	}
 
+
+	/**
+	 * Closes the searcher over the information base.
+	 */
+	public void Close() {
+		m_InformationBase.Close();
+	} // end Close()
+
 	
 	public DataItem GetAnalysisInfoForQuestion(DataItem a_QuestionItem) {
 		return GetAnswerForQuestion(a_QuestionItem, true);
@@ -207,6 +218,10 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 
 				
 
+		// Annotations of the retrieved passages which are stored in the Lucene index, keyed by passage
+		HashMap<String, String> l_StoredPOS = new HashMap<String, String>();
+		HashMap<String, String> l_StoredNER = new HashMap<String, String>();
+
 		// Perform search and process results for answers
 		try {
 
@@ -223,6 +238,8 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 				Document l_Doc = m_InformationBase.GetDoc(l_ScoreDoc.doc);
 				String[] l_ArrText = l_Doc.getValues("Text");
 				String l_Headline = l_Doc.get("Headline");
+				CollectStoredAnnotations(l_ArrText, l_Doc.getValues("Text-POS"), l_StoredPOS);
+				CollectStoredAnnotations(l_ArrText, l_Doc.getValues("Text-NER"), l_StoredNER);
 
 
 				// Treat each sentence within every document as a 'passage'
@@ -257,10 +274,9 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 			
 
 			// Get POS annotations for ranked sentences
-			// This is currently being built into the Lucene index. It will take some time. Once
-			// this is done we can just retrieve the annotations from Lucene - cutting down on
-			// run-time computation requirements.
-			String[] l_POSTaggedBestSentence = m_ModulePOS.ProcessText(l_BestSentence);
+			// These are taken from the Lucene index if the information base was built with
+			// annotations, and only computed here otherwise.
+			String[] l_POSTaggedBestSentence = AnnotateSentences(l_BestSentence, l_StoredPOS, "POS");
 
 
 			// Variable used to hold the extracted answer (eventually) and the passage from which
@@ -516,7 +532,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 				}
 
 				// Extract proper nouns from all ranked sentences
-				LinkedList<AnswerCandidate> l_CandidateAnswers = GetProperNounsOfPersons(l_BestSentence, l_POSTaggedBestSentence);
+				LinkedList<AnswerCandidate> l_CandidateAnswers = GetProperNounsOfPersons(l_BestSentence, l_POSTaggedBestSentence, l_StoredNER);
 
 				// Choose the highest scoring candidate from all the candidates
 				double l_BestScore = Double.NEGATIVE_INFINITY;
@@ -544,7 +560,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 					// That is how near the query appears to the candidate answer in the source passage
 					String[] l_StopWordsFileNames = new String[1];
 					l_StopWordsFileNames[0] = "lib" + File.separator + "common-english-words.txt";
-					StopWordsFilter l_StopWords = new StopWordsFilter(l_StopWordsFileNames);
+					StopWordsFilter l_StopWords = StopWordsFilter.GetFilter(l_StopWordsFileNames);
 					String[] l_StopWordsProcessArr = { l_Query };
 					String l_CleanedQuery = l_StopWords.ProcessText(l_StopWordsProcessArr)[0];
 					String[] l_ProximityStrings = {l_CleanedQuery, l_CandidateAnswerString};
@@ -692,7 +708,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 
 				// Attempt to find strings tagged as LOCATION by the NER
 				Pattern l_Pattern = Pattern.compile("(([A-Za-z\\.,]+)/LOCATION)( ([A-Za-z\\.,]+)/LOCATION)*");
-				String[] l_CandidateSentences = m_ModuleNER.ProcessText(l_BestSentence);
+				String[] l_CandidateSentences = AnnotateSentences(l_BestSentence, l_StoredNER, "NER");
 				LinkedList<String> l_Candidates = new LinkedList<String>();
 				LinkedList<String> l_OriginalAnswerStrings = new LinkedList<String>();
 				for (String l_CandidateSentence : l_CandidateSentences) {
@@ -1391,6 +1407,9 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 	 * and stop words are removed.
 	 * Stemming is not done because porter's algo does not seem to do a very good job.
 	 *
+	 * If a thesaurus is set with SetThesaurus(), the NN, VB and JJ terms are followed
+	 * by their related words.
+	 *
 	 * @param a_Target [in] string containing information about the target of the question
 	 * @param a_Question [in] string containing the question, can include POS annotations.
 	 * @return string containing query formed from the question.
@@ -1403,7 +1422,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		// Used to remove stop words and stem the query
 		String[] l_StopWordsFileNames = new String[1];
 		l_StopWordsFileNames[0] = "lib" + File.separator + "common-english-words.txt";
-		StopWordsFilter l_StopWords = new StopWordsFilter(l_StopWordsFileNames);
+		StopWordsFilter l_StopWords = StopWordsFilter.GetFilter(l_StopWordsFileNames);
 
 		// Build seach terms dynamically, incorporating relevant information where possible
 		// We ensure that the query does not has repeated words by using a LinkedList to collect the hash terms first
@@ -1423,12 +1442,6 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 		// Use POS if available
 		if (a_Question.length() > 0) {
 
-			// Used to look up synonyms and related words
-			// Commented out because it doesn't seem useful
-			// But keeping the code around just in case it turns out to be useful
-			// subsequently
-			//Thesaurus l_Thesaurus = new Thesaurus();
-
 			// Process every token in question
 			StringTokenizer l_POSST = new StringTokenizer(a_Question);
 			while (l_POSST.hasMoreTokens()) {
@@ -1443,19 +1456,8 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 							String l_Term = StripXMLChar(l_POSEntity.substring(0, l_DelimPos));
 							if (!l_UsedTerms.contains(l_Term)) {
 
-								/* Unused, thesaurus look up
-								String[] l_QueryWords = { l_Term };
-								String[] l_RelatedWords = l_Thesaurus.ProcessText(l_QueryWords);
-								String l_Expanded = "";
-								for (String l_RelatedWord : l_RelatedWords) {
-								if (l_RelatedWord == null) continue;
-								if (l_StopWords.IsStopWord(l_RelatedWord)) continue;
-								if (l_Expanded.length() > 0) l_Expanded += " ";
-								l_Expanded += l_RelatedWord;
-								}
-								l_Query = UpdateQuery(l_UsedTerms, l_Expanded, l_Query);
-								 */
 								l_Query = UpdateQuery(l_UsedTerms, l_Term, l_Query);
+								l_Query = AddRelatedWords(l_UsedTerms, l_Term, l_StopWords, l_Query);
 
 							}
 
@@ -1465,19 +1467,8 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 							String l_Term = StripXMLChar(l_POSEntity.substring(0, l_DelimPos));
 							if (!l_UsedTerms.contains(l_Term)) {
 
-								/* Unused thesaurus look up
-								String[] l_QueryWords = { l_Term };
-								String[] l_RelatedWords = l_Thesaurus.ProcessText(l_QueryWords);
-								String l_Expanded = "";
-								for (String l_RelatedWord : l_RelatedWords) {
-								if (l_RelatedWord == null) continue;
-								if (l_StopWords.IsStopWord(l_RelatedWord)) continue;
-								if (l_Expanded.length() > 0) l_Expanded += " ";
-								l_Expanded += l_RelatedWord;
-								}
-								l_Query = UpdateQuery(l_UsedTerms, l_Expanded, l_Query);
-								 */
 								l_Query = UpdateQuery(l_UsedTerms, l_Term, l_Query);
+								l_Query = AddRelatedWords(l_UsedTerms, l_Term, l_StopWords, l_Query);
 
 							}
 						}
@@ -1486,19 +1477,8 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 							String l_Term = StripXMLChar(l_POSEntity.substring(0, l_DelimPos));
 							if (!l_UsedTerms.contains(l_Term)) {
 
-								/* Unused, thesaurus look up
-								String[] l_QueryWords = { l_Term };
-								String[] l_RelatedWords = l_Thesaurus.ProcessText(l_QueryWords);
-								String l_Expanded = "";
-								for (String l_RelatedWord : l_RelatedWords) {
-								if (l_RelatedWord == null) continue;
-								if (l_StopWords.IsStopWord(l_RelatedWord)) continue;
-								if (l_Expanded.length() > 0) l_Expanded += " ";
-								l_Expanded += l_RelatedWord;
-								}
-								l_Query = UpdateQuery(l_UsedTerms, l_Expanded, l_Query);
-								 */
 								l_Query = UpdateQuery(l_UsedTerms, l_Term, l_Query);
+								l_Query = AddRelatedWords(l_UsedTerms, l_Term, l_StopWords, l_Query);
 
 							}
 
@@ -1669,6 +1649,40 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 	} // end UpdateQuery()
 
 
+	/**
+	 * Adds the related words of a term, as found in the thesaurus, to a query.
+	 * Up to MAX_RELATED_WORDS related words are added, leaving out stop words and
+	 * words already in the query. Nothing is added if there is no thesaurus.
+	 *
+	 * @param a_UsedTerms [in] linked list tracking terms that are already used.
+	 * @param a_Term [in] the term to look up
+	 * @param a_StopWords [in] stop words to leave out
+	 * @param a_Query [in] the query to add to
+	 * @return a new query string
+	 */
+	private String AddRelatedWords(LinkedList<String> a_UsedTerms, String a_Term, StopWordsFilter a_StopWords, String a_Query) {
+
+		if (m_Thesaurus == null) return a_Query;
+
+		String[] l_QueryWords = { a_Term };
+		String[] l_RelatedWords = m_Thesaurus.ProcessText(l_QueryWords);
+		if (l_RelatedWords == null) return a_Query;
+
+		int l_Added = 0;
+		for (String l_RelatedWord : l_RelatedWords) {
+			if (l_Added == MAX_RELATED_WORDS) break;
+			if (l_RelatedWord == null) continue;
+			if (a_StopWords.IsStopWord(l_RelatedWord)) continue;
+			if (a_UsedTerms.contains(l_RelatedWord)) continue;
+			a_Query = UpdateQuery(a_UsedTerms, l_RelatedWord, a_Query);
+			++l_Added;
+		}
+
+		return a_Query;
+
+	} // end AddRelatedWords()
+
+
 	/**
 	 * Retrieve a list of the proper nouns found within the provided sentences tagged with POS info.
 	 *
@@ -1680,9 +1694,10 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 	 *
 	 * @param a_Sentences [in] provided sentences to extract nouns from
 	 * @param a_POSSentences [in] sentences with POS annotations. Correspond to a_Sentences.
+	 * @param a_StoredNER [in] NER annotations stored in the information base, keyed by sentence
 	 * @return linked list of proper nouns within sentences, arranged in the order they are found, or null on errors
 	 */
-	private LinkedList<AnswerCandidate> GetProperNounsOfPersons(String[] a_Sentences, String[] a_POSSentences) {
+	private LinkedList<AnswerCandidate> GetProperNounsOfPersons(String[] a_Sentences, String[] a_POSSentences, HashMap<String, String> a_StoredNER) {
 
 		if (a_Sentences == null) {
 			return null;
@@ -1690,7 +1705,7 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 
 
 		// Invoke NER
-		String[] l_CandidateSentences = m_ModuleNER.ProcessText(a_Sentences);
+		String[] l_CandidateSentences = AnnotateSentences(a_Sentences, a_StoredNER, "NER");
 
 
 		// Extract candidates
@@ -1715,6 +1730,140 @@ public class FeatureScoringStrategy implements IStrategyModule, IAnalyzable {
 	} // end GetProperNounsOfPersons()
 
 
+	/**
+	 * Records the annotations stored in the Lucene index for the sentences of a document.
+	 * Annotations are only used if they correspond 1-1 with the sentences.
+	 *
+	 * @param a_Sentences [in] sentences of the document
+	 * @param a_Annotated [in] stored annotations of the sentences, can be null
+	 * @param a_Stored [out] map of sentences to their annotations
+	 */
+	private void CollectStoredAnnotations(String[] a_Sentences, String[] a_Annotated, HashMap<String, String> a_Stored) {
+
+		if (a_Sentences == null || a_Annotated == null || a_Annotated.length != a_Sentences.length) return;
+
+		for (int i = 0; i < a_Sentences.length; ++i) {
+			a_Stored.put(a_Sentences[i], a_Annotated[i]);
+		}
+
+	} // end CollectStoredAnnotations()
+
+
+	/**
+	 * Annotates the given sentences, using the annotations stored in the Lucene index where
+	 * available. Only the sentences without stored annotations are passed to the annotation
+	 * module.
+	 *
+	 * @param a_Sentences [in] sentences to annotate
+	 * @param a_Stored [in] stored annotations, keyed by sentence
+	 * @param a_ModuleID [in] ID of the annotation module, "POS" or "NER"
+	 * @return annotated sentences, with a 1-1 correspondence to a_Sentences unless the annotation module fails on some
+	 */
+	private String[] AnnotateSentences(String[] a_Sentences, HashMap<String, String> a_Stored, String a_ModuleID) {
+
+		// Find out which sentences still need to be annotated
+		LinkedList<String> l_Missing = new LinkedList<String>();
+		for (String l_Sentence : a_Sentences) {
+			if (!a_Stored.containsKey(l_Sentence)) {
+				l_Missing.add(l_Sentence);
+			}
+		}
+		if (l_Missing.size() == 0) {
+			String[] l_Results = new String[a_Sentences.length];
+			for (int i = 0; i < a_Sentences.length; ++i) {
+				l_Results[i] = a_Stored.get(a_Sentences[i]);
+			}
+			return l_Results;
+		}
+
+		ITextProcessingModule l_Module = GetAnnotationModule(a_ModuleID);
+		if (l_Module == null) return null;
+		if (l_Missing.size() == a_Sentences.length) {
+			return l_Module.ProcessText(a_Sentences);
+		}
+
+		// Annotate the missing sentences, and merge them with the stored ones
+		String[] l_MissingArr = l_Missing.toArray(new String[0]);
+		String[] l_Annotated = l_Module.ProcessText(l_MissingArr);
+		if (l_Annotated == null || l_Annotated.length != l_MissingArr.length) {
+			// Can't tell which sentences failed, so annotate all of them again
+			return l_Module.ProcessText(a_Sentences);
+		}
+		HashMap<String, String> l_NewlyAnnotated = new HashMap<String, String>();
+		for (int i = 0; i < l_MissingArr.length; ++i) {
+			l_NewlyAnnotated.put(l_MissingArr[i], l_Annotated[i]);
+		}
+		String[] l_Results = new String[a_Sentences.length];
+		for (int i = 0; i < a_Sentences.length; ++i) {
+			String l_Result = a_Stored.get(a_Sentences[i]);
+			l_Results[i] = (l_Result != null) ? l_Result : l_NewlyAnnotated.get(a_Sentences[i]);
+		}
+
+		return l_Results;
+
+	} // end AnnotateSentences()
+
+
+	/**
+	 * Supplies annotation modules which have already been loaded elsewhere, such as
+	 * by the question processing stage, so that they are not loaded again.
+	 * The modules need not be the Stanford ones themselves, they can for instance be
+	 * wrapped in a CachedTextProcessingModule.
+	 * The modules are used by the strategy modules of all worker threads at once, so they
+	 * must allow calls from several threads, as the Stanford modules with their pools do.
+	 * Modules which are not supplied are loaded when first needed.
+	 *
+	 * @param a_ModulePOS [in] POS tagger to use, can be null
+	 * @param a_ModuleNER [in] named entity recogniser to use, can be null
+	 */
+	public void SetAnnotationModules(ITextProcessingModule a_ModulePOS, ITextProcessingModule a_ModuleNER) {
+
+		m_ModulePOS = a_ModulePOS;
+		m_ModuleNER = a_ModuleNER;
+
+	} // end SetAnnotationModules()
+
+
+	/**
+	 * Supplies a thesaurus used to expand queries with the related words of the
+	 * nouns, verbs and adjectives in the question. Queries are not expanded if
+	 * no thesaurus is supplied.
+	 * The thesaurus should be a local one, see Thesaurus(File), as a look up is made
+	 * for each of these words in every question.
+	 *
+	 * @param a_Thesaurus [in] thesaurus to use, can be null to stop expanding queries
+	 */
+	public void SetThesaurus(Thesaurus a_Thesaurus) {
+
+		m_Thesaurus = a_Thesaurus;
+
+	} // end SetThesaurus()
+
+
+	/**
+	 * Retrieves the annotation module with the given ID, loading it if this has not been done.
+	 *
+	 * @param a_ModuleID [in] "POS" or "NER"
+	 * @return the annotation module, or null if its model cannot be loaded
+	 */
+	private ITextProcessingModule GetAnnotationModule(String a_ModuleID) {
+
+		if (a_ModuleID.compareTo("POS") == 0) {
+			if (m_ModulePOS == null) {
+				m_ModulePOS = ModelRegistry.GetPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+			}
+			return m_ModulePOS;
+		} else {
+			if (m_ModuleNER == null) {
+				m_ModuleNER = ModelRegistry.GetNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
+				//m_ModuleNER = new StanfordNERWebService();
+			}
+			return m_ModuleNER;
+		}
+
+	} // end GetAnnotationModule()
+
+
 	/**
 	 * Strips off the punctuation marks behind a string.
 	 * These include
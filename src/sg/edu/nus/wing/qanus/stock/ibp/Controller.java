@@ -6,6 +6,7 @@ import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseBuilder;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
 import sg.edu.nus.wing.qanus.framework.ibp.FrameworkController;
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
 
@@ -25,6 +26,21 @@ import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
  */
 public class Controller extends FrameworkController {
 
+
+	public Controller() {
+
+		super();
+
+		// Options controlling how the Lucene index is written, mostly useful for bulk loads
+		AddOptionWithRequiredArgument("commitdocs", "Commit the index after this many documents (default 1, 0 to only commit at the end)", Integer.class);
+		AddOptionWithRequiredArgument("commitsecs", "Commit the index after this many seconds (default 0, disabled)", Integer.class);
+		AddOptionWithRequiredArgument("rambuffer", "Size in MB of the RAM buffer used by Lucene before flushing to disk", Double.class);
+		AddOptionWithRequiredArgument("mergefactor", "Number of index segments Lucene merges at once", Integer.class);
+		AddOptionWithRequiredArgument("optimize", "Optimize the index once it is built (true/false, default false)", Boolean.class);
+
+	}
+
+
 	/**
 	 * First customisable part of the controller.
 	 * Prepares and returns the XML handler to be used by the StageEngine for this Controller.
@@ -52,15 +68,23 @@ public class Controller extends FrameworkController {
 	 * the text processors such as named entity recognisers which can be
 	 * used to pre-process the corpus text
 	 *
-	 * @return array of modules to be invoked.
+	 * @return array of modules to be invoked, or null if the models cannot be loaded.
 	 */
 	@Override
 	public IRegisterableModule[] GetModulesForStageEngine() {
 
 		IRegisterableModule[] l_Array = new IRegisterableModule[2];
 		
-		l_Array[0] = new StanfordPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");		  
-        l_Array[1] = new StanfordNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
+		// The worker threads share the modules, and annotate with as many copies
+		// of the models at once as asked for. The registry logs the models which cannot be loaded
+		StanfordPOSTagger l_ModulePOS = ModelRegistry.GetPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+		StanfordNER l_ModuleNER = ModelRegistry.GetNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
+		if (l_ModulePOS == null || l_ModuleNER == null) return null;
+		l_ModulePOS.SetPoolSize(GetNumberOfTaggers());
+		l_ModuleNER.SetPoolSize(GetNumberOfRecognisers());
+
+		l_Array[0] = l_ModulePOS;
+		l_Array[1] = l_ModuleNER;
 		//l_Array[1] = new StanfordNERWebService(); // "lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz"
 
 		return l_Array;
@@ -78,6 +102,20 @@ public class Controller extends FrameworkController {
 	public IInformationBaseBuilder GetInformationBaseBuilder() {
 		
 		InformationBaseWithLucene l_KBB = new InformationBaseWithLucene(GetTargetFile());
+
+		// Apply the index writing settings given on the command line
+		Integer l_CommitDocs = (Integer) GetOptionArgument("commitdocs");
+		Integer l_CommitSecs = (Integer) GetOptionArgument("commitsecs");
+		if (l_CommitDocs != null || l_CommitSecs != null) {
+			l_KBB.SetCommitInterval(l_CommitDocs == null ? 0 : l_CommitDocs, l_CommitSecs == null ? 0 : l_CommitSecs);
+		}
+		Double l_RAMBuffer = (Double) GetOptionArgument("rambuffer");
+		if (l_RAMBuffer != null) l_KBB.SetRAMBufferSizeMB(l_RAMBuffer);
+		Integer l_MergeFactor = (Integer) GetOptionArgument("mergefactor");
+		if (l_MergeFactor != null) l_KBB.SetMergeFactor(l_MergeFactor);
+		Boolean l_Optimize = (Boolean) GetOptionArgument("optimize");
+		if (l_Optimize != null) l_KBB.SetOptimizeWhenFinished(l_Optimize);
+
 		return l_KBB;
 
 	} // end GetInformationBaseBuilder()
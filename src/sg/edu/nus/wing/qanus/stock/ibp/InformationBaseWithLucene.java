@@ -22,6 +22,8 @@ import sg.edu.nus.wing.qanus.framework.commons.IInformationBaseBuilder;
 
 /**
  * Implements a Lucene based knowledge base.
+ * Lucene's IndexWriter can be shared between threads, so this builder can be fed
+ * by several corpus parsing threads at once.
  *
  * @author NG, Jun Ping -- junping@comp.nus.edu.sg
  * @version v18Jan2010
@@ -32,6 +34,18 @@ public class InformationBaseWithLucene implements IInformationBaseBuilder {
 	// Lucene components
 	private IndexWriter m_LuceneIW = null;
 
+	// Commit policy. By default every added document is committed straight away.
+	// Bulk loads can raise these so that commits only happen every so often,
+	// with a final commit when building is finished.
+	private int m_CommitEveryDocs = 1; // 0 to never commit based on document count
+	private int m_CommitEverySeconds = 0; // 0 to never commit based on time
+	private boolean m_OptimizeWhenFinished = false;
+
+	// Progress since the last commit, guarded by m_CommitLock
+	private final Object m_CommitLock = new Object();
+	private int m_DocsSinceCommit = 0;
+	private long m_LastCommitTime = System.currentTimeMillis();
+
 
 	
 	/**
@@ -146,6 +160,18 @@ public class InformationBaseWithLucene implements IInformationBaseBuilder {
 			for (String l_Sentence : l_Sentences) {
 				l_LuceneDoc.add(new Field("Text", l_Sentence, Field.Store.YES, Field.Index.ANALYZED));
 			}
+			// Annotations made while building the information base are stored alongside the text,
+			// so that later stages need not run the text modules again. They are kept in the
+			// same order as the "Text" values, e.g. "Text-POS" for the module with ID "POS".
+			for (String l_FieldName : a_Item.GetAllFieldNames()) {
+				if (!l_FieldName.startsWith("TEXT-ANNOTATED-")) continue;
+				String[] l_Annotated = ExtractSentencesIntoArray(a_Item.GetFieldValues(l_FieldName));
+				if (l_Annotated.length != l_Sentences.length) continue;
+				String l_StoredFieldName = "Text-" + l_FieldName.substring("TEXT-ANNOTATED-".length());
+				for (String l_AnnotatedSentence : l_Annotated) {
+					l_LuceneDoc.add(new Field(l_StoredFieldName, l_AnnotatedSentence, Field.Store.YES, Field.Index.NO));
+				}
+			}
 		// 2. Add it to Lucene
 		try {
 			m_LuceneIW.addDocument(l_LuceneDoc);
@@ -156,22 +182,157 @@ public class InformationBaseWithLucene implements IInformationBaseBuilder {
 			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "Notify", "Unable to add to Lucene", e1);
 			return false;
 		}
-		// 3. Commit the add
+		// 3. Commit the add, if due
+		if (!CommitIfDue()) return false;
+
+
+
+		return true;
+			
+	} // end AddToInfoBase()
+	
+
+	/**
+	 * Sets how often added documents are committed to the index.
+	 * A commit is made whenever either of the limits is reached.
+	 *
+	 * @param a_Documents [in] commit after this many documents, 0 to disable
+	 * @param a_Seconds [in] commit after this many seconds since the last commit, 0 to disable
+	 */
+	public void SetCommitInterval(int a_Documents, int a_Seconds) {
+
+		synchronized (m_CommitLock) {
+			m_CommitEveryDocs = a_Documents < 0 ? 0 : a_Documents;
+			m_CommitEverySeconds = a_Seconds < 0 ? 0 : a_Seconds;
+		}
+
+	} // end SetCommitInterval()
+
+
+	/**
+	 * Sets the amount of RAM Lucene may use to buffer added documents before
+	 * flushing them to disk.
+	 *
+	 * @param a_SizeMB [in] size of the buffer in MB
+	 */
+	public void SetRAMBufferSizeMB(double a_SizeMB) {
+
+		if (m_LuceneIW == null) return;
+		try {
+			m_LuceneIW.setRAMBufferSizeMB(a_SizeMB);
+		} catch (IllegalArgumentException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "SetRAMBufferSizeMB", "Invalid RAM buffer size [" + a_SizeMB + "]", e);
+		}
+
+	} // end SetRAMBufferSizeMB()
+
+
+	/**
+	 * Sets the Lucene merge factor, i.e. how many segments are merged at once.
+	 * Higher values make indexing faster, at the cost of more open files.
+	 *
+	 * @param a_MergeFactor [in] merge factor to use, must be at least 2
+	 */
+	public void SetMergeFactor(int a_MergeFactor) {
+
+		if (m_LuceneIW == null) return;
+		try {
+			m_LuceneIW.setMergeFactor(a_MergeFactor);
+		} catch (IllegalArgumentException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "SetMergeFactor", "Invalid merge factor [" + a_MergeFactor + "]", e);
+		}
+
+	} // end SetMergeFactor()
+
+
+	/**
+	 * Sets whether the index is optimized after the final commit.
+	 *
+	 * @param a_Optimize [in] true to optimize the index when building is finished
+	 */
+	public void SetOptimizeWhenFinished(boolean a_Optimize) {
+		m_OptimizeWhenFinished = a_Optimize;
+	} // end SetOptimizeWhenFinished()
+
+
+	/**
+	 * Counts a newly added document, and commits the index if either the document
+	 * or time limit since the last commit has been reached.
+	 *
+	 * @return false if a commit was due and failed, true otherwise
+	 */
+	private boolean CommitIfDue() {
+
+		synchronized (m_CommitLock) {
+			m_DocsSinceCommit++;
+			boolean l_Due = (m_CommitEveryDocs > 0 && m_DocsSinceCommit >= m_CommitEveryDocs)
+				|| (m_CommitEverySeconds > 0 && System.currentTimeMillis() - m_LastCommitTime >= m_CommitEverySeconds * 1000L);
+			if (!l_Due) return true;
+
+			return Commit();
+		}
+
+	} // end CommitIfDue()
+
+
+	/**
+	 * Commits all pending changes to the index.
+	 * Must be called while holding m_CommitLock.
+	 *
+	 * @return true if the commit succeeded, false otherwise
+	 */
+	private boolean Commit() {
+
 		try {
 			m_LuceneIW.commit();
 		} catch (CorruptIndexException e) {
-			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "Notify", "Unable to commit", e);
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "Commit", "Unable to commit", e);
 			return false;
 		} catch (IOException e) {
-			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "Notify", "Unable to commit", e);
+			Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "Commit", "Unable to commit", e);
 			return false;
 		}
 
+		m_DocsSinceCommit = 0;
+		m_LastCommitTime = System.currentTimeMillis();
+		return true;
+
+	} // end Commit()
 
 
+	/**
+	 * @see IInformationBaseBuilder#FinishedBuilding
+	 */
+	public boolean FinishedBuilding() {
+
+		if (m_LuceneIW == null) return false;
+
+		synchronized (m_CommitLock) {
+
+			// Final commit for whatever is still buffered
+			if (!Commit()) return false;
+
+			try {
+				if (m_OptimizeWhenFinished) {
+					Logger.getLogger("QANUS").logp(Level.INFO, InformationBaseWithLucene.class.getName(), "FinishedBuilding", "Optimizing index...");
+					m_LuceneIW.optimize();
+				}
+				m_LuceneIW.close();
+			} catch (CorruptIndexException e) {
+				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "FinishedBuilding", "Unable to close index", e);
+				return false;
+			} catch (IOException e) {
+				Logger.getLogger("QANUS").logp(Level.WARNING, InformationBaseWithLucene.class.getName(), "FinishedBuilding", "Unable to close index", e);
+				return false;
+			}
+			m_LuceneIW = null;
+
+		}
+
 		return true;
-			
-	} // end AddToInfoBase()
-	
+
+	} // end FinishedBuilding()
+
+
 } // end class InformationBaseWithLucene
 
@@ -0,0 +1,313 @@
+package sg.edu.nus.wing.qanus.stock.pipeline;
+
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import sg.edu.nus.wing.qanus.framework.ar.AnswerRetriever;
+import sg.edu.nus.wing.qanus.framework.commons.ControllerForDoubleSourceAndTarget;
+import sg.edu.nus.wing.qanus.framework.commons.DataItemPipe;
+import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
+import sg.edu.nus.wing.qanus.framework.commons.IStrategyModule;
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
+import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
+import sg.edu.nus.wing.qanus.framework.eval.AnswerChecker;
+import sg.edu.nus.wing.qanus.framework.qp.QuestionProcessor;
+import sg.edu.nus.wing.qanus.stock.ar.TREC2007AnnotatedQuestionXMLParser;
+import sg.edu.nus.wing.qanus.stock.ar.featurescoring.FeatureScoringStrategy;
+import sg.edu.nus.wing.qanus.textprocessing.CachedTextProcessingModule;
+import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
+import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
+
+
+/**
+ * Runs the question processing, answer retrieval and evaluation stages one after the
+ * other within the same program, using the stock components of each stage.
+ *
+ * Compared to running the Controller of each stage separately :
+ * - The processed questions are passed straight on to answer retrieval, and the answers
+ *   straight on to evaluation, instead of going through intermediate files.
+ * - The POS tagger and named entity recogniser are loaded once, by question processing,
+ *   and shared with the answer retrieval strategy.
+ * The answers are still saved to the target folder, as is the evaluation.
+ *
+ * The information base must have been built beforehand, with the ibp Controller.
+ */
+public class Controller extends ControllerForDoubleSourceAndTarget {
+
+
+
+	/**
+	 * Constructor
+	 */
+	public Controller() {
+
+		// The command line argument names
+		super("kbsrc", "qnsrc", "anstgt");
+
+		// The command line options expected to use with this Controller
+		AddOptionWithRequiredArgument("kbsrc", "Folder name where knowledge base is found", File.class);
+			MakeOptionCompulsory("kbsrc");
+		AddOptionWithRequiredArgument("qnsrc", "Folder/File name of XML files of questions", File.class);
+			MakeOptionCompulsory("qnsrc");
+		AddOptionWithRequiredArgument("anstgt", "Folder name to store generated answers and evaluation results", File.class);
+			MakeOptionCompulsory("anstgt");
+		AddOptionWithRequiredArgument("correct", "File name of correct answers. No evaluation is done if not provided", File.class);
+		AddOptionWithRequiredArgument("threads", "Number of questions to answer at the same time (default 1)", Integer.class);
+		AddOptionWithRequiredArgument("taggers", "Number of POS taggers to tag sentences with at the same time (default 1). Each tagger loads its own copy of the model", Integer.class);
+		AddOptionWithRequiredArgument("recognisers", "Number of named entity recognisers to tag sentences with at the same time (default 1). Each recogniser loads its own copy of the model", Integer.class);
+		AddOptionWithRequiredArgument("nermaxwords", "Maximum number of words of a sentence to perform named entity recognition on (default no limit)", Integer.class);
+		AddOptionWithRequiredArgument("annotationcache", "Folder name to keep the annotations of passage sentences in across runs. Sentences are annotated afresh every time if not provided", File.class);
+
+	} // end constructor
+
+
+	/**
+	 * This overrides the implementation BasicController.
+	 * Checks that the required folders are present, then sets up and runs the stages.
+	 *
+	 * @param args
+	 * @return true on successful execution, false on any errors.
+	 */
+	@Override
+	protected boolean Entry(String[] args) {
+
+		// Check that the arguments are supplied correctly.
+		boolean l_OkSoFar = super.Entry(args);
+		if (!l_OkSoFar) return false;
+
+		if (!Source1Exists()) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "Entry", "Cannot access folder of the knowledge base.");
+			l_OkSoFar = false;
+		}
+		if (!Source2Exists()) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "Entry", "Cannot access folder/file where the questions are found.");
+			l_OkSoFar = false;
+		}
+		File l_CorrectFile = (File) GetOptionArgument("correct");
+		if (l_CorrectFile != null && !l_CorrectFile.exists()) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "Entry", "Cannot access gold-standard answers.");
+			l_OkSoFar = false;
+		}
+		if (!EnsureTargetExists()) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "Entry", "Cannot create folder to store answers in.");
+			l_OkSoFar = false;
+		}
+
+		// Don't proceed if the requirements for a successfull execution are not met
+		if (!l_OkSoFar) return false;
+
+
+		// Question processing -------------------------------------------------
+		// Load the text processing modules, keeping the models to share them later on
+		sg.edu.nus.wing.qanus.stock.qp.Controller l_QPController = new sg.edu.nus.wing.qanus.stock.qp.Controller();
+		IRegisterableModule[] l_QPModules = l_QPController.GetModulesForStageEngine();
+		if (l_QPModules == null) return false;
+		StanfordPOSTagger l_ModulePOS = null;
+		StanfordNER l_ModuleNER = null;
+		for (IRegisterableModule l_Module : l_QPModules) {
+			if (l_Module instanceof StanfordPOSTagger) l_ModulePOS = (StanfordPOSTagger) l_Module;
+			if (l_Module instanceof StanfordNER) l_ModuleNER = (StanfordNER) l_Module;
+		}
+		int l_NumTaggers = GetPositiveIntegerOption("taggers", 1);
+		if (l_ModulePOS != null && l_NumTaggers > 1) {
+			l_ModulePOS.SetPoolSize(l_NumTaggers);
+		}
+		int l_NumRecognisers = GetPositiveIntegerOption("recognisers", 1);
+		if (l_ModuleNER != null && l_NumRecognisers > 1) {
+			l_ModuleNER.SetPoolSize(l_NumRecognisers);
+		}
+		int l_NERMaxWords = GetPositiveIntegerOption("nermaxwords", 0);
+		if (l_ModuleNER != null && l_NERMaxWords > 0) {
+			l_ModuleNER.SetMaxSentenceLength(l_NERMaxWords);
+		}
+
+		QuestionProcessor l_QuestionProcessor = new QuestionProcessor(GetSourceFile2(), GetTargetFile());
+		l_QuestionProcessor.SetXMLHandler(l_QPController.GetXMLHandlersForStageEngine()[0]);
+		l_QuestionProcessor.SetXMLValidation(GetXMLValidationMode());
+		l_QuestionProcessor.RegisterModules(l_QPModules);
+
+
+		// Answer retrieval ----------------------------------------------------
+		// The annotations of passage sentences can be kept across runs
+		CachedTextProcessingModule l_CachedPOS = null;
+		CachedTextProcessingModule l_CachedNER = null;
+		File l_CacheFolder = (File) GetOptionArgument("annotationcache");
+		if (l_CacheFolder != null && l_ModulePOS != null && l_ModuleNER != null) {
+			try {
+				l_CachedPOS = CachedTextProcessingModule.Open(l_ModulePOS, "bidirectional-wsj-0-18.tagger", l_CacheFolder);
+				l_CachedNER = CachedTextProcessingModule.Open(l_ModuleNER, "ner-eng-ie.crf-4-conll-distsim.ser.gz", l_CacheFolder);
+			} catch (Exception e) {
+				Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "Entry", "Unable to set up annotation cache", e);
+				return false;
+			}
+		}
+		ITextProcessingModule l_ARModulePOS = (l_CachedPOS == null) ? l_ModulePOS : l_CachedPOS;
+		ITextProcessingModule l_ARModuleNER = (l_CachedNER == null) ? l_ModuleNER : l_CachedNER;
+
+		IXMLParser l_ARHandler = new TREC2007AnnotatedQuestionXMLParser();
+		AnswerRetriever l_AnswerRetriever = new AnswerRetriever(GetSourceFile2(), GetTargetFile());
+		l_AnswerRetriever.SetXMLHandler(l_ARHandler);
+		IRegisterableModule[] l_ARModules = GetAnswerRetrievalModules(l_ARModulePOS, l_ARModuleNER);
+		l_AnswerRetriever.RegisterModules(l_ARModules);
+
+		// For concurrent answering, every worker thread needs its own strategy modules,
+		// but they can still share the models.
+		int l_NumThreads = GetPositiveIntegerOption("threads", 1);
+		IRegisterableModule[][] l_WorkerModules = new IRegisterableModule[][] { l_ARModules };
+		if (l_NumThreads > 1) {
+			l_WorkerModules = new IRegisterableModule[l_NumThreads][];
+			l_WorkerModules[0] = l_ARModules;
+			for (int i = 1; i < l_NumThreads; ++i) {
+				l_WorkerModules[i] = GetAnswerRetrievalModules(l_ARModulePOS, l_ARModuleNER);
+			}
+			l_AnswerRetriever.SetWorkerModules(l_WorkerModules);
+		}
+
+		// Processed questions go straight to the XML handler of answer retrieval
+		DataItemPipe l_QuestionPipe = new DataItemPipe((ContentHandler) l_ARHandler, "DOCSTREAM");
+		l_QuestionProcessor.SetQuestionReceipient(l_QuestionPipe);
+
+
+		// Evaluation ----------------------------------------------------------
+		AnswerChecker l_AnswerChecker = null;
+		DataItemPipe l_AnswerPipe = null;
+		if (l_CorrectFile != null) {
+			sg.edu.nus.wing.qanus.stock.eval.Controller l_EvalController = new sg.edu.nus.wing.qanus.stock.eval.Controller();
+			IXMLParser[] l_EvalHandlers = l_EvalController.GetXMLHandlersForStageEngine();
+
+			// The generated answers are not read from file, but passed on by answer retrieval
+			l_AnswerChecker = new AnswerChecker(l_CorrectFile, null, GetTargetFile());
+			l_AnswerChecker.SetGeneratedAnswersXMLHandler(l_EvalHandlers[0]);
+			l_AnswerChecker.SetCorrectAnswersXMLHandler(l_EvalHandlers[1]);
+			l_AnswerChecker.SetXMLValidation(GetXMLValidationMode());
+			l_AnswerChecker.RegisterModules(l_EvalController.GetModulesForStageEngine());
+
+			l_AnswerPipe = new DataItemPipe((ContentHandler) l_EvalHandlers[0], "DOCSTREAM");
+			l_AnswerRetriever.SetAnswerReceipient(l_AnswerPipe);
+		}
+
+
+		// Run the stages ------------------------------------------------------
+		// Whatever is started here is wound down in the finally block if a stage fails
+		boolean l_AnswerPipeOpen = false;
+		boolean l_AnsweringStarted = false;
+		boolean l_QuestionPipeOpen = false;
+		try {
+
+			if (l_AnswerChecker != null) {
+				l_AnswerChecker.StartReceiving();
+				l_AnswerPipe.Open();
+				l_AnswerPipeOpen = true;
+			}
+			if (!l_AnswerRetriever.StartAnswering()) return false;
+			l_AnsweringStarted = true;
+
+			// Questions are answered as question processing hands them over
+			l_QuestionPipe.Open();
+			l_QuestionPipeOpen = true;
+			boolean l_QPOk = l_QuestionProcessor.Go();
+			l_QuestionPipeOpen = false;
+			l_QuestionPipe.Close();
+			l_AnsweringStarted = false;
+			l_AnswerRetriever.FinishAnswering();
+			if (!l_QPOk) return false;
+
+			if (l_AnswerChecker != null) {
+				l_AnswerPipeOpen = false;
+				l_AnswerPipe.Close();
+				return l_AnswerChecker.Go();
+			}
+
+		} catch (SAXException e) {
+			Logger.getLogger("QANUS").logp(Level.SEVERE, Controller.class.getName(), "Entry", "Error passing data between stages", e);
+			return false;
+		} finally {
+			if (l_QuestionPipeOpen) {
+				ClosePipe(l_QuestionPipe);
+			}
+			if (l_AnsweringStarted) {
+				l_AnswerRetriever.FinishAnswering();
+			}
+			if (l_AnswerChecker != null) {
+				// The answers so far are not evaluated, so stop listening before ending their stream
+				l_AnswerChecker.StopReceiving();
+				if (l_AnswerPipeOpen) {
+					ClosePipe(l_AnswerPipe);
+				}
+			}
+			for (IRegisterableModule[] l_ThreadModules : l_WorkerModules) {
+				for (IRegisterableModule l_Module : l_ThreadModules) {
+					((IStrategyModule) l_Module).Close();
+				}
+			}
+			CachedTextProcessingModule[] l_Caches = { l_CachedPOS, l_CachedNER };
+			for (CachedTextProcessingModule l_Cache : l_Caches) {
+				if (l_Cache != null) l_Cache.CloseCache();
+			}
+		}
+
+		return true;
+
+	} // end Entry()
+
+
+	/**
+	 * Ends the stream of data items of a pipe left open when a stage fails.
+	 *
+	 * @param a_Pipe [in] pipe to close
+	 */
+	private void ClosePipe(DataItemPipe a_Pipe) {
+
+		try {
+			a_Pipe.Close();
+		} catch (SAXException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, Controller.class.getName(), "ClosePipe", "Error ending stream of data items", e);
+		}
+
+	} // end ClosePipe()
+
+
+	/**
+	 * Prepares the answer retrieval strategy, which is the one of the stock ar Controller.
+	 *
+	 * @param a_ModulePOS [in] POS tagger already loaded, to be shared
+	 * @param a_ModuleNER [in] named entity recogniser already loaded, to be shared
+	 * @return array of modules for answer retrieval
+	 */
+	private IRegisterableModule[] GetAnswerRetrievalModules(ITextProcessingModule a_ModulePOS, ITextProcessingModule a_ModuleNER) {
+
+		FeatureScoringStrategy l_Module = new FeatureScoringStrategy(GetSourceFile1());
+		l_Module.SetAnnotationModules(a_ModulePOS, a_ModuleNER);
+
+		IRegisterableModule[] l_Array = new IRegisterableModule[1];
+		l_Array[0] = l_Module;
+
+		return l_Array;
+
+	} // end GetAnswerRetrievalModules()
+
+
+	/**
+	 * Entry point function.
+	 *
+	 * @param args
+	 */
+	public static void main(String args[]) {
+
+		Controller l_Ctr = new Controller();
+
+		// If a log is desired, uncomment this. When this is commented, log messages
+		// are not saved to any file
+		//l_Ctr.SetUpLog();
+
+		// This call will jump-start the machinery. Must be called, else nothing will happen!
+		l_Ctr.Entry(args);
+
+	} // end main()
+
+
+} // end class Controller
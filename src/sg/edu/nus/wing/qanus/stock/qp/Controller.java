@@ -7,7 +7,7 @@ import java.util.logging.Logger;
 import sg.edu.nus.wing.qanus.framework.commons.IRegisterableModule;
 import sg.edu.nus.wing.qanus.framework.commons.IXMLParser;
 import sg.edu.nus.wing.qanus.framework.qp.FrameworkController;
-import sg.edu.nus.wing.qanus.textprocessing.QuestionClassifierWithStanfordClassifier;
+import sg.edu.nus.wing.qanus.textprocessing.ModelRegistry;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordNER;
 import sg.edu.nus.wing.qanus.textprocessing.StanfordPOSTagger;
 
@@ -76,18 +76,25 @@ public class Controller extends FrameworkController {
 			IRegisterableModule l_ModQuestionClassifier = null;
 			if (File.separator.compareTo("\\") == 0) {
 				// Special case for Windows as the Stanford classifier will treat the single \ as an escape character
-				l_ModQuestionClassifier = new QuestionClassifierWithStanfordClassifier("lib\\\\trec_classifier.stanford-classifier", "choppingboard" + File.separator + "temp");
+				l_ModQuestionClassifier = ModelRegistry.GetQuestionClassifier("lib\\\\trec_classifier.stanford-classifier", "choppingboard" + File.separator + "temp");
 			} else {
-				l_ModQuestionClassifier = new QuestionClassifierWithStanfordClassifier("lib" + File.separator + "trec_classifier.stanford-classifier", "choppingboard" + File.separator + "temp");
+				l_ModQuestionClassifier = ModelRegistry.GetQuestionClassifier("lib" + File.separator + "trec_classifier.stanford-classifier", "choppingboard" + File.separator + "temp");
 			}
 			l_Array[0] = l_ModQuestionClassifier;
 
 
-			StanfordNER l_ModNER = new StanfordNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
+			StanfordNER l_ModNER = ModelRegistry.GetNER("lib" + File.separator + "ner-eng-ie.crf-4-conll-distsim.ser.gz");
 			//IRegisterableModule l_ModNER = new StanfordNERWebService();
 			l_Array[1] = l_ModNER;
 
-			IRegisterableModule l_ModPOSTagger = new StanfordPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+			StanfordPOSTagger l_ModPOSTagger = ModelRegistry.GetPOSTagger("lib" + File.separator + "bidirectional-wsj-0-18.tagger");
+			if (l_ModNER == null || l_ModPOSTagger == null) {
+				// The registry logs the models which cannot be loaded
+				return null;
+			}
+			if (GetNumberOfTaggers() > 1) {
+				l_ModPOSTagger.SetPoolSize(GetNumberOfTaggers());
+			}
 			l_Array[2] = l_ModPOSTagger;
 
 		} catch (Exception ex) {
@@ -0,0 +1,589 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
+
+
+/**
+ * Keeps the results of another text processing module, such as a POS tagger, so that
+ * sentences which have been processed before are not processed again.
+ *
+ * Results are looked up by a hash of the sentence, together with the ID of the module, of
+ * the model it uses and, for an IConfiguredModule, its current settings. So a cache file kept
+ * for one model or setting is never used for another.
+ *
+ * The results are kept in a file, so that they last across runs, and are read from the file
+ * when they are asked for. Only an index of where each result is in the file is kept in memory,
+ * taking up about 100 bytes for each result however long it is. New results are appended to the
+ * file as they are obtained. The number of results kept is bounded, and the results used the
+ * least recently are dropped first. Results which have been dropped, or which are found in the
+ * file more than once, are cleared from the file the next time it is opened, or as soon as the
+ * file holds twice as many results as are kept, so that the file does not grow without bound
+ * during a long run. Everything after any part of the file which cannot be read is cleared too.
+ *
+ * An empty result for a sentence which is not blank is taken to mean that the wrapped module
+ * could not process the sentence, as with StanfordNERWebService when neither the web service
+ * nor its fallback module can tag it. Such results are handed back but not kept, so that the
+ * sentence is processed again the next time.
+ *
+ * This can be used by several threads at once, as long as the module it wraps can.
+ */
+public class CachedTextProcessingModule implements ITextProcessingModule {
+
+
+	// Number of results kept by caches set up with Open()
+	public static final int DEFAULT_MAX_ENTRIES = 500000;
+
+	// Marks the start of a cache file, and the layout of the results in it
+	private static final int FILE_HEADER = 0x51414331;
+
+	// Bytes taken up by the key and length of each result in the cache file
+	private static final int ENTRY_OVERHEAD = 16 + 4;
+
+	// Fewest results in the cache file before results no longer kept are cleared from it during a run
+	private static final int MIN_ENTRIES_TO_COMPACT = 1000;
+
+
+	/**
+	 * Key of a result, which is the 128 bit hash of the sentence and key prefix.
+	 */
+	private static final class Key {
+
+		private final long m_High;
+		private final long m_Low;
+
+		public Key(long a_High, long a_Low) {
+			m_High = a_High;
+			m_Low = a_Low;
+		}
+
+		@Override
+		public boolean equals(Object a_Other) {
+			if (!(a_Other instanceof Key)) return false;
+			Key l_Other = (Key) a_Other;
+			return m_High == l_Other.m_High && m_Low == l_Other.m_Low;
+		}
+
+		@Override
+		public int hashCode() {
+			return (int) (m_Low ^ (m_Low >>> 32));
+		}
+
+	} // end class Key
+
+
+	// Module whose results are kept
+	private ITextProcessingModule m_Module;
+
+	// Prefix of the keys of the results, made up of the module ID and model ID
+	private String m_KeyPrefix;
+
+	// Where each result starts in the cache file, keyed by the hash of the module ID, model ID,
+	// settings and sentence, in order of last use
+	private LinkedHashMap<Key, Long> m_Index;
+
+	// Cache file, and its length. The file is null if it cannot be written to.
+	private File m_CacheFile;
+	private RandomAccessFile m_File = null;
+	private long m_FileLength = 0;
+
+	// Number of results in the cache file, including those which are no longer kept
+	private int m_NumInFile = 0;
+
+	// Used to hash sentences
+	private MessageDigest m_Digest;
+
+	private long m_Hits = 0;
+	private long m_Misses = 0;
+
+
+	/**
+	 * Constructor. Reads in the index of the results already in the cache file.
+	 *
+	 * @param a_Module [in] module whose results are to be kept
+	 * @param a_ModelID [in] identifies the model used by the module, such as its file name
+	 * @param a_CacheFile [in] file to keep the results in
+	 * @param a_MaxEntries [in] maximum number of results to keep
+	 * @throws NoSuchAlgorithmException if sentences cannot be hashed
+	 */
+	public CachedTextProcessingModule(ITextProcessingModule a_Module, String a_ModelID, File a_CacheFile, final int a_MaxEntries) throws NoSuchAlgorithmException {
+
+		m_Module = a_Module;
+		m_KeyPrefix = a_Module.GetModuleID() + "|" + a_ModelID + "|";
+		m_CacheFile = a_CacheFile;
+		m_Digest = MessageDigest.getInstance("MD5");
+
+		m_Index = new LinkedHashMap<Key, Long>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Long> a_Eldest) {
+				return size() > a_MaxEntries;
+			}
+		};
+
+		OpenCache();
+
+	} // end constructor
+
+
+	/**
+	 * Sets up a cache for a module in the given folder. The results are kept in a file named
+	 * after the ID of the module, and up to DEFAULT_MAX_ENTRIES results are kept.
+	 *
+	 * @param a_Module [in] module whose results are to be kept
+	 * @param a_ModelID [in] identifies the model used by the module, such as its file name
+	 * @param a_Folder [in] folder to keep the cache file in, which is created if needed
+	 * @return the cache
+	 * @throws IOException if the folder cannot be created
+	 * @throws NoSuchAlgorithmException if sentences cannot be hashed
+	 */
+	public static CachedTextProcessingModule Open(ITextProcessingModule a_Module, String a_ModelID, File a_Folder) throws IOException, NoSuchAlgorithmException {
+
+		if (!a_Folder.exists() && !a_Folder.mkdirs()) {
+			throw new IOException("Cannot create folder [" + a_Folder + "] to keep annotations in.");
+		}
+
+		return new CachedTextProcessingModule(a_Module, a_ModelID, new File(a_Folder, a_Module.GetModuleID() + ".cache"), DEFAULT_MAX_ENTRIES);
+
+	} // end Open()
+
+
+	/**
+	 * Reads in the index of the results in the cache file, and gets ready to read results
+	 * from it and add new results to it. The file is written out afresh if it holds results
+	 * which are no longer needed, or if any part of it cannot be read.
+	 */
+	private void OpenCache() {
+
+		int l_NumRead = 0;
+		boolean l_Damaged = false;
+		if (m_CacheFile.exists()) {
+			DataInputStream l_In = null;
+			try {
+				long l_Length = m_CacheFile.length();
+				l_In = new DataInputStream(new BufferedInputStream(new FileInputStream(m_CacheFile)));
+				if (l_Length < 4 || l_In.readInt() != FILE_HEADER) {
+					throw new IOException("Not a cache file");
+				}
+
+				long l_Offset = 4;
+				while (l_Offset < l_Length) {
+					if (l_Length - l_Offset < ENTRY_OVERHEAD) {
+						throw new IOException("Result cut short at " + l_Offset);
+					}
+					Key l_Key = new Key(l_In.readLong(), l_In.readLong());
+					int l_ValueLength = l_In.readInt();
+					if (l_ValueLength < 0 || l_Offset + ENTRY_OVERHEAD + l_ValueLength > l_Length) {
+						throw new IOException("Result cut short at " + l_Offset);
+					}
+					Skip(l_In, l_ValueLength);
+
+					m_Index.put(l_Key, l_Offset + 16);
+					++l_NumRead;
+					l_Offset += ENTRY_OVERHEAD + l_ValueLength;
+				}
+			} catch (IOException e) {
+				// Keep the results read so far, and clear out the rest
+				Logger.getLogger("QANUS").logp(Level.WARNING, CachedTextProcessingModule.class.getName(), "OpenCache", "Error reading cache file [" + m_CacheFile + "], only the results before the error are kept", e);
+				l_Damaged = true;
+			} finally {
+				try {
+					if (l_In != null) l_In.close();
+				} catch (IOException e) {
+					Logger.getLogger("QANUS").logp(Level.WARNING, CachedTextProcessingModule.class.getName(), "OpenCache", "Error closing cache file.", e);
+				}
+			}
+		}
+
+		try {
+			if (l_NumRead > m_Index.size() || l_Damaged || !m_CacheFile.exists()) {
+				RewriteCache();
+			}
+			m_File = new RandomAccessFile(m_CacheFile, "rw");
+			m_FileLength = m_File.length();
+			m_NumInFile = m_Index.size();
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, CachedTextProcessingModule.class.getName(), "OpenCache", "Unable to write to cache file [" + m_CacheFile + "], results will not be kept", e);
+			m_Index.clear();
+			m_File = null;
+		}
+
+	} // end OpenCache()
+
+
+	/**
+	 * Skips over the given number of bytes of a stream.
+	 *
+	 * @param a_In [in] stream to skip bytes of
+	 * @param a_NumBytes [in] number of bytes to skip
+	 * @throws IOException if the stream ends before that
+	 */
+	private static void Skip(DataInputStream a_In, int a_NumBytes) throws IOException {
+
+		while (a_NumBytes > 0) {
+			int l_Skipped = a_In.skipBytes(a_NumBytes);
+			if (l_Skipped <= 0) {
+				// Make sure this is the end of the stream rather than a short skip
+				a_In.readByte();
+				l_Skipped = 1;
+			}
+			a_NumBytes -= l_Skipped;
+		}
+
+	} // end Skip()
+
+
+	/**
+	 * Writes out the cache file afresh, with only the results in the index.
+	 * The results are written to a new file first, which then takes the place of the old one.
+	 *
+	 * @throws IOException on errors writing the new file
+	 */
+	private void RewriteCache() throws IOException {
+
+		File l_NewFile = new File(m_CacheFile.getPath() + ".new");
+		RandomAccessFile l_OldFile = m_CacheFile.exists() ? new RandomAccessFile(m_CacheFile, "r") : null;
+		DataOutputStream l_Out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(l_NewFile, false)));
+		try {
+			l_Out.writeInt(FILE_HEADER);
+			long l_Offset = 4;
+			for (Map.Entry<Key, Long> l_Entry : m_Index.entrySet()) {
+				byte[] l_Value = ReadValue(l_OldFile, l_Entry.getValue());
+				WriteEntry(l_Out, l_Entry.getKey(), l_Value);
+				l_Entry.setValue(l_Offset + 16);
+				l_Offset += ENTRY_OVERHEAD + l_Value.length;
+			}
+		} finally {
+			l_Out.close();
+			if (l_OldFile != null) l_OldFile.close();
+		}
+
+		if ((m_CacheFile.exists() && !m_CacheFile.delete()) || !l_NewFile.renameTo(m_CacheFile)) {
+			throw new IOException("Unable to replace cache file with [" + l_NewFile + "]");
+		}
+
+	} // end RewriteCache()
+
+
+	/**
+	 * Reads a result from the cache file.
+	 *
+	 * @param a_File [in] the cache file
+	 * @param a_Offset [in] where the result starts, after its key
+	 * @return the result as UTF-8 bytes
+	 * @throws IOException on errors reading the file
+	 */
+	private static byte[] ReadValue(RandomAccessFile a_File, long a_Offset) throws IOException {
+
+		a_File.seek(a_Offset);
+		int l_Length = a_File.readInt();
+		if (l_Length < 0 || a_Offset + 4 + l_Length > a_File.length()) {
+			throw new IOException("Result at " + a_Offset + " is cut short");
+		}
+		byte[] l_Value = new byte[l_Length];
+		a_File.readFully(l_Value);
+
+		return l_Value;
+
+	} // end ReadValue()
+
+
+	/**
+	 * Writes a result, together with its key.
+	 *
+	 * @param a_Out [in] stream to write the result to
+	 * @param a_Key [in] key of the result
+	 * @param a_Value [in] the result as UTF-8 bytes
+	 * @throws IOException on errors writing the result
+	 */
+	private static void WriteEntry(DataOutputStream a_Out, Key a_Key, byte[] a_Value) throws IOException {
+
+		a_Out.writeLong(a_Key.m_High);
+		a_Out.writeLong(a_Key.m_Low);
+		a_Out.writeInt(a_Value.length);
+		a_Out.write(a_Value);
+
+	} // end WriteEntry()
+
+
+	/**
+	 * Appends a result to the end of the cache file, and adds it to the index.
+	 *
+	 * @param a_Key [in] key of the result
+	 * @param a_Value [in] the result
+	 * @throws IOException on errors writing to the cache file
+	 */
+	private void AppendEntry(Key a_Key, String a_Value) throws IOException {
+
+		byte[] l_Value = a_Value.getBytes("UTF-8");
+		ByteArrayOutputStream l_Bytes = new ByteArrayOutputStream(ENTRY_OVERHEAD + l_Value.length);
+		WriteEntry(new DataOutputStream(l_Bytes), a_Key, l_Value);
+
+		// Written in one go, so that nothing is lost if the program does not end cleanly
+		m_File.seek(m_FileLength);
+		m_File.write(l_Bytes.toByteArray());
+		m_Index.put(a_Key, m_FileLength + 16);
+		m_FileLength += l_Bytes.size();
+		++m_NumInFile;
+
+		// Once results start being dropped, clear them from the file every so often
+		if (m_NumInFile >= MIN_ENTRIES_TO_COMPACT && m_NumInFile > 2 * m_Index.size()) {
+			CompactCache();
+		}
+
+	} // end AppendEntry()
+
+
+	/**
+	 * Clears the results which are no longer kept from the cache file, and opens the new file.
+	 *
+	 * @throws IOException on errors writing the new file
+	 */
+	private void CompactCache() throws IOException {
+
+		long l_OldLength = m_FileLength;
+		m_File.close();
+		m_File = null;
+
+		RewriteCache();
+		m_File = new RandomAccessFile(m_CacheFile, "rw");
+		m_FileLength = m_File.length();
+		m_NumInFile = m_Index.size();
+
+		Logger.getLogger("QANUS").logp(Level.FINE, CachedTextProcessingModule.class.getName(), "CompactCache", "Cache file [" + m_CacheFile + "] compacted from " + l_OldLength + " to " + m_FileLength + " bytes");
+
+	} // end CompactCache()
+
+
+	/**
+	 * Looks up the result of a sentence, reading it from the cache file.
+	 *
+	 * @param a_Key [in] key of the result
+	 * @return the result, or null if it is not kept
+	 */
+	private String GetEntry(Key a_Key) {
+
+		Long l_Offset = m_Index.get(a_Key);
+		if (l_Offset == null) return null;
+
+		try {
+			return new String(ReadValue(m_File, l_Offset), "UTF-8");
+		} catch (IOException e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, CachedTextProcessingModule.class.getName(), "GetEntry", "Error reading cache file [" + m_CacheFile + "]", e);
+			m_Index.remove(a_Key);
+			return null;
+		}
+
+	} // end GetEntry()
+
+
+	/**
+	 * Works out the prefix of the keys of the results, which is made up of the module ID,
+	 * the model ID and the current settings of the module.
+	 * The settings are looked up on every call, as they may change while the module is in use.
+	 *
+	 * @return the prefix of the keys
+	 */
+	private String GetKeyPrefix() {
+
+		if (m_Module instanceof IConfiguredModule) {
+			return m_KeyPrefix + ((IConfiguredModule) m_Module).GetSettings() + "|";
+		}
+		return m_KeyPrefix;
+
+	} // end GetKeyPrefix()
+
+
+	/**
+	 * Works out the key to keep the result of a sentence under.
+	 *
+	 * @param a_KeyPrefix [in] prefix of the key, see GetKeyPrefix()
+	 * @param a_Sentence [in] the sentence
+	 * @return the key, which is the hash of the prefix and the sentence
+	 */
+	private Key GetKey(String a_KeyPrefix, String a_Sentence) {
+
+		byte[] l_Hash = null;
+		try {
+			l_Hash = m_Digest.digest((a_KeyPrefix + a_Sentence).getBytes("UTF-8"));
+		} catch (IOException e) {
+			// UTF-8 is always supported
+			l_Hash = m_Digest.digest((a_KeyPrefix + a_Sentence).getBytes());
+		}
+
+		long l_High = 0;
+		long l_Low = 0;
+		for (int i = 0; i < 8; ++i) {
+			l_High = (l_High << 8) | (l_Hash[i] & 0xFF);
+			l_Low = (l_Low << 8) | (l_Hash[i + 8] & 0xFF);
+		}
+
+		return new Key(l_High, l_Low);
+
+	} // end GetKey()
+
+
+	/**
+	 * Processes the given sentences with the wrapped module, except for those whose results
+	 * are already kept. The wrapped module is only invoked once, with all the sentences not
+	 * found in the cache.
+	 *
+	 * @param a_Sentences [in] sentences to process
+	 * @return processed sentences, or null on errors
+	 */
+	public String[] ProcessText(String[] a_Sentences) {
+
+		if (a_Sentences == null) {
+			return null;
+		}
+
+		String[] l_Results = new String[a_Sentences.length];
+		Key[] l_Keys = new Key[a_Sentences.length];
+		int l_NumMisses = 0;
+		String l_KeyPrefix = GetKeyPrefix();
+
+		synchronized (this) {
+			for (int i = 0; i < a_Sentences.length; ++i) {
+				if (m_File != null) {
+					l_Keys[i] = GetKey(l_KeyPrefix, a_Sentences[i]);
+					l_Results[i] = GetEntry(l_Keys[i]);
+				}
+				if (l_Results[i] == null) ++l_NumMisses;
+			}
+			m_Hits += a_Sentences.length - l_NumMisses;
+			m_Misses += l_NumMisses;
+		}
+
+		if (l_NumMisses == 0) {
+			return l_Results;
+		}
+
+
+		// Process the sentences not found, all at once
+		String[] l_Misses = new String[l_NumMisses];
+		for (int i = 0, j = 0; i < a_Sentences.length; ++i) {
+			if (l_Results[i] == null) l_Misses[j++] = a_Sentences[i];
+		}
+		String[] l_Processed = m_Module.ProcessText(l_Misses);
+
+		// The wrapped module may leave out sentences it fails on, in which case it is no longer
+		// known which result belongs to which sentence. Process everything again without the
+		// cache, so that the results are the same as those of the wrapped module.
+		if (l_Processed == null || l_Processed.length != l_NumMisses) {
+			Logger.getLogger("QANUS").logp(Level.FINE, CachedTextProcessingModule.class.getName(), "ProcessText", "Not all sentences processed, not caching results.");
+			return (l_NumMisses == a_Sentences.length) ? l_Processed : m_Module.ProcessText(a_Sentences);
+		}
+
+
+		synchronized (this) {
+			for (int i = 0, j = 0; i < a_Sentences.length; ++i) {
+				if (l_Results[i] != null) continue;
+				l_Results[i] = l_Processed[j++];
+				if (m_File == null || l_Keys[i] == null || IsFailure(a_Sentences[i], l_Results[i]) || m_Index.containsKey(l_Keys[i])) continue;
+				try {
+					AppendEntry(l_Keys[i], l_Results[i]);
+				} catch (IOException e) {
+					Logger.getLogger("QANUS").logp(Level.WARNING, CachedTextProcessingModule.class.getName(), "ProcessText", "Unable to write to cache file [" + m_CacheFile + "]", e);
+					CloseFile();
+				}
+			}
+		}
+
+		return l_Results;
+
+	} // end ProcessText()
+
+
+	/**
+	 * Checks whether a result stands for a sentence the wrapped module could not process.
+	 *
+	 * @param a_Sentence [in] the sentence
+	 * @param a_Result [in] its result
+	 * @return true if the result is missing, or is empty while the sentence is not blank
+	 */
+	private static boolean IsFailure(String a_Sentence, String a_Result) {
+
+		return a_Result == null || (a_Result.length() == 0 && a_Sentence.trim().length() > 0);
+
+	} // end IsFailure()
+
+
+	/**
+	 * Closes the cache file, and logs how often results were found in the cache.
+	 * Sentences are all passed on to the wrapped module afterwards.
+	 */
+	public synchronized void CloseCache() {
+
+		Logger.getLogger("QANUS").logp(Level.INFO, CachedTextProcessingModule.class.getName(), "CloseCache", "Annotation cache [" + GetModuleID() + "] : " + m_Hits + " hits, " + m_Misses + " misses");
+		CloseFile();
+
+	} // end CloseCache()
+
+
+	/**
+	 * Closes the cache file, if it is open.
+	 */
+	private synchronized void CloseFile() {
+
+		// The file may already be closed by a failed CompactCache(), the index is cleared anyway
+		if (m_File != null) {
+			try {
+				m_File.close();
+			} catch (IOException e) {
+				Logger.getLogger("QANUS").logp(Level.WARNING, CachedTextProcessingModule.class.getName(), "CloseFile", "Error closing cache file.", e);
+			}
+			m_File = null;
+		}
+		m_Index.clear();
+
+	} // end CloseFile()
+
+
+	/**
+	 * @return number of sentences whose results were found in the cache
+	 */
+	public synchronized long GetHits() {
+		return m_Hits;
+	}
+
+
+	/**
+	 * @return number of sentences whose results were not found in the cache
+	 */
+	public synchronized long GetMisses() {
+		return m_Misses;
+	}
+
+
+	/**
+	 * @return the module whose results are kept
+	 */
+	public ITextProcessingModule GetModule() {
+		return m_Module;
+	}
+
+
+	/**
+	 * The ID is that of the wrapped module, so that this can be used in its place.
+	 */
+	public String GetModuleID() {
+		return m_Module.GetModuleID();
+	}
+
+
+} // end class CachedTextProcessingModule
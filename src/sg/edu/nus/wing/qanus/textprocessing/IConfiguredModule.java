@@ -0,0 +1,23 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
+
+
+/**
+ * Interface for text processing modules whose results depend on settings which can be
+ * changed after the module is set up, such as a limit on the length of the sentences to tag.
+ * The settings are part of the key CachedTextProcessingModule keeps results under, so that
+ * results obtained with one setting are not handed out for another.
+ */
+public interface IConfiguredModule extends ITextProcessingModule {
+
+
+	/**
+	 * Describes the current settings which change the results of the module.
+	 *
+	 * @return the settings, the same string for the same settings
+	 */
+	public String GetSettings();
+
+
+} // end interface
@@ -0,0 +1,546 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * A pool of copies of a model, such as a POS tagger, together with the threads which use them.
+ * This is shared by the text processing modules which can work on several sentences at once.
+ *
+ * Most models can only be used by one thread at a time, so every thread of the pool owns one
+ * copy of the model for as long as it runs. The copies are never used by any other thread.
+ * Without threads, that is with a pool size of 1 and no need for time limits, tasks are run on
+ * the calling thread with the only copy, by one caller at a time.
+ *
+ * Models which can be used by several threads at once, such as the connection to a web service,
+ * are only loaded once and used by all threads of the pool, and by all callers at once.
+ *
+ * @param <M> type of the model
+ */
+public class ModelPool<M> {
+
+
+	/**
+	 * Loads a new copy of the model.
+	 */
+	public interface IModelFactory<M> {
+
+		/**
+		 * @return the new copy, null if it cannot be loaded
+		 * @throws Exception if the copy cannot be loaded
+		 */
+		public M CreateModel() throws Exception;
+
+	} // end interface IModelFactory
+
+
+	/**
+	 * Something to be done with a copy of the model.
+	 */
+	public interface IModelTask<M, R> {
+
+		/**
+		 * @param a_Model [in] copy of the model owned by the running thread
+		 * @return result of the task
+		 * @throws Exception on any errors
+		 */
+		public R Run(M a_Model) throws Exception;
+
+	} // end interface IModelTask
+
+
+	/**
+	 * Something to be done with a copy of the model on a range of items, see RunInChunks().
+	 */
+	public interface IChunkTask<M, R> {
+
+		/**
+		 * @param a_Model [in] copy of the model owned by the running thread
+		 * @param a_Start [in] index of the first item
+		 * @param a_End [in] index after the last item
+		 * @return result of the task for the range
+		 * @throws Exception on any errors
+		 */
+		public R Run(M a_Model, int a_Start, int a_End) throws Exception;
+
+	} // end interface IChunkTask
+
+
+	/**
+	 * A task given to the threads of the pool, together with when it started running.
+	 */
+	private class TimedTask<R> implements Callable<R> {
+
+		private IModelTask<M, R> m_Task;
+		private volatile long m_StartTime = 0;
+
+		public TimedTask(IModelTask<M, R> a_Task) {
+			m_Task = a_Task;
+		}
+
+		public R call() throws Exception {
+			m_StartTime = System.currentTimeMillis();
+			return m_Task.Run(m_OwnModel.get());
+		}
+
+	} // end class TimedTask
+
+
+	/**
+	 * Tasks handed to the pool together, whose results are waited for one by one, in order.
+	 * Without threads, each task is only run when its result is asked for.
+	 */
+	public class Batch<R> {
+
+		private List<? extends IModelTask<M, R>> m_Tasks;
+
+		// Tasks given to the threads of the pool, null if they are run on the calling thread
+		private ArrayList<TimedTask<R>> m_TimedTasks = null;
+		private ArrayList<Future<R>> m_Futures = null;
+
+		// Maximum time for each task in milliseconds, 0 for no limit, and the time by which
+		// all tasks should be done
+		private long m_TimeLimit;
+		private long m_Deadline = Long.MAX_VALUE;
+
+		private Batch(List<? extends IModelTask<M, R>> a_Tasks, long a_TimeLimit) {
+
+			m_Tasks = a_Tasks;
+			m_TimeLimit = (a_TimeLimit < 0) ? 0 : a_TimeLimit;
+
+			synchronized (ModelPool.this) {
+
+				if (m_Executor == null) return;
+
+				int l_NumTasks = 0;
+				m_TimedTasks = new ArrayList<TimedTask<R>>(a_Tasks.size());
+				m_Futures = new ArrayList<Future<R>>(a_Tasks.size());
+				for (IModelTask<M, R> l_Task : a_Tasks) {
+					if (l_Task == null) {
+						m_TimedTasks.add(null);
+						m_Futures.add(null);
+					} else {
+						TimedTask<R> l_TimedTask = new TimedTask<R>(l_Task);
+						m_TimedTasks.add(l_TimedTask);
+						m_Futures.add(m_Executor.submit(l_TimedTask));
+						++l_NumTasks;
+					}
+				}
+
+				// Every task can use up its time, so all of them should be done by the time
+				// each thread has used up the time of its share of the tasks.
+				if (m_TimeLimit > 0) {
+					m_Deadline = System.currentTimeMillis() + m_TimeLimit * ((l_NumTasks + m_Size - 1) / m_Size);
+				}
+
+			}
+
+		} // end constructor
+
+		/**
+		 * @return number of tasks handed in
+		 */
+		public int Size() {
+			return m_Tasks.size();
+		} // end Size()
+
+		/**
+		 * Waits for the result of a task. A task which runs out of time is cancelled.
+		 *
+		 * @param a_Index [in] index of the task
+		 * @return result of the task, null if no task was given at this index
+		 * @throws TimeoutException if the task runs out of time
+		 * @throws InterruptedException if interrupted while waiting
+		 * @throws ExecutionException on errors running the task
+		 */
+		public R Get(int a_Index) throws TimeoutException, InterruptedException, ExecutionException {
+
+			IModelTask<M, R> l_Task = m_Tasks.get(a_Index);
+			if (l_Task == null) return null;
+
+			if (m_Futures == null) {
+				return RunOnCaller(l_Task);
+			}
+
+			Future<R> l_Future = m_Futures.get(a_Index);
+			try {
+				return WaitFor(l_Future, m_TimedTasks.get(a_Index));
+			} catch (TimeoutException e) {
+				// Stop the task if possible
+				l_Future.cancel(true);
+				throw e;
+			}
+
+		} // end Get()
+
+		/**
+		 * Gives up on a task whose result is not going to be asked for.
+		 *
+		 * @param a_Index [in] index of the task
+		 */
+		public void Cancel(int a_Index) {
+			if (m_Futures != null && m_Futures.get(a_Index) != null) {
+				m_Futures.get(a_Index).cancel(true);
+			}
+		} // end Cancel()
+
+		/**
+		 * Waits for a task given to the threads of the pool, within its time limit.
+		 *
+		 * @param a_Future [in] result of the task
+		 * @param a_Task [in] the task
+		 * @return result of the task
+		 * @throws TimeoutException if the task runs out of time
+		 * @throws InterruptedException if interrupted while waiting
+		 * @throws ExecutionException on errors running the task
+		 */
+		private R WaitFor(Future<R> a_Future, TimedTask<R> a_Task) throws TimeoutException, InterruptedException, ExecutionException {
+
+			if (m_TimeLimit == 0) {
+				return a_Future.get();
+			}
+
+			while (true) {
+
+				// Wait until the task runs out of time, or all tasks are meant to be done
+				long l_Now = System.currentTimeMillis();
+				long l_Deadline = m_Deadline;
+				if (a_Task.m_StartTime > 0) {
+					l_Deadline = Math.min(l_Deadline, a_Task.m_StartTime + m_TimeLimit);
+				} else {
+					// Not started yet, check again once this much time has passed
+					l_Deadline = Math.min(l_Deadline, l_Now + m_TimeLimit);
+				}
+				if (l_Deadline <= l_Now) {
+					throw new TimeoutException();
+				}
+
+				try {
+					return a_Future.get(l_Deadline - l_Now, TimeUnit.MILLISECONDS);
+				} catch (TimeoutException e) {
+					// Check whether the task has started, or is out of time
+				}
+
+			} // end while
+
+		} // end WaitFor()
+
+	} // end class Batch
+
+
+	// Name given to the threads of the pool
+	private String m_Name;
+
+	private IModelFactory<M> m_Factory;
+
+	// Whether one copy of the model can be used by several threads at once
+	private boolean m_ThreadSafe;
+
+	// Copies of the model loaded, one for each thread of the pool, or just one if it can be shared
+	private ArrayList<M> m_Models = new ArrayList<M>();
+	private int m_Size = 1;
+
+	// Threads of the pool, null if tasks are run on the calling thread
+	private ExecutorService m_Executor = null;
+
+	// Copy of the model owned by the current thread of the pool
+	private final ThreadLocal<M> m_OwnModel = new ThreadLocal<M>();
+
+
+	/**
+	 * Constructor. No copy of the model is loaded until one is needed, see EnsureLoaded().
+	 *
+	 * @param a_Name [in] name to give the threads of the pool
+	 * @param a_Factory [in] loads the copies of the model
+	 * @param a_ThreadSafe [in] true if a copy of the model can be used by several threads at once
+	 */
+	public ModelPool(String a_Name, IModelFactory<M> a_Factory, boolean a_ThreadSafe) {
+
+		m_Name = a_Name;
+		m_Factory = a_Factory;
+		m_ThreadSafe = a_ThreadSafe;
+
+	} // end constructor
+
+
+	/**
+	 * Loads the first copy of the model, if it is not loaded yet.
+	 *
+	 * @return true if the model is loaded, false if it cannot be loaded
+	 */
+	public synchronized boolean EnsureLoaded() {
+
+		if (m_Models.isEmpty()) {
+			M l_Model = LoadModel();
+			if (l_Model == null) return false;
+			m_Models.add(l_Model);
+		}
+
+		return true;
+
+	} // end EnsureLoaded()
+
+
+	/**
+	 * @return true if the model is loaded
+	 */
+	public synchronized boolean IsLoaded() {
+		return !m_Models.isEmpty();
+	} // end IsLoaded()
+
+
+	/**
+	 * @return number of tasks run at the same time
+	 */
+	public synchronized int GetSize() {
+		return m_Size;
+	} // end GetSize()
+
+
+	/**
+	 * Sets the number of tasks run at the same time. The additional copies of the model are
+	 * loaded right away. The tasks already handed to the pool are finished first, with the
+	 * previous threads.
+	 * This is meant to be called when setting up, not while tasks are being run.
+	 *
+	 * @param a_Size [in] number of threads, and of copies of the model
+	 * @param a_AlwaysThreaded [in] true to run tasks on the threads of the pool even with a size
+	 * 								of 1, which is needed to give up on tasks which take too long
+	 * @return true if the copies are loaded, false otherwise, in which case the pool is left as it was
+	 */
+	public synchronized boolean SetSize(int a_Size, boolean a_AlwaysThreaded) {
+
+		if (a_Size < 1) a_Size = 1;
+		boolean l_Threaded = (a_Size > 1 || a_AlwaysThreaded);
+		if (a_Size == m_Size && l_Threaded == (m_Executor != null)) return true;
+
+		if (!EnsureLoaded()) return false;
+
+		// Load a copy of the model for each thread of the new pool
+		int l_NumModels = m_ThreadSafe ? 1 : a_Size;
+		ArrayList<M> l_Models = new ArrayList<M>(m_Models.subList(0, Math.min(l_NumModels, m_Models.size())));
+		while (l_Models.size() < l_NumModels) {
+			M l_Model = LoadModel();
+			if (l_Model == null) return false;
+			l_Models.add(l_Model);
+		}
+
+		// The copies owned by the previous threads are only free once they are done
+		if (m_Executor != null) {
+			m_Executor.shutdown();
+			boolean l_Interrupted = false;
+			while (true) {
+				try {
+					if (m_Executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS)) break;
+				} catch (InterruptedException e) {
+					l_Interrupted = true;
+				}
+			}
+			if (l_Interrupted) Thread.currentThread().interrupt();
+			m_Executor = null;
+		}
+
+		m_Models = l_Models;
+		m_Size = a_Size;
+		if (l_Threaded) {
+			m_Executor = CreateExecutor();
+		}
+
+		return true;
+
+	} // end SetSize()
+
+
+	/**
+	 * Hands tasks to the pool. Their results are then waited for with the returned Batch.
+	 *
+	 * @param a_Tasks [in] tasks to run, in which null entries are allowed and left out
+	 * @param a_TimeLimit [in] maximum time for each task in milliseconds, 0 for no limit.
+	 * 							Only kept to if tasks are run on the threads of the pool.
+	 * @return the tasks handed in
+	 */
+	public <R> Batch<R> Submit(List<? extends IModelTask<M, R>> a_Tasks, long a_TimeLimit) {
+		return new Batch<R>(a_Tasks, a_TimeLimit);
+	} // end Submit()
+
+
+	/**
+	 * Runs a task over a number of items, such as sentences to tag. The items are split into
+	 * one consecutive chunk for each thread of the pool, so that the results of the chunks
+	 * can simply be joined up in order. Without threads, all items make up a single chunk.
+	 *
+	 * @param a_NumItems [in] number of items
+	 * @param a_Task [in] task to run on each chunk
+	 * @return results of the chunks, in order
+	 * @throws Exception if the task fails on any chunk
+	 */
+	public <R> List<R> RunInChunks(int a_NumItems, final IChunkTask<M, R> a_Task) throws Exception {
+
+		int l_NumChunks = 1;
+		synchronized (this) {
+			if (m_Executor != null) {
+				l_NumChunks = Math.max(1, Math.min(m_Size, a_NumItems));
+			}
+		}
+
+		ArrayList<IModelTask<M, R>> l_Tasks = new ArrayList<IModelTask<M, R>>(l_NumChunks);
+		for (int i = 0; i < l_NumChunks; ++i) {
+			final int l_Start = (int) ((long) a_NumItems * i / l_NumChunks);
+			final int l_End = (int) ((long) a_NumItems * (i + 1) / l_NumChunks);
+			l_Tasks.add(new IModelTask<M, R>() {
+				public R Run(M a_Model) throws Exception {
+					return a_Task.Run(a_Model, l_Start, l_End);
+				}
+			});
+		}
+
+		Batch<R> l_Batch = Submit(l_Tasks, 0);
+		ArrayList<R> l_Results = new ArrayList<R>(l_NumChunks);
+		for (int i = 0; i < l_NumChunks; ++i) {
+			l_Results.add(l_Batch.Get(i));
+		}
+
+		return l_Results;
+
+	} // end RunInChunks()
+
+
+	/**
+	 * Runs a task on the calling thread, unless threads have been given to the pool in the
+	 * meantime, in which case the task is handed to them.
+	 *
+	 * @param a_Task [in] task to run
+	 * @return result of the task
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws ExecutionException on errors running the task
+	 */
+	private <R> R RunOnCaller(IModelTask<M, R> a_Task) throws InterruptedException, ExecutionException {
+
+		Future<R> l_Future = null;
+		synchronized (this) {
+			if (m_Executor != null) {
+				l_Future = m_Executor.submit(new TimedTask<R>(a_Task));
+			} else if (!m_ThreadSafe) {
+				// Only one caller at a time uses the model
+				return RunNow(a_Task);
+			}
+		}
+
+		return (l_Future != null) ? l_Future.get() : RunNow(a_Task);
+
+	} // end RunOnCaller()
+
+
+	/**
+	 * Runs a task on the calling thread with the first copy of the model.
+	 *
+	 * @param a_Task [in] task to run
+	 * @return result of the task
+	 * @throws InterruptedException if interrupted
+	 * @throws ExecutionException on errors running the task, or if the model cannot be loaded
+	 */
+	private <R> R RunNow(final IModelTask<M, R> a_Task) throws InterruptedException, ExecutionException {
+
+		M l_FirstModel = null;
+		synchronized (this) {
+			if (EnsureLoaded()) l_FirstModel = m_Models.get(0);
+		}
+
+		final M l_Model = l_FirstModel;
+		FutureTask<R> l_Run = new FutureTask<R>(new Callable<R>() {
+			public R call() throws Exception {
+				if (l_Model == null) {
+					throw new IllegalStateException("Model for [" + m_Name + "] not loaded");
+				}
+				return a_Task.Run(l_Model);
+			}
+		});
+		l_Run.run();
+
+		return l_Run.get();
+
+	} // end RunNow()
+
+
+	/**
+	 * Sets up the threads of the pool. Each thread claims a copy of the model when it starts,
+	 * and gives it back when it ends.
+	 *
+	 * @return the threads
+	 */
+	private ExecutorService CreateExecutor() {
+
+		final LinkedBlockingQueue<M> l_Unclaimed = new LinkedBlockingQueue<M>(m_Models);
+		final M l_Shared = m_ThreadSafe ? m_Models.get(0) : null;
+
+		return Executors.newFixedThreadPool(m_Size, new ThreadFactory() {
+			public Thread newThread(final Runnable a_Runnable) {
+
+				Thread l_Thread = new Thread(new Runnable() {
+					public void run() {
+
+						// A thread replacing one which has just ended may have to wait for its copy
+						M l_Model = l_Shared;
+						while (l_Model == null) {
+							try {
+								l_Model = l_Unclaimed.take();
+							} catch (InterruptedException e) {
+								// Keep waiting
+							}
+						}
+
+						m_OwnModel.set(l_Model);
+						try {
+							a_Runnable.run();
+						} finally {
+							m_OwnModel.remove();
+							if (l_Shared == null) l_Unclaimed.add(l_Model);
+						}
+
+					}
+				}, m_Name);
+
+				// Don't keep the program alive just for the pool
+				l_Thread.setDaemon(true);
+				return l_Thread;
+
+			}
+		});
+
+	} // end CreateExecutor()
+
+
+	/**
+	 * Loads a new copy of the model.
+	 *
+	 * @return the copy, null if it cannot be loaded
+	 */
+	private M LoadModel() {
+
+		try {
+			M l_Model = m_Factory.CreateModel();
+			if (l_Model != null) return l_Model;
+			Logger.getLogger("QANUS").logp(Level.WARNING, ModelPool.class.getName(), "LoadModel", "Unable to load model for [" + m_Name + "]");
+		} catch (Exception e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, ModelPool.class.getName(), "LoadModel", "Unable to load model for [" + m_Name + "]", e);
+		}
+
+		return null;
+
+	} // end LoadModel()
+
+
+} // end class ModelPool
@@ -0,0 +1,256 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+
+/**
+ * Hands out the text processing modules which load large models, such as the POS tagger
+ * and the named entity recogniser, so that each model is only loaded once by the program.
+ *
+ * Each model is loaded the first time it is asked for, and the same module is handed out
+ * to everyone asking for the same model file afterwards. Different models can be loaded by
+ * different threads at the same time, while threads asking for a model which is being
+ * loaded wait for it to be ready. A model which cannot be loaded is logged and null is
+ * handed out instead, and loading it is tried again the next time it is asked for.
+ *
+ * The modules handed out are shared, so settings such as the pool size of a POS tagger
+ * apply to all its users. The modules can be used by several threads at once.
+ *
+ * The time taken to load each model, and roughly how much memory it takes up, are logged,
+ * and can be retrieved with GetReport().
+ */
+public class ModelRegistry {
+
+
+	// Models already loaded, or being loaded, keyed by kind of model and model file name
+	private static final ConcurrentHashMap<String, ModelEntry> m_Models = new ConcurrentHashMap<String, ModelEntry>();
+
+
+	/**
+	 * Loads a module, for a ModelEntry.
+	 */
+	private interface ModuleLoader {
+		Object Load() throws Exception;
+	} // end interface ModuleLoader
+
+
+	/**
+	 * A model, together with how long it took to load and how much memory it takes up.
+	 */
+	private static class ModelEntry {
+
+		private String m_Name;
+		private Object m_Module = null;
+		private boolean m_Loaded = false;
+		private long m_LoadTimeMillis = 0;
+		private long m_MemoryBytes = 0;
+
+		public ModelEntry(String a_Name) {
+			m_Name = a_Name;
+		}
+
+		/**
+		 * Retrieves the module, loading it if this is the first time it is asked for.
+		 * Only one thread loads the module, the others wait for it.
+		 * If loading fails, the next call tries again.
+		 */
+		public synchronized Object Get(ModuleLoader a_Loader) throws Exception {
+
+			if (m_Loaded) return m_Module;
+
+			long l_MemoryBefore = UsedMemory();
+			long l_Start = System.currentTimeMillis();
+
+			m_Module = a_Loader.Load();
+			m_Loaded = true;
+
+			m_LoadTimeMillis = System.currentTimeMillis() - l_Start;
+			m_MemoryBytes = Math.max(0, UsedMemory() - l_MemoryBefore);
+			Logger.getLogger("QANUS").logp(Level.INFO, ModelRegistry.class.getName(), "Get", "Loaded " + Describe());
+
+			return m_Module;
+
+		} // end Get()
+
+		public synchronized String Describe() {
+			return "[" + m_Name + "] in " + m_LoadTimeMillis + " ms, about " + (m_MemoryBytes / (1024 * 1024)) + " MB";
+		}
+
+		public synchronized boolean IsLoaded() {
+			return m_Loaded;
+		}
+
+	} // end class ModelEntry
+
+
+	/**
+	 * Retrieves the POS tagger for the given model, loading the model if needed.
+	 *
+	 * @param a_ModelFileName [in] file name of the model file
+	 * @return the shared POS tagger, or null if the model cannot be loaded
+	 */
+	public static StanfordPOSTagger GetPOSTagger(final String a_ModelFileName) {
+
+		try {
+			return (StanfordPOSTagger) GetModule("POS", a_ModelFileName, new ModuleLoader() {
+				public Object Load() throws Exception {
+					StanfordPOSTagger l_Tagger = new StanfordPOSTagger(a_ModelFileName);
+					if (!l_Tagger.IsLoaded()) {
+						throw new IOException("Unable to load POS tagger model [" + a_ModelFileName + "]");
+					}
+					return l_Tagger;
+				}
+			});
+		} catch (Exception e) {
+			// The next call tries to load the model again
+			Logger.getLogger("QANUS").logp(Level.SEVERE, ModelRegistry.class.getName(), "GetPOSTagger", "Unable to load model", e);
+			return null;
+		}
+
+	} // end GetPOSTagger()
+
+
+	/**
+	 * Retrieves the named entity recogniser for the given classifier, loading the classifier if needed.
+	 *
+	 * @param a_ClassifierFileName [in] file name of the classifier
+	 * @return the shared named entity recogniser, or null if the model cannot be loaded
+	 */
+	public static StanfordNER GetNER(final String a_ClassifierFileName) {
+
+		try {
+			return (StanfordNER) GetModule("NER", a_ClassifierFileName, new ModuleLoader() {
+				public Object Load() throws Exception {
+					StanfordNER l_NER = new StanfordNER(a_ClassifierFileName);
+					if (!l_NER.IsLoaded()) {
+						throw new IOException("Unable to load named entity recogniser classifier [" + a_ClassifierFileName + "]");
+					}
+					return l_NER;
+				}
+			});
+		} catch (Exception e) {
+			// The next call tries to load the model again
+			Logger.getLogger("QANUS").logp(Level.SEVERE, ModelRegistry.class.getName(), "GetNER", "Unable to load model", e);
+			return null;
+		}
+
+	} // end GetNER()
+
+
+	/**
+	 * Retrieves the grammar parser for the given grammar, loading the grammar if needed.
+	 *
+	 * @param a_ParserFileName [in] file name of the grammar
+	 * @return the shared grammar parser, or null if the model cannot be loaded
+	 */
+	public static StanfordGrammarParser GetGrammarParser(final String a_ParserFileName) {
+
+		try {
+			return (StanfordGrammarParser) GetModule("GP", a_ParserFileName, new ModuleLoader() {
+				public Object Load() throws Exception {
+					StanfordGrammarParser l_Parser = new StanfordGrammarParser(a_ParserFileName);
+					if (!l_Parser.IsLoaded()) {
+						throw new IOException("Unable to load grammar [" + a_ParserFileName + "]");
+					}
+					return l_Parser;
+				}
+			});
+		} catch (Exception e) {
+			// The next call tries to load the model again
+			Logger.getLogger("QANUS").logp(Level.SEVERE, ModelRegistry.class.getName(), "GetGrammarParser", "Unable to load model", e);
+			return null;
+		}
+
+	} // end GetGrammarParser()
+
+
+	/**
+	 * Retrieves the question classifier for the given classifier, loading the classifier if needed.
+	 *
+	 * @param a_ClassifierFileName [in] file name of the trained classifier
+	 * @param a_TempFolderName [in] name of temp folder to store intermediary files, only used when loading
+	 * @return the shared question classifier
+	 * @throws Exception if the question classifier cannot be loaded
+	 */
+	public static QuestionClassifierWithStanfordClassifier GetQuestionClassifier(final String a_ClassifierFileName, final String a_TempFolderName) throws Exception {
+
+		return (QuestionClassifierWithStanfordClassifier) GetModule("QC", a_ClassifierFileName, new ModuleLoader() {
+			public Object Load() throws Exception {
+				return new QuestionClassifierWithStanfordClassifier(a_ClassifierFileName, a_TempFolderName);
+			}
+		});
+
+	} // end GetQuestionClassifier()
+
+
+	/**
+	 * Lists the models loaded so far, with their load times and approximate memory use.
+	 *
+	 * @return one line per model loaded
+	 */
+	public static String GetReport() {
+
+		StringBuilder l_Report = new StringBuilder();
+		for (ModelEntry l_Entry : m_Models.values()) {
+			if (l_Entry.IsLoaded()) {
+				l_Report.append(l_Entry.Describe()).append(System.getProperty("line.separator"));
+			}
+		}
+
+		return l_Report.toString();
+
+	} // end GetReport()
+
+
+	/**
+	 * Retrieves a module from the registry, loading it if needed.
+	 * File names are made canonical, so that the same file given in different ways is only loaded once.
+	 *
+	 * @param a_Kind [in] kind of module, as the same file may be loaded by different kinds of modules
+	 * @param a_FileName [in] file name of the model
+	 * @param a_Loader [in] loads the module if it is not already loaded
+	 * @return the module
+	 * @throws Exception passed on from the loader
+	 */
+	private static Object GetModule(String a_Kind, String a_FileName, ModuleLoader a_Loader) throws Exception {
+
+		String l_Path = null;
+		try {
+			l_Path = new File(a_FileName).getCanonicalPath();
+		} catch (IOException e) {
+			l_Path = new File(a_FileName).getAbsolutePath();
+		}
+		String l_Key = a_Kind + ":" + l_Path;
+
+		ModelEntry l_Entry = m_Models.get(l_Key);
+		if (l_Entry == null) {
+			ModelEntry l_NewEntry = new ModelEntry(l_Key);
+			l_Entry = m_Models.putIfAbsent(l_Key, l_NewEntry);
+			if (l_Entry == null) l_Entry = l_NewEntry;
+		}
+
+		return l_Entry.Get(a_Loader);
+
+	} // end GetModule()
+
+
+	/**
+	 * Works out roughly how much memory is in use, for reporting the size of the models.
+	 * This is only an estimate, as other threads may be allocating memory at the same time,
+	 * and garbage which has not been collected yet is counted too.
+	 *
+	 * @return bytes of memory in use
+	 */
+	private static long UsedMemory() {
+
+		Runtime l_Runtime = Runtime.getRuntime();
+		return l_Runtime.totalMemory() - l_Runtime.freeMemory();
+
+	} // end UsedMemory()
+
+
+} // end class ModelRegistry
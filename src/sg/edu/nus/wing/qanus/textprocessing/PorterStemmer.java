@@ -1,7 +1,5 @@
 package sg.edu.nus.wing.qanus.textprocessing;
 
-import java.util.StringTokenizer;
-
 import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 
 /*
@@ -366,48 +364,19 @@ public class PorterStemmer implements ITextProcessingModule {
    }
 
 
-   /**
-	* Takes in a word and return the stemmed word.
-	* @param a_Word [in] word to be stemmed
-	* @return stemmed word.
-	*/
-   private String StemWord(String a_Word) {
-
-	   a_Word = a_Word.toLowerCase();
-	   add(a_Word.toCharArray(), a_Word.length());
-	   stem();
-	   String l_Result = new String(getResultBuffer()).substring(0, getResultLength());
-	   return l_Result;
-
-   } // end StemWord()
-
-   
    /**
      * Processes each sentence, stemming each word in the setence.
 	 * A word is assumed to be space delimited.
+	 * This is done by the shared PorterStemmingService, so unlike the rest of this class,
+	 * this can be called by several threads at once.
 	 *
 	 * @param a_Sentences [in] array of strings to process
 	 * @return array of processed strings corresponding to the input strings, or null on errors.
 	 */
 	public String[] ProcessText(String[] a_Sentences) {
 
-		// Sanity check
-		if (a_Sentences == null) return null;
-
-		// Process every sentence
-		String[] l_Result = new String[a_Sentences.length];
-		int l_Index = 0;
-		for (String l_Sentence : a_Sentences) {
-			String l_ResStr = "";
-			StringTokenizer l_ST = new StringTokenizer(l_Sentence);
-			while (l_ST.hasMoreTokens()) {
-				l_ResStr += StemWord(l_ST.nextToken()) + " ";
-			}
-			l_Result[l_Index] = l_ResStr.trim();
-			l_Index++;
-		} // end for
-
-		return l_Result;
+		return PorterStemmingService.GetInstance().ProcessText(a_Sentences);
+
 	} // end ProcessText()
 
 
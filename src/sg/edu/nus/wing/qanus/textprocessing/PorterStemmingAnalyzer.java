@@ -0,0 +1,81 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.io.IOException;
+import java.io.Reader;
+
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.LowerCaseFilter;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardFilter;
+import org.apache.lucene.analysis.standard.StandardTokenizer;
+
+
+/**
+ * Lucene analyzer which tokenises like StandardAnalyzer, then stems the tokens with
+ * a PorterStemmingService. Unlike StandardAnalyzer, stop words are kept.
+ *
+ * The same analyzer should be used for building a Lucene index and querying it,
+ * so that the query terms are stemmed in the same way as the indexed terms.
+ */
+public class PorterStemmingAnalyzer extends Analyzer {
+
+	private PorterStemmingService m_Stemmer;
+
+
+	/**
+	 * The token stream re-used by reusableTokenStream() for each thread.
+	 */
+	private static class SavedStreams {
+		StandardTokenizer m_Tokenizer;
+		TokenStream m_Stream;
+	} // end class SavedStreams
+
+
+	/**
+	 * Constructor, using the shared stemming service.
+	 */
+	public PorterStemmingAnalyzer() {
+		this(PorterStemmingService.GetInstance());
+	} // end constructor
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param a_Stemmer [in] stemming service to use
+	 */
+	public PorterStemmingAnalyzer(PorterStemmingService a_Stemmer) {
+		m_Stemmer = a_Stemmer;
+	} // end constructor
+
+
+	@Override
+	public TokenStream tokenStream(String a_FieldName, Reader a_Reader) {
+
+		TokenStream l_Stream = new StandardTokenizer(a_Reader);
+		l_Stream = new StandardFilter(l_Stream);
+		l_Stream = new LowerCaseFilter(l_Stream);
+		return new PorterStemmingFilter(l_Stream, m_Stemmer);
+
+	} // end tokenStream()
+
+
+	@Override
+	public TokenStream reusableTokenStream(String a_FieldName, Reader a_Reader) throws IOException {
+
+		SavedStreams l_Streams = (SavedStreams) getPreviousTokenStream();
+		if (l_Streams == null) {
+			l_Streams = new SavedStreams();
+			l_Streams.m_Tokenizer = new StandardTokenizer(a_Reader);
+			l_Streams.m_Stream = new PorterStemmingFilter(new LowerCaseFilter(new StandardFilter(l_Streams.m_Tokenizer)), m_Stemmer);
+			setPreviousTokenStream(l_Streams);
+		} else {
+			l_Streams.m_Tokenizer.reset(a_Reader);
+		}
+
+		return l_Streams.m_Stream;
+
+	} // end reusableTokenStream()
+
+
+} // end class PorterStemmingAnalyzer
@@ -0,0 +1,56 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.io.IOException;
+
+import org.apache.lucene.analysis.Token;
+import org.apache.lucene.analysis.TokenFilter;
+import org.apache.lucene.analysis.TokenStream;
+
+
+/**
+ * Lucene token filter which stems tokens with a PorterStemmingService, so that the terms
+ * in a Lucene index have the same stems as those produced elsewhere in QANUS.
+ * Tokens are put in lower case as they are stemmed.
+ */
+public class PorterStemmingFilter extends TokenFilter {
+
+	private PorterStemmingService m_Stemmer;
+
+
+	/**
+	 * Constructor, using the shared stemming service.
+	 *
+	 * @param a_Input [in] tokens to stem
+	 */
+	public PorterStemmingFilter(TokenStream a_Input) {
+		this(a_Input, PorterStemmingService.GetInstance());
+	} // end constructor
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param a_Input [in] tokens to stem
+	 * @param a_Stemmer [in] stemming service to use
+	 */
+	public PorterStemmingFilter(TokenStream a_Input, PorterStemmingService a_Stemmer) {
+		super(a_Input);
+		m_Stemmer = a_Stemmer;
+	} // end constructor
+
+
+	@Override
+	public Token next(Token a_ReusableToken) throws IOException {
+
+		Token l_Token = input.next(a_ReusableToken);
+		if (l_Token == null) return null;
+
+		char[] l_Stem = m_Stemmer.GetStem(l_Token.termBuffer(), 0, l_Token.termLength());
+		l_Token.setTermBuffer(l_Stem, 0, l_Stem.length);
+
+		return l_Token;
+
+	} // end next()
+
+
+} // end class PorterStemmingFilter
@@ -0,0 +1,256 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
+
+
+/**
+ * Stems words with the Porter stemming algorithm, see PorterStemmer.
+ *
+ * Unlike PorterStemmer, this can be shared by any number of threads. Each thread stems
+ * with its own PorterStemmer, and the stems of the words seen so far are remembered, up
+ * to a limit. A few common words make up most of any text, so most words are stemmed only
+ * once. When the limit is reached, no more words are remembered, but the common words are
+ * most likely remembered already.
+ *
+ * Words are stemmed in lower case. Sentences are taken to be made up of words delimited by
+ * whitespace, as with StringTokenizer. StemSentence() stems a sentence without creating a
+ * String for each word, and PorterStemmingFilter uses the same stems for Lucene.
+ */
+public class PorterStemmingService implements ITextProcessingModule {
+
+
+	// Default number of words to remember the stems of
+	public static final int DEFAULT_MAX_CACHED_WORDS = 100000;
+
+	// Characters delimiting words, as for StringTokenizer
+	private static final String DELIMITERS = " \t\n\r\f";
+
+	// Shared by everyone, see GetInstance()
+	private static final PorterStemmingService m_Instance = new PorterStemmingService(DEFAULT_MAX_CACHED_WORDS);
+
+
+	// Stems remembered, keyed by word in lower case
+	private final ConcurrentHashMap<WordKey, char[]> m_Stems = new ConcurrentHashMap<WordKey, char[]>();
+	private final int m_MaxCachedWords;
+
+	// Stemmer, and key to look up words with, of the current thread
+	private final ThreadLocal<PorterStemmer> m_Stemmer = new ThreadLocal<PorterStemmer>() {
+		@Override
+		protected PorterStemmer initialValue() {
+			return new PorterStemmer();
+		}
+	};
+	private final ThreadLocal<WordKey> m_LookupKey = new ThreadLocal<WordKey>() {
+		@Override
+		protected WordKey initialValue() {
+			return new WordKey(new char[32], 0);
+		}
+	};
+
+
+	/**
+	 * Characters of a word, used as a key to the remembered stems.
+	 * The key of each thread is re-used for looking up words, so that looking up
+	 * a word does not create anything.
+	 */
+	private static class WordKey {
+
+		private char[] m_Chars;
+		private int m_Length;
+		private int m_Hash;
+
+		public WordKey(char[] a_Chars, int a_Length) {
+			Set(a_Chars, a_Length);
+		}
+
+		/**
+		 * Makes this the key of the given characters. The characters are not copied.
+		 */
+		public void Set(char[] a_Chars, int a_Length) {
+			m_Chars = a_Chars;
+			m_Length = a_Length;
+			int l_Hash = 0;
+			for (int i = 0; i < a_Length; ++i) {
+				l_Hash = 31 * l_Hash + a_Chars[i];
+			}
+			m_Hash = l_Hash;
+		}
+
+		@Override
+		public int hashCode() {
+			return m_Hash;
+		}
+
+		@Override
+		public boolean equals(Object a_Other) {
+			if (!(a_Other instanceof WordKey)) return false;
+			WordKey l_Other = (WordKey) a_Other;
+			if (l_Other.m_Length != m_Length || l_Other.m_Hash != m_Hash) return false;
+			for (int i = 0; i < m_Length; ++i) {
+				if (l_Other.m_Chars[i] != m_Chars[i]) return false;
+			}
+			return true;
+		}
+
+	} // end class WordKey
+
+
+	/**
+	 * Constructor.
+	 *
+	 * @param a_MaxCachedWords [in] maximum number of words to remember the stems of
+	 */
+	public PorterStemmingService(int a_MaxCachedWords) {
+		m_MaxCachedWords = a_MaxCachedWords;
+	} // end constructor
+
+
+	/**
+	 * Retrieves the stemming service shared by everyone, which remembers the stems of
+	 * up to DEFAULT_MAX_CACHED_WORDS words.
+	 *
+	 * @return the shared stemming service
+	 */
+	public static PorterStemmingService GetInstance() {
+		return m_Instance;
+	} // end GetInstance()
+
+
+	/**
+	 * Retrieves the stem of a word. The word is put in lower case first.
+	 * The stem returned is shared, and must not be changed.
+	 *
+	 * @param a_Buffer [in] characters holding the word
+	 * @param a_Offset [in] index of the first character of the word
+	 * @param a_Length [in] number of characters in the word
+	 * @return the stem, taking up the whole array
+	 */
+	char[] GetStem(char[] a_Buffer, int a_Offset, int a_Length) {
+
+		// Put the word in lower case into the lookup key of this thread
+		WordKey l_Key = m_LookupKey.get();
+		char[] l_Chars = l_Key.m_Chars;
+		if (l_Chars.length < a_Length) {
+			l_Chars = new char[Math.max(a_Length, 2 * l_Chars.length)];
+		}
+		for (int i = 0; i < a_Length; ++i) {
+			l_Chars[i] = Character.toLowerCase(a_Buffer[a_Offset + i]);
+		}
+		l_Key.Set(l_Chars, a_Length);
+
+		char[] l_Stem = m_Stems.get(l_Key);
+		if (l_Stem != null) return l_Stem;
+
+
+		// Not seen before, stem it
+		PorterStemmer l_Stemmer = m_Stemmer.get();
+		l_Stemmer.add(l_Chars, a_Length);
+		l_Stemmer.stem();
+		l_Stem = Arrays.copyOf(l_Stemmer.getResultBuffer(), l_Stemmer.getResultLength());
+
+		if (m_Stems.size() < m_MaxCachedWords) {
+			m_Stems.put(new WordKey(Arrays.copyOf(l_Chars, a_Length), a_Length), l_Stem);
+		}
+
+		return l_Stem;
+
+	} // end GetStem()
+
+
+	/**
+	 * Retrieves the stem of a word. The word is put in lower case first.
+	 *
+	 * @param a_Word [in] word to be stemmed
+	 * @return stemmed word
+	 */
+	public String Stem(String a_Word) {
+
+		return new String(GetStem(a_Word.toCharArray(), 0, a_Word.length()));
+
+	} // end Stem()
+
+
+	/**
+	 * Stems each word in a sentence, adding the stemmed words to the given output,
+	 * separated by single spaces.
+	 *
+	 * @param a_Sentence [in] sentence to be stemmed
+	 * @param a_Output [out] to add the stemmed sentence to
+	 */
+	public void StemSentence(CharSequence a_Sentence, StringBuilder a_Output) {
+
+		int l_Length = a_Sentence.length();
+		char[] l_Word = new char[Math.min(l_Length, 64)];
+		boolean l_First = true;
+
+		int i = 0;
+		while (i < l_Length) {
+
+			// Skip to the start of the next word
+			while (i < l_Length && DELIMITERS.indexOf(a_Sentence.charAt(i)) >= 0) ++i;
+			if (i == l_Length) break;
+
+			// Collect the word
+			int l_WordLength = 0;
+			while (i < l_Length && DELIMITERS.indexOf(a_Sentence.charAt(i)) < 0) {
+				if (l_WordLength == l_Word.length) {
+					l_Word = Arrays.copyOf(l_Word, 2 * l_Word.length);
+				}
+				l_Word[l_WordLength++] = a_Sentence.charAt(i++);
+			}
+
+			if (!l_First) a_Output.append(' ');
+			a_Output.append(GetStem(l_Word, 0, l_WordLength));
+			l_First = false;
+
+		}
+
+	} // end StemSentence()
+
+
+	/**
+	 * Stems each word in a sentence.
+	 *
+	 * @param a_Sentence [in] sentence to be stemmed
+	 * @return the stemmed words, separated by single spaces
+	 */
+	public String StemSentence(String a_Sentence) {
+
+		StringBuilder l_Output = new StringBuilder(a_Sentence.length());
+		StemSentence(a_Sentence, l_Output);
+		return l_Output.toString();
+
+	} // end StemSentence()
+
+
+	/**
+	 * Processes each sentence, stemming each word in the sentence.
+	 * A word is assumed to be space delimited.
+	 *
+	 * @param a_Sentences [in] array of strings to process
+	 * @return array of processed strings corresponding to the input strings, or null on errors.
+	 */
+	public String[] ProcessText(String[] a_Sentences) {
+
+		// Sanity check
+		if (a_Sentences == null) return null;
+
+		String[] l_Result = new String[a_Sentences.length];
+		for (int i = 0; i < a_Sentences.length; ++i) {
+			l_Result[i] = StemSentence(a_Sentences[i]);
+		}
+
+		return l_Result;
+
+	} // end ProcessText()
+
+
+	public String GetModuleID() {
+		return "PorterStemmer";
+	}
+
+
+} // end class PorterStemmingService
@@ -2,28 +2,23 @@
 package sg.edu.nus.wing.qanus.textprocessing;
 
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.PrintStream;
-import java.util.StringTokenizer;
 
 import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 import sg.edu.nus.wing.qanus.framework.util.DirectoryAndFileManipulation;
 import edu.stanford.nlp.classify.ColumnDataClassifier;
+import edu.stanford.nlp.classify.LinearClassifier;
+import edu.stanford.nlp.ling.Datum;
 
 
 
 /**
  * Wrapper of Stanford's Classifier by the Stanford NLP group. (http://nlp.stanford.edu/)
- * The implementation of the classifier doesn't de-couple very well, most of the
- * innards are tied to each other, and it's not worth the effort to change Stanford's
- * code for this wrapper because this defeats the purpose of a wrapper.
- * Thus, we run the classifier through the most reliable interface we have to it
- * instead, by invoking the jar in a separate shell instead.
+ * The trained classifier is loaded once, when this is constructed, and kept in memory.
+ * Questions are turned into features by ColumnDataClassifier, according to the same
+ * settings file used when training the classifier, and classified directly.
+ *
+ * Classifying is thread-safe, so a single instance can be shared by several threads.
  *
  * The model that we are using is trained over the training data provided at
  * http://l2r.cs.uiuc.edu/~cogcomp/Data/QA/QC/
@@ -40,12 +35,14 @@ public class QuestionClassifierWithStanfordClassifier implements ITextProcessing
 
 	private final String CONFIG_FILE_NAME = "StanfordClassifer.settings";
 
-	private final String TEST_FILE_NAME = "QC.temp";
 
-	private final String RES_FILE_NAME = "QC-ans.temp";
+	private String m_ConfigFileName;
 
+	// Turns questions into features, according to the settings file
+	private ColumnDataClassifier m_FeatureExtractor;
 
-	private String m_TestFileName, m_ConfigFileName, m_ResFileName;
+	// The trained classifier
+	private LinearClassifier<String, String> m_Classifier;
 
 	/**
 	 * Constructor
@@ -67,9 +64,7 @@ public class QuestionClassifierWithStanfordClassifier implements ITextProcessing
 		if (!DirectoryAndFileManipulation.CreateDirectoryIfNonExistent(l_TargetFolder)) {
 			throw new Exception("Exception initializing Question Classifier - Error accessing temp folder.");
 		}
-		m_TestFileName = l_TargetFolder.getAbsolutePath() + File.separator + TEST_FILE_NAME;
 		m_ConfigFileName = l_TargetFolder.getAbsolutePath() + File.separator + CONFIG_FILE_NAME;
-		m_ResFileName = l_TargetFolder.getAbsolutePath() + File.separator + RES_FILE_NAME;
 
 
 		
@@ -79,6 +74,18 @@ public class QuestionClassifierWithStanfordClassifier implements ITextProcessing
 		} catch (Exception e) {
 			throw new Exception("Exception initializing Question Classifier - Unable to create configuration file!");
 		}
+
+
+		// Load the classifier
+		try {
+			m_FeatureExtractor = new ColumnDataClassifier(m_ConfigFileName);
+			m_Classifier = LinearClassifier.readClassifier(a_ClassifierFileName);
+		} catch (Exception e) {
+			throw new Exception("Exception initializing Question Classifier - Unable to load classifier! [" + e + "]");
+		}
+		if (m_Classifier == null) {
+			throw new Exception("Exception initializing Question Classifier - Unable to load classifier!");
+		}
 		
 
 	} // end constructor
@@ -138,118 +145,84 @@ public class QuestionClassifierWithStanfordClassifier implements ITextProcessing
 
 
 
-	/**
-	 * Given a path, we add an extra slash to every slash.
-	 * This is used because the Stanford Classifier seems to treat a single slash as
-	 * an escape character when they pass the settings file.
-	 * @param a_String [in] string to add slashes to
-	 * @return a string with two slashes for every existing one
-	 */
-	private String DoubleSlashes(String a_String) {
-
-		java.util.regex.Pattern l_Regex = null;
-		try {
-			l_Regex = java.util.regex.Pattern.compile("\\\\");
-			java.util.regex.Matcher l_Matcher = l_Regex.matcher(a_String);
-			String l_Result = l_Matcher.replaceAll("\\\\\\\\");
-			return l_Result;
-		} catch (Exception e) {
-			// Some error! TODO
-		}
-		
-		// Fail safe, just return the original string
-		return a_String;
-
-	} // end DoubleSlashes()
-
-
 	/**
 	 * Takes in a question and return its classification according to
 	 * Li and Roth 2002.
 	 * We only expect one input question each time.
 	 * @param a_Sentences [in] input sentence, only 1st element of array expected.
-	 * @return Label of question as 1st element of array, according to Li and Roth 2002, or null on errors.
+	 * @return Label of question as 1st element of array, according to Li and Roth 2002,
+	 *         and its confidence as 2nd element, or null on errors.
 	 */
 	@Override
 	public String[] ProcessText(String[] a_Sentences) {
 
-		if (a_Sentences == null || a_Sentences[0].length() == 0) {
+		if (a_Sentences == null || a_Sentences.length == 0) {
 			return null;
 		}
 
-		String[] l_Result = new String[2];
+		return Classify(a_Sentences[0]);
 
-		try {
-			// Create test file for Stanford Classifier
-			CreateTestFile(a_Sentences[0]);
-			//System.out.println(m_ResFileName);
-
-			// Invoke Stanford Classifier after re-directing stdout
-			PrintStream stdout = System.out;
-			File l_ResFile = new File(m_ResFileName);
-			PrintStream l_NewStdOut = new PrintStream(new FileOutputStream(l_ResFile, false));
-			System.setOut(l_NewStdOut);
-
-			String[] l_Arguments = {"-prop", m_ConfigFileName};
-			ColumnDataClassifier.main(l_Arguments);
-
-			System.setOut(stdout);
-			
-
-			// Retreive result by accessing the result file
-			l_NewStdOut.flush();
-			l_NewStdOut.close();
-
-			BufferedReader l_BR = new BufferedReader(new FileReader(l_ResFile));
-			String l_ResultLine = l_BR.readLine();
-			l_BR.close();
-			if (l_ResultLine != null && l_ResultLine.length() > 0) {
-				StringTokenizer l_ST = new StringTokenizer(l_ResultLine, "\t");				
-				String l_Question = l_ST.nextToken();
-				String l_DummyAnswer = l_ST.nextToken();
-				String l_Answer = l_ST.nextToken();
-				String l_Confidence = l_ST.nextToken();
-				l_Result[0] = l_Answer;
-				l_Result[1] = l_Confidence;
-			}
-			
-		} catch (Exception ex) {
-			// Error encountered, unable to read result, just say no result.
+	} // end ProcessText()
+
+
+	/**
+	 * Classifies a question according to Li and Roth 2002.
+	 *
+	 * @param a_Question [in] the question to classify
+	 * @return Label of question as 1st element of array, and its confidence (probability)
+	 *         as 2nd element, or null on errors.
+	 */
+	public String[] Classify(String a_Question) {
+
+		if (a_Question == null || a_Question.length() == 0) {
 			return null;
 		}
 
-		return l_Result;
+		try {
 
-	} // end ProcessText()
+			// Same line format as the test file fed to ColumnDataClassifier
+			Datum<String, String> l_Datum = null;
+			synchronized (m_FeatureExtractor) {
+				l_Datum = m_FeatureExtractor.makeDatumFromLine("dummy-answer\t" + a_Question, 0);
+			}
 
+			String[] l_Result = new String[2];
+			l_Result[0] = m_Classifier.classOf(l_Datum);
+			l_Result[1] = Double.toString(m_Classifier.probabilityOf(l_Datum).getCount(l_Result[0]));
+			return l_Result;
 
-	@Override
-	public String GetModuleID() {
-		return "QC";
-	} // end GetModuleID()
+		} catch (Exception ex) {
+			// Error encountered, unable to classify, just say no result.
+			return null;
+		}
 
+	} // end Classify()
 
 
 	/**
-	 * Writes the question we want to classify to a temp file, in a format
-	 * ready for use by the Stanford classifier.
-	 * If the temp file already exists before this, it will be overwritten.
-	 * @param a_Question [in] the question to be classified
+	 * Classifies a batch of questions according to Li and Roth 2002.
+	 *
+	 * @param a_Questions [in] the questions to classify
+	 * @return for each question, in the same order, its label as 1st element of the array
+	 *         and its confidence as 2nd element. Elements are null for questions which
+	 *         could not be classified.
 	 */
-	private void CreateTestFile(String a_Question) throws Exception {
+	public String[][] Classify(String[] a_Questions) {
 
-		// Write the test file inside temp folder
-		File l_TestFile = new File(m_TestFileName);
-		BufferedWriter l_BW = new BufferedWriter(new FileWriter(l_TestFile, false));
-		l_BW.write("dummy-answer\t" + a_Question);
-		l_BW.newLine();
+		String[][] l_Results = new String[a_Questions.length][];
+		for (int i = 0; i < a_Questions.length; ++i) {
+			l_Results[i] = Classify(a_Questions[i]);
+		}
 
+		return l_Results;
 
-		l_BW.flush();
-		l_BW.close();
+	} // end Classify()
 
-	} // end CreateTestFile()
 
+	@Override
+	public String GetModuleID() {
+		return "QC";
+	} // end GetModuleID()
 
 
 
@@ -2,9 +2,11 @@ package sg.edu.nus.wing.qanus.textprocessing;
 
 
 
+import java.util.ArrayList;
 import java.util.LinkedList;
+import java.util.StringTokenizer;
+import java.util.concurrent.TimeoutException;
 
-import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
 import edu.stanford.nlp.parser.lexparser.Options;
 
@@ -14,54 +16,144 @@ import edu.stanford.nlp.parser.lexparser.Options;
 /**
  * A grammar parser by the Stanford NLP group. (http://nlp.stanford.edu/)
  * We are basically doing a wrapper here around the original source files from the Stanford group.
+ *
+ * Several sentences can be parsed at the same time by a pool of parsers, see SetPoolSize().
+ * Each parser in the pool is owned by one thread of the pool, and holds its own copy of the grammar.
+ *
+ * Parsing time grows quickly with the length of a sentence. To keep the time taken in check :
+ * - SetMaxSentenceLength() limits the number of words of the sentences to parse.
+ * - SetTimeBudget() limits the time to spend parsing each sentence.
+ * Sentences which are too long, or which take too long, are given a flat parse instead, in which
+ * every word hangs off a single FRAG node : (ROOT (FRAG (X word) (X word) ...)).
+ * A parse which runs out of time cannot be stopped, so it goes on in the background and holds up
+ * its parser until it is done. Sentences waiting for that parser may then run out of time as well.
  * 
  * @author Ng, Jun Ping -- ngjp@nus.edu.sg
  * @version 18Sep2009
  */
-public class StanfordGrammarParser implements ITextProcessingModule {
+public class StanfordGrammarParser implements IConfiguredModule {
 	
 	
 	private String m_PCFGParserFileName;
 		
-	private LexicalizedParser m_LP;
+	// Parsers, and the threads which own them
+	private ModelPool<LexicalizedParser> m_Parsers;
+
+	// Maximum number of words of a sentence to parse, 0 for no limit
+	private int m_MaxSentenceLength = 0;
+
+	// Maximum time to spend parsing each sentence in milliseconds, 0 for no limit
+	private long m_TimeBudget = 0;
 	
 	
 	public StanfordGrammarParser(String a_ParserFileName) {
 			
 		m_PCFGParserFileName = a_ParserFileName;
 				
-		LoadParser();
+		m_Parsers = new ModelPool<LexicalizedParser>("StanfordGrammarParser", new ModelPool.IModelFactory<LexicalizedParser>() {
+			public LexicalizedParser CreateModel() {
+				return CreateParser();
+			}
+		}, false);
+		m_Parsers.EnsureLoaded();
 		
 		
 	} // end constructor
+
+
+	/**
+	 * Constructor, with a pool of parsers.
+	 *
+	 * @param a_ParserFileName [in] file name of the grammar
+	 * @param a_PoolSize [in] number of parsers to parse sentences with at the same time
+	 */
+	public StanfordGrammarParser(String a_ParserFileName, int a_PoolSize) {
+
+		this(a_ParserFileName);
+
+		SetPoolSize(a_PoolSize);
+
+	} // end constructor
 	
 	
 	
 	/**
-	 * This function attempts to load the Stanford parser.
-	 * If not loaded, m_LP will be set to null.
-	 * If m_LP is not null when this function is called, it is nullified,
-	 *  and we attempt to re-load the parser.
-	 * 
-	 * @return true on successful load. false otherwise. If false is returned, m_LP is nullified.
+	 * Loads a new instance of the Stanford parser.
+	 *
+	 * @return the parser, or null if it cannot be loaded
 	 */
-	private boolean LoadParser() {
-		
-		// Try to init the stanford parser
-		m_LP = null;
+	private LexicalizedParser CreateParser() {
+
 		Options l_Options = new Options();
 		try {
-			m_LP = new LexicalizedParser(m_PCFGParserFileName, l_Options);
+			return new LexicalizedParser(m_PCFGParserFileName, l_Options);
 		} catch (IllegalArgumentException e) {
-			System.err.println("StanfordGrammarParser::LoadParser() -> Error loading parser.");
-			m_LP = null;
-			return false;
-		}	
-		
-		return true;
-		
-	} // end LoadParser()
+			System.err.println("StanfordGrammarParser::CreateParser() -> Error loading parser.");
+			return null;
+		}
+
+	} // end CreateParser()
+
+
+	/**
+	 * Sets the number of parsers used to parse sentences at the same time.
+	 * The additional parsers are loaded right away. A pool size of 1 does away with the
+	 * pool, unless there is a time budget, see SetTimeBudget().
+	 * This is meant to be called when setting up, not while sentences are being parsed.
+	 *
+	 * @param a_PoolSize [in] number of parsers
+	 * @return true if the parsers are loaded, false otherwise, in which case the pool is left as it was
+	 */
+	public synchronized boolean SetPoolSize(int a_PoolSize) {
+
+		// A time budget needs the parsing to be done by the pool, even with a single parser,
+		// so that the caller can stop waiting.
+		return m_Parsers.SetSize(a_PoolSize, m_TimeBudget > 0);
+
+	} // end SetPoolSize()
+
+
+	/**
+	 * @return true if the parser is loaded
+	 */
+	public boolean IsLoaded() {
+		return m_Parsers.IsLoaded();
+	} // end IsLoaded()
+
+
+	/**
+	 * Limits the length of the sentences to parse. Longer sentences are given a flat parse.
+	 *
+	 * @param a_MaxWords [in] maximum number of words in a sentence to parse, 0 for no limit (default)
+	 */
+	public void SetMaxSentenceLength(int a_MaxWords) {
+		m_MaxSentenceLength = (a_MaxWords < 0) ? 0 : a_MaxWords;
+	} // end SetMaxSentenceLength()
+
+
+	/**
+	 * @return the limits on the length of the sentences and the time to parse them, which change the results
+	 */
+	public String GetSettings() {
+		return "maxwords=" + m_MaxSentenceLength + ",timebudget=" + m_TimeBudget;
+	} // end GetSettings()
+
+
+	/**
+	 * Limits the time spent on parsing each sentence. Sentences which are not parsed in time
+	 * are given a flat parse. The parsing is then done by the pool of parsers, see SetPoolSize().
+	 *
+	 * @param a_Milliseconds [in] maximum time to parse a sentence, 0 for no limit (default)
+	 * @return true if the time budget is set, false if the parser cannot be loaded
+	 */
+	public synchronized boolean SetTimeBudget(long a_Milliseconds) {
+
+		m_TimeBudget = (a_Milliseconds < 0) ? 0 : a_Milliseconds;
 
+		// Set up the pool if this is needed to keep to the time budget
+		return SetPoolSize(m_Parsers.GetSize());
+
+	} // end SetTimeBudget()
 
 
 	@Override
@@ -70,22 +162,48 @@ public class StanfordGrammarParser implements ITextProcessingModule {
 		LinkedList<String> l_TaggedSentences = new LinkedList<String>();
 		
 		// Check that the parser is loaded properly. We cannot proceed otherwise.
-		boolean l_ParserLoaded = false;
-		if (m_LP == null)  {
-			l_ParserLoaded = LoadParser();
-			if (!l_ParserLoaded) {
-				return null;
+		if (!m_Parsers.EnsureLoaded()) {
+			return null;
+		}
+
+
+		// Share the sentences out amongst the parsers of the pool
+		ArrayList<ModelPool.IModelTask<LexicalizedParser, String>> l_Tasks = new ArrayList<ModelPool.IModelTask<LexicalizedParser, String>>(a_Sentences.length);
+		for (final String l_Sentence : a_Sentences) {
+			if (IsTooLong(l_Sentence)) {
+				l_Tasks.add(null);
+			} else {
+				l_Tasks.add(new ModelPool.IModelTask<LexicalizedParser, String>() {
+					public String Run(LexicalizedParser a_Parser) {
+						return Parse(a_Parser, l_Sentence);
+					}
+				});
 			}
-		} // else assume parser is loaded already since m_LP is not null.
-		
-		
-		// Parse each sentence
-		for (String l_Sentence : a_Sentences) {
-			
-			if (m_LP.parse(l_Sentence)) {
-				l_TaggedSentences.add(m_LP.getBestParse().toString());				
+		}
+		ModelPool<LexicalizedParser>.Batch<String> l_Batch = m_Parsers.Submit(l_Tasks, m_TimeBudget);
+
+
+		// Collect the results in order
+		for (int i = 0; i < a_Sentences.length; ++i) {
+
+			String l_Parse = null;
+			if (l_Tasks.get(i) == null) {
+				l_Parse = FlatParse(a_Sentences[i]);
+			} else {
+				try {
+					l_Parse = l_Batch.Get(i);
+				} catch (TimeoutException e) {
+					// Make do with a flat parse
+					l_Parse = FlatParse(a_Sentences[i]);
+				} catch (Exception e) {
+					System.err.println("StanfordGrammarParser::ProcessText() -> Error parsing sentence :" + e);
+				}
 			}
-			
+
+			if (l_Parse != null) {
+				l_TaggedSentences.add(l_Parse);
+			}
+
 		} // end for
 		
 		
@@ -95,6 +213,59 @@ public class StanfordGrammarParser implements ITextProcessingModule {
 	} // end ProcessText()
 
 
+	/**
+	 * Parses a sentence.
+	 *
+	 * @param a_Parser [in] parser to use
+	 * @param a_Sentence [in] sentence to parse
+	 * @return the best parse, or null if the sentence cannot be parsed
+	 */
+	private String Parse(LexicalizedParser a_Parser, String a_Sentence) {
+
+		if (a_Parser.parse(a_Sentence)) {
+			return a_Parser.getBestParse().toString();
+		}
+
+		return null;
+
+	} // end Parse()
+
+
+	/**
+	 * Checks if a sentence is longer than the maximum length of sentences to parse.
+	 *
+	 * @param a_Sentence [in] sentence to check
+	 * @return true if the sentence is too long to parse
+	 */
+	private boolean IsTooLong(String a_Sentence) {
+
+		return (m_MaxSentenceLength > 0 && new StringTokenizer(a_Sentence).countTokens() > m_MaxSentenceLength);
+
+	} // end IsTooLong()
+
+
+	/**
+	 * Gives a flat parse for a sentence which is not parsed, in which every word hangs off a single
+	 * FRAG node. Brackets within the sentence are written as -LRB- and -RRB-, as in Penn Treebank.
+	 *
+	 * @param a_Sentence [in] the sentence
+	 * @return flat parse of the sentence
+	 */
+	private String FlatParse(String a_Sentence) {
+
+		StringBuilder l_Parse = new StringBuilder("(ROOT (FRAG");
+		StringTokenizer l_ST = new StringTokenizer(a_Sentence);
+		while (l_ST.hasMoreTokens()) {
+			String l_Word = l_ST.nextToken().replace("(", "-LRB-").replace(")", "-RRB-");
+			l_Parse.append(" (X ").append(l_Word).append(')');
+		}
+		l_Parse.append("))");
+
+		return l_Parse.toString();
+
+	} // end FlatParse()
+
+
 
 	@Override
 	public String GetModuleID() {	
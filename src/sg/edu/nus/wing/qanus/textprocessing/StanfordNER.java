@@ -5,7 +5,6 @@ import java.util.LinkedList;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 import edu.stanford.nlp.ie.AbstractSequenceClassifier;
 import edu.stanford.nlp.ie.crf.CRFClassifier;
 
@@ -13,14 +12,29 @@ import edu.stanford.nlp.ie.crf.CRFClassifier;
 /**
  * Wrapper over Stanford's CRF NER engine by the Stanford NLP group.
  * (http://nlp.stanford.edu/)
+ *
+ * Several sentences can be tagged at the same time by a pool of classifiers, see SetPoolSize().
+ * Each classifier in the pool is owned by one thread of the pool, as a classifier cannot be
+ * used by two threads at once. Every classifier holds its own copy of the model.
+ *
+ * The time taken grows quickly with the length of a sentence, so a very long sentence,
+ * as is found on some web pages, can hold up everything else. SetMaxSentenceLength()
+ * guards against this by only tagging the start of such sentences.
  * 
  * @author NG, Jun Ping -- ngjp@nus.edu.sg
  * @version 18Sep2009
  */
-public class StanfordNER implements ITextProcessingModule {
+public class StanfordNER implements IConfiguredModule {
 
 
-	private AbstractSequenceClassifier m_Classifier;
+	private String m_ClassifierFileName;
+
+	// Classifiers, and the threads which own them
+	private ModelPool<AbstractSequenceClassifier> m_Classifiers;
+
+	// Maximum number of words of a sentence to tag, 0 for no limit
+	private int m_MaxSentenceLength = 0;
+
 
 	/**
 	 * Constructor.
@@ -28,29 +42,133 @@ public class StanfordNER implements ITextProcessingModule {
 	 */
 	public StanfordNER(String a_ClassifierFileName) {
   
-      m_Classifier = CRFClassifier.getClassifierNoExceptions(a_ClassifierFileName);
+      m_ClassifierFileName = a_ClassifierFileName;
+      m_Classifiers = new ModelPool<AbstractSequenceClassifier>("StanfordNER", new ModelPool.IModelFactory<AbstractSequenceClassifier>() {
+    	  public AbstractSequenceClassifier CreateModel() {
+    		  return CRFClassifier.getClassifierNoExceptions(m_ClassifierFileName);
+    	  }
+      }, false);
+      m_Classifiers.EnsureLoaded();
+	} // end constructor
+
+
+	/**
+	 * Constructor, with a pool of classifiers.
+	 * @param a_ClassifierFileName [in] file name of classifier to load.
+	 * @param a_PoolSize [in] number of classifiers to tag sentences with at the same time
+	 */
+	public StanfordNER(String a_ClassifierFileName, int a_PoolSize) {
+
+		this(a_ClassifierFileName);
+
+		SetPoolSize(a_PoolSize);
+
 	} // end constructor
 
 
+	/**
+	 * Sets the number of classifiers used to tag sentences at the same time.
+	 * The additional classifiers are loaded right away. A pool size of 1 does away with the
+	 * pool, and sentences are then tagged one by one on the calling thread.
+	 * This is meant to be called when setting up, not while sentences are being tagged.
+	 *
+	 * @param a_PoolSize [in] number of classifiers
+	 * @return true if the classifiers are loaded, false otherwise, in which case the pool is left as it was
+	 */
+	public boolean SetPoolSize(int a_PoolSize) {
+
+		return m_Classifiers.SetSize(a_PoolSize, false);
+
+	} // end SetPoolSize()
+
+
+	/**
+	 * @return true if the classifier is loaded
+	 */
+	public boolean IsLoaded() {
+		return m_Classifiers.IsLoaded();
+	} // end IsLoaded()
+
+
+	/**
+	 * Limits the length of the sentences to tag. Only the first words of longer sentences are
+	 * tagged, and the rest of the sentence is left out of the results.
+	 *
+	 * @param a_MaxWords [in] maximum number of words to tag in a sentence, 0 for no limit (default)
+	 */
+	public void SetMaxSentenceLength(int a_MaxWords) {
+		m_MaxSentenceLength = (a_MaxWords < 0) ? 0 : a_MaxWords;
+	} // end SetMaxSentenceLength()
+
+
+	/**
+	 * @return the limit on the length of the sentences to tag, which changes the results
+	 */
+	public String GetSettings() {
+		return "maxwords=" + m_MaxSentenceLength;
+	} // end GetSettings()
+
+
 	/**
 	 * Takes in a set of sentences, and performs named entity recognition with the sentences.
+	 * If there is a pool of classifiers, the sentences are shared out amongst them.
 	 *
 	 * @param a_Sentences [in] array containing sentences to be tagged
-	 * @return null on errors, or array of tagged sentences.
+	 * @return null on errors, or array of tagged sentences, in the same order.
 	 */
-	public String[] ProcessText(String[] a_Sentences) {
+	public String[] ProcessText(final String[] a_Sentences) {
 				
 		if (a_Sentences == null) {
 			return null;
 		}
 
+		// Check that the classifier is loaded properly. We cannot proceed otherwise.
+		if (!m_Classifiers.EnsureLoaded()) {
+			return null;
+		}
+
+
+		// The sentences are split into one consecutive chunk per classifier of the pool
+		LinkedList<String> l_ParsedSentences = new LinkedList<String>();
+		try {
+			for (LinkedList<String> l_Chunk : m_Classifiers.RunInChunks(a_Sentences.length, new ModelPool.IChunkTask<AbstractSequenceClassifier, LinkedList<String>>() {
+				public LinkedList<String> Run(AbstractSequenceClassifier a_Classifier, int a_Start, int a_End) {
+					return TagSentences(a_Classifier, a_Sentences, a_Start, a_End);
+				}
+			})) {
+				l_ParsedSentences.addAll(l_Chunk);
+			}
+		} catch (Exception e) {
+			Logger.getLogger("QANUS").logp(Level.WARNING, StanfordNER.class.getName(), "ProcessText", "Unable to perform NER", e);
+			return null;
+		}
+
+		// Return parsed sentences
+		return l_ParsedSentences.toArray(new String[0]);
+
+	} // end ProcessText()
+
+
+	/**
+	 * Tags a range of sentences with the given classifier.
+	 * Sentences which cannot be tagged are left out of the results.
+	 *
+	 * @param a_Classifier [in] classifier to use
+	 * @param a_Sentences [in] sentences to tag
+	 * @param a_Start [in] index of the first sentence to tag
+	 * @param a_End [in] index after the last sentence to tag
+	 * @return the tagged sentences, in order
+	 */
+	private LinkedList<String> TagSentences(AbstractSequenceClassifier a_Classifier, String[] a_Sentences, int a_Start, int a_End) {
+
 		LinkedList<String> l_ParsedSentences = new LinkedList<String>();
 
 		// Parse each sentence
-		for (String l_Sentence : a_Sentences) {
+		for (int i = a_Start; i < a_End; ++i) {
 
+			String l_Sentence = a_Sentences[i];
 			try {
-				String l_Result = m_Classifier.testString(l_Sentence);
+				String l_Result = a_Classifier.testString(LimitLength(l_Sentence));
 				l_ParsedSentences.add(l_Result);
 			} catch (Exception e) {								
 				Logger.getLogger("QANUS").log(Level.WARNING, "Unable to perform NER on sentence [" + l_Sentence + "]");
@@ -58,10 +176,39 @@ public class StanfordNER implements ITextProcessingModule {
 
 		}
 
-		// Return parsed sentences
-		return l_ParsedSentences.toArray(new String[0]);
+		return l_ParsedSentences;
+
+	} // end TagSentences()
+
+
+	/**
+	 * Cuts a sentence down to the maximum number of words to tag, if there is a limit.
+	 *
+	 * @param a_Sentence [in] sentence to cut down
+	 * @return the first words of the sentence, or the sentence itself if it is short enough
+	 */
+	private String LimitLength(String a_Sentence) {
+
+		if (m_MaxSentenceLength == 0) return a_Sentence;
+
+		// Find the end of the last word allowed
+		int l_NumWords = 0;
+		boolean l_InWord = false;
+		for (int i = 0; i < a_Sentence.length(); ++i) {
+			boolean l_IsSpace = Character.isWhitespace(a_Sentence.charAt(i));
+			if (!l_IsSpace && !l_InWord) {
+				if (l_NumWords == m_MaxSentenceLength) {
+					return a_Sentence.substring(0, i).trim();
+				}
+				++l_NumWords;
+			}
+			l_InWord = !l_IsSpace;
+		}
+
+		return a_Sentence;
+
+	} // end LimitLength()
 
-	} // end ProcessText()
 
 	public String GetModuleID() {
 		return "NER";
@@ -2,10 +2,13 @@ package sg.edu.nus.wing.qanus.textprocessing;
 
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.rmi.RemoteException;
-import java.util.LinkedList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeoutException;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.regex.Pattern;
 
 import javax.xml.namespace.QName;
 import javax.xml.rpc.Call;
@@ -34,110 +37,432 @@ import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
  * The WSDL describing the web service can be found on
  * http://wing.comp.nus.edu.sg/~forecite/forecite.wsdl
  *
+ * To cut down on round trips, sentences are sent to the web service in batches, see
+ * SetBatchSize(). The sentences of a batch are joined by a marker word, and the tagged
+ * text is split up again at the marker. If the web service does not keep the markers, the
+ * sentences are sent one at a time instead.
+ * Several batches can be sent at the same time, see SetMaxRequestsInFlight(), and each call
+ * can be given a deadline, see SetCallTimeout(). Batches which fail or run out of time are
+ * tagged by a fallback module instead, such as StanfordNER, if one is given with SetFallback().
+ * After a failure, the web service is left alone for a while and all sentences go to the
+ * fallback module, so that a web service which is down does not hold up every batch.
+ * Sentences which the fallback module cannot tag either are given empty results, which
+ * CachedTextProcessingModule does not keep.
+ *
+ * The web service is reached through an IEndpoint, so a local stand-in can take its place,
+ * such as a LocalEndpoint running a StanfordNER.
+ *
  * 
  * @author NG, Jun Ping -- junping@comp.nus.edu.sg
  */
 public class StanfordNERWebService implements ITextProcessingModule {
 
-	// Hard coded values to connect to web service @ WING
-	private String m_NameSpace = "urn:WING.NUS";
-	private String m_ServiceName = "WING.NUS";
-	private String m_WSDLURL = "http://wing.comp.nus.edu.sg/~wing.nus/wing.nus.wsdl";
-	private String m_OperationName = "tag_sentence_ner";
 
+	/**
+	 * Something which tags text with named entities, standing for the web service.
+	 * Implementations must allow calls from several threads at once.
+	 */
+	public interface IEndpoint {
+
+		/**
+		 * Tags text with named entities.
+		 *
+		 * @param a_Text [in] text to tag
+		 * @return the tagged text, in the word/TAG format
+		 * @throws Exception on any errors
+		 */
+		public String TagText(String a_Text) throws Exception;
+
+	} // end interface IEndpoint
+
+
+	/**
+	 * The NER web service, invoked through JAX-RPC.
+	 */
+	private static class JAXRPCEndpoint implements IEndpoint {
+
+		// Hard coded values to connect to web service @ WING
+		private String m_NameSpace = "urn:WING.NUS";
+		private String m_ServiceName = "WING.NUS";
+		private String m_OperationName = "tag_sentence_ner";
+
+		private Service m_Service = null;
+
+		// A Call cannot be used by several threads at once, so each thread sets up its own
+		private final ThreadLocal<Call> m_Call = new ThreadLocal<Call>();
+
+		public JAXRPCEndpoint(String a_WSDLURL) {
+
+			// Create the JAX-RPC Service to interact with the web m_Service
+			try {
+				// Get a handle to the service
+				QName l_Service_QN = new QName(m_NameSpace, m_ServiceName);
+				m_Service = ServiceFactory.newInstance().createService(new URL(a_WSDLURL), l_Service_QN);
+			} catch (ServiceException ex) {
+				Logger.getLogger("QANUS").log(Level.WARNING, "Unable to set up service.", ex);
+			} catch (MalformedURLException ex) {
+				Logger.getLogger("QANUS").log(Level.WARNING, "Bad URL for WSDL file", ex);
+			} // end try-catch
+
+		} // end constructor
+
+		public String TagText(String a_Text) throws Exception {
+
+			if (m_Service == null) {
+				throw new ServiceException("Service not set up");
+			}
+
+			Call l_Call = m_Call.get();
+			if (l_Call == null) {
+				// Set up the call
+				l_Call = m_Service.createCall(new QName(m_NameSpace, "WING.NUSPort"), new QName(m_NameSpace, m_OperationName));
+				l_Call.setReturnType(new QName(m_NameSpace,"tag_sentence_ner_response"), String.class);
+				m_Call.set(l_Call);
+			}
+
+			// Invoke the call
+			Object[] l_Parameters = new Object[] { a_Text };
+			String l_Result = (String) l_Call.invoke(l_Parameters);
+
+			Logger.getLogger("QANUS").log(Level.FINER, "Web service result [" + l_Result + "]");
+
+			return l_Result;
+
+		} // end TagText()
+
+	} // end class JAXRPCEndpoint
+
+
+	/**
+	 * Stands in for the web service with a module run locally, such as a StanfordNER,
+	 * so that the web service is not needed to try out batching, deadlines and fallback.
+	 * The module must allow calls from several threads at once.
+	 */
+	public static class LocalEndpoint implements IEndpoint {
+
+		private ITextProcessingModule m_Module;
+
+		public LocalEndpoint(ITextProcessingModule a_Module) {
+			m_Module = a_Module;
+		}
+
+		public String TagText(String a_Text) throws Exception {
+
+			String[] l_Result = m_Module.ProcessText(new String[] { a_Text });
+			if (l_Result == null || l_Result.length != 1) {
+				throw new Exception("Unable to tag text with [" + m_Module.GetModuleID() + "]");
+			}
+
+			return l_Result[0];
+
+		} // end TagText()
+
+	} // end class LocalEndpoint
+
+
+	// Location of the WSDL of the web service @ WING
+	private static final String DEFAULT_WSDL_URL = "http://wing.comp.nus.edu.sg/~wing.nus/wing.nus.wsdl";
+
+	// Word joining the sentences of a batch, and the pattern to split the tagged batch at
+	private static final String BATCH_MARKER = "QANUSSENTENCEBREAK";
+	private static final Pattern BATCH_MARKER_PATTERN = Pattern.compile("\\s*" + BATCH_MARKER + "(/\\S*)?\\s*");
+
+	// Time to leave the web service alone after a failure, in milliseconds
+	private static final long RETRY_AFTER_FAILURE = 30000;
+
+
+	// Calls to the web service, made by as many threads at once as allowed
+	private ModelPool<IEndpoint> m_Calls;
+
+	// Module to tag sentences with when the web service fails, null if there is none.
+	// If only the file name of its model is given, it is loaded from the ModelRegistry when first needed.
+	private volatile ITextProcessingModule m_Fallback = null;
+	private volatile String m_FallbackModelFileName = null;
+
+	// Number of sentences sent in each call
+	private volatile int m_BatchSize = 1;
 
-	private ServiceFactory m_ServiceFactory = null;
-	private Service m_Service = null;
-	private Call m_Call = null;
+	// Maximum time to wait for each call in milliseconds, 0 for no limit
+	private long m_CallTimeout = 0;
+
+	// Time before which the web service is not called, after a failure
+	private volatile long m_RetryTime = 0;
 
 
 	/*  Commented out typically - this is to test the web service on its own
 	public static void main(String args[]) {
 		StanfordNERWebService l_Engine = new StanfordNERWebService();
-		System.out.println(l_Engine.TagSentence("Barack Obama is the president."));
+		String[] l_Sentences = { "Barack Obama is the president." };
+		System.out.println(l_Engine.ProcessText(l_Sentences)[0]);
 	}
 	*/
 
 
 	/**
-	 * Constructor.
+	 * Constructor, for the web service @ WING.
 	 */
 	public StanfordNERWebService() {
-		
-		// Create the JAX-RPC Service to interact with the web m_Service						
-		try {
-
-			// Get a handle to the service
-			QName l_Service_QN = new QName(m_NameSpace, m_ServiceName);
-			m_ServiceFactory = ServiceFactory.newInstance();
-			m_Service = m_ServiceFactory.createService(new URL(m_WSDLURL), l_Service_QN);
-
-			// Set up the call
-			m_Call = m_Service.createCall(new QName(m_NameSpace, "WING.NUSPort"), new QName(m_NameSpace, m_OperationName));
-			m_Call.setReturnType(new QName(m_NameSpace,"tag_sentence_ner_response"), String.class);
-			
-		} catch (ServiceException ex) {
-			Logger.getLogger("QANUS").log(Level.WARNING, "Unable to set up service.", ex);
-		} catch (MalformedURLException ex) {
-			Logger.getLogger("QANUS").log(Level.WARNING, "Bad URL for WSDL file", ex);
-		} // end try-catch
+
+		this(DEFAULT_WSDL_URL);
 
 	} // end constructor
 
 
 	/**
-	 * Invokes the web service and requests for it to tag the given sentence.
-	 * @param a_Sentence [in] sentence to perform NER on
-	 * @return sentence tagged with NER tags, or an empty string on any errors
+	 * Constructor, for a web service described by the given WSDL, such as one run locally.
+	 *
+	 * @param a_WSDLURL [in] URL of the WSDL of the web service
 	 */
-	private String TagSentence(String a_Sentence) {
+	public StanfordNERWebService(String a_WSDLURL) {
 
-		String l_Result = "";
+		this(new JAXRPCEndpoint(a_WSDLURL));
 
-		
-		try {
+	} // end constructor
 
-			// Invoke the call
-			Object[] l_Parameters = new Object[] { a_Sentence };			
-			l_Result = (String) m_Call.invoke(l_Parameters);
 
-			Logger.getLogger("QANUS").log(Level.FINER, "Web service result [" + l_Result + "]");
+	/**
+	 * Constructor, for any endpoint standing for the web service.
+	 *
+	 * @param a_Endpoint [in] endpoint to tag sentences with
+	 */
+	public StanfordNERWebService(final IEndpoint a_Endpoint) {
+
+		// The endpoint takes calls from several threads at once, so it is shared by all of them
+		m_Calls = new ModelPool<IEndpoint>("StanfordNERWebService", new ModelPool.IModelFactory<IEndpoint>() {
+			public IEndpoint CreateModel() {
+				return a_Endpoint;
+			}
+		}, true);
+
+	} // end constructor
+
+
+	/**
+	 * Sets the number of sentences sent to the web service in each call.
+	 *
+	 * @param a_BatchSize [in] number of sentences in a call, 1 by default
+	 */
+	public void SetBatchSize(int a_BatchSize) {
+		m_BatchSize = (a_BatchSize < 1) ? 1 : a_BatchSize;
+	} // end SetBatchSize()
+
 
-		} catch (RemoteException ex) {
-			Logger.getLogger("QANUS").log(Level.WARNING, "Error making call to tag [" + a_Sentence + "]", ex);
-			l_Result = "";
+	/**
+	 * Sets the number of calls made to the web service at the same time.
+	 * This is meant to be called when setting up, not while sentences are being tagged.
+	 *
+	 * @param a_MaxRequests [in] number of calls, 1 by default
+	 */
+	public synchronized void SetMaxRequestsInFlight(int a_MaxRequests) {
+
+		// A deadline needs the calls to be made by other threads, even one at a time,
+		// so that the caller can stop waiting.
+		m_Calls.SetSize(a_MaxRequests, m_CallTimeout > 0);
+
+	} // end SetMaxRequestsInFlight()
+
+
+	/**
+	 * Limits the time to wait for each call to the web service. Batches which are not tagged
+	 * in time are given to the fallback module.
+	 *
+	 * @param a_Milliseconds [in] maximum time to wait for a call, 0 for no limit (default)
+	 */
+	public synchronized void SetCallTimeout(long a_Milliseconds) {
+
+		m_CallTimeout = (a_Milliseconds < 0) ? 0 : a_Milliseconds;
+
+		// Set up the threads if this is needed to keep to the deadline
+		SetMaxRequestsInFlight(m_Calls.GetSize());
+
+	} // end SetCallTimeout()
+
+
+	/**
+	 * Sets the module to tag sentences with when the web service fails or runs out of time,
+	 * such as a StanfordNER from the ModelRegistry.
+	 *
+	 * @param a_Fallback [in] module to fall back on, null to give empty results instead (default)
+	 */
+	public void SetFallback(ITextProcessingModule a_Fallback) {
+		m_Fallback = a_Fallback;
+		m_FallbackModelFileName = null;
+	} // end SetFallback()
+
+
+	/**
+	 * Sets a StanfordNER to tag sentences with when the web service fails or runs out of time.
+	 * The model is only loaded the first time the web service fails, so nothing is loaded
+	 * while the web service is doing fine.
+	 *
+	 * @param a_NERModelFileName [in] file name of the model of the StanfordNER
+	 */
+	public void SetFallback(String a_NERModelFileName) {
+		m_Fallback = null;
+		m_FallbackModelFileName = a_NERModelFileName;
+	} // end SetFallback()
+
+
+	/**
+	 * Tags a batch of sentences with the web service.
+	 *
+	 * @param a_Endpoint [in] the web service
+	 * @param a_Sentences [in] sentences to tag
+	 * @return tagged sentences, in the same order
+	 * @throws Exception on errors calling the web service
+	 */
+	private String[] TagBatch(IEndpoint a_Endpoint, String[] a_Sentences) throws Exception {
+
+		String[] l_Results = new String[a_Sentences.length];
+
+		if (a_Sentences.length > 1) {
+
+			StringBuilder l_Text = new StringBuilder();
+			for (int i = 0; i < a_Sentences.length; ++i) {
+				if (i > 0) l_Text.append(' ').append(BATCH_MARKER).append(' ');
+				l_Text.append(a_Sentences[i]);
+			}
+
+			String[] l_Split = BATCH_MARKER_PATTERN.split(a_Endpoint.TagText(l_Text.toString()), -1);
+			if (l_Split.length == a_Sentences.length) {
+				return l_Split;
+			}
+
+			// The web service did not keep the sentences apart, so stop batching them
+			if (m_BatchSize > 1) {
+				Logger.getLogger("QANUS").logp(Level.WARNING, StanfordNERWebService.class.getName(), "TagBatch", "Web service does not keep batched sentences apart, sending one sentence at a time.");
+				m_BatchSize = 1;
+			}
+
+		}
+
+		for (int i = 0; i < a_Sentences.length; ++i) {
+			l_Results[i] = a_Endpoint.TagText(a_Sentences[i]);
 		}
-		
 
-		return l_Result;
+		return l_Results;
 
-	} // end TagSentence()
-	
+	} // end TagBatch()
+
+
+	/**
+	 * Tags sentences with the fallback module.
+	 *
+	 * @param a_Sentences [in] sentences to tag
+	 * @return tagged sentences, in the same order, empty strings for those which cannot be tagged
+	 */
+	private String[] TagWithFallback(String[] a_Sentences) {
+
+		ITextProcessingModule l_Fallback = m_Fallback;
+		String l_ModelFileName = m_FallbackModelFileName;
+		if (l_Fallback == null && l_ModelFileName != null) {
+			// If the model cannot be loaded, loading is tried again the next time the fallback module is needed
+			l_Fallback = ModelRegistry.GetNER(l_ModelFileName);
+			m_Fallback = l_Fallback;
+		}
+
+		String[] l_Results = null;
+		if (l_Fallback != null) {
+			l_Results = l_Fallback.ProcessText(a_Sentences);
+		}
+
+		// The fallback module may leave out sentences it cannot tag, so the results
+		// can only be used if none are left out
+		if (l_Results == null || l_Results.length != a_Sentences.length) {
+			l_Results = new String[a_Sentences.length];
+			Arrays.fill(l_Results, "");
+		}
+
+		return l_Results;
+
+	} // end TagWithFallback()
+
+
+	/**
+	 * Notes that a call to the web service failed, so that it is left alone for a while.
+	 *
+	 * @param a_Reason [in] why the call failed
+	 */
+	private void NoteFailure(Throwable a_Reason) {
 
+		Logger.getLogger("QANUS").logp(Level.WARNING, StanfordNERWebService.class.getName(), "NoteFailure",
+				"Web service call failed, using " + ((m_Fallback == null && m_FallbackModelFileName == null) ? "empty results" : "the fallback module") + " for the next " + (RETRY_AFTER_FAILURE / 1000) + " s", a_Reason);
+		m_RetryTime = System.currentTimeMillis() + RETRY_AFTER_FAILURE;
+
+	} // end NoteFailure()
+
+
+	/**
+	 * Tags the given sentences.
+	 *
+	 * @param a_Sentences [in] sentences to tag
+	 * @return tagged sentences, in the same order, empty strings for those which cannot be tagged
+	 */
 	public String[] ProcessText(String[] a_Sentences) {
 
 		if (a_Sentences == null) {
 			return null;
 		}
 
-		
-		LinkedList<String> l_ParsedSentences = new LinkedList<String>();
+		// Leave the web service alone for a while after it fails
+		if (System.currentTimeMillis() < m_RetryTime) {
+			return TagWithFallback(a_Sentences);
+		}
 
-		// Parse each sentence
-		for (String l_Sentence : a_Sentences) {
 
-			try {
-				String l_Result = TagSentence(l_Sentence);
-				l_ParsedSentences.add(l_Result);
-			} catch (Exception e) {
-				Logger.getLogger("QANUS").log(Level.WARNING, "Unable to perform NER on sentence [" + l_Sentence + "]", e);
-			}
+		// Cut the sentences up into batches
+		int l_BatchSize = m_BatchSize;
+		ArrayList<String[]> l_Batches = new ArrayList<String[]>();
+		for (int i = 0; i < a_Sentences.length; i += l_BatchSize) {
+			l_Batches.add(Arrays.copyOfRange(a_Sentences, i, Math.min(i + l_BatchSize, a_Sentences.length)));
+		}
 
+		// Send out the batches, to be tagged by as many calls at once as allowed
+		ArrayList<ModelPool.IModelTask<IEndpoint, String[]>> l_Tasks = new ArrayList<ModelPool.IModelTask<IEndpoint, String[]>>(l_Batches.size());
+		for (final String[] l_Batch : l_Batches) {
+			l_Tasks.add(new ModelPool.IModelTask<IEndpoint, String[]>() {
+				public String[] Run(IEndpoint a_Endpoint) throws Exception {
+					return TagBatch(a_Endpoint, l_Batch);
+				}
+			});
 		}
+		ModelPool<IEndpoint>.Batch<String[]> l_Calls = m_Calls.Submit(l_Tasks, m_CallTimeout);
+
+
+		// Collect the results in order
+		String[] l_Results = new String[a_Sentences.length];
+		int l_ResultIndex = 0;
+		for (int i = 0; i < l_Batches.size(); ++i) {
+
+			String[] l_Tagged = null;
+			if (System.currentTimeMillis() < m_RetryTime) {
+				// An earlier call failed, don't wait on the web service any more
+				l_Calls.Cancel(i);
+			} else {
+				try {
+					l_Tagged = l_Calls.Get(i);
+				} catch (TimeoutException e) {
+					NoteFailure(e);
+				} catch (ExecutionException e) {
+					NoteFailure(e.getCause());
+				} catch (InterruptedException e) {
+					l_Calls.Cancel(i);
+					Thread.currentThread().interrupt();
+				}
+			}
+			if (l_Tagged == null) {
+				l_Tagged = TagWithFallback(l_Batches.get(i));
+			}
+
+			System.arraycopy(l_Tagged, 0, l_Results, l_ResultIndex, l_Tagged.length);
+			l_ResultIndex += l_Tagged.length;
+
+		} // end for
+
+		return l_Results;
+
+	} // end ProcessText()
 
-		// Return parsed sentences
-		return l_ParsedSentences.toArray(new String[0]);
-	}
 
 	public String GetModuleID() {
 		return "NER-Web";
@@ -12,6 +12,11 @@ import edu.stanford.nlp.tagger.maxent.MaxentTagger;
 /**
  * A POS tagger by the Stanford NLP group. (http://nlp.stanford.edu/)
  * We are basically doing a wrapper here around the original source files from the Stanford group.
+ *
+ * Several sentences can be tagged at the same time by a pool of taggers, see SetPoolSize().
+ * Each tagger in the pool is owned by one thread of the pool, as a tagger cannot be used
+ * by two threads at once. Every tagger holds its own copy of the model, so each one added
+ * to the pool takes up as much memory as the first.
  * 
  * 
  * @author Ng, Jun Ping -- ngjp@nus.edu.sg
@@ -21,7 +26,8 @@ public class StanfordPOSTagger implements ITextProcessingModule {
 
 	private String m_ModelFileName;
 	
-	private MaxentTagger m_Tagger = null;
+	// Taggers, and the threads which own them
+	private ModelPool<MaxentTagger> m_Taggers;
 	
 	
 	/**
@@ -33,33 +39,53 @@ public class StanfordPOSTagger implements ITextProcessingModule {
 		
 		m_ModelFileName = a_ModelFileName;
 		
-		LoadTagger();
+		m_Taggers = new ModelPool<MaxentTagger>("StanfordPOSTagger", new ModelPool.IModelFactory<MaxentTagger>() {
+			public MaxentTagger CreateModel() throws Exception {
+				return new MaxentTagger(m_ModelFileName);
+			}
+		}, false);
+		m_Taggers.EnsureLoaded();
 		
 	} // end constructor
-	
-	
+
+
 	/**
-	 * This function attempts to load the Stanford tagger.
-	 * If not loaded, m_Tagger will be set to null.
-	 * If m_Tagger is not null when this function is called, it is nullified,
-	 *  and we attempt to re-load the parser.
-	 * 
-	 * @return true on successful load. false otherwise. If false is returned, m_Tagger is nullified.
+	 * Initializes a new instance of the tagger, with a pool of taggers.
+	 *
+	 * @param a_ModelFileName [in] file name of the model file.
+	 * @param a_PoolSize [in] number of taggers to tag sentences with at the same time
 	 */
-	private boolean LoadTagger() {
-		
-		m_Tagger = null;
-		try {
-			m_Tagger =  new MaxentTagger(m_ModelFileName);
-		} catch (Exception e) {
-			System.err.println("StanfordPOSTagger::LoadTagger() -> Error loading tagger :" + e);
-			m_Tagger = null;
-			return false;
-		}
-		
-		return true;
-		
-	} // end LoadTagger()
+	public StanfordPOSTagger(String a_ModelFileName, int a_PoolSize) {
+
+		this(a_ModelFileName);
+
+		SetPoolSize(a_PoolSize);
+
+	} // end constructor
+
+
+	/**
+	 * Sets the number of taggers used to tag sentences at the same time.
+	 * The additional taggers are loaded right away. A pool size of 1 does away with the pool,
+	 * and sentences are then tagged one by one on the calling thread.
+	 * This is meant to be called when setting up, not while sentences are being tagged.
+	 *
+	 * @param a_PoolSize [in] number of taggers
+	 * @return true if the taggers are loaded, false otherwise, in which case the pool is left as it was
+	 */
+	public boolean SetPoolSize(int a_PoolSize) {
+
+		return m_Taggers.SetSize(a_PoolSize, false);
+
+	} // end SetPoolSize()
+
+
+	/**
+	 * @return true if the tagger is loaded
+	 */
+	public boolean IsLoaded() {
+		return m_Taggers.IsLoaded();
+	} // end IsLoaded()
 
 
 	/* (non-Javadoc)
@@ -75,37 +101,63 @@ public class StanfordPOSTagger implements ITextProcessingModule {
 	 * @see sg.edu.nus.wing.qanus.knp.TextProcessorModule#ProcessText(java.lang.String[])
 	 */
 	@Override
-	public String[] ProcessText(String[] a_Sentences) {
+	public String[] ProcessText(final String[] a_Sentences) {
 
-		LinkedList<String> l_TaggedSentences = new LinkedList<String>();
-		
 		// Check that the tagger is loaded properly. We cannot proceed otherwise.
-		boolean l_TaggerLoaded = false;
-		if (m_Tagger == null)  {
-			l_TaggerLoaded = LoadTagger();
-			if (!l_TaggerLoaded) {
-				return null;
+		if (!m_Taggers.EnsureLoaded()) {
+			return null;
+		}
+
+
+		// The sentences are split into one consecutive chunk per tagger of the pool
+		LinkedList<String> l_TaggedSentences = new LinkedList<String>();
+		try {
+			for (LinkedList<String> l_Chunk : m_Taggers.RunInChunks(a_Sentences.length, new ModelPool.IChunkTask<MaxentTagger, LinkedList<String>>() {
+				public LinkedList<String> Run(MaxentTagger a_Tagger, int a_Start, int a_End) {
+					return TagSentences(a_Tagger, a_Sentences, a_Start, a_End);
+				}
+			})) {
+				l_TaggedSentences.addAll(l_Chunk);
 			}
-		} // else assume tagger is loaded already since m_Tagger is not null.
+		} catch (Exception e) {
+			System.err.println("StanfordPOSTagger::ProcessText() -> Error tagging sentences :" + e);
+			return null;
+		}
 		
+		// Return the results
+		return l_TaggedSentences.toArray(new String[0]);
 		
+	} // end ProcessText()
+
+
+	/**
+	 * Tags a range of sentences with the given tagger.
+	 * Sentences which cannot be tagged are left out of the results.
+	 *
+	 * @param a_Tagger [in] tagger to use
+	 * @param a_Sentences [in] sentences to tag
+	 * @param a_Start [in] index of the first sentence to tag
+	 * @param a_End [in] index after the last sentence to tag
+	 * @return the tagged sentences, in order
+	 */
+	private LinkedList<String> TagSentences(MaxentTagger a_Tagger, String[] a_Sentences, int a_Start, int a_End) {
+
+		LinkedList<String> l_TaggedSentences = new LinkedList<String>();
+
 		// Parse each sentence
-		for (String l_Sentence : a_Sentences) {
+		for (int i = a_Start; i < a_End; ++i) {
 			
 			try {
-				l_TaggedSentences.add(MaxentTagger.tagString(l_Sentence));
+				l_TaggedSentences.add(a_Tagger.tagString(a_Sentences[i]));
 			} catch (Exception e) {
-				System.err.println("StanfordPOSTagger::LoadTagger() -> Error tagging sentence [" + l_Sentence + "]");
+				System.err.println("StanfordPOSTagger::TagSentences() -> Error tagging sentence [" + a_Sentences[i] + "]");
 				continue;
 			}
 			
 		} // end for
-		
-		
-		// Return the results
-		return l_TaggedSentences.toArray(new String[0]);
-		
-	} // end ProcessText()
 
-} // end class
+		return l_TaggedSentences;
+
+	} // end TagSentences()
 
+} // end class
@@ -1,11 +1,16 @@
 package sg.edu.nus.wing.qanus.textprocessing;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -13,15 +18,26 @@ import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 
 /**
  * Used to remove stop words.
- * 
+ *
+ * The stop words cannot be changed once loaded, so a filter can be shared by any number
+ * of threads. GetFilter() hands out filters which are loaded only once for each set of
+ * stop words files. Words are compared regardless of case.
+ *
  * @author NG, Jun Ping -- ngjp@nus.edu.sg
  */
 public class StopWordsFilter implements ITextProcessingModule {
 
 
-	private String[] m_StopWordFileNames;
+	// Filters handed out by GetFilter(), keyed by the names of their stop words files
+	private static final ConcurrentHashMap<String, StopWordsFilter> m_SharedFilters = new ConcurrentHashMap<String, StopWordsFilter>();
 
-	private HashSet<String> m_StopWords;
+	private final String[] m_StopWordFileNames;
+
+	// Stop words, in lower case
+	private final Set<String> m_StopWords;
+
+	// Length of the longest stop word, longer words need not be looked up
+	private final int m_MaxLength;
 
 
 	/**
@@ -31,86 +47,133 @@ public class StopWordsFilter implements ITextProcessingModule {
 	 */
 	public StopWordsFilter(String[] a_FileNames) {
 
-		m_StopWords = new HashSet<String>();
+		HashSet<String> l_StopWords = new HashSet<String>();
 
-		m_StopWordFileNames = a_FileNames;
+		m_StopWordFileNames = a_FileNames.clone();
 
 		// Load stop words
 		for (String l_FileName : m_StopWordFileNames) {
-			
+
 			try {
-				// Read in character by character from the file, individual words
-				// are assumed to be delimited by commas
-				FileReader l_Reader = new FileReader(new File(l_FileName));
-				int l_Character;
+				// Read in the whole file, individual words are assumed to be delimited by commas
+				BufferedReader l_Reader = new BufferedReader(new FileReader(new File(l_FileName)));
 				try {
-					l_Character = l_Reader.read();
-					String l_Word = "";
-					while (l_Character != -1) {
-						if (l_Character != ',') {
-							l_Word += (char) l_Character;
-						} else {
-							m_StopWords.add(l_Word);
-							l_Word = "";
-						}
-						l_Character = l_Reader.read();
+					StringBuilder l_Contents = new StringBuilder();
+					char[] l_Buffer = new char[4096];
+					int l_Count = 0;
+					while ((l_Count = l_Reader.read(l_Buffer)) != -1) {
+						l_Contents.append(l_Buffer, 0, l_Count);
 					}
-					// Don't let the last word get away
-					if (l_Word.length() > 0) {
-						m_StopWords.add(l_Word);
+					for (String l_Word : l_Contents.toString().split(",")) {
+						l_Word = l_Word.trim();
+						if (l_Word.length() > 0) {
+							l_StopWords.add(l_Word.toLowerCase(Locale.ENGLISH));
+						}
 					}
 				} catch (IOException ex) {
 					Logger.getLogger(StopWordsFilter.class.getName()).log(Level.WARNING, "Error reading from stop words file [" + l_FileName + "]", ex);
+				} finally {
+					try {
+						l_Reader.close();
+					} catch (IOException ex) {
+						Logger.getLogger(StopWordsFilter.class.getName()).log(Level.WARNING, "Error closing stop words file [" + l_FileName + "]", ex);
+					}
 				}
-				
+
 			} catch (FileNotFoundException ex) {
 				Logger.getLogger(StopWordsFilter.class.getName()).log(Level.WARNING, "Stop word file [" + l_FileName + "] not found.", ex);
 			} // end try-catch
 
 		} // end for
 
+		m_StopWords = Collections.unmodifiableSet(l_StopWords);
+
+		int l_MaxLength = 0;
+		for (String l_Word : l_StopWords) {
+			l_MaxLength = Math.max(l_MaxLength, l_Word.length());
+		}
+		m_MaxLength = l_MaxLength;
 
 	} // end constructor
 
 
+	/**
+	 * Retrieves a filter for the given stop words files, which is shared with everyone
+	 * else asking for the same files. The files are only read the first time.
+	 *
+	 * @param a_FileNames [in] array of file names of stop words files.
+	 * @return the shared filter
+	 */
+	public static StopWordsFilter GetFilter(String[] a_FileNames) {
+
+		StringBuilder l_Key = new StringBuilder();
+		for (String l_FileName : a_FileNames) {
+			l_Key.append(l_FileName).append(File.pathSeparatorChar);
+		}
+
+		StopWordsFilter l_Filter = m_SharedFilters.get(l_Key.toString());
+		if (l_Filter == null) {
+			// Two threads may both load the files, but only one filter is ever handed out
+			l_Filter = new StopWordsFilter(a_FileNames);
+			StopWordsFilter l_Existing = m_SharedFilters.putIfAbsent(l_Key.toString(), l_Filter);
+			if (l_Existing != null) l_Filter = l_Existing;
+		}
+
+		return l_Filter;
+
+	} // end GetFilter()
+
+
 
 	/**
-	 * Checks if a given word belongs to the stop word list.
+	 * Checks if a given word belongs to the stop word list, regardless of case.
 	 * @param a_Word [in] word to be checked
 	 * @return true if the word is a stop word, false otherwise
 	 */
 	public boolean IsStopWord(String a_Word) {
 
-		return (m_StopWords.contains(a_Word));
+		if (a_Word.length() > m_MaxLength) return false;
+		if (m_StopWords.contains(a_Word)) return true;
+
+		// The stop words are kept in lower case, so only words with capitals need to be looked up again
+		for (int i = 0; i < a_Word.length(); ++i) {
+			if (Character.isUpperCase(a_Word.charAt(i))) {
+				return (m_StopWords.contains(a_Word.toLowerCase(Locale.ENGLISH)));
+			}
+		}
+
+		return false;
 
 	} // end IsStopWord()
-	
+
 
 	/**
 	 * Removes instances of stop words from a given string.
-	 * @param a_String [in] the string to act on.	
+	 * Words are taken to be separated by whitespace, and are separated by a single space in the result.
+	 * @param a_String [in] the string to act on.
 	 * @return a string with stop words removed.
 	 */
-	private String RemoveStopWords(String a_String)  {	
-				
+	public String RemoveStopWords(String a_String)  {
+
 		StringTokenizer l_ST = new StringTokenizer(a_String);
-		String l_OutputString = "";
+		StringBuilder l_Output = new StringBuilder(a_String.length());
 		while (l_ST.hasMoreTokens()) {
 
 			String l_Word = l_ST.nextToken();
-			if (!(m_StopWords.contains(l_Word))) {
-				l_OutputString += l_Word + " ";
+			if (!IsStopWord(l_Word)) {
+				if (l_Output.length() > 0) l_Output.append(' ');
+				l_Output.append(l_Word);
 			}
 
 		}
 
-		return l_OutputString.trim();
+		return l_Output.toString();
 
 	} // end RemoveStopWords()
 
-	
+
 	public String[] ProcessText(String[] a_Sentences) {
-		
+
 		// Sanity check
 		if (a_Sentences == null) return null;
 
@@ -123,7 +186,7 @@ public class StopWordsFilter implements ITextProcessingModule {
 
 		return l_Result;
 
-		
+
 	} // end ProcessText()
 
 
@@ -1,11 +1,21 @@
 package sg.edu.nus.wing.qanus.textprocessing;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.net.URLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
 import java.util.StringTokenizer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -17,6 +27,17 @@ import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
  * Information courtesy of the Big Huge Thesaurus
  * http://words.bighugelabs.com/api.php
  *
+ * Words can be looked up in a local thesaurus dump file, over HTTP, or both.
+ * The dump file holds one related word on each line, in the format
+ *   headword|POS|type|word
+ * and is looked up through a memory-mapped ThesaurusIndex, which is built next to the dump
+ * file the first time, and again whenever the dump file changes.
+ *
+ * When HTTP is used as a fallback, see SetHTTPFallback(), the replies are saved to a cache
+ * file in the same format as the dump file, so that each word is only queried over HTTP once.
+ * The cache file can later be added to the dump file.
+ *
+ * Look ups can be done by several threads at once.
  *
  * @author NG, Jun Ping -- ngjp@nus.edu.sg
  * @version 28Dec2009
@@ -24,9 +45,110 @@ import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
 public class Thesaurus implements ITextProcessingModule {
 
 
+	// Time to wait for the BHT to connect and to reply, in milliseconds
+	private static final int HTTP_CONNECT_TIMEOUT = 5000;
+	private static final int HTTP_READ_TIMEOUT = 5000;
+
+	// Extension of the index files built for thesaurus dump files
+	private static final String INDEX_EXTENSION = ".index";
+
+
+	// Local thesaurus, null if there is none
+	private ThesaurusIndex m_Index = null;
+
+	// Whether words not in the local thesaurus are queried over HTTP
+	private boolean m_UseHTTP;
+
+	// Replies of the HTTP queries made so far, keyed by word in lower case,
+	// and the file they are saved to. The file is null if replies are not saved.
+	private final HashMap<String, String[]> m_HTTPCache = new HashMap<String, String[]>();
+	private File m_HTTPCacheFile = null;
+
+
+	/**
+	 * Constructor for a thesaurus which queries the BHT over HTTP.
+	 */
 	public Thesaurus() {
 
-	}
+		m_UseHTTP = true;
+
+	} // end constructor
+
+
+	/**
+	 * Constructor for a local thesaurus, looked up from a thesaurus dump file.
+	 * Words are not queried over HTTP unless SetHTTPFallback() is called.
+	 *
+	 * @param a_DumpFile [in] the thesaurus dump file
+	 * @throws IOException on errors reading the dump file, or building or opening its index
+	 */
+	public Thesaurus(File a_DumpFile) throws IOException {
+
+		m_UseHTTP = false;
+
+		File l_IndexFile = new File(a_DumpFile.getPath() + INDEX_EXTENSION);
+		if (!l_IndexFile.exists() || l_IndexFile.lastModified() < a_DumpFile.lastModified()) {
+			long l_Start = System.currentTimeMillis();
+			int l_NumWords = ThesaurusIndex.Build(a_DumpFile, l_IndexFile);
+			Logger.getLogger("QANUS").logp(Level.INFO, Thesaurus.class.getName(), "Thesaurus",
+					"Indexed " + l_NumWords + " words from thesaurus [" + a_DumpFile + "] in " + (System.currentTimeMillis() - l_Start) + " ms");
+		}
+
+		m_Index = new ThesaurusIndex(l_IndexFile);
+
+	} // end constructor
+
+
+	/**
+	 * Queries words which are not in the local thesaurus over HTTP, saving the replies
+	 * to a cache file. Replies already in the cache file are not queried again.
+	 *
+	 * @param a_CacheFile [in] file to save replies to, in the format of a thesaurus dump file.
+	 * 						   Can be null to keep the replies in memory only.
+	 */
+	public void SetHTTPFallback(File a_CacheFile) {
+
+		synchronized (m_HTTPCache) {
+
+			m_UseHTTP = true;
+			m_HTTPCacheFile = a_CacheFile;
+
+			if (a_CacheFile == null || !a_CacheFile.exists()) return;
+
+			// Load the replies saved so far
+			HashMap<String, ArrayList<String>> l_Replies = new HashMap<String, ArrayList<String>>();
+			try {
+				BufferedReader l_Reader = new BufferedReader(new InputStreamReader(new FileInputStream(a_CacheFile), "UTF-8"));
+				try {
+					String l_Line = null;
+					while ((l_Line = l_Reader.readLine()) != null) {
+						int l_Delim = l_Line.indexOf('|');
+						String l_HeadWord = ((l_Delim == -1) ? l_Line : l_Line.substring(0, l_Delim)).trim().toLowerCase(Locale.ENGLISH);
+						if (l_HeadWord.length() == 0) continue;
+
+						ArrayList<String> l_Related = l_Replies.get(l_HeadWord);
+						if (l_Related == null) {
+							l_Related = new ArrayList<String>();
+							l_Replies.put(l_HeadWord, l_Related);
+						}
+						if (l_Delim != -1) {
+							l_Related.add(l_Line.substring(l_Delim + 1));
+						}
+					}
+				} finally {
+					l_Reader.close();
+				}
+			} catch (IOException ex) {
+				Logger.getLogger("QANUS").log(Level.WARNING, "Unable to read thesaurus cache [" + a_CacheFile + "]", ex);
+			}
+
+			for (String l_HeadWord : l_Replies.keySet()) {
+				m_HTTPCache.put(l_HeadWord, l_Replies.get(l_HeadWord).toArray(new String[0]));
+			}
+
+		}
+
+	} // end SetHTTPFallback()
 
 
 	/**
@@ -40,19 +162,16 @@ public class Thesaurus implements ITextProcessingModule {
 			return null;
 		}
 
-		String l_WordToQuery = a_Sentences[0];
-		String l_HTTPResponse = QueryWordViaHTTP(l_WordToQuery);
+		String[] l_Replies = LookupWord(a_Sentences[0]);
 
-		StringTokenizer l_ST = new StringTokenizer(l_HTTPResponse, "\n");
-		String[] l_Words = new String[l_ST.countTokens()];
+		String[] l_Words = new String[l_Replies.length];
 		int i = 0;
-		while (l_ST.hasMoreTokens()) {
+		for (String l_Plain : l_Replies) {
 			// A reply token has the format
 			// POS|type|word
 			// where POS can be noun, verb
 			// type can be syn (synonym), ant (antonym), usr (user suggested) or rel (related words)
 			// word is the actual word we want
-			String l_Plain = l_ST.nextToken();
 
 			// Filter out the antonyms
 			StringTokenizer l_STReply = new StringTokenizer(l_Plain, "|");
@@ -77,35 +196,120 @@ public class Thesaurus implements ITextProcessingModule {
 			l_Words[i++] =  l_Word;
 		}
 
-		return l_Words;
+		return Arrays.copyOf(l_Words, i);
 
 	} // end ProcessText()
 
 
+	/**
+	 * Looks up a word in the local thesaurus, then in the replies of the BHT
+	 * received so far, and lastly over HTTP.
+	 *
+	 * @param a_Word [in] word to look up
+	 * @return related words in the format POS|type|word, empty if there are none or on errors
+	 */
+	private String[] LookupWord(String a_Word) {
+
+		if (m_Index != null) {
+			try {
+				String[] l_Replies = m_Index.Lookup(a_Word);
+				if (l_Replies != null) return l_Replies;
+			} catch (IOException ex) {
+				Logger.getLogger("QANUS").log(Level.WARNING, "Unable to look up word [" + a_Word + "] in thesaurus", ex);
+			}
+		}
+
+		if (!m_UseHTTP) return new String[0];
+
+		String l_Key = a_Word.trim().toLowerCase(Locale.ENGLISH);
+		synchronized (m_HTTPCache) {
+			String[] l_Replies = m_HTTPCache.get(l_Key);
+			if (l_Replies != null) return l_Replies;
+		}
+
+		String[] l_Replies = QueryWordViaHTTP(a_Word);
+		if (l_Replies != null) {
+			synchronized (m_HTTPCache) {
+				m_HTTPCache.put(l_Key, l_Replies);
+				SaveToHTTPCache(l_Key, l_Replies);
+			}
+		}
+
+		return (l_Replies == null) ? new String[0] : l_Replies;
+
+	} // end LookupWord()
+
+
+	/**
+	 * Appends the reply of the BHT for a word to the cache file, if there is one.
+	 * A word without related words is saved on a line of its own.
+	 *
+	 * @param a_Word [in] word looked up, in lower case
+	 * @param a_Replies [in] related words in the format POS|type|word
+	 */
+	private void SaveToHTTPCache(String a_Word, String[] a_Replies) {
+
+		if (m_HTTPCacheFile == null) return;
+
+		try {
+			Writer l_Writer = new OutputStreamWriter(new FileOutputStream(m_HTTPCacheFile, true), "UTF-8");
+			try {
+				StringBuilder l_Lines = new StringBuilder();
+				if (a_Replies.length == 0) {
+					l_Lines.append(a_Word).append('\n');
+				}
+				for (String l_Reply : a_Replies) {
+					l_Lines.append(a_Word).append('|').append(l_Reply).append('\n');
+				}
+				l_Writer.write(l_Lines.toString());
+			} finally {
+				l_Writer.close();
+			}
+		} catch (IOException ex) {
+			Logger.getLogger("QANUS").log(Level.WARNING, "Unable to save to thesaurus cache [" + m_HTTPCacheFile + "]", ex);
+		}
+
+	} // end SaveToHTTPCache()
+
+
 	/**
 	 * Look up a given word over HTTP to the BHT.
 	 * @param a_Word [in] word to look up
-	 * @return HTTP response of the query, or an empty string on errors
+	 * @return related words in the format POS|type|word, empty if the BHT does not know the word,
+	 * 		   or null on errors
 	 */
-	private String QueryWordViaHTTP(String a_Word) {
+	private String[] QueryWordViaHTTP(String a_Word) {
 
-		String l_OutStr = "";
+		ArrayList<String> l_Replies = new ArrayList<String>();
 		String l_URLStr = "http://words.bighugelabs.com/api/2/f5e250ab8c6236ae03da813b187f34b9/" + a_Word + "/";
 		try {
-			InputStream l_HTTPResponseStream = new URL(l_URLStr).openStream();
+			URLConnection l_Connection = new URL(l_URLStr).openConnection();
+			l_Connection.setConnectTimeout(HTTP_CONNECT_TIMEOUT);
+			l_Connection.setReadTimeout(HTTP_READ_TIMEOUT);
 
-			BufferedReader l_BR = new BufferedReader(new InputStreamReader(l_HTTPResponseStream));
-			String l_ReadLine = "";
-			while ((l_ReadLine = l_BR.readLine()) != null) {
-				l_OutStr += l_ReadLine + "\n";
+			BufferedReader l_BR = new BufferedReader(new InputStreamReader(l_Connection.getInputStream(), "UTF-8"));
+			try {
+				String l_ReadLine = "";
+				while ((l_ReadLine = l_BR.readLine()) != null) {
+					if (l_ReadLine.length() > 0) {
+						l_Replies.add(l_ReadLine);
+					}
+				}
+			} finally {
+				l_BR.close();
 			}
+		} catch (FileNotFoundException ex) {
+			// The BHT replies with 404 for words it does not know
+			return new String[0];
 		} catch (MalformedURLException ex) {
 			Logger.getLogger("QANUS").log(Level.WARNING, "Unable to query thesarus for word [" + a_Word + "]", ex);
+			return null;
 		} catch (IOException ex) {
 			Logger.getLogger("QANUS").log(Level.WARNING, "Unable to query thesarus for word [" + a_Word + "]", ex);
+			return null;
 		}
 
-		return l_OutStr;
+		return l_Replies.toArray(new String[0]);
 
 	} // end QueryWordViaHTTP()
 
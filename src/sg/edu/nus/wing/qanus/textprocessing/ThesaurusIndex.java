@@ -0,0 +1,295 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+
+/**
+ * Local thesaurus, looked up from an index file which is memory-mapped, so that only
+ * the parts of the index which are looked up are read from disk.
+ *
+ * The index is built from a thesaurus dump file with Build(). Each line of the dump file
+ * holds one related word of a head word, in the format of the replies of the Big Huge
+ * Thesaurus, preceded by the head word :
+ *   headword|POS|type|word
+ * A line with just the head word records that there are no related words for it.
+ *
+ * The index file is laid out as follows, all numbers being big-endian ints :
+ *   number of head words N
+ *   N pairs of (offset of head word, offset of related words), sorted by the UTF-8 bytes of the head word
+ *   the head words and related words themselves
+ * Each head word is stored as its length followed by its UTF-8 bytes. The related words of a
+ * head word are stored as their number, followed by each one in the same way as a head word,
+ * in the POS|type|word format. Head words are in lower case.
+ *
+ * Lookups do not change the state of the index, so they can be done by several threads at once.
+ *
+ * Run with :
+ *   java sg.edu.nus.wing.qanus.textprocessing.ThesaurusIndex dump-file index-file
+ * to build an index.
+ */
+public class ThesaurusIndex {
+
+
+	// Memory-mapped index file
+	private MappedByteBuffer m_Index;
+
+	// Number of head words
+	private int m_NumWords;
+
+	// Orders strings by code point, which is the order of their UTF-8 bytes. String.compareTo()
+	// compares UTF-16 code units, which puts supplementary characters before some others.
+	private static final Comparator<String> CODE_POINT_ORDER = new Comparator<String>() {
+		public int compare(String a_First, String a_Second) {
+			int i = 0;
+			int j = 0;
+			while (i < a_First.length() && j < a_Second.length()) {
+				int l_First = a_First.codePointAt(i);
+				int l_Second = a_Second.codePointAt(j);
+				if (l_First != l_Second) return l_First - l_Second;
+				i += Character.charCount(l_First);
+				j += Character.charCount(l_Second);
+			}
+			return (a_First.length() - i) - (a_Second.length() - j);
+		}
+	};
+
+
+	/**
+	 * Opens an index file built with Build().
+	 *
+	 * @param a_IndexFile [in] the index file
+	 * @throws IOException on errors opening the index file
+	 */
+	public ThesaurusIndex(File a_IndexFile) throws IOException {
+
+		RandomAccessFile l_File = new RandomAccessFile(a_IndexFile, "r");
+		try {
+			// The mapping stays valid after the file is closed
+			m_Index = l_File.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, l_File.length());
+		} finally {
+			l_File.close();
+		}
+
+		m_NumWords = m_Index.getInt(0);
+
+	} // end constructor
+
+
+	/**
+	 * Builds an index file from a thesaurus dump file. The index file is first written under
+	 * another name and then renamed, so that it is never seen half written.
+	 *
+	 * @param a_DumpFile [in] the thesaurus dump file, in UTF-8
+	 * @param a_IndexFile [in] the index file to write
+	 * @return number of head words in the index
+	 * @throws IOException on errors reading the dump file or writing the index file
+	 */
+	public static int Build(File a_DumpFile, File a_IndexFile) throws IOException {
+
+		// Group the related words by head word, sorted by head word in the order used by Lookup()
+		TreeMap<String, ArrayList<String>> l_Words = new TreeMap<String, ArrayList<String>>(CODE_POINT_ORDER);
+		BufferedReader l_Reader = new BufferedReader(new InputStreamReader(new FileInputStream(a_DumpFile), "UTF-8"));
+		try {
+			String l_Line = null;
+			while ((l_Line = l_Reader.readLine()) != null) {
+				int l_Delim = l_Line.indexOf('|');
+				String l_HeadWord = ((l_Delim == -1) ? l_Line : l_Line.substring(0, l_Delim)).trim().toLowerCase(Locale.ENGLISH);
+				if (l_HeadWord.length() == 0) continue;
+
+				ArrayList<String> l_Related = l_Words.get(l_HeadWord);
+				if (l_Related == null) {
+					l_Related = new ArrayList<String>();
+					l_Words.put(l_HeadWord, l_Related);
+				}
+				if (l_Delim != -1) {
+					l_Related.add(l_Line.substring(l_Delim + 1));
+				}
+			}
+		} finally {
+			l_Reader.close();
+		}
+
+
+		// Lay out the head words and related words after the table of offsets
+		int l_DataStart = 4 + 8 * l_Words.size();
+		ByteArrayOutputStream l_Data = new ByteArrayOutputStream();
+		DataOutputStream l_DataOut = new DataOutputStream(l_Data);
+		int[] l_HeadWordOffsets = new int[l_Words.size()];
+		int[] l_RelatedOffsets = new int[l_Words.size()];
+		int i = 0;
+		for (Map.Entry<String, ArrayList<String>> l_Entry : l_Words.entrySet()) {
+			l_HeadWordOffsets[i] = l_DataStart + l_DataOut.size();
+			WriteString(l_DataOut, l_Entry.getKey());
+			l_RelatedOffsets[i] = l_DataStart + l_DataOut.size();
+			l_DataOut.writeInt(l_Entry.getValue().size());
+			for (String l_Related : l_Entry.getValue()) {
+				WriteString(l_DataOut, l_Related);
+			}
+			++i;
+		}
+		l_DataOut.flush();
+
+
+		File l_TempFile = new File(a_IndexFile.getPath() + ".tmp");
+		DataOutputStream l_Out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(l_TempFile)));
+		try {
+			l_Out.writeInt(l_Words.size());
+			for (i = 0; i < l_HeadWordOffsets.length; ++i) {
+				l_Out.writeInt(l_HeadWordOffsets[i]);
+				l_Out.writeInt(l_RelatedOffsets[i]);
+			}
+			l_Data.writeTo(l_Out);
+		} finally {
+			l_Out.close();
+		}
+
+		if (a_IndexFile.exists() && !a_IndexFile.delete()) {
+			throw new IOException("Unable to replace [" + a_IndexFile + "]");
+		}
+		if (!l_TempFile.renameTo(a_IndexFile)) {
+			throw new IOException("Unable to rename [" + l_TempFile + "] to [" + a_IndexFile + "]");
+		}
+
+		return l_Words.size();
+
+	} // end Build()
+
+
+	/**
+	 * Writes a string as its length followed by its UTF-8 bytes.
+	 */
+	private static void WriteString(DataOutputStream a_Out, String a_String) throws IOException {
+
+		byte[] l_Bytes = a_String.getBytes("UTF-8");
+		a_Out.writeInt(l_Bytes.length);
+		a_Out.write(l_Bytes);
+
+	} // end WriteString()
+
+
+	/**
+	 * Reads a string written by WriteString().
+	 */
+	private String ReadString(int a_Offset) throws IOException {
+
+		int l_Length = m_Index.getInt(a_Offset);
+		byte[] l_Bytes = new byte[l_Length];
+		for (int i = 0; i < l_Length; ++i) {
+			l_Bytes[i] = m_Index.get(a_Offset + 4 + i);
+		}
+
+		return new String(l_Bytes, "UTF-8");
+
+	} // end ReadString()
+
+
+	/**
+	 * Compares a head word in the index with the given word, byte by byte.
+	 * This gives the same order as the sorting of the head words when the index is built,
+	 * as the order of UTF-8 bytes is that of code points, see CODE_POINT_ORDER.
+	 *
+	 * @param a_Offset [in] offset of the head word in the index
+	 * @param a_Word [in] UTF-8 bytes of the word
+	 * @return less than, equal to or more than 0 if the head word comes before, is the same as or comes after the word
+	 */
+	private int CompareHeadWord(int a_Offset, byte[] a_Word) {
+
+		int l_Length = m_Index.getInt(a_Offset);
+		int l_CommonLength = Math.min(l_Length, a_Word.length);
+		for (int i = 0; i < l_CommonLength; ++i) {
+			int l_Diff = (m_Index.get(a_Offset + 4 + i) & 0xFF) - (a_Word[i] & 0xFF);
+			if (l_Diff != 0) return l_Diff;
+		}
+
+		return l_Length - a_Word.length;
+
+	} // end CompareHeadWord()
+
+
+	/**
+	 * Looks up the related words of a word.
+	 *
+	 * @param a_Word [in] word to look up, in any case
+	 * @return related words in the POS|type|word format, or null if the word is not in the index
+	 * @throws IOException on errors reading the index
+	 */
+	public String[] Lookup(String a_Word) throws IOException {
+
+		byte[] l_Word = a_Word.trim().toLowerCase(Locale.ENGLISH).getBytes("UTF-8");
+
+		// Binary search over the sorted head words
+		int l_Low = 0;
+		int l_High = m_NumWords - 1;
+		while (l_Low <= l_High) {
+
+			int l_Mid = (l_Low + l_High) >>> 1;
+			int l_Comparison = CompareHeadWord(m_Index.getInt(4 + 8 * l_Mid), l_Word);
+			if (l_Comparison < 0) {
+				l_Low = l_Mid + 1;
+			} else if (l_Comparison > 0) {
+				l_High = l_Mid - 1;
+			} else {
+				int l_Offset = m_Index.getInt(4 + 8 * l_Mid + 4);
+				String[] l_Related = new String[m_Index.getInt(l_Offset)];
+				l_Offset += 4;
+				for (int i = 0; i < l_Related.length; ++i) {
+					l_Related[i] = ReadString(l_Offset);
+					l_Offset += 4 + m_Index.getInt(l_Offset);
+				}
+				return l_Related;
+			}
+
+		}
+
+		return null;
+
+	} // end Lookup()
+
+
+	/**
+	 * @return number of head words in the index
+	 */
+	public int GetNumberOfWords() {
+		return m_NumWords;
+	}
+
+
+	/**
+	 * Builds an index file from a thesaurus dump file.
+	 *
+	 * @param args dump-file index-file
+	 */
+	public static void main(String[] args) {
+
+		if (args.length != 2) {
+			System.out.println("Usage : java sg.edu.nus.wing.qanus.textprocessing.ThesaurusIndex dump-file index-file");
+			return;
+		}
+
+		try {
+			int l_NumWords = Build(new File(args[0]), new File(args[1]));
+			System.out.println("Indexed " + l_NumWords + " head words into [" + args[1] + "]");
+		} catch (IOException e) {
+			System.err.println("ThesaurusIndex::main() -> Error building index :" + e);
+		}
+
+	} // end main()
+
+
+} // end class ThesaurusIndex
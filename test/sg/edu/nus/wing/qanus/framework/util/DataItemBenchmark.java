@@ -0,0 +1,279 @@
+package sg.edu.nus.wing.qanus.framework.util;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import sg.edu.nus.wing.qanus.framework.commons.DataItem;
+
+
+/**
+ * Simple benchmark for the XML serialisation and memory use of DataItem.
+ *
+ * Compares DataItem.WriteXML() with the original implementation of toXMLString(), which
+ * built its result with repeated String concatenation and escaped values with replaceAll().
+ * Two shapes of data items are used :
+ * - wide : a single DOC with many <P> fields, like a long AQUAINT document
+ * - deep : a chain of nested fields
+ *
+ * The heap used per document is also measured, by holding on to a number of
+ * AQUAINT-like documents and comparing the used heap before and after. Use a fixed
+ * heap size (e.g. -Xms512m -Xmx512m) for steadier numbers.
+ *
+ * It lives with the tests so that it is not shipped with the program. Run with
+ * the compiled tests on the class path :
+ *   java sg.edu.nus.wing.qanus.framework.util.DataItemBenchmark [wide-count] [deep-count] [heap-docs]
+ */
+public class DataItemBenchmark {
+
+	// Number of times each serialisation is timed
+	private static final int RUNS = 5;
+
+
+	/**
+	 * Builds a DOC with the given number of <P> sentences within <TEXT>.
+	 *
+	 * @param a_NumSentences [in] number of sentences
+	 * @return the data item
+	 */
+	private static DataItem BuildWideItem(int a_NumSentences) {
+
+		DataItem l_Doc = new DataItem("DOC");
+		l_Doc.AddField("HEADLINE", "Lawmakers & \"officials\" say <nothing>");
+		for (int i = 0; i < a_NumSentences; ++i) {
+			l_Doc.AddSubFieldValue("TEXT", "P", "Sentence " + i + " of the document, with AT&T's <b>markup</b> in it.");
+		}
+
+		return l_Doc;
+
+	} // end BuildWideItem()
+
+
+	/**
+	 * Builds a chain of nested data items.
+	 *
+	 * @param a_Depth [in] number of nested levels
+	 * @return the outermost data item
+	 */
+	private static DataItem BuildDeepItem(int a_Depth) {
+
+		DataItem l_Item = new DataItem("L" + a_Depth);
+		l_Item.AddValue("leaf & <value>");
+		for (int i = a_Depth - 1; i >= 0; --i) {
+			DataItem l_Parent = new DataItem("L" + i);
+			l_Parent.AddValue("level " + i + " 'quoted'");
+			l_Parent.AddField(l_Item.GetXMLTag(), l_Item);
+			l_Item = l_Parent;
+		}
+
+		return l_Item;
+
+	} // end BuildDeepItem()
+
+
+	/**
+	 * The original implementation of DataItem.toXMLString(), kept here for comparison.
+	 * Attributes are left out as the benchmark items do not have any.
+	 *
+	 * @param a_Item [in] data item to serialise
+	 * @return XML string describing the data item
+	 */
+	private static String LegacyToXMLString(DataItem a_Item) {
+
+		String l_OutString = "\n<" + a_Item.GetXMLTag();
+		l_OutString += ">";
+
+		for (String l_Field : a_Item.GetAllFieldNames()) {
+			DataItem[] l_Items = a_Item.GetFieldValues(l_Field);
+			if (l_Items == null) continue;
+			for (DataItem l_Item : l_Items) {
+				l_OutString += LegacyToXMLString(l_Item);
+			}
+		}
+
+		for (String l_Value : a_Item.GetValue()) {
+			l_Value = l_Value.replaceAll("&", "&amp;");
+			l_Value = l_Value.replaceAll("<", "&lt;");
+			l_Value = l_Value.replaceAll(">", "&gt;");
+			l_Value = l_Value.replaceAll("\"", "&quot;");
+			l_Value = l_Value.replaceAll("'", "&apos;");
+			l_OutString += l_Value ;
+		}
+
+		l_OutString += "</" + a_Item.GetXMLTag() + ">\n";
+
+		return l_OutString;
+
+	} // end LegacyToXMLString()
+
+
+	/**
+	 * Writer that only counts the characters written to it, standing in for a file.
+	 */
+	private static class CountingWriter extends Writer {
+
+		private long m_Count = 0;
+
+		@Override
+		public void write(char[] a_Buffer, int a_Offset, int a_Length) {
+			m_Count += a_Length;
+		}
+
+		@Override
+		public Writer append(CharSequence a_Chars) {
+			m_Count += a_Chars.length();
+			return this;
+		}
+
+		@Override
+		public Writer append(CharSequence a_Chars, int a_Start, int a_End) {
+			m_Count += a_End - a_Start;
+			return this;
+		}
+
+		@Override
+		public Writer append(char a_Char) {
+			m_Count++;
+			return this;
+		}
+
+		@Override
+		public void flush() {
+		}
+
+		@Override
+		public void close() {
+		}
+
+		public long GetCount() {
+			return m_Count;
+		}
+
+	} // end class CountingWriter
+
+
+	/**
+	 * Times the serialisations of a data item, and prints out the results.
+	 *
+	 * @param a_Label [in] description of the data item
+	 * @param a_Item [in] data item to serialise
+	 * @throws IOException never, as nothing is written to file
+	 */
+	private static void Compare(String a_Label, DataItem a_Item) throws IOException {
+
+		// Make sure both give the same XML
+		String l_Legacy = LegacyToXMLString(a_Item);
+		if (!l_Legacy.equals(a_Item.toXMLString())) {
+			System.out.println(a_Label + " : output of WriteXML() differs from the original toXMLString()!");
+			return;
+		}
+
+		long l_LegacyBest = Long.MAX_VALUE;
+		long l_StringBest = Long.MAX_VALUE;
+		long l_WriterBest = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; ++i) {
+
+			long l_Start = System.nanoTime();
+			LegacyToXMLString(a_Item);
+			l_LegacyBest = Math.min(l_LegacyBest, System.nanoTime() - l_Start);
+
+			l_Start = System.nanoTime();
+			a_Item.toXMLString();
+			l_StringBest = Math.min(l_StringBest, System.nanoTime() - l_Start);
+
+			CountingWriter l_Writer = new CountingWriter();
+			l_Start = System.nanoTime();
+			a_Item.WriteXML(l_Writer);
+			l_WriterBest = Math.min(l_WriterBest, System.nanoTime() - l_Start);
+
+		} // end for
+
+		System.out.println(a_Label + " (" + l_Legacy.length() + " chars)");
+		System.out.println("  original toXMLString() : " + (l_LegacyBest / 1000000.0) + " ms");
+		System.out.println("  toXMLString()          : " + (l_StringBest / 1000000.0) + " ms");
+		System.out.println("  WriteXML(Writer)       : " + (l_WriterBest / 1000000.0) + " ms");
+
+	} // end Compare()
+
+
+	/**
+	 * Builds a document resembling an AQUAINT-2 news article, as handed over by the
+	 * XML handler of the information base building stage.
+	 *
+	 * @param a_DocNum [in] number of the document, used to make its content unique
+	 * @return the data item
+	 */
+	private static DataItem BuildAQUAINTDoc(int a_DocNum) {
+
+		DataItem l_Doc = new DataItem("DOC");
+		l_Doc.AddAttribute("id", "APW_ENG_" + (20050101 + a_DocNum) + ".0001");
+		l_Doc.AddAttribute("type", "story");
+		l_Doc.AddField("HEADLINE", "Headline of article " + a_DocNum);
+		l_Doc.AddField("DATELINE", "SINGAPORE, Jan " + a_DocNum);
+		for (int i = 0; i < 20; ++i) {
+			l_Doc.AddSubFieldValue("TEXT", "P", "Sentence " + i + " of article " + a_DocNum + ".");
+		}
+
+		return l_Doc;
+
+	} // end BuildAQUAINTDoc()
+
+
+	/**
+	 * Returns the heap in use, after trying to have the garbage collected.
+	 *
+	 * @return used heap in bytes
+	 */
+	private static long UsedHeap() {
+
+		Runtime l_Runtime = Runtime.getRuntime();
+		for (int i = 0; i < 5; ++i) {
+			System.gc();
+			try {
+				Thread.sleep(50);
+			} catch (InterruptedException e) {
+				break;
+			}
+		}
+
+		return l_Runtime.totalMemory() - l_Runtime.freeMemory();
+
+	} // end UsedHeap()
+
+
+	/**
+	 * Measures the heap used per AQUAINT-like document, and prints out the result.
+	 * The strings of the documents are counted as well.
+	 *
+	 * @param a_NumDocs [in] number of documents to hold on to
+	 */
+	private static void MeasureHeap(int a_NumDocs) {
+
+		DataItem[] l_Docs = new DataItem[a_NumDocs];
+		long l_Before = UsedHeap();
+		for (int i = 0; i < a_NumDocs; ++i) {
+			l_Docs[i] = BuildAQUAINTDoc(i);
+		}
+		long l_After = UsedHeap();
+
+		System.out.println("Heap for " + a_NumDocs + " documents of 20 <P> : " + ((l_After - l_Before) / a_NumDocs) + " bytes per document");
+
+		// Keep the documents reachable until after the measurement
+		if (l_Docs[a_NumDocs - 1] == null) System.out.println();
+
+	} // end MeasureHeap()
+
+
+	public static void main(String[] args) throws IOException {
+
+		int l_WideCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+		int l_DeepCount = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+		int l_HeapDocs = args.length > 2 ? Integer.parseInt(args[2]) : 20000;
+
+		Compare("Wide item, " + l_WideCount + " sentences", BuildWideItem(l_WideCount));
+		Compare("Deep item, " + l_DeepCount + " levels", BuildDeepItem(l_DeepCount));
+		MeasureHeap(l_HeapDocs);
+
+	} // end main()
+
+
+} // end class DataItemBenchmark
@@ -0,0 +1,112 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests for FieldStatistics, against a small index built in memory.
+ */
+public class FieldStatisticsTest {
+
+
+	private RAMDirectory m_Directory;
+	private IndexReader m_Reader;
+
+
+	@Before
+	public void SetUp() throws Exception {
+
+		// The first document lacks TITLES and ABSTS, which only show up later
+		m_Directory = TestIndex.InMemory(new String[] { "DocID", "NAMES", "TITLES", "ABSTS" }, new String[][] {
+			{ "d1", "Juan Perez", null, null },
+			{ "d2", "Ana Gomez", "Redes neuronales", null },
+			{ "d3", "Juan Perez", "Bases de datos", "Indices" },
+			{ "d4", "Ana Gomez", null, null },
+		});
+
+		m_Reader = IndexReader.open(m_Directory);
+
+	} // end SetUp()
+
+
+	@After
+	public void TearDown() throws Exception {
+
+		m_Reader.close();
+		m_Directory.close();
+
+	} // end TearDown()
+
+
+	@Test
+	public void FieldNamesFollowFirstAppearance() throws Exception {
+
+		assertEquals(Arrays.asList("DocID", "NAMES", "TITLES", "ABSTS"), FieldStatistics.GetFieldNames(m_Reader));
+
+	} // end FieldNamesFollowFirstAppearance()
+
+
+	@Test
+	public void SingleTermFieldCountsFromTerms() throws Exception {
+
+		Map<String, Integer> l_Counts = FieldStatistics.GetValueCounts(m_Reader, "DocID");
+		assertEquals(Arrays.asList("d1", "d2", "d3", "d4"), new ArrayList<String>(l_Counts.keySet()));
+		assertEquals(Integer.valueOf(1), l_Counts.get("d3"));
+
+	} // end SingleTermFieldCountsFromTerms()
+
+
+	@Test
+	public void AnalyzedFieldCountsWholeValues() throws Exception {
+
+		Map<String, Integer> l_Counts = FieldStatistics.GetValueCounts(m_Reader, "NAMES");
+		assertEquals(Arrays.asList("Juan Perez", "Ana Gomez"), new ArrayList<String>(l_Counts.keySet()));
+		assertEquals(Integer.valueOf(2), l_Counts.get("Juan Perez"));
+		assertEquals(Integer.valueOf(2), l_Counts.get("Ana Gomez"));
+
+	} // end AnalyzedFieldCountsWholeValues()
+
+
+	@Test
+	public void DocumentsWithoutTheFieldAreNotCounted() throws Exception {
+
+		Map<String, Integer> l_Counts = FieldStatistics.GetValueCounts(m_Reader, "TITLES");
+		assertEquals(2, l_Counts.size());
+		assertEquals(Integer.valueOf(1), l_Counts.get("Bases de datos"));
+
+	} // end DocumentsWithoutTheFieldAreNotCounted()
+
+
+	@Test
+	public void DeletedDocumentsAreNotCounted() throws Exception {
+
+		m_Reader.deleteDocuments(new Term("DocID", "d1"));
+
+		assertEquals(Integer.valueOf(1), FieldStatistics.GetValueCounts(m_Reader, "NAMES").get("Juan Perez"));
+		assertEquals(null, FieldStatistics.GetValueCounts(m_Reader, "DocID").get("d1"));
+
+	} // end DeletedDocumentsAreNotCounted()
+
+
+	@Test
+	public void StatisticsAreKeptForTheReader() throws Exception {
+
+		assertSame(FieldStatistics.GetValueCounts(m_Reader, "NAMES"), FieldStatistics.GetValueCounts(m_Reader, "NAMES"));
+		assertSame(FieldStatistics.GetFieldNames(m_Reader), FieldStatistics.GetFieldNames(m_Reader));
+
+	} // end StatisticsAreKeptForTheReader()
+
+
+} // end class FieldStatisticsTest
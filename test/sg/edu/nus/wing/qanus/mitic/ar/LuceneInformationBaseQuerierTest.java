@@ -0,0 +1,111 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+
+import org.apache.lucene.document.Document;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests for looking up documents by ID with LuceneInformationBaseQuerier, against a small
+ * index written to a temporary folder.
+ */
+public class LuceneInformationBaseQuerierTest {
+
+
+	private static final String[] DOC_IDS = { "DOC-003", "doc-001", "Doc-004", "DOC-002" };
+
+
+	private File m_Folder;
+	private LuceneInformationBaseQuerier m_Querier;
+
+
+	@Before
+	public void SetUp() throws Exception {
+
+		String[][] l_Docs = new String[DOC_IDS.length][];
+		for (int i = 0; i < DOC_IDS.length; ++i) {
+			l_Docs[i] = new String[] { DOC_IDS[i], "text of " + DOC_IDS[i] };
+		}
+		m_Folder = TestIndex.InTempFolder(new String[] { "DocID", "ALL" }, l_Docs);
+
+		m_Querier = new LuceneInformationBaseQuerier(m_Folder, 10);
+
+	} // end SetUp()
+
+
+	@After
+	public void TearDown() {
+
+		m_Querier.Close();
+		TestIndex.Delete(m_Folder);
+
+	} // end TearDown()
+
+
+	@Test
+	public void DocumentsComeInTheOrderOfTheIDs() {
+
+		String[] l_DocIDs = { "DOC-002", "DOC-003", "doc-001" };
+		Document[] l_Docs = m_Querier.GetDocsByIDs(l_DocIDs);
+
+		assertEquals(l_DocIDs.length, l_Docs.length);
+		for (int i = 0; i < l_DocIDs.length; ++i) {
+			assertEquals(l_DocIDs[i], l_Docs[i].get("DocID"));
+		}
+
+	} // end DocumentsComeInTheOrderOfTheIDs()
+
+
+	@Test
+	public void IDsAreMatchedRegardlessOfCase() {
+
+		String[] l_DocIDs = { "doc-004", "Doc-001", "DOC-003" };
+		Document[] l_Docs = m_Querier.GetDocsByIDs(l_DocIDs);
+
+		assertEquals("Doc-004", l_Docs[0].get("DocID"));
+		assertEquals("doc-001", l_Docs[1].get("DocID"));
+		assertEquals("DOC-003", l_Docs[2].get("DocID"));
+
+	} // end IDsAreMatchedRegardlessOfCase()
+
+
+	@Test
+	public void UnknownIDsGiveNull() {
+
+		String[] l_DocIDs = { "DOC-009", "DOC-002", "" };
+		Document[] l_Docs = m_Querier.GetDocsByIDs(l_DocIDs);
+
+		assertNull(l_Docs[0]);
+		assertEquals("DOC-002", l_Docs[1].get("DocID"));
+		assertNull(l_Docs[2]);
+		assertNull(m_Querier.GetDocByID("DOC-010"));
+
+	} // end UnknownIDsGiveNull()
+
+
+	@Test
+	public void SingleDocumentByID() {
+
+		assertEquals("Doc-004", m_Querier.GetDocByID("DOC-004").get("DocID"));
+
+	} // end SingleDocumentByID()
+
+
+	@Test
+	public void RepeatedIDsGiveTheSameDocument() {
+
+		String[] l_DocIDs = { "DOC-003", "doc-003", "DOC-003" };
+		for (Document l_Doc : m_Querier.GetDocsByIDs(l_DocIDs)) {
+			assertEquals("DOC-003", l_Doc.get("DocID"));
+		}
+
+	} // end RepeatedIDsGiveTheSameDocument()
+
+
+} // end class LuceneInformationBaseQuerierTest
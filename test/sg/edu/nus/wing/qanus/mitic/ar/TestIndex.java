@@ -0,0 +1,103 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.store.RAMDirectory;
+
+
+/**
+ * Small Lucene indexes for the tests, written as the IBP stage does : DocID is indexed
+ * as a single term, the other fields are analyzed, and all the fields are stored.
+ *
+ * Each document is given as its values for a list of fields. A null value leaves the
+ * field out of the document.
+ */
+class TestIndex {
+
+
+	/**
+	 * Writes the documents to an index in memory.
+	 *
+	 * @param a_Fields [in] names of the fields
+	 * @param a_Docs [in] values of the fields for each document
+	 * @return the directory of the index
+	 * @throws IOException on errors writing the index
+	 */
+	public static RAMDirectory InMemory(String[] a_Fields, String[][] a_Docs) throws IOException {
+
+		RAMDirectory l_Directory = new RAMDirectory();
+		Write(l_Directory, a_Fields, a_Docs);
+		return l_Directory;
+
+	} // end InMemory()
+
+
+	/**
+	 * Writes the documents to an index in a new temporary folder, see Delete().
+	 *
+	 * @param a_Fields [in] names of the fields
+	 * @param a_Docs [in] values of the fields for each document
+	 * @return the folder of the index
+	 * @throws IOException on errors writing the index
+	 */
+	public static File InTempFolder(String[] a_Fields, String[][] a_Docs) throws IOException {
+
+		File l_Folder = File.createTempFile("lucene", "-index");
+		l_Folder.delete();
+
+		Directory l_Directory = FSDirectory.getDirectory(l_Folder);
+		try {
+			Write(l_Directory, a_Fields, a_Docs);
+		} finally {
+			l_Directory.close();
+		}
+		return l_Folder;
+
+	} // end InTempFolder()
+
+
+	/**
+	 * Deletes an index written by InTempFolder(), along with the files saved next to it.
+	 *
+	 * @param a_Folder [in] folder of the index
+	 */
+	public static void Delete(File a_Folder) {
+
+		File[] l_Files = a_Folder.listFiles();
+		if (l_Files != null) {
+			for (File l_File : l_Files) l_File.delete();
+		}
+		a_Folder.delete();
+		ValueTokenIndex.GetFile(a_Folder).delete();
+
+	} // end Delete()
+
+
+	private static void Write(Directory a_Directory, String[] a_Fields, String[][] a_Docs) throws IOException {
+
+		IndexWriter l_Writer = new IndexWriter(a_Directory, new StandardAnalyzer(), true, IndexWriter.MaxFieldLength.UNLIMITED);
+		try {
+			for (String[] l_Values : a_Docs) {
+				Document l_Doc = new Document();
+				for (int i = 0; i < a_Fields.length; ++i) {
+					if (l_Values[i] == null) continue;
+					Field.Index l_Index = a_Fields[i].equals("DocID") ? Field.Index.NOT_ANALYZED : Field.Index.ANALYZED;
+					l_Doc.add(new Field(a_Fields[i], l_Values[i], Field.Store.YES, l_Index));
+				}
+				l_Writer.addDocument(l_Doc);
+			}
+		} finally {
+			l_Writer.close();
+		}
+
+	} // end Write()
+
+
+} // end class TestIndex
@@ -0,0 +1,157 @@
+package sg.edu.nus.wing.qanus.mitic.ar;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.store.RAMDirectory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import sg.edu.nus.wing.qanus.mitic.ar.featurescoring.FeatureSearchTermCoverage;
+
+
+/**
+ * Tests for ValueTokenIndex, against a small index built in memory. Lookups are checked
+ * against FeatureSearchTermCoverage, which they stand in for.
+ */
+public class ValueTokenIndexTest {
+
+
+	private static final String[][] VALUES = {
+		{ "Juan Perez", "Redes Neuronales Profundas" },
+		{ "Ana Gomez", "Bases de datos" },
+		{ "Juana Perezoso", "Redes de sensores" },
+		{ "Pedro Gomez", null },
+	};
+
+
+	private RAMDirectory m_Directory;
+	private IndexReader m_Reader;
+
+
+	@Before
+	public void SetUp() throws Exception {
+
+		m_Directory = TestIndex.InMemory(new String[] { "NAMES", "TITLES" }, VALUES);
+
+		m_Reader = IndexReader.open(m_Directory);
+
+	} // end SetUp()
+
+
+	@After
+	public void TearDown() throws Exception {
+
+		m_Reader.close();
+		m_Directory.close();
+
+	} // end TearDown()
+
+
+	@Test
+	public void WordsMatchWithinLongerWords() throws Exception {
+
+		ValueTokenIndex l_Index = ValueTokenIndex.Build(m_Reader);
+
+		assertTrue(l_Index.AnyValueContains("NAMES", "perez"));
+		assertTrue(l_Index.AnyValueContains("NAMES", "EREZO"));
+		assertArrayEquals(new int[] { 0, 2 }, l_Index.GetDocsContaining("NAMES", "Perez"));
+		assertArrayEquals(new int[] { 2 }, l_Index.GetDocsContaining("NAMES", "juana perez"));
+
+	} // end WordsMatchWithinLongerWords()
+
+
+	@Test
+	public void AllWordsMustBeInTheSameValue() throws Exception {
+
+		ValueTokenIndex l_Index = ValueTokenIndex.Build(m_Reader);
+
+		// Both words are in the field, but never in the same value
+		assertTrue(l_Index.FieldContainsEachWord("NAMES", "ana perez"));
+		assertFalse(l_Index.AnyValueContains("NAMES", "pedro perez"));
+		assertArrayEquals(new int[0], l_Index.GetDocsContaining("NAMES", "pedro perez"));
+
+		// Words only in another field
+		assertFalse(l_Index.FieldContainsEachWord("NAMES", "redes"));
+		assertFalse(l_Index.AnyValueContains("TITLES", "gomez"));
+
+	} // end AllWordsMustBeInTheSameValue()
+
+
+	@Test
+	public void SearchStringsWhichCannotBeCovered() throws Exception {
+
+		ValueTokenIndex l_Index = ValueTokenIndex.Build(m_Reader);
+
+		assertFalse(l_Index.AnyValueContains("NAMES", ""));
+		assertFalse(l_Index.AnyValueContains("NAMES", "perez perez"));
+		assertFalse(l_Index.AnyValueContains("UNKNOWN", "perez"));
+
+	} // end SearchStringsWhichCannotBeCovered()
+
+
+	@Test
+	public void MatchesFeatureSearchTermCoverage() throws Exception {
+
+		ValueTokenIndex l_Index = ValueTokenIndex.Build(m_Reader);
+		FeatureSearchTermCoverage l_Coverage = new FeatureSearchTermCoverage();
+		String[] l_Words = { "juan", "an", "PEREZ", "rez", "gomez", "redes", "de", "datos", "x", "sensor", "profundas" };
+		String[] l_Fields = { "NAMES", "TITLES" };
+
+		Random l_Random = new Random(7);
+		for (int n = 0; n < 500; ++n) {
+
+			String l_SearchString = l_Words[l_Random.nextInt(l_Words.length)];
+			if (l_Random.nextBoolean()) l_SearchString += " " + l_Words[l_Random.nextInt(l_Words.length)];
+			String[] l_Param = { l_SearchString };
+
+			for (String l_Field : l_Fields) {
+				ArrayList<Integer> l_Expected = new ArrayList<Integer>();
+				for (int i = 0; i < VALUES.length; ++i) {
+					String l_Value = VALUES[i][l_Field.equals("NAMES") ? 0 : 1];
+					if (l_Coverage.GetScore(l_Param, l_Value) == 1.0) l_Expected.add(i);
+				}
+
+				ArrayList<Integer> l_Found = new ArrayList<Integer>();
+				for (int l_Doc : l_Index.GetDocsContaining(l_Field, l_SearchString)) l_Found.add(l_Doc);
+
+				assertEquals("[" + l_SearchString + "] in " + l_Field, l_Expected, l_Found);
+				assertEquals("[" + l_SearchString + "] in " + l_Field, !l_Expected.isEmpty(), l_Index.AnyValueContains(l_Field, l_SearchString));
+			}
+
+		}
+
+	} // end MatchesFeatureSearchTermCoverage()
+
+
+	@Test
+	public void SavedIndexIsTheSame() throws Exception {
+
+		ValueTokenIndex l_Index = ValueTokenIndex.Build(m_Reader);
+		File l_File = File.createTempFile("values", ".idx");
+		try {
+			l_Index.Save(l_File);
+			ValueTokenIndex l_Loaded = ValueTokenIndex.Load(l_File);
+
+			assertEquals(l_Index.GetNumberOfWords(), l_Loaded.GetNumberOfWords());
+			for (String l_SearchString : Arrays.asList("perez", "juana perez", "de", "redes sensores", "ana")) {
+				assertArrayEquals(l_Index.GetDocsContaining("NAMES", l_SearchString), l_Loaded.GetDocsContaining("NAMES", l_SearchString));
+				assertArrayEquals(l_Index.GetDocsContaining("TITLES", l_SearchString), l_Loaded.GetDocsContaining("TITLES", l_SearchString));
+			}
+		} finally {
+			l_File.delete();
+		}
+
+	} // end SavedIndexIsTheSame()
+
+
+} // end class ValueTokenIndexTest
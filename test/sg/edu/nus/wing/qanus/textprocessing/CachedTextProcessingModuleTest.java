@@ -0,0 +1,255 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+
+/**
+ * Tests for CachedTextProcessingModule, wrapping a module which upper-cases sentences
+ * and records what it was asked to process. Sentences starting with ! stand for those the
+ * module fails on, and are given empty results.
+ */
+public class CachedTextProcessingModuleTest {
+
+
+	/**
+	 * Upper-cases sentences, optionally cut down to a number of characters set as its setting.
+	 */
+	private static class UpperCaseModule implements IConfiguredModule {
+
+		private List<String> m_Processed = new ArrayList<String>();
+		private int m_MaxLength = 0;
+
+		public String[] ProcessText(String[] a_Sentences) {
+			String[] l_Results = new String[a_Sentences.length];
+			for (int i = 0; i < a_Sentences.length; ++i) {
+				m_Processed.add(a_Sentences[i]);
+				String l_Sentence = a_Sentences[i].startsWith("!") ? "" : a_Sentences[i].toUpperCase();
+				l_Results[i] = (m_MaxLength > 0 && l_Sentence.length() > m_MaxLength) ? l_Sentence.substring(0, m_MaxLength) : l_Sentence;
+			}
+			return l_Results;
+		}
+
+		public String GetSettings() {
+			return "max=" + m_MaxLength;
+		}
+
+		public String GetModuleID() {
+			return "UC";
+		}
+
+	} // end class UpperCaseModule
+
+
+	private File m_CacheFile;
+	private UpperCaseModule m_Module;
+
+
+	@Before
+	public void SetUp() throws Exception {
+
+		m_CacheFile = File.createTempFile("annotations", ".cache");
+		m_CacheFile.delete();
+		m_Module = new UpperCaseModule();
+
+	} // end SetUp()
+
+
+	@After
+	public void TearDown() {
+
+		m_CacheFile.delete();
+		new File(m_CacheFile.getPath() + ".new").delete();
+
+	} // end TearDown()
+
+
+	private CachedTextProcessingModule NewCache(int a_MaxEntries) throws Exception {
+		return new CachedTextProcessingModule(m_Module, "model", m_CacheFile, a_MaxEntries);
+	}
+
+
+	@Test
+	public void OnlyMissesArePassedOn() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+
+		assertArrayEquals(new String[] { "A B", "C" }, l_Cache.ProcessText(new String[] { "a b", "c" }));
+		assertArrayEquals(new String[] { "C", "D", "A B" }, l_Cache.ProcessText(new String[] { "c", "d", "a b" }));
+
+		assertEquals(Arrays.asList("a b", "c", "d"), m_Module.m_Processed);
+		assertEquals(2, l_Cache.GetHits());
+		assertEquals(3, l_Cache.GetMisses());
+		l_Cache.CloseCache();
+
+	} // end OnlyMissesArePassedOn()
+
+
+	@Test
+	public void ResultsLastAcrossRuns() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		l_Cache.ProcessText(new String[] { "a", "b" });
+		l_Cache.CloseCache();
+
+		l_Cache = NewCache(10);
+		assertArrayEquals(new String[] { "B", "A" }, l_Cache.ProcessText(new String[] { "b", "a" }));
+		assertEquals(2, l_Cache.GetHits());
+		assertEquals(Arrays.asList("a", "b"), m_Module.m_Processed);
+		l_Cache.CloseCache();
+
+	} // end ResultsLastAcrossRuns()
+
+
+	@Test
+	public void SettingsArePartOfTheKey() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		l_Cache.ProcessText(new String[] { "abcdef" });
+
+		m_Module.m_MaxLength = 3;
+		assertArrayEquals(new String[] { "ABC" }, l_Cache.ProcessText(new String[] { "abcdef" }));
+
+		m_Module.m_MaxLength = 0;
+		assertArrayEquals(new String[] { "ABCDEF" }, l_Cache.ProcessText(new String[] { "abcdef" }));
+		assertEquals(1, l_Cache.GetHits());
+		l_Cache.CloseCache();
+
+	} // end SettingsArePartOfTheKey()
+
+
+	@Test
+	public void LeastRecentlyUsedAreDropped() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(2);
+		l_Cache.ProcessText(new String[] { "a", "b" });
+		l_Cache.ProcessText(new String[] { "a" });
+		l_Cache.ProcessText(new String[] { "c" });
+		m_Module.m_Processed.clear();
+		l_Cache.ProcessText(new String[] { "a", "b" });
+		assertEquals(Arrays.asList("b"), m_Module.m_Processed);
+		l_Cache.CloseCache();
+		long l_FullLength = m_CacheFile.length();
+
+		// Opening the cache clears the results dropped out of the file, keeping the last written
+		l_Cache = NewCache(2);
+		assertTrue(m_CacheFile.length() < l_FullLength);
+		m_Module.m_Processed.clear();
+		l_Cache.ProcessText(new String[] { "c", "b" });
+		assertTrue(m_Module.m_Processed.isEmpty());
+		l_Cache.CloseCache();
+
+	} // end LeastRecentlyUsedAreDropped()
+
+
+	@Test
+	public void DroppedResultsAreClearedDuringARun() throws Exception {
+
+		// Each result takes up 16 + 4 + 5 bytes, and the file never holds more than 1000 of them
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		for (int i = 0; i < 5000; ++i) {
+			l_Cache.ProcessText(new String[] { String.format("s%04d", i) });
+			assertTrue(m_CacheFile.length() <= 4 + 1000 * 25);
+		}
+
+		// The results kept are still read correctly from the new file
+		m_Module.m_Processed.clear();
+		String[] l_Sentences = new String[10];
+		for (int i = 0; i < 10; ++i) {
+			l_Sentences[i] = String.format("s%04d", 4990 + i);
+		}
+		assertEquals("S4995", l_Cache.ProcessText(l_Sentences)[5]);
+		assertTrue(m_Module.m_Processed.isEmpty());
+		l_Cache.CloseCache();
+
+	} // end DroppedResultsAreClearedDuringARun()
+
+
+	@Test
+	public void DamagedFileIsWrittenAfresh() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		l_Cache.ProcessText(new String[] { "a", "b" });
+		l_Cache.CloseCache();
+
+		// Give the last result a length running past the end of the file
+		RandomAccessFile l_File = new RandomAccessFile(m_CacheFile, "rw");
+		long l_LastLength = l_File.length() - 1 - 4;
+		l_File.seek(l_LastLength);
+		l_File.writeInt(1000);
+		l_File.close();
+
+		l_Cache = NewCache(10);
+		m_Module.m_Processed.clear();
+		assertArrayEquals(new String[] { "A", "B" }, l_Cache.ProcessText(new String[] { "a", "b" }));
+		assertEquals(Arrays.asList("b"), m_Module.m_Processed);
+		l_Cache.CloseCache();
+
+		// The damaged result was cleared out, and b added again after a
+		l_Cache = NewCache(10);
+		m_Module.m_Processed.clear();
+		l_Cache.ProcessText(new String[] { "a", "b" });
+		assertTrue(m_Module.m_Processed.isEmpty());
+		l_Cache.CloseCache();
+
+	} // end DamagedFileIsWrittenAfresh()
+
+
+	@Test
+	public void UnknownFileIsWrittenAfresh() throws Exception {
+
+		RandomAccessFile l_File = new RandomAccessFile(m_CacheFile, "rw");
+		l_File.writeUTF("not a cache file");
+		l_File.close();
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		assertArrayEquals(new String[] { "A" }, l_Cache.ProcessText(new String[] { "a" }));
+		l_Cache.CloseCache();
+
+		l_Cache = NewCache(10);
+		l_Cache.ProcessText(new String[] { "a" });
+		assertEquals(1, l_Cache.GetHits());
+		l_Cache.CloseCache();
+
+	} // end UnknownFileIsWrittenAfresh()
+
+
+	@Test
+	public void FailuresAreNotKept() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		assertArrayEquals(new String[] { "A", "", "" }, l_Cache.ProcessText(new String[] { "a", "!b", "" }));
+		assertArrayEquals(new String[] { "A", "", "" }, l_Cache.ProcessText(new String[] { "a", "!b", "" }));
+
+		// Only the failure is processed again, an empty result for a blank sentence is kept
+		assertEquals(Arrays.asList("a", "!b", "", "!b"), m_Module.m_Processed);
+		l_Cache.CloseCache();
+
+	} // end FailuresAreNotKept()
+
+
+	@Test
+	public void NothingIsKeptAfterClosing() throws Exception {
+
+		CachedTextProcessingModule l_Cache = NewCache(10);
+		l_Cache.ProcessText(new String[] { "a" });
+		l_Cache.CloseCache();
+
+		assertArrayEquals(new String[] { "A" }, l_Cache.ProcessText(new String[] { "a" }));
+		assertEquals(Arrays.asList("a", "a"), m_Module.m_Processed);
+
+	} // end NothingIsKeptAfterClosing()
+
+
+} // end class CachedTextProcessingModuleTest
@@ -0,0 +1,154 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import sg.edu.nus.wing.qanus.framework.commons.ITextProcessingModule;
+
+
+/**
+ * Tests for StanfordNERWebService, with a LocalEndpoint standing in for the web service.
+ * The stand-in tags capitalised words as PERSON and other words as O, like StanfordNER would.
+ */
+public class StanfordNERWebServiceTest {
+
+
+	/**
+	 * Tags each word of a sentence as word/PERSON or word/O, counting its calls.
+	 * Sentences can be made to fail or to take a while.
+	 */
+	private static class TaggingModule implements ITextProcessingModule {
+
+		private final AtomicInteger m_Calls = new AtomicInteger();
+		private volatile boolean m_Fail = false;
+		private volatile long m_Delay = 0;
+
+		public String[] ProcessText(String[] a_Sentences) {
+
+			m_Calls.incrementAndGet();
+			if (m_Fail) return null;
+			if (m_Delay > 0) {
+				try {
+					Thread.sleep(m_Delay);
+				} catch (InterruptedException e) {
+					return null;
+				}
+			}
+
+			String[] l_Results = new String[a_Sentences.length];
+			for (int i = 0; i < a_Sentences.length; ++i) {
+				StringBuilder l_Result = new StringBuilder();
+				for (String l_Word : a_Sentences[i].split("\\s+")) {
+					if (l_Word.length() == 0) continue;
+					if (l_Result.length() > 0) l_Result.append(' ');
+					l_Result.append(l_Word).append(Character.isUpperCase(l_Word.charAt(0)) ? "/PERSON" : "/O");
+				}
+				l_Results[i] = l_Result.toString();
+			}
+			return l_Results;
+
+		} // end ProcessText()
+
+		public String GetModuleID() {
+			return "Tagging";
+		}
+
+	} // end class TaggingModule
+
+
+	private static final String[] SENTENCES = { "Obama spoke", "he left", "Lee came home", "it rained", "Ann smiled" };
+	private static final String[] TAGGED = { "Obama/PERSON spoke/O", "he/O left/O", "Lee/PERSON came/O home/O", "it/O rained/O", "Ann/PERSON smiled/O" };
+
+
+	@Test
+	public void SentencesAreSentInBatches() {
+
+		TaggingModule l_Remote = new TaggingModule();
+		StanfordNERWebService l_Service = new StanfordNERWebService(new StanfordNERWebService.LocalEndpoint(l_Remote));
+		l_Service.SetBatchSize(2);
+
+		assertArrayEquals(TAGGED, l_Service.ProcessText(SENTENCES));
+		assertEquals(3, l_Remote.m_Calls.get());
+
+	} // end SentencesAreSentInBatches()
+
+
+	@Test
+	public void BatchesAreSentAtTheSameTime() {
+
+		TaggingModule l_Remote = new TaggingModule();
+		l_Remote.m_Delay = 200;
+		StanfordNERWebService l_Service = new StanfordNERWebService(new StanfordNERWebService.LocalEndpoint(l_Remote));
+		l_Service.SetMaxRequestsInFlight(5);
+
+		long l_Start = System.currentTimeMillis();
+		assertArrayEquals(TAGGED, l_Service.ProcessText(SENTENCES));
+		assertTrue(System.currentTimeMillis() - l_Start < 5 * 200);
+		assertEquals(5, l_Remote.m_Calls.get());
+
+	} // end BatchesAreSentAtTheSameTime()
+
+
+	@Test
+	public void FailedBatchesGoToTheFallback() {
+
+		TaggingModule l_Remote = new TaggingModule();
+		l_Remote.m_Fail = true;
+		TaggingModule l_Fallback = new TaggingModule();
+		StanfordNERWebService l_Service = new StanfordNERWebService(new StanfordNERWebService.LocalEndpoint(l_Remote));
+		l_Service.SetBatchSize(5);
+		l_Service.SetFallback(l_Fallback);
+
+		assertArrayEquals(TAGGED, l_Service.ProcessText(SENTENCES));
+		assertEquals(1, l_Fallback.m_Calls.get());
+
+		// The web service is left alone for a while after failing
+		l_Remote.m_Fail = false;
+		assertArrayEquals(TAGGED, l_Service.ProcessText(SENTENCES));
+		assertEquals(1, l_Remote.m_Calls.get());
+		assertEquals(2, l_Fallback.m_Calls.get());
+
+	} // end FailedBatchesGoToTheFallback()
+
+
+	@Test
+	public void SlowBatchesGoToTheFallback() {
+
+		TaggingModule l_Remote = new TaggingModule();
+		l_Remote.m_Delay = 5000;
+		TaggingModule l_Fallback = new TaggingModule();
+		StanfordNERWebService l_Service = new StanfordNERWebService(new StanfordNERWebService.LocalEndpoint(l_Remote));
+		l_Service.SetBatchSize(5);
+		l_Service.SetCallTimeout(100);
+		l_Service.SetFallback(l_Fallback);
+
+		long l_Start = System.currentTimeMillis();
+		assertArrayEquals(TAGGED, l_Service.ProcessText(SENTENCES));
+		assertTrue(System.currentTimeMillis() - l_Start < 5000);
+		assertEquals(1, l_Fallback.m_Calls.get());
+
+	} // end SlowBatchesGoToTheFallback()
+
+
+	@Test
+	public void FailuresWithoutFallbackGiveEmptyResults() {
+
+		TaggingModule l_Remote = new TaggingModule();
+		l_Remote.m_Fail = true;
+		StanfordNERWebService l_Service = new StanfordNERWebService(new StanfordNERWebService.LocalEndpoint(l_Remote));
+
+		String[] l_Results = l_Service.ProcessText(SENTENCES);
+		assertEquals(SENTENCES.length, l_Results.length);
+		for (String l_Result : l_Results) {
+			assertEquals("", l_Result);
+		}
+
+	} // end FailuresWithoutFallbackGiveEmptyResults()
+
+
+} // end class StanfordNERWebServiceTest
@@ -0,0 +1,207 @@
+package sg.edu.nus.wing.qanus.textprocessing;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.StringTokenizer;
+
+
+/**
+ * Simple benchmark for StopWordsFilter.
+ *
+ * Compares the original implementation, which read the stop words file one character at a
+ * time and built its results with repeated String concatenation, with the current one.
+ * Two things are timed :
+ * - getting a filter, which FeatureScoringStrategy does for every candidate answer.
+ *   The original constructor is compared with GetFilter().
+ * - removing stop words from passage-like sentences, reported as sentences per second.
+ *
+ * If the stop words file is not found, a small list of stop words is used instead.
+ *
+ * It lives with the tests so that it is not shipped with the program. Run with
+ * the compiled tests on the class path :
+ *   java sg.edu.nus.wing.qanus.textprocessing.StopWordsFilterBenchmark [stop-words-file] [sentences] [words-per-sentence]
+ */
+public class StopWordsFilterBenchmark {
+
+	// Number of times each measurement is taken, the best one is reported
+	private static final int RUNS = 5;
+
+	// Number of filters to get when timing the loading of stop words
+	private static final int LOADS = 200;
+
+	private static final String[] FALLBACK_STOP_WORDS = {
+		"a", "about", "an", "and", "are", "as", "at", "be", "by", "for", "from", "has", "he",
+		"in", "is", "it", "its", "of", "on", "that", "the", "to", "was", "were", "will", "with"
+	};
+
+	private static final String[] CONTENT_WORDS = {
+		"President", "Senate", "announced", "Tuesday", "company", "shares", "percent", "market",
+		"Beijing", "officials", "reported", "election", "minister", "agreement", "billion", "police"
+	};
+
+
+	/**
+	 * The original implementation of StopWordsFilter, kept here for comparison.
+	 */
+	private static class LegacyStopWordsFilter {
+
+		private HashSet<String> m_StopWords = new HashSet<String>();
+
+		public LegacyStopWordsFilter(String a_FileName) throws IOException {
+
+			FileReader l_Reader = new FileReader(new File(a_FileName));
+			int l_Character = l_Reader.read();
+			String l_Word = "";
+			while (l_Character != -1) {
+				if (l_Character != ',') {
+					l_Word += (char) l_Character;
+				} else {
+					m_StopWords.add(l_Word);
+					l_Word = "";
+				}
+				l_Character = l_Reader.read();
+			}
+			if (l_Word.length() > 0) {
+				m_StopWords.add(l_Word);
+			}
+			l_Reader.close();
+
+		} // end constructor
+
+		public String RemoveStopWords(String a_String) {
+
+			StringTokenizer l_ST = new StringTokenizer(a_String);
+			String l_OutputString = "";
+			while (l_ST.hasMoreTokens()) {
+				String l_Word = l_ST.nextToken();
+				if (!(m_StopWords.contains(l_Word))) {
+					l_OutputString += l_Word + " ";
+				}
+			}
+
+			return l_OutputString.trim();
+
+		} // end RemoveStopWords()
+
+	} // end class LegacyStopWordsFilter
+
+
+	/**
+	 * Builds sentences mixing stop words and content words.
+	 *
+	 * @param a_NumSentences [in] number of sentences
+	 * @param a_NumWords [in] number of words in each sentence
+	 * @return the sentences
+	 */
+	private static String[] BuildSentences(int a_NumSentences, int a_NumWords) {
+
+		Random l_Random = new Random(42);
+		String[] l_Sentences = new String[a_NumSentences];
+		for (int i = 0; i < a_NumSentences; ++i) {
+			StringBuilder l_Sentence = new StringBuilder();
+			for (int j = 0; j < a_NumWords; ++j) {
+				if (j > 0) l_Sentence.append(' ');
+				if (l_Random.nextBoolean()) {
+					l_Sentence.append(FALLBACK_STOP_WORDS[l_Random.nextInt(FALLBACK_STOP_WORDS.length)]);
+				} else {
+					l_Sentence.append(CONTENT_WORDS[l_Random.nextInt(CONTENT_WORDS.length)]);
+				}
+			}
+			l_Sentences[i] = l_Sentence.toString();
+		}
+
+		return l_Sentences;
+
+	} // end BuildSentences()
+
+
+	/**
+	 * Entry point.
+	 *
+	 * @param args [stop-words-file] [sentences] [words-per-sentence]
+	 * @throws IOException on errors reading or writing the stop words file
+	 */
+	public static void main(String[] args) throws IOException {
+
+		String l_FileName = (args.length > 0) ? args[0] : "lib" + File.separator + "common-english-words.txt";
+		int l_NumSentences = (args.length > 1) ? Integer.parseInt(args[1]) : 20000;
+		int l_NumWords = (args.length > 2) ? Integer.parseInt(args[2]) : 30;
+
+		if (!new File(l_FileName).exists()) {
+			File l_TempFile = File.createTempFile("stopwords", ".txt");
+			l_TempFile.deleteOnExit();
+			FileWriter l_Writer = new FileWriter(l_TempFile);
+			for (int i = 0; i < FALLBACK_STOP_WORDS.length; ++i) {
+				if (i > 0) l_Writer.write(',');
+				l_Writer.write(FALLBACK_STOP_WORDS[i]);
+			}
+			l_Writer.close();
+			System.out.println("[" + l_FileName + "] not found, using a list of " + FALLBACK_STOP_WORDS.length + " stop words.");
+			l_FileName = l_TempFile.getAbsolutePath();
+		}
+		String[] l_FileNames = { l_FileName };
+
+
+		// Getting a filter
+		long l_LegacyLoadBest = Long.MAX_VALUE;
+		long l_SharedLoadBest = Long.MAX_VALUE;
+		for (int i = 0; i < RUNS; ++i) {
+
+			long l_Start = System.nanoTime();
+			for (int j = 0; j < LOADS; ++j) {
+				new LegacyStopWordsFilter(l_FileName);
+			}
+			l_LegacyLoadBest = Math.min(l_LegacyLoadBest, System.nanoTime() - l_Start);
+
+			l_Start = System.nanoTime();
+			for (int j = 0; j < LOADS; ++j) {
+				StopWordsFilter.GetFilter(l_FileNames);
+			}
+			l_SharedLoadBest = Math.min(l_SharedLoadBest, System.nanoTime() - l_Start);
+
+		} // end for
+
+		System.out.println("Getting " + LOADS + " filters");
+		System.out.println("  original constructor : " + (l_LegacyLoadBest / 1000000.0) + " ms");
+		System.out.println("  GetFilter()          : " + (l_SharedLoadBest / 1000000.0) + " ms");
+
+
+		// Removing stop words
+		String[] l_Sentences = BuildSentences(l_NumSentences, l_NumWords);
+		LegacyStopWordsFilter l_Legacy = new LegacyStopWordsFilter(l_FileName);
+		StopWordsFilter l_Filter = StopWordsFilter.GetFilter(l_FileNames);
+
+		long l_LegacyBest = Long.MAX_VALUE;
+		long l_FilterBest = Long.MAX_VALUE;
+		long l_Checksum = 0;
+		for (int i = 0; i < RUNS; ++i) {
+
+			long l_Start = System.nanoTime();
+			for (String l_Sentence : l_Sentences) {
+				l_Checksum += l_Legacy.RemoveStopWords(l_Sentence).length();
+			}
+			l_LegacyBest = Math.min(l_LegacyBest, System.nanoTime() - l_Start);
+
+			l_Start = System.nanoTime();
+			for (String l_Sentence : l_Sentences) {
+				l_Checksum -= l_Filter.RemoveStopWords(l_Sentence).length();
+			}
+			l_FilterBest = Math.min(l_FilterBest, System.nanoTime() - l_Start);
+
+		} // end for
+
+		System.out.println("Removing stop words from " + l_NumSentences + " sentences of " + l_NumWords + " words");
+		System.out.println("  original RemoveStopWords() : " + (long) (l_NumSentences / (l_LegacyBest / 1e9)) + " sentences/s");
+		System.out.println("  RemoveStopWords()          : " + (long) (l_NumSentences / (l_FilterBest / 1e9)) + " sentences/s");
+		if (l_Checksum != 0) {
+			System.out.println("  (results differ in length, as stop words are now compared regardless of case)");
+		}
+
+	} // end main()
+
+
+} // end class StopWordsFilterBenchmark